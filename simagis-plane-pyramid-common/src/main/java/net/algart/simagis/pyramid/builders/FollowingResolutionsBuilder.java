@@ -24,8 +24,10 @@
 
 package net.algart.simagis.pyramid.builders;
 
+import net.algart.simagis.pyramid.BoxAveraging;
 import net.algart.simagis.pyramid.PlanePyramidSource;
 import net.algart.simagis.pyramid.PlanePyramidTools;
+import net.algart.simagis.pyramid.ReadingPriority;
 import net.algart.arrays.*;
 
 import java.util.ArrayList;
@@ -186,8 +188,11 @@ public abstract class FollowingResolutionsBuilder {
                 // for the first compression: AlgART libraries are optimized for this situation
                 long tileToX = tileX + currentTileDimX;
                 long tileToY = tileY + currentTileDimY;
-                Matrix<? extends PArray> m = source.readSubMatrix(
-                    initialResolutionLevel, tileX, tileY, tileToX, tileToY);
+                final Matrix<? extends PArray> m;
+                try (ReadingPriority.Scope scope = ReadingPriority.BATCH.enter()) {
+                    m = source.readSubMatrix(initialResolutionLevel, tileX, tileY, tileToX, tileToY);
+                }
+                // - building pyramids should not delay interactive reading from the same source
                 if (m.dim(0) != bandCount || m.dim(1) != currentTileDimX || m.dim(2) != currentTileDimY)
                     throw new AssertionError("Invalid implementation of " + source.getClass()
                         + ".readSubMatrix (fromX = "
@@ -230,7 +235,7 @@ public abstract class FollowingResolutionsBuilder {
                     Matrix<? extends UpdatablePArray> smallBuffer = Matrices.matrixAtSubArray(
                         buffers.get(level + 1), 0,
                         bandCount, tileToX - tileX, tileToY - tileY);
-                    Matrices.resize(null, averagingMode.averagingMethod(largeBuffer), smallBuffer, largeBuffer);
+                    BoxAveraging.resize(null, averagingMode.averagingMethod(largeBuffer), smallBuffer, largeBuffer);
                     writeNewData(smallBuffer, level, tileX, tileY);
                     largeBuffer = smallBuffer;
                 }
@@ -253,7 +258,7 @@ public abstract class FollowingResolutionsBuilder {
                 layerDimY /= compression;
                 Matrix<? extends UpdatablePArray> newLayer = memoryModel(ac2, elementType, layerDimX, layerDimY)
                     .newMatrix(UpdatablePArray.class, elementType, bandCount, layerDimX, layerDimY);
-                Matrices.resize(
+                BoxAveraging.resize(
                     ac2 == null ? null : ac2.part(k, k + 1, numberOfNewResolutions - nImmediatelyBuilt),
                     averagingMode.averagingMethod(lastLayer), newLayer, lastLayer);
                 writeNewData(newLayer, level, 0, 0);
@@ -33,12 +33,21 @@ import net.algart.math.Range;
 import net.algart.math.functions.LinearFunc;
 
 import java.awt.*;
+import java.io.File;
 import java.io.IOError;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.NotYetConnectedException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 public abstract class AbstractPlanePyramidSource
     extends AbstractArrayProcessorWithContextSwitching
@@ -52,6 +61,35 @@ public abstract class AbstractPlanePyramidSource
     private static final long TILE_CACHING_MEMORY = Math.max(16, Arrays.SystemSettings.getLongProperty(
         "net.algart.simagis.pyramid.tileCachingMemory", 67108864));
     // 64 MB (+1 possible additional tile)
+    static final long GLOBAL_TILE_CACHING_MEMORY = Math.max(16, Arrays.SystemSettings.getLongProperty(
+        "net.algart.simagis.pyramid.globalTileCachingMemory",
+        Math.max(TILE_CACHING_MEMORY, Runtime.getRuntime().maxMemory() / 4)));
+    // 1/4 of the Java heap by default
+    private static final long DISK_TILE_CACHING_MEMORY = Math.max(0, Arrays.SystemSettings.getLongProperty(
+        "net.algart.simagis.pyramid.diskTileCachingMemory", 4L * 1024 * 1048576));
+    // 4 GB
+    static final boolean OFF_HEAP_TILE_CACHING = Arrays.SystemSettings.getBooleanProperty(
+        "net.algart.simagis.pyramid.offHeapTileCaching", false);
+    static final double COMPRESSED_TILE_CACHING_FRACTION = getFractionProperty(
+        "net.algart.simagis.pyramid.compressedTileCachingFraction", 0.0);
+    private static final int TILE_READING_PARALLELISM = Math.max(1, Arrays.SystemSettings.getIntProperty(
+        "net.algart.simagis.pyramid.tileReadingParallelism", 1));
+    // 1 means reading tiles in the current thread only
+    private static final boolean TILE_PREFETCHING = Arrays.SystemSettings.getBooleanProperty(
+        "net.algart.simagis.pyramid.tilePrefetching", false);
+    private static final boolean ADAPTIVE_READING_TILE = Arrays.SystemSettings.getBooleanProperty(
+        "net.algart.simagis.pyramid.adaptiveReadingTile", false);
+    private static final boolean READING_SCHEDULING = Arrays.SystemSettings.getBooleanProperty(
+        "net.algart.simagis.pyramid.readingScheduling", false);
+    static final boolean TILE_CACHE_JMX = Arrays.SystemSettings.getBooleanProperty(
+        "net.algart.simagis.pyramid.tileCacheJmx", false);
+    private static final double WARM_START_BUDGET = getFractionProperty(
+        "net.algart.simagis.pyramid.warmStartBudget", 0.5);
+    private static final int WARM_START_TILES_PER_SECOND = Math.max(1, Arrays.SystemSettings.getIntProperty(
+        "net.algart.simagis.pyramid.warmStartTilesPerSecond", 20));
+    private static final double TILE_PREFETCHING_BUDGET = getFractionProperty(
+        "net.algart.simagis.pyramid.tilePrefetchingBudget", 0.125);
+    // 1/8 of the tile cache
 
     public enum TileDirection {
         RIGHT_DOWN()
@@ -135,7 +173,19 @@ public abstract class AbstractPlanePyramidSource
     private volatile double skippingFiller = 0.0;
 
     private volatile TileDirection tileCacheDirection = null;
+    private volatile boolean globalTileCaching = false;
     private volatile long tileCachingMemory = TILE_CACHING_MEMORY;
+    private volatile boolean offHeapTileCaching = OFF_HEAP_TILE_CACHING;
+    private volatile double compressedTileCachingFraction = COMPRESSED_TILE_CACHING_FRACTION;
+    private volatile File diskTileCachingDirectory = null;
+    private volatile long diskTileCachingMemory = DISK_TILE_CACHING_MEMORY;
+    private volatile String diskTileCachingFingerprint = null;
+    private volatile int tileReadingParallelism = TILE_READING_PARALLELISM;
+    private volatile Executor tileReadingExecutor = null;
+    private volatile boolean tilePrefetching = TILE_PREFETCHING;
+    private volatile String tileCacheWarmStartManifest = null;
+    private volatile ReadingScheduler readingScheduler = READING_SCHEDULING ? ReadingScheduler.global() : null;
+    private volatile boolean adaptiveReadingTileDim = ADAPTIVE_READING_TILE;
 
     private volatile RotatingPlanePyramidSource.RotationMode labelRotation =
         RotatingPlanePyramidSource.RotationMode.NONE;
@@ -143,9 +193,15 @@ public abstract class AbstractPlanePyramidSource
 
     private final AtomicReference<TileCache> tileCacheContainer = new AtomicReference<TileCache>();
     // - here must be a reference, not a field: this object is usually cloned, and corrections in a clone
-    // do not affect the original; but this reference is shared with all clones
+    // do not affect the original; but this reference is shared with all clones;
+    // it also identifies this source (with all its clones) in the global tile cache
+    private final AtomicReference<DiskTileCache> diskTileCacheContainer = new AtomicReference<DiskTileCache>();
+    private final AtomicReference<TilePrefetcher> tilePrefetcherContainer = new AtomicReference<TilePrefetcher>();
+    private final AtomicReference<TileCacheWarmer> tileCacheWarmerContainer = new AtomicReference<TileCacheWarmer>();
+    private final AtomicReference<ReadingTileTuner> readingTileTunerContainer =
+        new AtomicReference<ReadingTileTuner>();
 
-    private final SpeedInfo speedInfo = new SpeedInfo();
+    private final LatencyRecorder latencyRecorder = new LatencyRecorder();
 
     protected AbstractPlanePyramidSource(ArrayContext context) {
         super(context);
@@ -204,6 +260,34 @@ public abstract class AbstractPlanePyramidSource
     public Matrix<? extends PArray> readSubMatrix(
         int resolutionLevel, long fromX, long fromY, long toX, long toY)
         throws NoSuchElementException, NotYetConnectedException
+    {
+        return readSubMatrix(resolutionLevel, fromX, fromY, toX, toY, null).matrix();
+    }
+
+    /**
+     * This implementation borrows the result, consisting of several tiles, from the
+     * {@link MatrixBufferPool#global() global buffer pool} (if it is not too large for Java memory).
+     * The result, contained in a single tile or filled by a constant, is returned without using the pool.
+     *
+     * @param resolutionLevel the level.
+     * @param fromX           starting x-coordinate of the area (inclusive).
+     * @param fromY           starting y-coordinate of the area (inclusive).
+     * @param toX             ending x-coordinate of the area (exclusive).
+     * @param toY             ending y-coordinate of the area (exclusive).
+     * @return the same data as <tt>readSubMatrix</tt>, maybe in a buffer, borrowed from the pool.
+     */
+    @Override
+    public PooledMatrix<? extends PArray> readPooledSubMatrix(
+        int resolutionLevel, long fromX, long fromY, long toX, long toY)
+        throws NoSuchElementException, NotYetConnectedException
+    {
+        return readSubMatrix(resolutionLevel, fromX, fromY, toX, toY, MatrixBufferPool.global());
+    }
+
+    private PooledMatrix<? extends PArray> readSubMatrix(
+        int resolutionLevel, long fromX, long fromY, long toX, long toY,
+        MatrixBufferPool pool)
+        throws NoSuchElementException, NotYetConnectedException
     {
         final ArrayContext context = context();
         final int bandCount = bandCount();
@@ -211,75 +295,195 @@ public abstract class AbstractPlanePyramidSource
         checkSubMatrixRanges(dimensions, fromX, fromY, toX, toY, false);
         final long totalElements = Arrays.longMul(bandCount, toX - fromX, toY - fromY);
         assert totalElements != Long.MIN_VALUE; // because of the check above
+        final int tileDim = nextReadingTileDim(resolutionLevel, dimensions, fromX, fromY);
+        final TileDirection prefetchDirection = tileCacheDirection;
+        if (tilePrefetching && prefetchDirection != null) {
+            tilePrefetcher().onRequest(resolutionLevel, fromX, fromY, toX, toY,
+                dimensions[1], dimensions[2], tileDim, prefetchDirection);
+        }
         if (fromX == toX || fromY == toY
             || (!isTileCachingEnabled() && Math.max(toX - fromX, toY - fromY) <= MAX_NON_TILED_READING_DIM))
         {
-            return readSubMatrixViaTileCache(resolutionLevel, fromX, fromY, toX, toY, null);
+            return PooledMatrix.unpooled(readSubMatrixViaTileCache(resolutionLevel, fromX, fromY, toX, toY, null));
         }
-        Matrix<? extends UpdatablePArray> result = null;
-        long readyElements = 0;
-        TileDirection direction = isTileCachingEnabled() ? getTileCacheDirection() : TileDirection.RIGHT_DOWN;
-        final long dimX = dimensions[1];
-        final long dimY = dimensions[2];
-        final int readingTileDim = readingTileDim();
-        IRectangularArea leftTile; // - the left tile in each row
-        for (long y = fromY; y < toY; y = leftTile.max(1) + 1) {
-            leftTile = direction.findTile(readingTileDim, dimX, dimY, fromX, y);
-            IRectangularArea tile;
-            for (long x = fromX; x < toX; x = tile.max(0) + 1) {
-                tile = direction.findTile(readingTileDim, dimX, dimY, x, y);
-                long tileFromX = Math.max(tile.min(0), fromX);
-                long tileFromY = Math.max(tile.min(1), fromY);
-                long tileToX = Math.min(tile.max(0) + 1, toX);
-                long tileToY = Math.min(tile.max(1) + 1, toY);
-                assert tileFromX <= tileToX;
-                assert tileFromY <= tileToY;
-                AbstractPlanePyramidSource subTask = context == null ? this :
-                    (AbstractPlanePyramidSource) context(context.part(
-                        readyElements,
-                        readyElements + bandCount * (tileToX - tileFromX) * (tileToY - tileFromY),
-                        totalElements));
-                Matrix<? extends PArray> m = subTask.readSubMatrixViaTileCache(
-                    resolutionLevel,
-                    tileFromX, tileFromY, tileToX, tileToY,
-                    tile);
-                if (fromX == tileFromX && fromY == tileFromY && toX == tileToX && toY == tileToY) {
-                    // it is the only tile which should be loaded: we already have the final result
-                    assert result == null : "Unexpected non-null result = " + result + " for tile "
-                        + tileFromX + ".." + tileToX + "x" + tileFromY + ".." + tileToY;
-                    if (DEBUG_LEVEL >= 3) {
-                        System.out.println(AbstractPlanePyramidSource.class.getSimpleName()
-                            + " quickly returned result: " + m);
-                    }
-                    return m;
-                }
-                if (result == null) {
-                    MemoryModel mm = context == null || Arrays.sizeOf(m.elementType(), totalElements) <=
-                        Arrays.SystemSettings.maxTempJavaMemory() ? Arrays.SMM : context.getMemoryModel();
-                    result = mm.newMatrix(UpdatablePArray.class, m.elementType(), bandCount, toX - fromX, toY - fromY);
-                    if (!SimpleMemoryModel.isSimpleArray(result.array())) {
-                        result = result.tile(bandCount, DEFAULT_TILE_DIM, DEFAULT_TILE_DIM);
-                    }
-                    if (DEBUG_LEVEL >= 3) {
-                        System.out.println(AbstractPlanePyramidSource.class.getSimpleName()
-                            + " created result " + result);
-                    }
-                }
-                final Matrix<? extends UpdatablePArray> subMatrix = result.subMatrix(
-                    0, tileFromX - fromX, tileFromY - fromY, bandCount, tileToX - fromX, tileToY - fromY);
-                if (!m.dimEquals(subMatrix)) {
-                    throw new AssertionError("Internal bug in readSubMatrixViaCache: "
-                        + "incorrect dimensions of the result " + m.dim(0) + "x" + m.dim(1) + "x" + m.dim(2)
-                        + " instead of " + bandCount + "x" + (tileToX - tileFromX) + "x" + (tileToY - tileFromY));
-                }
-                subMatrix.array().copy(m.array());
-                readyElements += m.size();
-                if (context != null) {
-                    context.checkInterruptionAndUpdateProgress(m.elementType(), readyElements, totalElements);
+        final TiledResult result = new TiledResult(context, fromX, fromY, toX, toY, totalElements);
+        result.pool = pool;
+        final List<TilePart> parts = splitIntoTileParts(dimensions, tileDim, fromX, fromY, toX, toY);
+        if (parts.size() == 1) {
+            // it is the only tile which should be loaded: we already have the final result
+            final TilePart part = parts.get(0);
+            final Matrix<? extends PArray> m = part.subTask(this, result).readSubMatrixViaTileCache(
+                resolutionLevel,
+                part.fromX, part.fromY, part.toX, part.toY,
+                part.tile);
+            if (DEBUG_LEVEL >= 3) {
+                System.out.println(AbstractPlanePyramidSource.class.getSimpleName()
+                    + " quickly returned result: " + m);
+            }
+            return PooledMatrix.unpooled(m);
+        }
+        try {
+            readAll(parts, part -> readTilePart(resolutionLevel, part, result));
+        } catch (RuntimeException | Error e) {
+            if (result.pooled != null) {
+                result.pooled.close();
+                // - the buffer, borrowed for the first tiles, must be returned, if another tile failed
+            }
+            throw e;
+        }
+        return result.pooledResult();
+    }
+
+    /**
+     * This implementation finds the set of tiles, containing all the given areas, and loads every tile
+     * (more precisely, the part of the tile, which is covered by the areas) only once;
+     * if {@link #getTileReadingParallelism() tile reading parallelism} is greater than 1,
+     * different tiles are loaded in parallel. Then the results are copied from the loaded tiles.
+     *
+     * @param resolutionLevel the level.
+     * @param areas           the areas to read; every area must be 2-dimensional.
+     * @return the matrices, read from the given areas.
+     */
+    @Override
+    public List<Matrix<? extends PArray>> readSubMatrices(int resolutionLevel, List<IRectangularArea> areas)
+        throws NoSuchElementException, NotYetConnectedException
+    {
+        PlanePyramidTools.checkAreas(areas);
+        final ArrayContext context = context();
+        final long[] dimensions = dimensions(resolutionLevel);
+        final int tileDim = areas.isEmpty() ?
+            currentReadingTileDim() :
+            nextReadingTileDim(resolutionLevel, dimensions, areas.get(0).min(0), areas.get(0).min(1));
+        final List<TiledResult> results = new ArrayList<TiledResult>();
+        final Map<IRectangularArea, TileGroup> groups = new LinkedHashMap<IRectangularArea, TileGroup>();
+        for (IRectangularArea area : areas) {
+            final long fromX = area.min(0);
+            final long fromY = area.min(1);
+            final long toX = area.max(0) + 1;
+            final long toY = area.max(1) + 1;
+            checkSubMatrixRanges(dimensions, fromX, fromY, toX, toY, false);
+            final TiledResult result = new TiledResult(context, fromX, fromY, toX, toY,
+                Arrays.longMul(dimensions[0], toX - fromX, toY - fromY));
+            results.add(result);
+            for (TilePart part : splitIntoTileParts(dimensions, tileDim, fromX, fromY, toX, toY)) {
+                TileGroup group = groups.get(part.tile);
+                if (group == null) {
+                    group = new TileGroup(part.tile);
+                    groups.put(part.tile, group);
                 }
+                group.add(part, result);
             }
         }
-        return result;
+        readAll(new ArrayList<TileGroup>(groups.values()), group -> readTileGroup(resolutionLevel, group));
+        if (DEBUG_LEVEL >= 3) {
+            System.out.println(AbstractPlanePyramidSource.class.getSimpleName()
+                + " read " + areas.size() + " areas from " + groups.size() + " tiles");
+        }
+        final List<Matrix<? extends PArray>> matrices = new ArrayList<Matrix<? extends PArray>>();
+        for (TiledResult result : results) {
+            matrices.add(result.result());
+        }
+        return matrices;
+    }
+
+    /**
+     * This implementation, if {@link #isTileCachingEnabled() tile caching} is enabled, requests all tiles
+     * of the area from the tile cache asynchronously and copies every tile into the result
+     * when it becomes available. Tiles, which are absent in the cache and are not being loaded
+     * by other requests, are loaded by the given executor. If tile caching is disabled,
+     * this method just executes {@link #readSubMatrix readSubMatrix} by the given executor.
+     * The {@link ReadingCancellation#current() current} cancellation token of the calling thread
+     * is checked by every task before loading tiles.
+     *
+     * @param resolutionLevel the level.
+     * @param fromX           starting x-coordinate of the area (inclusive).
+     * @param fromY           starting y-coordinate of the area (inclusive).
+     * @param toX             ending x-coordinate of the area (exclusive).
+     * @param toY             ending y-coordinate of the area (exclusive).
+     * @param executor        the executor for reading the data.
+     * @return the future result of reading.
+     * @throws NullPointerException if <tt>executor</tt> is <tt>null</tt>.
+     */
+    @Override
+    public CompletableFuture<Matrix<? extends PArray>> readSubMatrixAsync(
+        int resolutionLevel, long fromX, long fromY, long toX, long toY, Executor executor)
+    {
+        if (executor == null) {
+            throw new NullPointerException("Null executor");
+        }
+        final Executor cancellableExecutor = ReadingCancellation.propagating(executor);
+        // - the tasks will check the cancellation token of the caller
+        final TileDirection cacheDirection = tileCacheDirection;
+        // - read once: tile caching may be disabled by another thread
+        if (cacheDirection == null || fromX == toX || fromY == toY) {
+            return CompletableFuture.supplyAsync(
+                () -> readSubMatrix(resolutionLevel, fromX, fromY, toX, toY), cancellableExecutor);
+        }
+        try {
+            final long[] dimensions = dimensions(resolutionLevel);
+            checkSubMatrixRanges(dimensions, fromX, fromY, toX, toY, false);
+            final long totalElements = Arrays.longMul(bandCount(), toX - fromX, toY - fromY);
+            final int tileDim = currentReadingTileDim();
+            // - no probes here: this method must not read anything in the calling thread
+            if (tilePrefetching) {
+                tilePrefetcher().onRequest(resolutionLevel, fromX, fromY, toX, toY,
+                    dimensions[1], dimensions[2], tileDim, cacheDirection);
+            }
+            final TiledResult result = new TiledResult(context(), fromX, fromY, toX, toY, totalElements);
+            final List<TilePart> parts = splitIntoTileParts(dimensions, tileDim, fromX, fromY, toX, toY);
+            if (parts.size() == 1) {
+                final TilePart part = parts.get(0);
+                return part.subTask(this, result).useSubMatrixViaTileCacheAsync(
+                    resolutionLevel, part.fromX, part.fromY, part.toX, part.toY, part.tile,
+                    (m, offHeap, uniformPixel) -> offHeap ? m.matrix(m.array().updatableClone(Arrays.SMM)) : m,
+                    cancellableExecutor);
+            }
+            final List<CompletableFuture<Void>> tiles = new ArrayList<CompletableFuture<Void>>();
+            for (TilePart part : parts) {
+                tiles.add(part.subTask(this, result).useSubMatrixViaTileCacheAsync(
+                    resolutionLevel, part.fromX, part.fromY, part.toX, part.toY, part.tile,
+                    (m, offHeap, uniformPixel) -> {
+                        result.copyTile(m, uniformPixel, part.fromX, part.fromY, part.toX, part.toY);
+                        return null;
+                    },
+                    cancellableExecutor));
+            }
+            return CompletableFuture.allOf(tiles.toArray(new CompletableFuture<?>[tiles.size()]))
+                .thenApply(v -> result.result());
+        } catch (RuntimeException e) {
+            final CompletableFuture<Matrix<? extends PArray>> failed =
+                new CompletableFuture<Matrix<? extends PArray>>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    /**
+     * This implementation loads the tiles of the given area into the tile cache in background threads
+     * with low priority, if {@link #isTileCachingEnabled() tile caching} and
+     * {@link #isTilePrefetchingEnabled() tile prefetching} are enabled; in other case, it does nothing.
+     * Tasks for the previous area at the same level, which are not started yet, are cancelled,
+     * if their tiles are outside the new area.
+     *
+     * @param resolutionLevel the level of the area.
+     * @param fromX           starting x-coordinate of the area (inclusive).
+     * @param fromY           starting y-coordinate of the area (inclusive).
+     * @param toX             ending x-coordinate of the area (exclusive).
+     * @param toY             ending y-coordinate of the area (exclusive).
+     */
+    @Override
+    public void prefetchSubMatrix(int resolutionLevel, long fromX, long fromY, long toX, long toY) {
+        final TileDirection prefetchDirection = tileCacheDirection;
+        if (!tilePrefetching || prefetchDirection == null
+            || resolutionLevel < 0 || resolutionLevel >= numberOfResolutions())
+        {
+            return;
+        }
+        final long[] dimensions = dimensions(resolutionLevel);
+        tilePrefetcher().onPrefetchRequest(resolutionLevel,
+            Math.max(fromX, 0), Math.max(fromY, 0),
+            Math.min(toX, dimensions[1]), Math.min(toY, dimensions[2]),
+            dimensions[1], dimensions[2], currentReadingTileDim(), prefetchDirection);
     }
 
     public boolean isFullMatrixSupported() {
@@ -314,12 +518,27 @@ public abstract class AbstractPlanePyramidSource
     }
 
     /**
-     * This implementation does nothing.
+     * This implementation starts warm-up of the tile cache by the
+     * {@link #getTileCacheWarmStartManifest() warm-start manifest}, if it is set
+     * and {@link #isTileCachingEnabled() tile caching} is enabled; in other case, it does nothing.
+     * The tiles of the manifest are loaded in background with {@link ReadingPriority#BATCH batch priority}
+     * at the rate, set by the system property "<tt>net.algart.simagis.pyramid.warmStartTilesPerSecond</tt>"
+     * (20 tiles per second by default), while there is free memory in the tile cache.
+     * The warm-up, started by the previous call of this method, is cancelled. This method returns immediately.
      *
      * <p>If your implementation overrides this method, it must call <tt>super.loadResources</tt> at the end &mdash;
-     * because it is possible that future version will do something useful.
+     * when the source is ready to read tiles, which will be requested by the warm-up.
      */
     public void loadResources() {
+        final String manifest = tileCacheWarmStartManifest;
+        if (manifest != null && isTileCachingEnabled()) {
+            final TileCacheWarmer warmer = new TileCacheWarmer();
+            final TileCacheWarmer previous = tileCacheWarmerContainer.getAndSet(warmer);
+            if (previous != null) {
+                previous.cancel();
+            }
+            warmer.start(TileCacheWarmer.parse(manifest), this::warmUpTile, WARM_START_TILES_PER_SECOND);
+        }
     }
 
     /**
@@ -384,15 +603,55 @@ public abstract class AbstractPlanePyramidSource
         return this.tileCacheDirection;
     }
 
+    /**
+     * Returns <tt>true</tt> if tile caching is enabled by {@link #enableGlobalTileCaching(TileDirection)}.
+     *
+     * @return whether this source caches tiles in the global cache, shared by all sources in this JVM.
+     */
+    public final boolean isGlobalTileCachingEnabled() {
+        return tileCacheDirection != null && globalTileCaching;
+    }
+
+    /**
+     * Enables tile caching in the own cache of this source, limited by {@link #getTileCachingMemory()}.
+     *
+     * @param tileDirection the direction of tiles.
+     */
     public final void enableTileCaching(TileDirection tileDirection) {
         if (tileDirection == null) {
             throw new NullPointerException("Null tileCacheDirection argument");
         }
         this.tileCacheDirection = tileDirection;
+        this.globalTileCaching = false;
+    }
+
+    /**
+     * Enables tile caching in the global cache, shared by all sources in this JVM, which enabled caching
+     * by this method. The global cache has one common memory limit, retrieved from the system property
+     * "<tt>net.algart.simagis.pyramid.globalTileCachingMemory</tt>" (1/4 of the maximal Java heap by default),
+     * and {@link #getTileCachingMemory()} is ignored in this mode.
+     * When the cache is full, tiles of a source, occupying more than its fair share
+     * of the memory, are evicted first.
+     *
+     * <p>{@link #freeResources()} method removes from the global cache only the tiles of this source.
+     *
+     * @param tileDirection the direction of tiles.
+     */
+    public final void enableGlobalTileCaching(TileDirection tileDirection) {
+        if (tileDirection == null) {
+            throw new NullPointerException("Null tileCacheDirection argument");
+        }
+        this.tileCacheDirection = tileDirection;
+        this.globalTileCaching = true;
     }
 
     public final void disableTileCaching() {
         this.tileCacheDirection = null;
+        this.globalTileCaching = false;
+    }
+
+    public static long getGlobalTileCachingMemory() {
+        return GLOBAL_TILE_CACHING_MEMORY;
     }
 
     /**
@@ -420,6 +679,407 @@ public abstract class AbstractPlanePyramidSource
         this.tileCachingMemory = tileCachingMemory;
     }
 
+    /**
+     * Returns <tt>true</tt> if the own tile cache of this source stores tile data outside the Java heap,
+     * in direct byte buffers. The initial value is retrieved from the system property
+     * "<tt>net.algart.simagis.pyramid.offHeapTileCaching</tt>" (<tt>false</tt> by default);
+     * the same property specifies the storage of the global tile cache.
+     *
+     * <p>Off-heap storage makes sense for large caches (gigabytes): tiles, stored in Java heap,
+     * usually move to the old generation and lead to long garbage collection pauses.
+     * Readers work with off-heap tiles without copying, and the memory of evicted tiles is
+     * reused for new tiles instead of being collected by the garbage collector.
+     * Only one tile, when it is the whole result of {@link #readSubMatrix readSubMatrix},
+     * is copied into Java heap.
+     *
+     * @return whether tiles are cached in off-heap memory.
+     */
+    public final boolean isOffHeapTileCaching() {
+        return offHeapTileCaching;
+    }
+
+    /**
+     * Sets the {@link #isOffHeapTileCaching() off-heap tile caching} mode.
+     * If the mode is changed, the own tile cache of this source is freed.
+     *
+     * @param offHeapTileCaching whether tiles should be cached in off-heap memory.
+     */
+    public final void setOffHeapTileCaching(boolean offHeapTileCaching) {
+        if (this.offHeapTileCaching != offHeapTileCaching) {
+            this.offHeapTileCaching = offHeapTileCaching;
+            freeTileCache();
+        }
+    }
+
+    /**
+     * Returns the part of {@link #getTileCachingMemory() tile caching memory}, used for compressed tiles.
+     * If it is positive, the tile cache consists of two tiers: the main tier contains usual (decompressed)
+     * tiles, and tiles, evicted from it, are losslessly compressed and stored in the second tier,
+     * limited by this part of memory. When a tile from the second tier is requested, it is decompressed
+     * and returned into the main tier: it is much faster than reading it again
+     * by {@link #readLittleSubMatrix readLittleSubMatrix}.
+     * Because typical histology images are well compressible, the same memory can contain
+     * several times more tiles.
+     *
+     * <p>The initial value is retrieved from the system property
+     * "<tt>net.algart.simagis.pyramid.compressedTileCachingFraction</tt>" (0.0 by default,
+     * that means no compression); the same property specifies this fraction for the global tile cache.
+     * See {@link #getTileCompressionStats()} for information about compression ratio and speed.
+     *
+     * @return the fraction of tile caching memory for compressed tiles, from 0.0 (inclusive) to 1.0 (exclusive).
+     */
+    public final double getCompressedTileCachingFraction() {
+        return compressedTileCachingFraction;
+    }
+
+    /**
+     * Sets the {@link #getCompressedTileCachingFraction() compressed tile caching fraction}.
+     * If it is changed, the own tile cache of this source is freed.
+     *
+     * @param compressedTileCachingFraction the fraction of tile caching memory for compressed tiles.
+     * @throws IllegalArgumentException if the argument is out of range 0.0&nbsp;&le;&nbsp;<i>f</i>&nbsp;&lt;&nbsp;1.0.
+     */
+    public final void setCompressedTileCachingFraction(double compressedTileCachingFraction) {
+        if (!(compressedTileCachingFraction >= 0.0 && compressedTileCachingFraction < 1.0)) {
+            throw new IllegalArgumentException("Compressed tile caching fraction must be in 0.0..1.0 range, "
+                + "1.0 exclusive, but it is " + compressedTileCachingFraction);
+        }
+        if (this.compressedTileCachingFraction != compressedTileCachingFraction) {
+            this.compressedTileCachingFraction = compressedTileCachingFraction;
+            freeTileCache();
+        }
+    }
+
+    /**
+     * Returns statistics of the compressed tier of the tile cache, used by this source.
+     * If this source uses the global tile cache, the result describes the global cache (all sources).
+     *
+     * @return statistics of tile compression.
+     */
+    public final TileCompressionStats getTileCompressionStats() {
+        final TileCache tileCache = isGlobalTileCachingEnabled() ?
+            TileCache.globalIfExists() :
+            tileCacheContainer.get();
+        return tileCache == null ? TileCompressionStats.empty() : tileCache.compressionStats();
+    }
+
+    /**
+     * Returns statistics of the tile cache, used by this source: hits, misses, evictions, loading time,
+     * used memory and the same information for every resolution level. It helps to choose
+     * a suitable {@link #getTileCachingMemory() tile caching memory}.
+     * If this source uses the global tile cache, the result describes the global cache (all sources).
+     * If there is no cache yet, all values are zero.
+     *
+     * <p>The same information is available via JMX ({@link TileCacheMXBean}), if the system property
+     * "<tt>net.algart.simagis.pyramid.tileCacheJmx</tt>" is <tt>true</tt> (<tt>false</tt> by default).
+     *
+     * @return statistics of the tile cache.
+     */
+    public final TileCacheStats getTileCacheStats() {
+        final TileCache tileCache = isGlobalTileCachingEnabled() ?
+            TileCache.globalIfExists() :
+            tileCacheContainer.get();
+        return tileCache == null ? TileCacheStats.empty() : tileCache.stats();
+    }
+
+    /**
+     * Returns the recorder of durations of {@link #readLittleSubMatrix readLittleSubMatrix} calls
+     * ({@link LatencyRecorder.Operation#READ READ} operations) for every resolution level.
+     * It is shared by this source and all its clones.
+     *
+     * @return the latency recorder of this source.
+     */
+    public final LatencyRecorder getLatencyRecorder() {
+        return latencyRecorder;
+    }
+
+    public static TileCacheMetricsListener getTileCacheMetricsListener() {
+        return TileCache.getMetricsListener();
+    }
+
+    /**
+     * Sets the listener, which receives events of all tile caches in this JVM (including the global cache):
+     * hits, misses, loadings and evictions of tiles. It allows to export these events into
+     * some external metrics system. <tt>null</tt> (the default value) means no listener.
+     *
+     * @param listener new listener or <tt>null</tt>.
+     */
+    public static void setTileCacheMetricsListener(TileCacheMetricsListener listener) {
+        TileCache.setMetricsListener(listener);
+    }
+
+    /**
+     * Returns the maximal number of tiles, which are read simultaneously by {@link #readSubMatrix readSubMatrix},
+     * when the requested area consists of several tiles.
+     * If it is greater than 1, the tiles are read (by {@link #readLittleSubMatrix readLittleSubMatrix}
+     * or from the tile cache) in the current thread and in <tt>parallelism&minus;1</tt> tasks,
+     * executed by {@link #getTileReadingExecutor() tile reading executor}, and every tile is copied
+     * into its own part of the result. It allows to use several CPU kernels for decoding tiles
+     * of large areas.
+     *
+     * <p>In this case, {@link #readLittleSubMatrix readLittleSubMatrix} is called from several threads
+     * simultaneously: it must be thread-safe.
+     *
+     * <p>The initial value is retrieved from the system property
+     * "<tt>net.algart.simagis.pyramid.tileReadingParallelism</tt>" (1 by default, that means
+     * reading all tiles in the current thread).
+     *
+     * @return the maximal number of threads, reading tiles of one area.
+     */
+    public final int getTileReadingParallelism() {
+        return tileReadingParallelism;
+    }
+
+    public final void setTileReadingParallelism(int tileReadingParallelism) {
+        if (tileReadingParallelism <= 0) {
+            throw new IllegalArgumentException("Zero or negative tileReadingParallelism");
+        }
+        this.tileReadingParallelism = tileReadingParallelism;
+    }
+
+    /**
+     * Returns the executor, used for reading tiles when {@link #getTileReadingParallelism()} is greater than 1,
+     * or <tt>null</tt> if it was not set. In the last case, a pool of daemon threads,
+     * shared by all sources, is used.
+     *
+     * <p>The current thread always reads tiles itself: so, if all threads of the executor are busy
+     * (for example, they are reading other areas), <tt>readSubMatrix</tt> is not blocked,
+     * but just works slower.
+     *
+     * @return the executor for reading tiles (<tt>null</tt> by default).
+     */
+    public final Executor getTileReadingExecutor() {
+        return tileReadingExecutor;
+    }
+
+    public final void setTileReadingExecutor(Executor tileReadingExecutor) {
+        this.tileReadingExecutor = tileReadingExecutor;
+    }
+
+    /**
+     * Returns <tt>true</tt> if predictive prefetching of tiles is enabled. It is used only when
+     * {@link #isTileCachingEnabled() tile caching} is enabled.
+     *
+     * <p>In this mode, the source watches the sequence of areas, requested by {@link #readSubMatrix readSubMatrix}
+     * at every level, and estimates the velocity of panning. While the viewer moves, the tiles,
+     * which will become visible at the next steps (in the direction of motion), are loaded into the tile
+     * cache by background threads, shared by all sources (their number is retrieved from the system property
+     * "<tt>net.algart.simagis.pyramid.tilePrefetchingThreads</tt>", 2 by default). So, the viewer
+     * does not wait for reading cold tiles at the leading edge.
+     *
+     * <p>Prefetched tiles, which were not requested yet, may occupy only a part of the tile cache,
+     * specified by the system property "<tt>net.algart.simagis.pyramid.tilePrefetchingBudget</tt>"
+     * (0.125 by default): so, prefetching does not evict tiles, really used by the viewer.
+     * See {@link #getTilePrefetchStats()} about the efficiency of prefetching.
+     *
+     * <p>In this mode, {@link #readLittleSubMatrix readLittleSubMatrix} is called from several threads
+     * simultaneously: it must be thread-safe.
+     *
+     * <p>The initial value is retrieved from the system property
+     * "<tt>net.algart.simagis.pyramid.tilePrefetching</tt>" (<tt>false</tt> by default).
+     *
+     * @return whether tiles are prefetched in the direction of motion of the viewer.
+     */
+    public final boolean isTilePrefetchingEnabled() {
+        return tilePrefetching;
+    }
+
+    public final void setTilePrefetchingEnabled(boolean tilePrefetching) {
+        this.tilePrefetching = tilePrefetching;
+    }
+
+    /**
+     * Returns statistics of {@link #isTilePrefetchingEnabled() tile prefetching} for this source.
+     *
+     * @return statistics of tile prefetching.
+     */
+    public final TilePrefetchStats getTilePrefetchStats() {
+        final TilePrefetcher tilePrefetcher = tilePrefetcherContainer.get();
+        return tilePrefetcher == null ? TilePrefetchStats.empty() : tilePrefetcher.stats();
+    }
+
+    /**
+     * Returns a compact text manifest of the tiles of this source, which are the most frequently used
+     * in the tile cache now (in decreasing order of frequency). It can be saved and later passed to
+     * {@link #setTileCacheWarmStartManifest(String)} of a new instance of the same source
+     * (for example, after restarting the server), to pre-populate its tile cache.
+     * If there is no tile cache, the manifest contains no tiles.
+     *
+     * @param maxNumberOfTiles the maximal number of tiles in the manifest.
+     * @return the manifest of hot tiles.
+     * @throws IllegalArgumentException if the argument is negative.
+     */
+    public final String exportTileCacheManifest(int maxNumberOfTiles) {
+        if (maxNumberOfTiles < 0) {
+            throw new IllegalArgumentException("Negative maxNumberOfTiles");
+        }
+        final boolean global = isGlobalTileCachingEnabled();
+        final TileCache tileCache = global ? TileCache.globalIfExists() : tileCacheContainer.get();
+        return TileCacheWarmer.format(tileCache == null ?
+            Collections.<TileCacheIndex>emptyList() :
+            tileCache.hottestTiles(global ? tileCacheContainer : null, maxNumberOfTiles));
+    }
+
+    /**
+     * Returns the manifest, created by {@link #exportTileCacheManifest(int)}, which is used by
+     * {@link #loadResources()} for warm-up of the tile cache, or <tt>null</tt> (the default value)
+     * if there is no warm-up.
+     *
+     * <p>The tiles are loaded in one background thread with minimal priority (and with
+     * {@link ReadingPriority#BATCH BATCH} priority for the {@link #getReadingScheduler() reading scheduler}),
+     * not faster than the system property "<tt>net.algart.simagis.pyramid.warmStartTilesPerSecond</tt>"
+     * (20 by default). They are loaded only into free memory of the cache, so they never evict tiles,
+     * used by live requests, and like {@link #isTilePrefetchingEnabled() prefetched tiles}, the tiles,
+     * which were not requested yet, may occupy not more than the part of the cache, specified by the system
+     * property "<tt>net.algart.simagis.pyramid.warmStartBudget</tt>" (0.5 by default).
+     * The warm-up tiles are counted in {@link #getTilePrefetchStats()}. Tiles, which do not match
+     * the dimensions of this source, are skipped; warm-up is cancelled by {@link #freeResources()}.
+     *
+     * @return the warm-start manifest or <tt>null</tt>.
+     */
+    public final String getTileCacheWarmStartManifest() {
+        return tileCacheWarmStartManifest;
+    }
+
+    /**
+     * Sets the {@link #getTileCacheWarmStartManifest() warm-start manifest}.
+     *
+     * @param tileCacheWarmStartManifest the manifest, created by {@link #exportTileCacheManifest(int)},
+     *                                   or <tt>null</tt>.
+     * @throws IllegalArgumentException if the manifest has invalid format.
+     */
+    public final void setTileCacheWarmStartManifest(String tileCacheWarmStartManifest) {
+        if (tileCacheWarmStartManifest != null) {
+            TileCacheWarmer.parse(tileCacheWarmStartManifest);
+            // - checking the format
+        }
+        this.tileCacheWarmStartManifest = tileCacheWarmStartManifest;
+    }
+
+    /**
+     * Returns the scheduler, which limits simultaneous calls of {@link #readLittleSubMatrix readLittleSubMatrix}
+     * according to the {@link ReadingPriority#current() priority} of the request, or <tt>null</tt>
+     * if they are not limited. Sources, which use the same device or decoder, should share one scheduler:
+     * then interactive requests are not delayed by prefetching and background processing.
+     *
+     * <p>The initial value is {@link ReadingScheduler#global()}, if the system property
+     * "<tt>net.algart.simagis.pyramid.readingScheduling</tt>" is <tt>true</tt>, or <tt>null</tt>
+     * in other case (by default).
+     *
+     * @return the reading scheduler or <tt>null</tt>.
+     */
+    public final ReadingScheduler getReadingScheduler() {
+        return readingScheduler;
+    }
+
+    public final void setReadingScheduler(ReadingScheduler readingScheduler) {
+        this.readingScheduler = readingScheduler;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the dimension of tiles, used for caching and for splitting large areas,
+     * is chosen adaptively for this source instead of the fixed value, returned by {@link #readingTileDim()}.
+     *
+     * <p>In this mode, the source tries 3 candidates (<tt>readingTileDim()</tt>, its half and its double)
+     * at the first requests (warm-up). While the warm-up, the areas are still split into tiles of
+     * <tt>readingTileDim()</tt>, but a synchronous request also starts reading one additional <i>probe</i> tile
+     * of the next candidate in turn near the requested area: directly by
+     * {@link #readLittleSubMatrix readLittleSubMatrix}, bypassing all tile caches, with measuring the time.
+     * Probes are read one at a time by a background thread with {@link ReadingPriority#BATCH BATCH} priority,
+     * so the requests do not wait for them; a request, which comes while the previous probe is being read,
+     * does not start a new one.
+     * When every candidate is probed enough times (the number is retrieved from the system property
+     * "<tt>net.algart.simagis.pyramid.readingTileTuningSamples</tt>", 16 by default), the source settles on
+     * the candidate with the best throughput among candidates, reading one tile not longer than the limit
+     * from the system property "<tt>net.algart.simagis.pyramid.readingTileMaxLatency</tt>"
+     * (in milliseconds, 100 by default). So, the reading tile becomes small for sources with fast random access,
+     * like JPEG tiles, and large for strip-organized files. If the chosen dimension differs from
+     * <tt>readingTileDim()</tt>, the tiles of this source are removed from the tile cache once,
+     * because they belong to the previous grid. See {@link #getReadingTileTuning()} about the choice
+     * and the measured speeds.
+     *
+     * <p>The initial value is retrieved from the system property
+     * "<tt>net.algart.simagis.pyramid.adaptiveReadingTile</tt>" (<tt>false</tt> by default).
+     *
+     * @return whether the reading tile dimension is chosen adaptively.
+     */
+    public final boolean isAdaptiveReadingTileDimEnabled() {
+        return adaptiveReadingTileDim;
+    }
+
+    public final void setAdaptiveReadingTileDimEnabled(boolean adaptiveReadingTileDim) {
+        this.adaptiveReadingTileDim = adaptiveReadingTileDim;
+    }
+
+    /**
+     * Returns the state of {@link #isAdaptiveReadingTileDimEnabled() adaptive choosing} the reading tile
+     * dimension: the candidates, their measured speed and the chosen dimension.
+     * If the adaptive mode was never enabled, returns the only candidate {@link #readingTileDim()}.
+     *
+     * @return the current state of choosing the reading tile dimension.
+     */
+    public final ReadingTileTuning getReadingTileTuning() {
+        final ReadingTileTuner tuner = readingTileTunerContainer.get();
+        return tuner == null ? ReadingTileTuning.notTuned(readingTileDim()) : tuner.tuning();
+    }
+
+    public final boolean isDiskTileCachingEnabled() {
+        return diskTileCachingDirectory != null;
+    }
+
+    /**
+     * Enables the persistent second-level tile cache in the given directory.
+     * It is used only when {@link #isTileCachingEnabled() tile caching} is enabled: every tile,
+     * which is absent in the usual (memory) cache, is first searched in the disk cache, and only
+     * if it is absent there, it is read by {@link #readLittleSubMatrix readLittleSubMatrix} and saved
+     * in the disk cache. It makes sense if <tt>readLittleSubMatrix</tt> is slow, for example,
+     * decodes JPEG&nbsp;2000 or reads data from a remote server.
+     *
+     * <p>The disk cache is opened while the first usage, and the tiles, saved there earlier
+     * (maybe in previous runs of the application), become available immediately. But if the cache
+     * was created for a source with another {@link #contentFingerprint() content fingerprint},
+     * all its tiles are removed. {@link #freeResources()} method closes the disk cache.
+     * The directory must not be used by other sources; if it is locked by another source
+     * (maybe in another JVM), disk caching does nothing.
+     *
+     * <p>The total size of tiles in the directory is limited by <tt>maxDiskMemory</tt>;
+     * the oldest tiles are removed when this limit is exceeded.
+     *
+     * @param directory         the directory for cache files.
+     * @param maxDiskMemory     maximal total size of cached tiles in bytes.
+     * @param sourceFingerprint the string, identifying the content of this source;
+     *                          may be <tt>null</tt>, then {@link #contentFingerprint()} is used.
+     */
+    public final void enableDiskTileCaching(File directory, long maxDiskMemory, String sourceFingerprint) {
+        if (directory == null) {
+            throw new NullPointerException("Null directory");
+        }
+        if (maxDiskMemory < 0) {
+            throw new IllegalArgumentException("Negative maxDiskMemory");
+        }
+        closeDiskTileCache();
+        this.diskTileCachingDirectory = directory;
+        this.diskTileCachingMemory = maxDiskMemory;
+        this.diskTileCachingFingerprint = sourceFingerprint;
+    }
+
+    /**
+     * Equivalent to {@link #enableDiskTileCaching(File, long, String)
+     * enableDiskTileCaching(directory, maxDiskMemory, null)}, where <tt>maxDiskMemory</tt> is retrieved
+     * from the system property "<tt>net.algart.simagis.pyramid.diskTileCachingMemory</tt>"
+     * (4&nbsp;GB by default).
+     *
+     * @param directory the directory for cache files.
+     */
+    public final void enableDiskTileCaching(File directory) {
+        enableDiskTileCaching(directory, DISK_TILE_CACHING_MEMORY, null);
+    }
+
+    public final void disableDiskTileCaching() {
+        closeDiskTileCache();
+        this.diskTileCachingDirectory = null;
+    }
+
     public final RotatingPlanePyramidSource.RotationMode getLabelRotation() {
         return labelRotation;
     }
@@ -450,19 +1110,71 @@ public abstract class AbstractPlanePyramidSource
     }
 
     /**
-     * This implementation frees the tile cache.
+     * This implementation frees the tile cache. If this source uses the global tile cache,
+     * it removes from there only the tiles of this source. The disk tile cache, if it is used, is closed.
      *
      * <p>If your implementation overrides this method, it must call <tt>super.freeResources()</tt>.
      */
     protected void freeResources() {
-        synchronized (tileCacheContainer) {
-            if (tileCacheContainer.get() != null) {
-                if (DEBUG_LEVEL >= 1) {
-                    System.out.println(AbstractPlanePyramidSource.class.getSimpleName() + " is freeing tile cache");
-                }
-                tileCacheContainer.set(null);
-            }
+        final TilePrefetcher tilePrefetcher = tilePrefetcherContainer.get();
+        if (tilePrefetcher != null) {
+            tilePrefetcher.cancel();
         }
+        final TileCacheWarmer tileCacheWarmer = tileCacheWarmerContainer.getAndSet(null);
+        if (tileCacheWarmer != null) {
+            tileCacheWarmer.cancel();
+        }
+        freeTileCache();
+        closeDiskTileCache();
+        TileCache.removeFromGlobal(tileCacheContainer);
+    }
+
+    /**
+     * Returns a string, identifying the content of this source, for validation of the
+     * {@link #enableDiskTileCaching(File, long, String) disk tile cache}.
+     *
+     * <p>This implementation calculates SHA-256 hash of the class name, number of bands,
+     * dimensions of all levels and the data of the central area (up to 256x256) of the last level.
+     * Implementations, based on files, can override this method and return something cheaper,
+     * for example, the file name together with its length and last modification time.
+     *
+     * @return the fingerprint of the content of this source.
+     */
+    protected String contentFingerprint() {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-256 must be supported by all Java platforms", e);
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(8);
+        final StringBuilder sb = new StringBuilder(getClass().getName()).append(' ').append(bandCount());
+        final int numberOfResolutions = numberOfResolutions();
+        for (int level = 0; level < numberOfResolutions; level++) {
+            final long[] dimensions = dimensions(level);
+            sb.append(' ').append(dimensions[1]).append('x').append(dimensions[2]);
+        }
+        digest.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+        final int lastLevel = numberOfResolutions - 1;
+        final long[] lastDimensions = dimensions(lastLevel);
+        final long dimX = lastDimensions[1];
+        final long dimY = lastDimensions[2];
+        final long sizeX = Math.min(dimX, 256);
+        final long sizeY = Math.min(dimY, 256);
+        final long fromX = (dimX - sizeX) / 2;
+        final long fromY = (dimY - sizeY) / 2;
+        final PArray data = callAndCheckReadLittleSubMatrix(lastLevel, fromX, fromY, fromX + sizeX, fromY + sizeY)
+            .array();
+        for (long k = 0, n = data.length(); k < n; k++) {
+            buffer.clear();
+            buffer.putLong(Double.doubleToLongBits(data.getDouble(k)));
+            digest.update(buffer.array());
+        }
+        final StringBuilder result = new StringBuilder();
+        for (byte b : digest.digest()) {
+            result.append(String.format("%02x", b & 0xFF));
+        }
+        return result.toString();
     }
 
     /**
@@ -479,6 +1191,8 @@ public abstract class AbstractPlanePyramidSource
      * <p>The result must be positive.
      *
      * <p>The result must be stable (constant) for the given instance.
+     * In the {@link #isAdaptiveReadingTileDimEnabled() adaptive mode}, it is only the basis for choosing
+     * the really used dimension.
      *
      * <p>This method must work quickly.
      *
@@ -628,12 +1342,96 @@ public abstract class AbstractPlanePyramidSource
         }
     }
 
+    // Splits the area into parts, each of which lies inside one tile
+    private List<TilePart> splitIntoTileParts(
+        long[] dimensions, int readingTileDim, long fromX, long fromY, long toX, long toY)
+    {
+        final List<TilePart> result = new ArrayList<TilePart>();
+        final long bandCount = dimensions[0];
+        long partsElements = 0;
+        final TileDirection cacheDirection = tileCacheDirection;
+        final TileDirection direction = cacheDirection != null ? cacheDirection : TileDirection.RIGHT_DOWN;
+        final long dimX = dimensions[1];
+        final long dimY = dimensions[2];
+        IRectangularArea leftTile; // - the left tile in each row
+        for (long y = fromY; y < toY; y = leftTile.max(1) + 1) {
+            leftTile = direction.findTile(readingTileDim, dimX, dimY, fromX, y);
+            IRectangularArea tile;
+            for (long x = fromX; x < toX; x = tile.max(0) + 1) {
+                tile = direction.findTile(readingTileDim, dimX, dimY, x, y);
+                final long tileFromX = Math.max(tile.min(0), fromX);
+                final long tileFromY = Math.max(tile.min(1), fromY);
+                final long tileToX = Math.min(tile.max(0) + 1, toX);
+                final long tileToY = Math.min(tile.max(1) + 1, toY);
+                assert tileFromX <= tileToX;
+                assert tileFromY <= tileToY;
+                final TilePart part = new TilePart(tile, tileFromX, tileFromY, tileToX, tileToY,
+                    partsElements, bandCount * (tileToX - tileFromX) * (tileToY - tileFromY));
+                partsElements += part.numberOfElements;
+                result.add(part);
+            }
+        }
+        return result;
+    }
+
+    private void readTilePart(int resolutionLevel, TilePart part, TiledResult result) {
+        part.subTask(this, result).useSubMatrixViaTileCache(
+            resolutionLevel,
+            part.fromX, part.fromY, part.toX, part.toY,
+            part.tile,
+            (m, offHeap, uniformPixel) -> {
+                result.copyTile(m, uniformPixel, part.fromX, part.fromY, part.toX, part.toY);
+                return null;
+            });
+    }
+
+    private void readTileGroup(int resolutionLevel, TileGroup group) {
+        useSubMatrixViaTileCache(
+            resolutionLevel,
+            group.fromX, group.fromY, group.toX, group.toY,
+            group.tile,
+            (m, offHeap, uniformPixel) -> {
+                for (int k = 0, n = group.parts.size(); k < n; k++) {
+                    final TilePart part = group.parts.get(k);
+                    group.results.get(k).copyTile(m.subMatrix(
+                            0, part.fromX - group.fromX, part.fromY - group.fromY,
+                            m.dim(0), part.toX - group.fromX, part.toY - group.fromY),
+                        uniformPixel, part.fromX, part.fromY, part.toX, part.toY);
+                }
+                return null;
+            });
+    }
+
+    // Performs the reader for all parts, maybe in parallel; the parts must be independent.
+    // The current cancellation token is checked before every part; the current priority is used in all threads.
+    private <P> void readAll(List<P> parts, Consumer<P> reader) {
+        final int parallelism = Math.min(tileReadingParallelism, parts.size());
+        ParallelProcessing.processAll(parts.size(), k -> reader.accept(parts.get(k)),
+            parallelism, tileReadingExecutor);
+        if (parallelism > 1 && DEBUG_LEVEL >= 3) {
+            System.out.println(AbstractPlanePyramidSource.class.getSimpleName()
+                + " read " + parts.size() + " tiles in " + parallelism + " threads");
+        }
+    }
+
     private Matrix<? extends PArray> readSubMatrixViaTileCache(
         int resolutionLevel, long fromX, long fromY, long toX, long toY, IRectangularArea containingTile)
         throws NoSuchElementException, NotYetConnectedException
+    {
+        return useSubMatrixViaTileCache(resolutionLevel, fromX, fromY, toX, toY, containingTile,
+            (m, offHeap, uniformPixel) -> offHeap ? m.matrix(m.array().updatableClone(Arrays.SMM)) : m);
+        // - off-heap tile may be released after returning from this method
+    }
+
+    private <T> T useSubMatrixViaTileCache(
+        int resolutionLevel, long fromX, long fromY, long toX, long toY, IRectangularArea containingTile,
+        TileCache.TileAction<T> action)
+        throws NoSuchElementException, NotYetConnectedException
     {
         if (fromX == toX || fromY == toY || !isTileCachingEnabled()) {
-            return callAndCheckReadLittleSubMatrix(resolutionLevel, fromX, fromY, toX, toY);
+            final Matrix<? extends PArray> m = callAndCheckReadLittleSubMatrix(resolutionLevel, fromX, fromY, toX, toY);
+            return action.apply(m, false, PlanePyramidTools.findUniformPixel(m));
+            // - without caching, every tile is checked once after loading, like while storing in the cache
         }
         assert tileCacheDirection != null; // because isTileCachingEnabled()
         if (containingTile == null) {
@@ -648,50 +1446,309 @@ public abstract class AbstractPlanePyramidSource
                 + "the containing tile " + containingTile + " does not contain the required area "
                 + fromX + ".." + (toX - 1) + " x " + fromY + ".." + (toY - 1) + " or this area is negative");
         }
-        Matrix<? extends PArray> tileData;
-        synchronized (tileCacheContainer) {
-            if (tileCacheContainer.get() == null) {
-                tileCacheContainer.set(new TileCache(readingTileDim(), tileCachingMemory));
-            }
-            tileData = tileCacheContainer.get().getTile(resolutionLevel, containingTile);
-            if (tileData == null) {
-                tileData = callAndCheckReadLittleSubMatrix(
-                    resolutionLevel,
-                    containingTile.min(0),
-                    containingTile.min(1),
-                    containingTile.max(0) + 1,
-                    containingTile.max(1) + 1);
-                if (!(SimpleMemoryModel.isSimpleArray(tileData.array()) || Arrays.isNCopies(tileData.array()))) {
-                    tileData = tileData.matrix(tileData.array().updatableClone(Arrays.SMM));
+        final boolean global = globalTileCaching;
+        return (global ? TileCache.global() : tileCache()).useTile(
+            new TileCacheIndex(global ? tileCacheContainer : null, resolutionLevel, containingTile),
+            tileLoader(resolutionLevel, containingTile),
+            subMatrixAction(fromX, fromY, toX, toY, containingTile, action));
+        // - readLittleSubMatrix is called outside any lock; concurrent misses of the same tile
+        // are merged into a single call
+    }
+
+    private <T> CompletableFuture<T> useSubMatrixViaTileCacheAsync(
+        int resolutionLevel, long fromX, long fromY, long toX, long toY, IRectangularArea containingTile,
+        TileCache.TileAction<T> action, Executor executor)
+    {
+        final boolean global = globalTileCaching;
+        return (global ? TileCache.global() : tileCache()).useTileAsync(
+            new TileCacheIndex(global ? tileCacheContainer : null, resolutionLevel, containingTile),
+            tileLoader(resolutionLevel, containingTile),
+            subMatrixAction(fromX, fromY, toX, toY, containingTile, action),
+            executor);
+    }
+
+    private static <T> TileCache.TileAction<T> subMatrixAction(
+        long fromX, long fromY, long toX, long toY, IRectangularArea containingTile,
+        TileCache.TileAction<T> action)
+    {
+        return (tileData, offHeap, uniformPixel) -> action.apply(tileData.subMatrix(
+            0, fromX - containingTile.min(0), fromY - containingTile.min(1),
+            tileData.dim(0), toX - containingTile.min(0), toY - containingTile.min(1)), offHeap, uniformPixel);
+    }
+
+    private Supplier<TileCache.LoadedTile> tileLoader(int resolutionLevel, IRectangularArea tile) {
+        return () -> {
+            final DiskTileCache diskTileCache = diskTileCache();
+            final TileCache.LoadedTile stored = diskTileCache == null ? null :
+                diskTileCache.getTile(resolutionLevel, tile);
+            if (stored != null) {
+                return stored;
+            }
+            Matrix<? extends PArray> m = callAndCheckReadLittleSubMatrix(
+                resolutionLevel,
+                tile.min(0),
+                tile.min(1),
+                tile.max(0) + 1,
+                tile.max(1) + 1);
+            final double[] uniformPixel = PlanePyramidTools.findUniformPixel(m);
+            if (uniformPixel != null) {
+                m = PlanePyramidTools.asUniform(m.elementType(), uniformPixel, m.dim(1), m.dim(2));
+            } else if (!SimpleMemoryModel.isSimpleArray(m.array())) {
+                m = m.matrix(m.array().updatableClone(Arrays.SMM));
+            }
+            // - uniform tiles (for example, empty areas of the slide) occupy almost no memory,
+            // even if their bands differ; in off-heap mode, the tile cache will copy other tiles into a direct buffer
+            final TileCache.LoadedTile loaded = new TileCache.LoadedTile(m, uniformPixel);
+            if (diskTileCache != null) {
+                diskTileCache.putTile(resolutionLevel, tile, loaded);
+            }
+            return loaded;
+        };
+    }
+
+    private void prefetchTile(int resolutionLevel, IRectangularArea tile) {
+        final TileDirection cacheDirection = tileCacheDirection;
+        if (cacheDirection == null || !isCurrentGridTile(resolutionLevel, tile, cacheDirection)) {
+            return;
+        }
+        final boolean global = globalTileCaching;
+        (global ? TileCache.global() : tileCache()).prefetch(
+            new TileCacheIndex(global ? tileCacheContainer : null, resolutionLevel, tile),
+            tileLoader(resolutionLevel, tile),
+            TILE_PREFETCHING_BUDGET,
+            tilePrefetcher());
+    }
+
+    // Returns false if there is no free memory in the cache for the tile
+    private boolean warmUpTile(int resolutionLevel, IRectangularArea tile) {
+        final TileDirection cacheDirection = tileCacheDirection;
+        if (cacheDirection == null) {
+            return false;
+        }
+        if (resolutionLevel >= numberOfResolutions() || !isResolutionLevelAvailable(resolutionLevel)) {
+            return true;
+        }
+        final long[] dimensions = dimensions(resolutionLevel);
+        if (tile.max(0) >= dimensions[1] || tile.max(1) >= dimensions[2]) {
+            return true;
+            // - the manifest was created for another source
+        }
+        if (!isCurrentGridTile(resolutionLevel, tile, cacheDirection)) {
+            return true;
+            // - the manifest was created for another tile grid: such tile would never be requested
+        }
+        final boolean global = globalTileCaching;
+        final TileCache tileCache = global ? TileCache.global() : tileCache();
+        final long averageTileWeight = tileCache.averageTileWeight();
+        final long expectedWeight = averageTileWeight > 0 ?
+            averageTileWeight :
+            Arrays.longMul(dimensions[0], tile.size(0), tile.size(1));
+        if (tileCache.freeMemory() < expectedWeight) {
+            return false;
+        }
+        try (ReadingPriority.Scope scope = ReadingPriority.BATCH.enter()) {
+            tileCache.prefetch(
+                new TileCacheIndex(global ? tileCacheContainer : null, resolutionLevel, tile),
+                tileLoader(resolutionLevel, tile),
+                WARM_START_BUDGET,
+                tilePrefetcher());
+        }
+        return true;
+    }
+
+    private TilePrefetcher tilePrefetcher() {
+        final TilePrefetcher tilePrefetcher = tilePrefetcherContainer.get();
+        if (tilePrefetcher != null) {
+            return tilePrefetcher;
+        }
+        tilePrefetcherContainer.compareAndSet(null, new TilePrefetcher(this::prefetchTile));
+        return tilePrefetcherContainer.get();
+    }
+
+    // Returns the tile dimension for the request, starting at (x, y); in the adaptive mode, while the warm-up,
+    // also starts probing the next candidate dimension near this point in background
+    private int nextReadingTileDim(int resolutionLevel, long[] dimensions, long x, long y) {
+        if (adaptiveReadingTileDim) {
+            probeReadingTileDim(resolutionLevel, dimensions, x, y);
+        }
+        return currentReadingTileDim();
+    }
+
+    // Reads one tile of the next candidate dimension directly, bypassing the tile caches (so that they
+    // contain only tiles of one grid), and measures this reading; it is performed in background,
+    // not more than one probe at a time
+    private void probeReadingTileDim(int resolutionLevel, long[] dimensions, long x, long y) {
+        final ReadingTileTuner tuner = readingTileTuner();
+        if (tuner.chosenDim() != 0 || dimensions[1] == 0 || dimensions[2] == 0) {
+            return;
+        }
+        tuner.startProbe(() -> {
+            final int probeDim = tuner.nextProbeDim();
+            final long fromX = Math.max(0, Math.min(x, dimensions[1] - probeDim));
+            final long fromY = Math.max(0, Math.min(y, dimensions[2] - probeDim));
+            final long toX = Math.min(fromX + probeDim, dimensions[1]);
+            final long toY = Math.min(fromY + probeDim, dimensions[2]);
+            final long[] readingTime = new long[1];
+            final Matrix<? extends PArray> m = callAndCheckReadLittleSubMatrix(
+                resolutionLevel, fromX, fromY, toX, toY, readingTime);
+            if (tuner.record(probeDim, Matrices.sizeOf(m), readingTime[0])
+                && tuner.chosenDim() != readingTileDim())
+            {
+                switchTileCacheGrid();
+            }
+        });
+    }
+
+    // Called once, when the adaptive mode has chosen another tile dimension than readingTileDim():
+    // the cached tiles of the previous grid will never be requested again
+    private void switchTileCacheGrid() {
+        final TileCache tileCache = tileCacheContainer.get();
+        if (tileCache != null) {
+            tileCache.clear();
+        }
+        TileCache.removeFromGlobal(tileCacheContainer);
+        // - the tiles of the previous grid, remaining in the disk tile cache, are not requested more
+        // and will be evicted together with their segments
+    }
+
+    // Returns true if the tile belongs to the current grid of cached tiles; tiles of the previous grid
+    // may still be scheduled by the prefetcher or listed in a warm-start manifest
+    private boolean isCurrentGridTile(int resolutionLevel, IRectangularArea tile, TileDirection direction) {
+        final long[] dimensions = dimensions(resolutionLevel);
+        return tile.min(0) < dimensions[1] && tile.min(1) < dimensions[2]
+            && direction.findTile(currentReadingTileDim(), dimensions[1], dimensions[2], tile.min(0), tile.min(1))
+            .equals(tile);
+    }
+
+    // Returns the chosen tile dimension in the adaptive mode (or the basic one while the warm-up)
+    private int currentReadingTileDim() {
+        if (adaptiveReadingTileDim) {
+            final int chosenDim = readingTileTuner().chosenDim();
+            if (chosenDim != 0) {
+                return chosenDim;
+            }
+        }
+        return readingTileDim();
+    }
+
+    private ReadingTileTuner readingTileTuner() {
+        final ReadingTileTuner tuner = readingTileTunerContainer.get();
+        if (tuner != null) {
+            return tuner;
+        }
+        readingTileTunerContainer.compareAndSet(null, new ReadingTileTuner(readingTileDim()));
+        return readingTileTunerContainer.get();
+    }
+
+    private TileCache tileCache() {
+        for (; ; ) {
+            final TileCache tileCache = tileCacheContainer.get();
+            if (tileCache != null) {
+                return tileCache;
+            }
+            final TileCache newTileCache = new TileCache(readingTileDim(), tileCachingMemory, offHeapTileCaching,
+                compressedTileCachingFraction);
+            if (tileCacheContainer.compareAndSet(null, newTileCache) && TILE_CACHE_JMX) {
+                newTileCache.registerMBean(getClass().getName() + "@"
+                    + Integer.toHexString(System.identityHashCode(tileCacheContainer)));
+            }
+            // - if another thread has already created the cache, we just use it at the next iteration
+        }
+    }
+
+    private DiskTileCache diskTileCache() {
+        final File directory = diskTileCachingDirectory;
+        if (directory == null) {
+            return null;
+        }
+        DiskTileCache result = diskTileCacheContainer.get();
+        if (result == null) {
+            synchronized (diskTileCacheContainer) {
+                result = diskTileCacheContainer.get();
+                if (result == null) {
+                    final String fingerprint = diskTileCachingFingerprint;
+                    try {
+                        result = DiskTileCache.open(directory, diskTileCachingMemory,
+                            fingerprint != null ? fingerprint : contentFingerprint());
+                    } catch (IOException e) {
+                        throw new IOError(e);
+                    }
+                    diskTileCacheContainer.set(result);
                 }
-                tileCacheContainer.get().putTile(resolutionLevel, containingTile, tileData);
             }
         }
-        return tileData.subMatrix(
-            0, fromX - containingTile.min(0), fromY - containingTile.min(1),
-            tileData.dim(0), toX - containingTile.min(0), toY - containingTile.min(1));
+        return result;
+    }
+
+    private void closeDiskTileCache() {
+        synchronized (diskTileCacheContainer) {
+            final DiskTileCache diskTileCache = diskTileCacheContainer.getAndSet(null);
+            if (diskTileCache != null) {
+                diskTileCache.close();
+            }
+        }
+    }
+
+    private void freeTileCache() {
+        final TileCache tileCache = tileCacheContainer.getAndSet(null);
+        if (tileCache != null) {
+            if (DEBUG_LEVEL >= 1) {
+                System.out.println(AbstractPlanePyramidSource.class.getSimpleName() + " is freeing tile cache");
+            }
+            tileCache.clear();
+            // - important for off-heap cache: returns its memory to the system without waiting for GC
+            tileCache.unregisterMBean();
+        }
+    }
+
+    private static double getFractionProperty(String propertyName, double defaultValue) {
+        try {
+            final double result = Double.parseDouble(System.getProperty(propertyName, String.valueOf(defaultValue)));
+            return result >= 0.0 && result < 1.0 ? result : defaultValue;
+        } catch (Exception e) {
+            return defaultValue;
+        }
     }
 
     private Matrix<? extends PArray> callAndCheckReadLittleSubMatrix(
         int resolutionLevel, long fromX, long fromY, long toX, long toY)
         throws NoSuchElementException, NotYetConnectedException
     {
-        long t1 = System.nanoTime();
-        final Matrix<? extends PArray> m = readLittleSubMatrix(resolutionLevel, fromX, fromY, toX, toY);
-        long t2 = System.nanoTime();
+        return callAndCheckReadLittleSubMatrix(resolutionLevel, fromX, fromY, toX, toY, null);
+    }
+
+    // If readingTime != null, readingTime[0] is set to the time of readLittleSubMatrix call (nanoseconds)
+    private Matrix<? extends PArray> callAndCheckReadLittleSubMatrix(
+        int resolutionLevel, long fromX, long fromY, long toX, long toY, long[] readingTime)
+        throws NoSuchElementException, NotYetConnectedException
+    {
+        final ReadingScheduler scheduler = readingScheduler;
+        final Matrix<? extends PArray> m;
+        long t1, t2;
+        try (ReadingScheduler.Permit permit = scheduler == null ? null :
+            scheduler.acquire(ReadingPriority.current()))
+        {
+            t1 = System.nanoTime();
+            m = readLittleSubMatrix(resolutionLevel, fromX, fromY, toX, toY);
+            t2 = System.nanoTime();
+        }
         if (m.dim(0) != bandCount() || m.dim(1) != toX - fromX || m.dim(2) != toY - fromY) {
             throw new AssertionError("Illegal implementation of readLittleSubMatrix: "
                 + "incorrect dimensions of the result " + m.dim(0) + "x" + m.dim(1) + "x" + m.dim(2)
                 + " instead of " + bandCount() + "x" + (toX - fromX) + "x" + (toY - fromY));
         }
-        final String averageSpeed = speedInfo.update(Matrices.sizeOf(m), t2 - t1);
+        latencyRecorder.record(LatencyRecorder.Operation.READ, resolutionLevel, Matrices.sizeOf(m), t2 - t1);
+        if (readingTime != null) {
+            readingTime[0] = t2 - t1;
+        }
         if (DEBUG_LEVEL >= 2) {
             System.out.printf(Locale.US,
                 "%s has read (level %d): "
-                    + "%d..%d x %d..%d (%d x %d) in %.5f ms, %.3f MB/sec, average %s (reader: %s)%n",
+                    + "%d..%d x %d..%d (%d x %d) in %.5f ms, %.3f MB/sec, total %s (reader: %s)%n",
                 AbstractPlanePyramidSource.class.getSimpleName(),
                 resolutionLevel, fromX, toX, fromY, toY, toX - fromX, toY - fromY,
-                (t2 - t1) * 1e-6, Matrices.sizeOf(m) / 1048576.0 / ((t2 - t1) * 1e-9), averageSpeed,
+                (t2 - t1) * 1e-6, Matrices.sizeOf(m) / 1048576.0 / ((t2 - t1) * 1e-9),
+                latencyRecorder.stats(LatencyRecorder.Operation.READ, resolutionLevel),
                 super.getClass().getSimpleName()
             );
         }
@@ -832,36 +1889,6 @@ public abstract class AbstractPlanePyramidSource
         }
     }
 
-    private static final class TileCacheIndex {
-        final int resolutionLevel;
-        final IRectangularArea tile;
-
-        private TileCacheIndex(int resolutionLevel, IRectangularArea tile) {
-            assert tile != null;
-            this.resolutionLevel = resolutionLevel;
-            this.tile = tile;
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) {
-                return true;
-            }
-            if (!(o instanceof TileCacheIndex)) {
-                return false;
-            }
-            TileCacheIndex that = (TileCacheIndex) o;
-            return resolutionLevel == that.resolutionLevel && tile.equals(that.tile);
-        }
-
-        @Override
-        public int hashCode() {
-            int result = resolutionLevel;
-            result = 31 * result + tile.hashCode();
-            return result;
-        }
-    }
-
     private class MapOrLabelParallelReader implements Runnable {
         final SpecialImageKind kind;
 
@@ -910,88 +1937,180 @@ public abstract class AbstractPlanePyramidSource
         }
     }
 
-    private static class TileCache {
-        final int tileDim;
-        final long tileCachingMemory;
-        final TileCacheHashMap tileCacheHashMap;
-
-        private TileCache(int tileDim, long tileCachingMemory) {
-            this.tileDim = tileDim;
-            this.tileCachingMemory = tileCachingMemory;
-            this.tileCacheHashMap = new TileCacheHashMap();
-            if (DEBUG_LEVEL >= 1) {
-                System.out.printf(Locale.US, AbstractPlanePyramidSource.class.getSimpleName()
-                        + " is creating tile cache for tiles %dx%d, memory limit %.2f MB%n",
-                    tileDim, tileDim, tileCachingMemory / 1048576.0
-                );
+    private final class TiledResult {
+        private final ArrayContext context;
+        private final int bandCount;
+        private final long fromX;
+        private final long fromY;
+        private final long toX;
+        private final long toY;
+        private final long totalElements;
+        Matrix<? extends UpdatablePArray> result = null;
+        // - allocated while processing the first tile, which differs from the previous ones
+        MatrixBufferPool pool = null;
+        PooledMatrix<UpdatablePArray> pooled = null;
+        // - if pool != null, the result is borrowed from it when possible
+        double[] uniformPixel = null;
+        Class<?> uniformElementType = null;
+        // - while result == null: the common pixel of all previous tiles (they all are uniform)
+        long readyElements = 0;
 
-            }
+        private TiledResult(ArrayContext context, long fromX, long fromY, long toX, long toY, long totalElements) {
+            this.context = context;
+            this.bandCount = bandCount();
+            this.fromX = fromX;
+            this.fromY = fromY;
+            this.toX = toX;
+            this.toY = toY;
+            this.totalElements = totalElements;
         }
 
-        Matrix<? extends PArray> getTile(int resolutionLevel, IRectangularArea tile) {
-            Matrix<? extends PArray> result = tileCacheHashMap.get(new TileCacheIndex(resolutionLevel, tile));
-            if (DEBUG_LEVEL >= 2) {
-                System.out.printf("  " + AbstractPlanePyramidSource.class.getSimpleName()
-                        + " has " + (result != null ? "loaded data from the cache" : "NOT FOUND data in the cache")
-                        + " (level %d): %s%n",
-                    resolutionLevel, tile
-                );
-            }
-            return result;
+        Matrix<? extends PArray> result() {
+            return result != null ? result :
+                PlanePyramidTools.asUniform(uniformElementType, uniformPixel, toX - fromX, toY - fromY);
         }
 
-        void putTile(int resolutionLevel, IRectangularArea tile, Matrix<? extends PArray> matrix) {
-            Matrix<? extends PArray> prev = tileCacheHashMap.put(new TileCacheIndex(resolutionLevel, tile), matrix);
-            if (prev == null && DEBUG_LEVEL >= 3) {
-                System.out.printf(AbstractPlanePyramidSource.class.getSimpleName()
-                        + " has stored data in the cache (level %d): %s%n",
-                    resolutionLevel, tile
-                );
-            }
+        PooledMatrix<? extends PArray> pooledResult() {
+            return pooled != null ? pooled : PooledMatrix.unpooled(result());
         }
 
-        private class TileCacheHashMap extends LinkedHashMap<TileCacheIndex, Matrix<? extends PArray>> {
-            private TileCacheHashMap() {
-                super(16, 0.75f, true);
+        // This method may be called from several threads for different (disjoint) tiles;
+        // pixel is the uniform pixel of the tile or null if the tile is not uniform
+        void copyTile(
+            Matrix<? extends PArray> m, double[] pixel,
+            long tileFromX, long tileFromY, long tileToX, long tileToY)
+        {
+            if (m.dim(0) != bandCount || m.dim(1) != tileToX - tileFromX || m.dim(2) != tileToY - tileFromY) {
+                throw new AssertionError("Internal bug in readSubMatrixViaCache: "
+                    + "incorrect dimensions of the result " + m.dim(0) + "x" + m.dim(1) + "x" + m.dim(2)
+                    + " instead of " + bandCount + "x" + (tileToX - tileFromX) + "x" + (tileToY - tileFromY));
             }
-
-            @Override
-            protected boolean removeEldestEntry(Map.Entry<TileCacheIndex, Matrix<? extends PArray>> eldest) {
-                boolean result = usedMemory() > tileCachingMemory;
-                if (result && DEBUG_LEVEL >= 2) {
-                    System.out.printf(AbstractPlanePyramidSource.class.getSimpleName()
-                        + " will remove the eldest entry from the cache%n");
+            final Matrix<? extends UpdatablePArray> subMatrix;
+            final boolean parallelWritingAllowed;
+            synchronized (this) {
+                if (result == null && pixel != null
+                    && (uniformElementType == null || java.util.Arrays.equals(pixel, uniformPixel)))
+                {
+                    // - all tiles are still the same constant: the result will be a lazy constant matrix
+                    uniformPixel = pixel;
+                    uniformElementType = m.elementType();
+                    subMatrix = null;
+                } else {
+                    subMatrix = resultPart(m.elementType(), tileFromX, tileFromY, tileToX, tileToY);
+                }
+                parallelWritingAllowed = result != null
+                    && SimpleMemoryModel.isSimpleArray(result.array()) && !(result.array() instanceof BitArray);
+                // - Java arrays allow to write disjoint elements from several threads,
+                // but packed bits and other memory models do not
+            }
+            if (subMatrix != null) {
+                if (parallelWritingAllowed) {
+                    copyOrFill(subMatrix, m, pixel);
+                } else {
+                    synchronized (this) {
+                        copyOrFill(subMatrix, m, pixel);
+                    }
+                }
+            }
+            synchronized (this) {
+                readyElements += m.size();
+                if (context != null) {
+                    context.checkInterruptionAndUpdateProgress(m.elementType(), readyElements, totalElements);
                 }
-                return result;
             }
+        }
 
-            private double usedMemory() {
-                double sum = 0.0;
-                for (Matrix<? extends PArray> m : values()) {
-                    sum += Matrices.sizeOf(m);
+        private Matrix<? extends UpdatablePArray> resultPart(
+            Class<?> elementType,
+            long tileFromX, long tileFromY, long tileToX, long tileToY)
+        {
+            if (result == null) {
+                MemoryModel mm = context == null || Arrays.sizeOf(elementType, totalElements) <=
+                    Arrays.SystemSettings.maxTempJavaMemory() ? Arrays.SMM : context.getMemoryModel();
+                if (pool != null && mm == Arrays.SMM) {
+                    pooled = pool.borrow(elementType, bandCount, toX - fromX, toY - fromY);
+                    result = pooled.matrix();
+                } else {
+                    result = mm.newMatrix(UpdatablePArray.class, elementType, bandCount, toX - fromX, toY - fromY);
+                }
+                if (!SimpleMemoryModel.isSimpleArray(result.array())) {
+                    result = result.tile(bandCount, DEFAULT_TILE_DIM, DEFAULT_TILE_DIM);
+                }
+                if (uniformPixel != null) {
+                    PlanePyramidTools.fillMatrixByPixel(result, uniformPixel);
+                    // - the previous tiles
+                }
+                if (DEBUG_LEVEL >= 3) {
+                    System.out.println(AbstractPlanePyramidSource.class.getSimpleName()
+                        + " created result " + result);
                 }
-                return sum;
+            }
+            return result.subMatrix(
+                0, tileFromX - fromX, tileFromY - fromY, bandCount, tileToX - fromX, tileToY - fromY);
+        }
+
+        private void copyOrFill(
+            Matrix<? extends UpdatablePArray> subMatrix, Matrix<? extends PArray> m, double[] pixel)
+        {
+            if (pixel != null) {
+                PlanePyramidTools.fillMatrixByPixel(subMatrix, pixel);
+            } else {
+                subMatrix.array().copy(m.array());
             }
         }
     }
 
-    private static class SpeedInfo {
-        double totalMemory = 0.0;
-        double elapsedTime = 0.0;
+    private static final class TilePart {
+        final IRectangularArea tile;
+        final long fromX;
+        final long fromY;
+        final long toX;
+        final long toY;
+        final long elementsBefore;
+        final long numberOfElements;
+
+        private TilePart(
+            IRectangularArea tile, long fromX, long fromY, long toX, long toY,
+            long elementsBefore, long numberOfElements)
+        {
+            this.tile = tile;
+            this.fromX = fromX;
+            this.fromY = fromY;
+            this.toX = toX;
+            this.toY = toY;
+            this.elementsBefore = elementsBefore;
+            this.numberOfElements = numberOfElements;
+        }
 
-        public String update(long memory, long time) {
-            final String result;
-            synchronized (this) {
-                totalMemory += memory;
-                elapsedTime += time;
-                final long t = System.currentTimeMillis();
-                result = String.format(Locale.US,
-                    "%.1f MB / %.3f sec = %.3f MB/sec",
-                    totalMemory / 1048576.0,
-                    elapsedTime * 1e-9,
-                    totalMemory / 1048576.0 / (elapsedTime * 1e-9));
-            }
-            return result;
+        // Note: parts of the context are calculated beforehand, so they do not depend on the order of reading
+        AbstractPlanePyramidSource subTask(AbstractPlanePyramidSource source, TiledResult result) {
+            return result.context == null ? source :
+                (AbstractPlanePyramidSource) source.context(result.context.part(
+                    elementsBefore, elementsBefore + numberOfElements, result.totalElements));
+        }
+    }
+
+    // Parts of several areas, lying in the same tile
+    private static final class TileGroup {
+        final IRectangularArea tile;
+        final List<TilePart> parts = new ArrayList<TilePart>();
+        final List<TiledResult> results = new ArrayList<TiledResult>();
+        long fromX = Long.MAX_VALUE;
+        long fromY = Long.MAX_VALUE;
+        long toX = Long.MIN_VALUE;
+        long toY = Long.MIN_VALUE;
+
+        private TileGroup(IRectangularArea tile) {
+            this.tile = tile;
+        }
+
+        void add(TilePart part, TiledResult result) {
+            parts.add(part);
+            results.add(result);
+            fromX = Math.min(fromX, part.fromX);
+            fromY = Math.min(fromY, part.fromY);
+            toX = Math.max(toX, part.toX);
+            toY = Math.max(toY, part.toY);
         }
     }
 }
@@ -32,6 +32,8 @@ import net.algart.math.IRectangularArea;
 import java.nio.channels.NotYetConnectedException;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public abstract class AbstractPlanePyramidSourceWrapper implements PlanePyramidSource {
     protected abstract PlanePyramidSource parent();
@@ -93,6 +95,33 @@ public abstract class AbstractPlanePyramidSourceWrapper implements PlanePyramidS
         return parent().readSubMatrix(resolutionLevel, fromX, fromY, toX, toY);
     }
 
+    @Override
+    public PooledMatrix<? extends PArray> readPooledSubMatrix(
+        int resolutionLevel, long fromX, long fromY, long toX, long toY)
+        throws NoSuchElementException, NotYetConnectedException
+    {
+        return parent().readPooledSubMatrix(resolutionLevel, fromX, fromY, toX, toY);
+    }
+
+    @Override
+    public CompletableFuture<Matrix<? extends PArray>> readSubMatrixAsync(
+        int resolutionLevel, long fromX, long fromY, long toX, long toY, Executor executor)
+    {
+        return parent().readSubMatrixAsync(resolutionLevel, fromX, fromY, toX, toY, executor);
+    }
+
+    @Override
+    public List<Matrix<? extends PArray>> readSubMatrices(int resolutionLevel, List<IRectangularArea> areas)
+        throws NoSuchElementException, NotYetConnectedException
+    {
+        return parent().readSubMatrices(resolutionLevel, areas);
+    }
+
+    @Override
+    public void prefetchSubMatrix(int resolutionLevel, long fromX, long fromY, long toX, long toY) {
+        parent().prefetchSubMatrix(resolutionLevel, fromX, fromY, toX, toY);
+    }
+
     public boolean isFullMatrixSupported() {
         return parent().isFullMatrixSupported();
     }
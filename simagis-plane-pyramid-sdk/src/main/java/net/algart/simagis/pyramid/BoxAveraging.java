@@ -0,0 +1,332 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package net.algart.simagis.pyramid;
+
+import net.algart.arrays.*;
+
+import java.util.Locale;
+
+/**
+ * Specialized implementation of {@link Matrices#resize Matrices.resize} for the most typical case of building
+ * and scaling pyramids: averaging compression of packed 3-dimensional matrices (bands &times; x &times; y)
+ * in 2, 3 or 4 times, where both matrices are byte, short or float and are based on Java arrays.
+ * Such matrices are compressed by simple loops over the Java arrays, which are much faster than
+ * the universal algorithm. In all other cases, {@link #resize resize} method just calls
+ * {@link Matrices#resize Matrices.resize}.
+ *
+ * <p>The results are identical to the results of {@link Matrices#resize Matrices.resize}: every result
+ * element is the mean of the corresponding source block, truncated to an integer for byte and short
+ * elements. Specialized kernels can be disabled by the system property
+ * "<tt>net.algart.simagis.pyramid.boxAveraging</tt>" (<tt>true</tt> by default).
+ *
+ * <p>Large matrices are processed in several threads, created by the {@link ThreadPoolFactory thread pool
+ * factory} of the passed context. The context is also used for interruption and for showing progress.
+ *
+ * <p>This class is thread-safe.
+ */
+public final class BoxAveraging {
+    static final boolean BOX_AVERAGING = Arrays.SystemSettings.getBooleanProperty(
+        "net.algart.simagis.pyramid.boxAveraging", true);
+    private static final int MIN_FACTOR = 2;
+    private static final int MAX_FACTOR = 4;
+    private static final long MIN_PARALLEL_SIZE = 262144;
+    // - little matrices are processed in the current thread
+    private static final int ROWS_PER_BLOCK = 16;
+    // - the context is checked for interruption and informed about progress after every block of rows
+
+    private static final int DEBUG_LEVEL = PlanePyramidSource.DEBUG_LEVEL;
+
+    private BoxAveraging() {
+    }
+
+    /**
+     * Equivalent to <tt>{@link Matrices#resize Matrices.resize}(context, resizingMethod, result, source)</tt>,
+     * but works faster when a specialized kernel can be used.
+     *
+     * @param context        the context of resizing; may be <tt>null</tt>.
+     * @param resizingMethod the resizing method.
+     * @param result         the destination matrix.
+     * @param source         the source matrix.
+     */
+    public static void resize(
+        ArrayContext context,
+        Matrices.ResizingMethod resizingMethod,
+        Matrix<? extends UpdatablePArray> result,
+        Matrix<? extends PArray> source)
+    {
+        if (!compress(context, resizingMethod, result, source)) {
+            Matrices.resize(context, resizingMethod, result, source);
+        }
+    }
+
+    /**
+     * Performs averaging compression by a specialized kernel, if it is possible, or does nothing
+     * and returns <tt>false</tt> in other case.
+     *
+     * @param context        the context of compression; may be <tt>null</tt>.
+     * @param resizingMethod the resizing method.
+     * @param result         the destination matrix.
+     * @param source         the source matrix.
+     * @return whether the result was calculated.
+     */
+    public static boolean compress(
+        ArrayContext context,
+        Matrices.ResizingMethod resizingMethod,
+        Matrix<? extends UpdatablePArray> result,
+        Matrix<? extends PArray> source)
+    {
+        final int factor = suitableFactor(resizingMethod, result, source);
+        if (factor == 0) {
+            return false;
+        }
+        compressUnchecked(context, result, source, factor);
+        return true;
+    }
+
+    // Returns 0 if there is no specialized kernel
+    private static int suitableFactor(
+        Matrices.ResizingMethod resizingMethod,
+        Matrix<? extends UpdatablePArray> result,
+        Matrix<? extends PArray> source)
+    {
+        if (!BOX_AVERAGING) {
+            return 0;
+        }
+        if (resizingMethod != Matrices.ResizingMethod.AVERAGING
+            && resizingMethod != Matrices.ResizingMethod.POLYLINEAR_AVERAGING)
+        {
+            return 0;
+        }
+        final Class<?> elementType = source.elementType();
+        if (result.elementType() != elementType
+            || (elementType != byte.class && elementType != short.class && elementType != float.class))
+        {
+            return 0;
+        }
+        if (source.dimCount() != 3 || result.dimCount() != 3 || source.dim(0) != result.dim(0)
+            || result.dim(1) == 0 || result.dim(2) == 0)
+        {
+            return 0;
+        }
+        final long factor = source.dim(1) / result.dim(1);
+        if (factor < MIN_FACTOR || factor > MAX_FACTOR
+            || source.dim(1) != factor * result.dim(1) || source.dim(2) != factor * result.dim(2))
+        {
+            return 0;
+        }
+        if (!isJavaArray(source.array()) || !isJavaArray(result.array())) {
+            return 0;
+        }
+        return (int) factor;
+    }
+
+    private static boolean isJavaArray(PArray array) {
+        return array instanceof DirectAccessible && ((DirectAccessible) array).hasJavaArray()
+            && array.length() <= Integer.MAX_VALUE;
+    }
+
+    private static void compressUnchecked(
+        ArrayContext context,
+        Matrix<? extends UpdatablePArray> result,
+        Matrix<? extends PArray> source,
+        int factor)
+    {
+        final long t1 = System.nanoTime();
+        final DirectAccessible src = (DirectAccessible) source.array();
+        final DirectAccessible dest = (DirectAccessible) result.array();
+        final int bandCount = (int) result.dim(0);
+        final int dimX = (int) result.dim(1);
+        final int dimY = (int) result.dim(2);
+        final Object srcArray = src.javaArray();
+        final Object destArray = dest.javaArray();
+        final int srcOffset = src.javaArrayOffset();
+        final int destOffset = dest.javaArrayOffset();
+        final RowsKernel kernel;
+        if (srcArray instanceof byte[]) {
+            kernel = (fromY, toY) -> compressBytes((byte[]) destArray, destOffset, (byte[]) srcArray, srcOffset,
+                bandCount, dimX, fromY, toY, factor);
+        } else if (srcArray instanceof short[]) {
+            kernel = (fromY, toY) -> compressShorts((short[]) destArray, destOffset, (short[]) srcArray, srcOffset,
+                bandCount, dimX, fromY, toY, factor);
+        } else {
+            kernel = (fromY, toY) -> compressFloats((float[]) destArray, destOffset, (float[]) srcArray, srcOffset,
+                bandCount, dimX, fromY, toY, factor);
+        }
+        final Compressor compressor = new Compressor(context, kernel, result);
+        final int blockCount = (dimY + ROWS_PER_BLOCK - 1) / ROWS_PER_BLOCK;
+        final ThreadPoolFactory threadPoolFactory = result.size() < MIN_PARALLEL_SIZE ? null
+            : context != null ? context.getThreadPoolFactory()
+            : DefaultThreadPoolFactory.getDefaultThreadPoolFactory();
+        final int taskCount = threadPoolFactory == null ? 1
+            : Math.max(1, Math.min(blockCount, threadPoolFactory.recommendedNumberOfTasks(source.array())));
+        if (taskCount == 1) {
+            compressor.compressRows(0, dimY);
+        } else {
+            final Runnable[] tasks = new Runnable[taskCount];
+            for (int k = 0; k < taskCount; k++) {
+                final int fromY = (int) ((long) blockCount * k / taskCount) * ROWS_PER_BLOCK;
+                final int toY = Math.min(dimY, (int) ((long) blockCount * (k + 1) / taskCount) * ROWS_PER_BLOCK);
+                tasks[k] = () -> compressor.compressRows(fromY, toY);
+            }
+            threadPoolFactory.performTasks(tasks);
+        }
+        if (DEBUG_LEVEL >= 3) {
+            final long t2 = System.nanoTime();
+            System.out.printf(Locale.US, "%s has compressed %s in %d times (%d x %d x %d) in %.3f ms, %d tasks%n",
+                BoxAveraging.class.getSimpleName(), result.elementType(), factor,
+                bandCount, dimX, dimY, (t2 - t1) * 1e-6, taskCount);
+        }
+    }
+
+    private static void compressBytes(
+        byte[] dest, int destOffset, byte[] src, int srcOffset,
+        int bandCount, int dimX, int fromY, int toY, int factor)
+    {
+        final int destLineLength = bandCount * dimX;
+        final int srcLineLength = destLineLength * factor;
+        final int step = bandCount * factor;
+        final int n = factor * factor;
+        for (int y = fromY; y < toY; y++) {
+            int destIndex = destOffset + y * destLineLength;
+            final int srcLine = srcOffset + y * factor * srcLineLength;
+            if (factor == 2) {
+                for (int x = 0, p = srcLine; x < dimX; x++, p += step) {
+                    for (int c = 0, q = p; c < bandCount; c++, q++) {
+                        final int sum = (src[q] & 0xFF) + (src[q + bandCount] & 0xFF)
+                            + (src[q + srcLineLength] & 0xFF) + (src[q + srcLineLength + bandCount] & 0xFF);
+                        dest[destIndex++] = (byte) (sum >> 2);
+                    }
+                }
+            } else {
+                for (int x = 0, p = srcLine; x < dimX; x++, p += step) {
+                    for (int c = 0, q = p; c < bandCount; c++, q++) {
+                        int sum = 0;
+                        for (int j = 0, r = q; j < factor; j++, r += srcLineLength) {
+                            for (int i = 0, s = r; i < factor; i++, s += bandCount) {
+                                sum += src[s] & 0xFF;
+                            }
+                        }
+                        dest[destIndex++] = (byte) (sum / n);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void compressShorts(
+        short[] dest, int destOffset, short[] src, int srcOffset,
+        int bandCount, int dimX, int fromY, int toY, int factor)
+    {
+        final int destLineLength = bandCount * dimX;
+        final int srcLineLength = destLineLength * factor;
+        final int step = bandCount * factor;
+        final int n = factor * factor;
+        for (int y = fromY; y < toY; y++) {
+            int destIndex = destOffset + y * destLineLength;
+            final int srcLine = srcOffset + y * factor * srcLineLength;
+            if (factor == 2) {
+                for (int x = 0, p = srcLine; x < dimX; x++, p += step) {
+                    for (int c = 0, q = p; c < bandCount; c++, q++) {
+                        final int sum = (src[q] & 0xFFFF) + (src[q + bandCount] & 0xFFFF)
+                            + (src[q + srcLineLength] & 0xFFFF) + (src[q + srcLineLength + bandCount] & 0xFFFF);
+                        dest[destIndex++] = (short) (sum >> 2);
+                    }
+                }
+            } else {
+                for (int x = 0, p = srcLine; x < dimX; x++, p += step) {
+                    for (int c = 0, q = p; c < bandCount; c++, q++) {
+                        int sum = 0;
+                        for (int j = 0, r = q; j < factor; j++, r += srcLineLength) {
+                            for (int i = 0, s = r; i < factor; i++, s += bandCount) {
+                                sum += src[s] & 0xFFFF;
+                            }
+                        }
+                        dest[destIndex++] = (short) (sum / n);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void compressFloats(
+        float[] dest, int destOffset, float[] src, int srcOffset,
+        int bandCount, int dimX, int fromY, int toY, int factor)
+    {
+        final int destLineLength = bandCount * dimX;
+        final int srcLineLength = destLineLength * factor;
+        final int step = bandCount * factor;
+        final double n = factor * factor;
+        for (int y = fromY; y < toY; y++) {
+            int destIndex = destOffset + y * destLineLength;
+            final int srcLine = srcOffset + y * factor * srcLineLength;
+            for (int x = 0, p = srcLine; x < dimX; x++, p += step) {
+                for (int c = 0, q = p; c < bandCount; c++, q++) {
+                    double sum = 0.0;
+                    for (int j = 0, r = q; j < factor; j++, r += srcLineLength) {
+                        for (int i = 0, s = r; i < factor; i++, s += bandCount) {
+                            sum += src[s];
+                        }
+                    }
+                    dest[destIndex++] = (float) (sum / n);
+                }
+            }
+        }
+    }
+
+    private interface RowsKernel {
+        void compress(int fromY, int toY);
+    }
+
+    private static final class Compressor {
+        private final ArrayContext context;
+        private final RowsKernel kernel;
+        private final Class<?> elementType;
+        private final long rowSize;
+        private final long totalElements;
+        private long readyElements = 0;
+
+        private Compressor(ArrayContext context, RowsKernel kernel, Matrix<? extends UpdatablePArray> result) {
+            this.context = context;
+            this.kernel = kernel;
+            this.elementType = result.elementType();
+            this.rowSize = result.dim(0) * result.dim(1);
+            this.totalElements = result.size();
+        }
+
+        void compressRows(int fromY, int toY) {
+            for (int y = fromY; y < toY; y += ROWS_PER_BLOCK) {
+                final int blockToY = Math.min(toY, y + ROWS_PER_BLOCK);
+                kernel.compress(y, blockToY);
+                if (context != null) {
+                    synchronized (this) {
+                        readyElements += (blockToY - y) * rowSize;
+                        context.checkInterruptionAndUpdateProgress(elementType, readyElements, totalElements);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package net.algart.simagis.pyramid;
+
+import java.util.Locale;
+
+/**
+ * Snapshot of statistics of {@link MatrixBufferPool}.
+ */
+public final class BufferPoolStats {
+    private final long hits;
+    private final long misses;
+    private final long savedBytes;
+    private final long droppedBuffers;
+    private final long pooledMemory;
+    private final long maxPooledMemory;
+
+    BufferPoolStats(
+        long hits, long misses, long savedBytes, long droppedBuffers, long pooledMemory, long maxPooledMemory)
+    {
+        this.hits = hits;
+        this.misses = misses;
+        this.savedBytes = savedBytes;
+        this.droppedBuffers = droppedBuffers;
+        this.pooledMemory = pooledMemory;
+        this.maxPooledMemory = maxPooledMemory;
+    }
+
+    /**
+     * Returns the number of borrowings, which reused a free buffer from the pool.
+     *
+     * @return the number of borrowings without allocation.
+     */
+    public long hits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of borrowings, which allocated a new buffer.
+     *
+     * @return the number of borrowings with allocation.
+     */
+    public long misses() {
+        return misses;
+    }
+
+    /**
+     * Returns the total size of reused buffers (in bytes): the memory, which would be allocated without the pool.
+     *
+     * @return the total size of allocations, avoided thanks to the pool.
+     */
+    public long savedBytes() {
+        return savedBytes;
+    }
+
+    /**
+     * Returns the number of returned buffers, which were not kept in the pool because of its memory limit.
+     *
+     * @return the number of dropped buffers.
+     */
+    public long droppedBuffers() {
+        return droppedBuffers;
+    }
+
+    public long pooledMemory() {
+        return pooledMemory;
+    }
+
+    public long maxPooledMemory() {
+        return maxPooledMemory;
+    }
+
+    public double hitRatio() {
+        final long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / (double) total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+            "%d hits (%.1f%%), %d misses, %.2f MB saved, %d dropped; %.2f/%.2f MB pooled",
+            hits, 100.0 * hitRatio(), misses, savedBytes / 1048576.0, droppedBuffers,
+            pooledMemory / 1048576.0, maxPooledMemory / 1048576.0);
+    }
+}
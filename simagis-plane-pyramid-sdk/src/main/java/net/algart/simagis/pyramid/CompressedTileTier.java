@@ -0,0 +1,336 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.algart.simagis.pyramid;
+
+import net.algart.arrays.*;
+import net.algart.arrays.Arrays;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * "Warm" tier of {@link TileCache}: tiles, evicted from the main ("hot") tier, losslessly compressed.
+ * When such a tile is requested again, it is decompressed and returned into the hot tier,
+ * that is usually much faster than reading it by <tt>readLittleSubMatrix</tt>.
+ *
+ * <p>Tile data are stored in the packed band layout (all bands of every pixel together).
+ * Before compression by {@link Deflater}, every byte is replaced with its difference with the same byte
+ * of the previous pixel: for images with smooth areas and large uniform background,
+ * typical for histology, it improves compression several times.
+ * Uniform tiles (see {@link PlanePyramidTools#findUniformPixel(Matrix)}) are stored as constant matrices.
+ *
+ * <p>The tier is limited by its own memory budget; when it is exceeded, the least recently used
+ * tiles are removed. This class is thread-safe; compression and decompression are performed
+ * outside synchronization.
+ */
+final class CompressedTileTier {
+    private static final int DEBUG_LEVEL = PlanePyramidSource.DEBUG_LEVEL;
+    private static final long ENTRY_OVERHEAD = 256;
+    private static final Class<?>[] COMPRESSIBLE_TYPES = {
+        byte.class, char.class, short.class, int.class, long.class, float.class, double.class
+    };
+
+    private final long maxMemory;
+    private final LinkedHashMap<TileCacheIndex, CompressedTile> tiles =
+        new LinkedHashMap<TileCacheIndex, CompressedTile>(16, 0.75f, true);
+    private long usedMemory = 0;
+
+    private final LongAdder compressedTiles = new LongAdder();
+    private final LongAdder uncompressedBytes = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+    private final LongAdder compressionTime = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder decompressionTime = new LongAdder();
+
+    CompressedTileTier(long maxMemory) {
+        this.maxMemory = maxMemory;
+    }
+
+    static boolean isCompressible(Matrix<? extends PArray> data) {
+        return Arrays.isNCopies(data.array())
+            || (java.util.Arrays.asList(COMPRESSIBLE_TYPES).contains(data.elementType())
+            && Matrices.sizeOf(data) <= Integer.MAX_VALUE / 2);
+    }
+
+    /**
+     * Compresses the tile and stores it in this tier. The passed matrix is not used after this call.
+     *
+     * @param index        the tile index.
+     * @param data         the tile data; must be {@link #isCompressible(Matrix) compressible}.
+     * @param uniformPixel the pixel, filling the whole tile, or <tt>null</tt> if the tile is not uniform.
+     */
+    void put(TileCacheIndex index, Matrix<? extends PArray> data, double[] uniformPixel) {
+        final long t1 = System.nanoTime();
+        final CompressedTile compressed = new CompressedTile(data, uniformPixel);
+        final long t2 = System.nanoTime();
+        compressedTiles.increment();
+        uncompressedBytes.add(Matrices.sizeOf(data));
+        compressedBytes.add(compressed.weight - ENTRY_OVERHEAD);
+        compressionTime.add(t2 - t1);
+        int removed = 0;
+        synchronized (this) {
+            if (compressed.weight > maxMemory) {
+                // - the new tile cannot be stored, but the old version of this tile must not be returned later
+                final CompressedTile previous = tiles.remove(index);
+                if (previous != null) {
+                    usedMemory -= previous.weight;
+                }
+                return;
+            }
+            final CompressedTile previous = tiles.put(index, compressed);
+            if (previous != null) {
+                usedMemory -= previous.weight;
+            }
+            usedMemory += compressed.weight;
+            for (Iterator<CompressedTile> iterator = tiles.values().iterator();
+                 usedMemory > maxMemory && iterator.hasNext(); )
+            {
+                usedMemory -= iterator.next().weight;
+                iterator.remove();
+                removed++;
+            }
+        }
+        if (DEBUG_LEVEL >= 3) {
+            System.out.printf(Locale.US, AbstractPlanePyramidSource.class.getSimpleName()
+                    + " has compressed tile (level %d) %s in %.3f ms, ratio %.2f, %d old tiles removed%n",
+                index.resolutionLevel, index.tile, (t2 - t1) * 1e-6,
+                (double) Matrices.sizeOf(data) / (double) compressed.weight, removed);
+        }
+    }
+
+    /**
+     * Removes the tile from this tier and returns it in decompressed form,
+     * or returns <tt>null</tt> if there is no such tile.
+     *
+     * @param index the tile index.
+     * @return the decompressed tile, allocated by {@link Arrays#SMM} or constant, or <tt>null</tt>.
+     */
+    TileCache.LoadedTile remove(TileCacheIndex index) {
+        final CompressedTile compressed;
+        synchronized (this) {
+            compressed = tiles.remove(index);
+            if (compressed != null) {
+                usedMemory -= compressed.weight;
+            }
+        }
+        if (compressed == null) {
+            misses.increment();
+            return null;
+        }
+        final long t1 = System.nanoTime();
+        final TileCache.LoadedTile result = new TileCache.LoadedTile(compressed.decompress(), compressed.uniformPixel);
+        final long t2 = System.nanoTime();
+        hits.increment();
+        decompressionTime.add(t2 - t1);
+        if (DEBUG_LEVEL >= 2) {
+            System.out.printf(Locale.US, "  " + AbstractPlanePyramidSource.class.getSimpleName()
+                    + " has decompressed data from the cache (level %d) in %.3f ms: %s%n",
+                index.resolutionLevel, (t2 - t1) * 1e-6, index.tile);
+        }
+        return result;
+    }
+
+    synchronized void removeAll(Object owner) {
+        for (Iterator<Map.Entry<TileCacheIndex, CompressedTile>> iterator = tiles.entrySet().iterator();
+             iterator.hasNext(); )
+        {
+            final Map.Entry<TileCacheIndex, CompressedTile> entry = iterator.next();
+            if (entry.getKey().owner == owner) {
+                usedMemory -= entry.getValue().weight;
+                iterator.remove();
+            }
+        }
+    }
+
+    synchronized void clear() {
+        tiles.clear();
+        usedMemory = 0;
+    }
+
+    synchronized long usedMemory() {
+        return usedMemory;
+    }
+
+    synchronized int numberOfTiles() {
+        return tiles.size();
+    }
+
+    long maxMemory() {
+        return maxMemory;
+    }
+
+    TileCompressionStats stats() {
+        final int numberOfTiles;
+        final long usedMemory;
+        synchronized (this) {
+            numberOfTiles = this.tiles.size();
+            usedMemory = this.usedMemory;
+        }
+        return new TileCompressionStats(
+            numberOfTiles, usedMemory, maxMemory,
+            compressedTiles.sum(), uncompressedBytes.sum(), compressedBytes.sum(), compressionTime.sum(),
+            hits.sum(), misses.sum(), decompressionTime.sum());
+    }
+
+    private static byte[] toBytes(PArray array) {
+        final Object javaArray = Arrays.toJavaArray(array);
+        final Class<?> elementType = array.elementType();
+        final ByteBuffer buffer = ByteBuffer.allocate((int) Arrays.sizeOf(array)).order(ByteOrder.nativeOrder());
+        if (elementType == byte.class) {
+            buffer.put((byte[]) javaArray);
+        } else if (elementType == char.class) {
+            buffer.asCharBuffer().put((char[]) javaArray);
+        } else if (elementType == short.class) {
+            buffer.asShortBuffer().put((short[]) javaArray);
+        } else if (elementType == int.class) {
+            buffer.asIntBuffer().put((int[]) javaArray);
+        } else if (elementType == long.class) {
+            buffer.asLongBuffer().put((long[]) javaArray);
+        } else if (elementType == float.class) {
+            buffer.asFloatBuffer().put((float[]) javaArray);
+        } else if (elementType == double.class) {
+            buffer.asDoubleBuffer().put((double[]) javaArray);
+        } else {
+            throw new AssertionError("Unsupported element type " + elementType);
+        }
+        return buffer.array();
+    }
+
+    private static UpdatablePArray fromBytes(byte[] bytes, Class<?> elementType, int length) {
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.nativeOrder());
+        if (elementType == byte.class) {
+            return SimpleMemoryModel.asUpdatableByteArray(bytes);
+        } else if (elementType == char.class) {
+            final char[] result = new char[length];
+            buffer.asCharBuffer().get(result);
+            return SimpleMemoryModel.asUpdatableCharArray(result);
+        } else if (elementType == short.class) {
+            final short[] result = new short[length];
+            buffer.asShortBuffer().get(result);
+            return SimpleMemoryModel.asUpdatableShortArray(result);
+        } else if (elementType == int.class) {
+            final int[] result = new int[length];
+            buffer.asIntBuffer().get(result);
+            return SimpleMemoryModel.asUpdatableIntArray(result);
+        } else if (elementType == long.class) {
+            final long[] result = new long[length];
+            buffer.asLongBuffer().get(result);
+            return SimpleMemoryModel.asUpdatableLongArray(result);
+        } else if (elementType == float.class) {
+            final float[] result = new float[length];
+            buffer.asFloatBuffer().get(result);
+            return SimpleMemoryModel.asUpdatableFloatArray(result);
+        } else if (elementType == double.class) {
+            final double[] result = new double[length];
+            buffer.asDoubleBuffer().get(result);
+            return SimpleMemoryModel.asUpdatableDoubleArray(result);
+        } else {
+            throw new AssertionError("Unsupported element type " + elementType);
+        }
+    }
+
+    private static final class CompressedTile {
+        final long[] dimensions;
+        final Class<?> elementType;
+        final Matrix<? extends PArray> constant;
+        final double[] uniformPixel;
+        // - non-null for uniform matrices
+        final byte[] compressed;
+        final int uncompressedLength;
+        final long weight;
+
+        CompressedTile(Matrix<? extends PArray> data, double[] uniformPixel) {
+            this.dimensions = data.dimensions();
+            this.elementType = data.elementType();
+            this.uniformPixel = uniformPixel;
+            if (uniformPixel != null) {
+                this.constant = PlanePyramidTools.asUniform(elementType, uniformPixel, data.dim(1), data.dim(2));
+                this.compressed = null;
+                this.uncompressedLength = 0;
+                this.weight = ENTRY_OVERHEAD;
+                return;
+            }
+            this.constant = null;
+            final byte[] bytes = toBytes(data.array());
+            final int pixelSize = (int) Arrays.sizeOf(elementType, data.dim(0));
+            for (int k = bytes.length - 1; k >= pixelSize; k--) {
+                bytes[k] -= bytes[k - pixelSize];
+            }
+            final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                deflater.setInput(bytes);
+                deflater.finish();
+                byte[] result = new byte[Math.max(64, bytes.length / 4)];
+                int length = 0;
+                while (!deflater.finished()) {
+                    if (length == result.length) {
+                        result = java.util.Arrays.copyOf(result, 2 * result.length);
+                    }
+                    length += deflater.deflate(result, length, result.length - length);
+                }
+                this.compressed = java.util.Arrays.copyOf(result, length);
+            } finally {
+                deflater.end();
+            }
+            this.uncompressedLength = bytes.length;
+            this.weight = compressed.length + ENTRY_OVERHEAD;
+        }
+
+        Matrix<? extends PArray> decompress() {
+            if (constant != null) {
+                return constant;
+            }
+            final byte[] bytes = new byte[uncompressedLength];
+            final Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(compressed);
+                int length = 0;
+                while (length < bytes.length) {
+                    final int n = inflater.inflate(bytes, length, bytes.length - length);
+                    if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                        throw new AssertionError("Internal bug: compressed tile is damaged");
+                    }
+                    length += n;
+                }
+            } catch (DataFormatException e) {
+                throw new AssertionError("Internal bug: compressed tile is damaged", e);
+            } finally {
+                inflater.end();
+            }
+            final int pixelSize = (int) Arrays.sizeOf(elementType, dimensions[0]);
+            for (int k = pixelSize; k < bytes.length; k++) {
+                bytes[k] += bytes[k - pixelSize];
+            }
+            final int length = (int) Arrays.longMul(dimensions);
+            return Matrices.matrix(fromBytes(bytes, elementType, length), dimensions);
+        }
+    }
+}
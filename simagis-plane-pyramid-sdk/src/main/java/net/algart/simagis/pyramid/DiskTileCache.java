@@ -0,0 +1,621 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.algart.simagis.pyramid;
+
+import net.algart.arrays.*;
+import net.algart.arrays.Arrays;
+import net.algart.math.IPoint;
+import net.algart.math.IRectangularArea;
+
+import java.io.File;
+import java.io.IOError;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent second-level tile cache, used by {@link AbstractPlanePyramidSource} together with
+ * the usual tile cache: tiles, loaded by <tt>readLittleSubMatrix</tt>, are also appended to this cache,
+ * and the next loading of the same tile (after eviction from memory or after restarting JVM)
+ * reads it from the disk instead of calling <tt>readLittleSubMatrix</tt>.
+ *
+ * <p>The cache occupies a separate directory with the following files:
+ * <ul>
+ * <li><tt>fingerprint</tt>: the format version, byte order and fingerprint of the source content;
+ * if they do not match the current source, all other files are removed;</li>
+ * <li><tt>segment-N.data</tt>: segments of fixed size (except segments for very large tiles),
+ * containing raw tile data one after another (for uniform tiles, only the values of bands of one pixel);
+ * they are mapped into memory for reading and writing;</li>
+ * <li><tt>index</tt>: append-only journal of fixed-size records, describing the position of every tile
+ * in segments and the checksum of its data; it is completely read while opening the cache,
+ * that usually requires several milliseconds;</li>
+ * <li><tt>lock</tt>: used for locking the directory, so that only one source uses it at the same time.</li>
+ * </ul>
+ *
+ * <p>Segments are not forced to the disk before appending records, so, after a crash, a record may
+ * describe data, which were not really written. So, the data of every tile, loaded from the journal,
+ * is checked against its checksum while the first reading; tiles with wrong data are removed from the index.
+ *
+ * <p>The total size of segments is limited: when it exceeds the limit, the oldest segments are deleted
+ * (together with all their tiles). Records of deleted tiles are removed from the index journal
+ * when their number becomes large.
+ *
+ * <p>This class is thread-safe. Copying data from and into segments is performed outside synchronization.
+ */
+final class DiskTileCache {
+    private static final int DEBUG_LEVEL = PlanePyramidSource.DEBUG_LEVEL;
+    private static final String FORMAT_VERSION = "simagis-disk-tile-cache-2";
+    private static final long SEGMENT_SIZE = 64 * 1048576;
+    private static final int RECORD_SIZE = 72;
+    private static final int RECORD_MAGIC = 0x54494C45; // "TILE"
+    private static final int UNIFORM_FLAG = 0x100;
+    // - added to the element type code; the data of such tiles is only 1 pixel (double value per band)
+    private static final Class<?>[] ELEMENT_TYPES = {
+        byte.class, char.class, short.class, int.class, long.class, float.class, double.class
+    };
+
+    private final File directory;
+    private final long maxDiskMemory;
+    private final Map<Key, Location> index = new HashMap<Key, Location>();
+    private final TreeMap<Integer, Segment> segments = new TreeMap<Integer, Segment>();
+    private final RandomAccessFile lockFile;
+    private final FileLock lock;
+    private FileChannel indexChannel;
+    private long journalRecords = 0;
+    private long totalSegmentsSize = 0;
+    private Segment currentSegment = null;
+    private boolean closed = false;
+
+    private DiskTileCache(File directory, long maxDiskMemory, RandomAccessFile lockFile, FileLock lock) {
+        this.directory = directory;
+        this.maxDiskMemory = maxDiskMemory;
+        this.lockFile = lockFile;
+        this.lock = lock;
+    }
+
+    /**
+     * Opens the cache in the given directory, or creates a new one, if the directory does not contain
+     * a cache for the source with the given fingerprint.
+     * If the directory is already used by another source (maybe in another JVM), returns a closed cache,
+     * which contains nothing and ignores all tiles, passed to {@link #put}.
+     *
+     * @param directory         the cache directory; created if it does not exist.
+     * @param maxDiskMemory     maximal total size of tile data in bytes.
+     * @param sourceFingerprint fingerprint, identifying the content of the source.
+     * @return the opened cache.
+     * @throws IOException in a case of I/O error.
+     */
+    static DiskTileCache open(File directory, long maxDiskMemory, String sourceFingerprint) throws IOException {
+        final long t1 = System.nanoTime();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create disk tile cache directory " + directory);
+        }
+        final RandomAccessFile lockFile = new RandomAccessFile(new File(directory, "lock"), "rw");
+        FileLock lock;
+        try {
+            lock = lockFile.getChannel().tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            lockFile.close();
+            if (DEBUG_LEVEL >= 1) {
+                System.out.println(AbstractPlanePyramidSource.class.getSimpleName()
+                    + " cannot use disk tile cache " + directory + ": it is locked by another source");
+            }
+            final DiskTileCache result = new DiskTileCache(directory, maxDiskMemory, null, null);
+            result.closed = true;
+            return result;
+        }
+        final DiskTileCache result = new DiskTileCache(directory, maxDiskMemory, lockFile, lock);
+        try {
+            result.load(sourceFingerprint);
+        } catch (IOException | RuntimeException | Error e) {
+            result.close();
+            throw e;
+        }
+        final long t2 = System.nanoTime();
+        if (DEBUG_LEVEL >= 1) {
+            System.out.printf(Locale.US, AbstractPlanePyramidSource.class.getSimpleName()
+                    + " has opened disk tile cache %s in %.3f ms: %d tiles, %.2f MB in %d segments%n",
+                directory, (t2 - t1) * 1e-6, result.index.size(), result.totalSegmentsSize / 1048576.0,
+                result.segments.size());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the tile, stored in the cache, or <tt>null</tt> if there is no such tile.
+     * The result is a newly created matrix, allocated by {@link Arrays#SMM}.
+     *
+     * @param resolutionLevel the level of the tile.
+     * @param tile            the tile rectangle.
+     * @return the tile data or <tt>null</tt>.
+     */
+    Matrix<? extends PArray> get(int resolutionLevel, IRectangularArea tile) {
+        final TileCache.LoadedTile result = getTile(resolutionLevel, tile);
+        return result == null ? null : result.data;
+    }
+
+    /**
+     * Equivalent to {@link #get(int, IRectangularArea)}, but also returns the stored uniform pixel
+     * for uniform tiles.
+     *
+     * @param resolutionLevel the level of the tile.
+     * @param tile            the tile rectangle.
+     * @return the tile or <tt>null</tt>.
+     */
+    TileCache.LoadedTile getTile(int resolutionLevel, IRectangularArea tile) {
+        final Location location;
+        final MappedByteBuffer mapping;
+        synchronized (this) {
+            if (closed) {
+                return null;
+            }
+            location = index.get(new Key(resolutionLevel, tile));
+            if (location == null) {
+                return null;
+            }
+            mapping = segments.get(location.segment).mapping;
+            // - if the segment will be deleted by another thread, the mapping will stay valid
+            // while we are using it
+        }
+        final Class<?> elementType = ELEMENT_TYPES[location.elementTypeCode & ~UNIFORM_FLAG];
+        final long length = location.bandCount * tile.size(0) * tile.size(1);
+        final ByteBuffer buffer = mapping.duplicate().order(ByteOrder.nativeOrder());
+        buffer.position((int) location.offset);
+        if (!location.verified) {
+            if (dataCrc(buffer, location.size(tile)) != location.dataCrc) {
+                synchronized (this) {
+                    index.remove(new Key(resolutionLevel, tile), location);
+                }
+                if (DEBUG_LEVEL >= 1) {
+                    System.out.println(AbstractPlanePyramidSource.class.getSimpleName()
+                        + " has found damaged data of " + tile + " (level " + resolutionLevel
+                        + ") in disk tile cache " + directory);
+                }
+                return null;
+            }
+            location.verified = true;
+        }
+        if ((location.elementTypeCode & UNIFORM_FLAG) != 0) {
+            final double[] pixel = new double[(int) location.bandCount];
+            buffer.asDoubleBuffer().get(pixel);
+            return new TileCache.LoadedTile(
+                PlanePyramidTools.asUniform(elementType, pixel, tile.size(0), tile.size(1)), pixel);
+        }
+        final UpdatablePArray result = (UpdatablePArray) Arrays.SMM.newUnresizableArray(elementType, length);
+        result.copy(OffHeapTileMemory.asUpdatableArray(buffer.slice().order(ByteOrder.nativeOrder()),
+            elementType, length));
+        if (DEBUG_LEVEL >= 2) {
+            System.out.printf("  " + AbstractPlanePyramidSource.class.getSimpleName()
+                + " has loaded data from the disk cache (level %d): %s%n", resolutionLevel, tile);
+        }
+        return new TileCache.LoadedTile(
+            Matrices.matrix(result, location.bandCount, tile.size(0), tile.size(1)), null);
+    }
+
+    /**
+     * Stores the tile in the cache, if it is not stored yet. Bit matrices are not stored.
+     * For {@link PlanePyramidTools#findUniformPixel(Matrix) uniform} tiles, only one pixel is stored.
+     *
+     * @param resolutionLevel the level of the tile.
+     * @param tile            the tile rectangle.
+     * @param data            the tile data.
+     */
+    void put(int resolutionLevel, IRectangularArea tile, Matrix<? extends PArray> data) {
+        final int typeCode = java.util.Arrays.asList(ELEMENT_TYPES).indexOf(data.elementType());
+        if (typeCode != -1) {
+            putTile(resolutionLevel, tile,
+                new TileCache.LoadedTile(data, PlanePyramidTools.findUniformPixel(data)));
+        }
+    }
+
+    /**
+     * Equivalent to {@link #put(int, IRectangularArea, Matrix)}, but uses the already detected uniform pixel.
+     *
+     * @param resolutionLevel the level of the tile.
+     * @param tile            the tile rectangle.
+     * @param loaded          the tile.
+     */
+    void putTile(int resolutionLevel, IRectangularArea tile, TileCache.LoadedTile loaded) {
+        final Matrix<? extends PArray> data = loaded.data;
+        final int typeCode = java.util.Arrays.asList(ELEMENT_TYPES).indexOf(data.elementType());
+        final double[] pixel = typeCode == -1 ? null : loaded.uniformPixel;
+        final int elementTypeCode = pixel != null ? typeCode | UNIFORM_FLAG : typeCode;
+        final long size = pixel != null ? 8L * pixel.length : Matrices.sizeOf(data);
+        if (typeCode == -1 || size > Integer.MAX_VALUE) {
+            return;
+        }
+        final Key key = new Key(resolutionLevel, tile);
+        final Location location;
+        final Segment segment;
+        final long offset;
+        try {
+            synchronized (this) {
+                if (closed || index.containsKey(key)) {
+                    return;
+                }
+                if (currentSegment == null || currentSegment.used + size > currentSegment.size) {
+                    currentSegment = newSegment(Math.max(SEGMENT_SIZE, size));
+                }
+                offset = currentSegment.used;
+                currentSegment.used += size;
+                segment = currentSegment;
+                segment.writers++;
+            }
+            try {
+                final ByteBuffer buffer = segment.mapping.duplicate().order(ByteOrder.nativeOrder());
+                buffer.position((int) offset);
+                if (pixel != null) {
+                    buffer.asDoubleBuffer().put(pixel);
+                } else {
+                    OffHeapTileMemory.asUpdatableArray(buffer.slice().order(ByteOrder.nativeOrder()),
+                        data.elementType(), data.size()).copy(data.array());
+                }
+                location = new Location(segment.id, offset, elementTypeCode, data.dim(0), dataCrc(buffer, size));
+                location.verified = true;
+            } finally {
+                synchronized (this) {
+                    segment.writers--;
+                }
+            }
+            synchronized (this) {
+                if (closed || !segments.containsKey(location.segment)) {
+                    return;
+                    // - the segment was deleted while we were writing
+                }
+                appendRecord(key, location);
+                index.put(key, location);
+                evictOldSegments();
+                compactJournalIfNecessary();
+            }
+        } catch (IOException e) {
+            throw new IOError(e);
+        }
+    }
+
+    synchronized int numberOfTiles() {
+        return index.size();
+    }
+
+    synchronized long totalSegmentsSize() {
+        return totalSegmentsSize;
+    }
+
+    synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            for (Segment segment : segments.values()) {
+                segment.mapping.force();
+            }
+            if (indexChannel != null) {
+                indexChannel.force(false);
+                indexChannel.close();
+            }
+        } catch (IOException e) {
+            throw new IOError(e);
+        } finally {
+            segments.clear();
+            index.clear();
+            try {
+                lock.release();
+                lockFile.close();
+            } catch (IOException e) {
+                // nothing to do: the lock will be released by OS
+            }
+        }
+        if (DEBUG_LEVEL >= 1) {
+            System.out.println(AbstractPlanePyramidSource.class.getSimpleName()
+                + " has closed disk tile cache " + directory);
+        }
+    }
+
+    private void load(String sourceFingerprint) throws IOException {
+        final File fingerprintFile = new File(directory, "fingerprint");
+        final String fingerprint = FORMAT_VERSION + "\n" + ByteOrder.nativeOrder() + "\n" + sourceFingerprint;
+        final File indexFile = new File(directory, "index");
+        if (!(fingerprintFile.isFile() && indexFile.isFile()
+            && new String(Files.readAllBytes(fingerprintFile.toPath()), StandardCharsets.UTF_8).equals(fingerprint)))
+        {
+            if (DEBUG_LEVEL >= 1) {
+                System.out.println(AbstractPlanePyramidSource.class.getSimpleName()
+                    + " is clearing disk tile cache " + directory + ": it is absent or built for another source");
+            }
+            removeAllFiles();
+            Files.write(indexFile.toPath(), new byte[0]);
+            Files.write(fingerprintFile.toPath(), fingerprint.getBytes(StandardCharsets.UTF_8));
+        }
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                final Integer id = segmentId(file);
+                if (id != null) {
+                    final long size = file.length();
+                    segments.put(id, new Segment(id, size, size, map(file, size)));
+                    totalSegmentsSize += size;
+                }
+            }
+        }
+        final ByteBuffer records = ByteBuffer.wrap(Files.readAllBytes(indexFile.toPath()));
+        journalRecords = records.limit() / RECORD_SIZE;
+        for (long k = 0; k < journalRecords; k++) {
+            final int recordStart = records.position();
+            final Key key = readRecord(records);
+            if (key == null) {
+                journalRecords = k;
+                // - the rest of the journal is damaged, probably the JVM was killed while writing it
+                if (DEBUG_LEVEL >= 1) {
+                    System.out.println(AbstractPlanePyramidSource.class.getSimpleName()
+                        + " has found damaged record #" + k + " in disk tile cache " + directory);
+                }
+                break;
+            }
+            records.position(recordStart + RECORD_SIZE);
+        }
+        indexChannel = FileChannel.open(indexFile.toPath(), StandardOpenOption.WRITE);
+        indexChannel.truncate(journalRecords * RECORD_SIZE);
+        indexChannel.position(journalRecords * RECORD_SIZE);
+        evictOldSegments();
+        compactJournalIfNecessary();
+    }
+
+    // Reads the record at the current position and adds it into the index (if its segment exists);
+    // returns null if the record is damaged
+    private Key readRecord(ByteBuffer records) {
+        final CRC32 crc = new CRC32();
+        crc.update(records.array(), records.position(), RECORD_SIZE - 4);
+        if (records.getInt() != RECORD_MAGIC) {
+            return null;
+        }
+        final int segmentId = records.getInt();
+        final long offset = records.getLong();
+        final int level = records.getInt();
+        final int elementTypeCode = records.getInt();
+        final long bandCount = records.getLong();
+        final long minX = records.getLong();
+        final long minY = records.getLong();
+        final long maxX = records.getLong();
+        final long maxY = records.getLong();
+        final int dataCrc = records.getInt();
+        if (records.getInt() != (int) crc.getValue()
+            || (elementTypeCode & ~UNIFORM_FLAG) < 0 || (elementTypeCode & ~UNIFORM_FLAG) >= ELEMENT_TYPES.length)
+        {
+            return null;
+        }
+        final Key key = new Key(level, IRectangularArea.valueOf(
+            IPoint.valueOf(minX, minY), IPoint.valueOf(maxX, maxY)));
+        final Location location = new Location(segmentId, offset, elementTypeCode, bandCount, dataCrc);
+        // - not verified: the data could be not written to the disk before a crash
+        final Segment segment = segments.get(segmentId);
+        if (segment != null && offset + location.size(key.tile) <= segment.size) {
+            index.put(key, location);
+        }
+        return key;
+    }
+
+    private void appendRecord(Key key, Location location) throws IOException {
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.putInt(RECORD_MAGIC);
+        record.putInt(location.segment);
+        record.putLong(location.offset);
+        record.putInt(key.level);
+        record.putInt(location.elementTypeCode);
+        record.putLong(location.bandCount);
+        record.putLong(key.tile.min(0));
+        record.putLong(key.tile.min(1));
+        record.putLong(key.tile.max(0));
+        record.putLong(key.tile.max(1));
+        record.putInt(location.dataCrc);
+        final CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, RECORD_SIZE - 4);
+        record.putInt((int) crc.getValue());
+        record.flip();
+        while (record.hasRemaining()) {
+            indexChannel.write(record);
+        }
+        journalRecords++;
+    }
+
+    private Segment newSegment(long size) throws IOException {
+        final int id = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+        final File file = segmentFile(id);
+        final Segment result = new Segment(id, size, 0, map(file, size));
+        segments.put(id, result);
+        totalSegmentsSize += size;
+        if (DEBUG_LEVEL >= 2) {
+            System.out.println(AbstractPlanePyramidSource.class.getSimpleName()
+                + " has created new disk cache segment " + file);
+        }
+        return result;
+    }
+
+    private void evictOldSegments() {
+        while (totalSegmentsSize > maxDiskMemory && segments.size() > 1) {
+            final Segment oldest = segments.firstEntry().getValue();
+            if (oldest == currentSegment || oldest.writers > 0) {
+                break;
+            }
+            segments.remove(oldest.id);
+            totalSegmentsSize -= oldest.size;
+            index.values().removeIf(location -> location.segment == oldest.id);
+            final File file = segmentFile(oldest.id);
+            if (!file.delete()) {
+                file.deleteOnExit();
+                // - possible in Windows, where a mapped file cannot be deleted
+            }
+            if (DEBUG_LEVEL >= 2) {
+                System.out.printf(Locale.US, AbstractPlanePyramidSource.class.getSimpleName()
+                    + " has deleted disk cache segment %s, %.2f MB used%n", file, totalSegmentsSize / 1048576.0);
+            }
+        }
+    }
+
+    private void compactJournalIfNecessary() throws IOException {
+        if (journalRecords <= 2 * index.size() + 1024) {
+            return;
+        }
+        final File indexFile = new File(directory, "index");
+        final File newIndexFile = new File(directory, "index.tmp");
+        indexChannel.close();
+        indexChannel = FileChannel.open(newIndexFile.toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        journalRecords = 0;
+        for (Map.Entry<Key, Location> entry : index.entrySet()) {
+            appendRecord(entry.getKey(), entry.getValue());
+        }
+        indexChannel.force(false);
+        Files.move(newIndexFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        if (DEBUG_LEVEL >= 2) {
+            System.out.println(AbstractPlanePyramidSource.class.getSimpleName()
+                + " has compacted index of disk tile cache " + directory + ": " + journalRecords + " records");
+        }
+    }
+
+    private void removeAllFiles() throws IOException {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if ((segmentId(file) != null || file.getName().startsWith("index")) && !file.delete()) {
+                    throw new IOException("Cannot delete " + file);
+                }
+            }
+        }
+    }
+
+    // Returns CRC32 of size bytes, starting from the position of the buffer; does not change the buffer
+    private static int dataCrc(ByteBuffer buffer, long size) {
+        final ByteBuffer data = buffer.duplicate();
+        data.limit(data.position() + (int) size);
+        final CRC32 crc = new CRC32();
+        crc.update(data);
+        return (int) crc.getValue();
+    }
+
+    private File segmentFile(int id) {
+        return new File(directory, "segment-" + id + ".data");
+    }
+
+    private static Integer segmentId(File file) {
+        final String name = file.getName();
+        if (!(name.startsWith("segment-") && name.endsWith(".data"))) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(name.substring("segment-".length(), name.length() - ".data".length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static MappedByteBuffer map(File file, long size) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            // - the mapping stays valid after closing the channel
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static final class Key {
+        final int level;
+        final IRectangularArea tile;
+
+        private Key(int level, IRectangularArea tile) {
+            this.level = level;
+            this.tile = tile;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key that = (Key) o;
+            return level == that.level && tile.equals(that.tile);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * level + tile.hashCode();
+        }
+    }
+
+    private static final class Location {
+        final int segment;
+        final long offset;
+        final int elementTypeCode;
+        final long bandCount;
+        final int dataCrc;
+        volatile boolean verified = false;
+
+        private Location(int segment, long offset, int elementTypeCode, long bandCount, int dataCrc) {
+            this.segment = segment;
+            this.offset = offset;
+            this.elementTypeCode = elementTypeCode;
+            this.bandCount = bandCount;
+            this.dataCrc = dataCrc;
+        }
+
+        long size(IRectangularArea tile) {
+            return (elementTypeCode & UNIFORM_FLAG) != 0 ?
+                8 * bandCount :
+                Arrays.sizeOf(ELEMENT_TYPES[elementTypeCode], bandCount * tile.size(0) * tile.size(1));
+        }
+    }
+
+    private static final class Segment {
+        final int id;
+        final long size;
+        long used;
+        final MappedByteBuffer mapping;
+        int writers = 0;
+
+        private Segment(int id, long size, long used, MappedByteBuffer mapping) {
+            this.id = id;
+            this.size = size;
+            this.used = used;
+            this.mapping = mapping;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.algart.simagis.pyramid;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free recorder of durations and data volumes of operations, performed by plane pyramid sources:
+ * reading tiles, scaling, conversion into <tt>BufferedImage</tt> and rotation.
+ * For every operation and resolution level, it accumulates the number of calls, the total time and bytes
+ * and a logarithmic histogram of durations, which allows to estimate percentiles
+ * (with relative error not greater than 1/8).
+ *
+ * <p>Recording does not acquire any locks and does not format any strings: it only increments counters.
+ * All calculations are performed while creating {@link LatencyStats} snapshots.
+ *
+ * <p>This class is thread-safe.
+ */
+public final class LatencyRecorder {
+    public enum Operation {
+        READ,
+        SCALE,
+        CONVERT,
+        ROTATE
+    }
+
+    static final int SUB_BUCKET_BITS = 2;
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    static final int BUCKET_COUNT = 64 * SUB_BUCKET_COUNT;
+    // - 4 buckets for every power of two
+
+    private final List<ConcurrentHashMap<Integer, Histogram>> histograms;
+
+    public LatencyRecorder() {
+        final List<ConcurrentHashMap<Integer, Histogram>> histograms =
+            new ArrayList<ConcurrentHashMap<Integer, Histogram>>();
+        for (int k = 0; k < Operation.values().length; k++) {
+            histograms.add(new ConcurrentHashMap<Integer, Histogram>());
+        }
+        this.histograms = histograms;
+    }
+
+    /**
+     * Records one performed operation.
+     *
+     * @param operation       the kind of operation.
+     * @param resolutionLevel the resolution level of the processed data.
+     * @param bytes           the size of the processed data in bytes.
+     * @param time            the duration of the operation in nanoseconds; negative values are replaced with 0.
+     * @throws NullPointerException if <tt>operation</tt> is <tt>null</tt>.
+     */
+    public void record(Operation operation, int resolutionLevel, long bytes, long time) {
+        final ConcurrentHashMap<Integer, Histogram> map = histograms.get(operation.ordinal());
+        Histogram histogram = map.get(resolutionLevel);
+        if (histogram == null) {
+            histogram = map.computeIfAbsent(resolutionLevel, level -> new Histogram());
+        }
+        histogram.record(bytes, Math.max(0, time));
+    }
+
+    /**
+     * Returns statistics of the given operation for all resolution levels together.
+     *
+     * @param operation the kind of operation.
+     * @return statistics of the operation; {@link LatencyStats#resolutionLevel()} is &minus;1.
+     * @throws NullPointerException if <tt>operation</tt> is <tt>null</tt>.
+     */
+    public LatencyStats stats(Operation operation) {
+        long count = 0, bytes = 0, time = 0;
+        final long[] buckets = new long[BUCKET_COUNT];
+        for (Histogram histogram : histograms.get(operation.ordinal()).values()) {
+            count += histogram.count.sum();
+            bytes += histogram.bytes.sum();
+            time += histogram.time.sum();
+            histogram.addBuckets(buckets);
+        }
+        return new LatencyStats(operation, -1, count, bytes, time, buckets);
+    }
+
+    /**
+     * Returns statistics of the given operation for one resolution level.
+     *
+     * @param operation       the kind of operation.
+     * @param resolutionLevel the resolution level.
+     * @return statistics of the operation at this level (zero, if it was not performed).
+     * @throws NullPointerException if <tt>operation</tt> is <tt>null</tt>.
+     */
+    public LatencyStats stats(Operation operation, int resolutionLevel) {
+        final Histogram histogram = histograms.get(operation.ordinal()).get(resolutionLevel);
+        return histogram == null ?
+            new LatencyStats(operation, resolutionLevel, 0, 0, 0, new long[BUCKET_COUNT]) :
+            histogram.stats(operation, resolutionLevel);
+    }
+
+    /**
+     * Returns statistics of the given operation for every resolution level, where it was performed,
+     * in increasing order of levels.
+     *
+     * @param operation the kind of operation.
+     * @return statistics of all levels.
+     * @throws NullPointerException if <tt>operation</tt> is <tt>null</tt>.
+     */
+    public List<LatencyStats> levelStats(Operation operation) {
+        final List<LatencyStats> result = new ArrayList<LatencyStats>();
+        for (Map.Entry<Integer, Histogram> entry :
+            new TreeMap<Integer, Histogram>(histograms.get(operation.ordinal())).entrySet())
+        {
+            result.add(entry.getValue().stats(operation, entry.getKey()));
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("latencies:");
+        for (Operation operation : Operation.values()) {
+            final LatencyStats stats = stats(operation);
+            if (stats.count() > 0) {
+                sb.append(String.format("%n  ")).append(stats);
+            }
+        }
+        return sb.toString();
+    }
+
+    static int bucket(long time) {
+        if (time < SUB_BUCKET_COUNT) {
+            return (int) time;
+        }
+        final int log = 63 - Long.numberOfLeadingZeros(time);
+        final int sub = (int) (time >>> (log - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (log - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + sub;
+    }
+
+    static long bucketLowerBound(int bucket) {
+        if (bucket < SUB_BUCKET_COUNT) {
+            return bucket;
+        }
+        final int log = bucket / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        final long sub = bucket % SUB_BUCKET_COUNT;
+        return (SUB_BUCKET_COUNT + sub) << (log - SUB_BUCKET_BITS);
+    }
+
+    private static final class Histogram {
+        final LongAdder count = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+        final LongAdder time = new LongAdder();
+        final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+        void record(long bytes, long time) {
+            this.count.increment();
+            this.bytes.add(bytes);
+            this.time.add(time);
+            this.buckets.incrementAndGet(bucket(time));
+        }
+
+        void addBuckets(long[] result) {
+            for (int k = 0; k < BUCKET_COUNT; k++) {
+                result[k] += buckets.get(k);
+            }
+        }
+
+        LatencyStats stats(Operation operation, int resolutionLevel) {
+            final long[] result = new long[BUCKET_COUNT];
+            addBuckets(result);
+            return new LatencyStats(operation, resolutionLevel, count.sum(), bytes.sum(), time.sum(), result);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.algart.simagis.pyramid;
+
+import java.util.Locale;
+
+/**
+ * Snapshot of statistics of one kind of operations, collected by {@link LatencyRecorder}.
+ *
+ * <p>Percentiles are estimated by the logarithmic histogram of durations: the result is the middle
+ * of the histogram bucket, containing the required percentile. The snapshot is not atomic:
+ * operations, recorded while creating it, may be partially taken into account.
+ */
+public final class LatencyStats {
+    private final LatencyRecorder.Operation operation;
+    private final int resolutionLevel;
+    private final long count;
+    private final long bytes;
+    private final long time;
+    private final long[] buckets;
+    private final long bucketsSum;
+
+    LatencyStats(
+        LatencyRecorder.Operation operation, int resolutionLevel,
+        long count, long bytes, long time, long[] buckets)
+    {
+        assert buckets.length == LatencyRecorder.BUCKET_COUNT;
+        this.operation = operation;
+        this.resolutionLevel = resolutionLevel;
+        this.count = count;
+        this.bytes = bytes;
+        this.time = time;
+        this.buckets = buckets;
+        long sum = 0;
+        for (long n : buckets) {
+            sum += n;
+        }
+        this.bucketsSum = sum;
+        // - can little differ from count, because the snapshot is not atomic
+    }
+
+    public LatencyRecorder.Operation operation() {
+        return operation;
+    }
+
+    /**
+     * Returns the resolution level, described by this snapshot, or &minus;1 if it describes all levels.
+     *
+     * @return the resolution level or &minus;1.
+     */
+    public int resolutionLevel() {
+        return resolutionLevel;
+    }
+
+    /**
+     * Returns the number of performed operations.
+     *
+     * @return the number of operations.
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * Returns the total size of data, processed by all operations, in bytes.
+     *
+     * @return the total processed bytes.
+     */
+    public long bytes() {
+        return bytes;
+    }
+
+    public double totalTimeInMilliseconds() {
+        return time * 1e-6;
+    }
+
+    public double averageTimeInMilliseconds() {
+        return count == 0 ? 0.0 : time * 1e-6 / count;
+    }
+
+    /**
+     * Returns the average speed of processing data in megabytes per second (0.0 if there were no operations).
+     *
+     * @return the average speed.
+     */
+    public double throughputInMBPerSecond() {
+        return time == 0 ? 0.0 : bytes / 1048576.0 / (time * 1e-9);
+    }
+
+    /**
+     * Returns the estimated duration, which is not exceeded by the given part of operations.
+     * For example, <tt>percentileInMilliseconds(0.99)</tt> returns 99th percentile.
+     * Returns 0.0 if there were no operations.
+     *
+     * @param fraction the part of operations, from 0.0 to 1.0.
+     * @return the percentile of duration in milliseconds.
+     * @throws IllegalArgumentException if the argument is out of 0.0..1.0 range.
+     */
+    public double percentileInMilliseconds(double fraction) {
+        if (!(fraction >= 0.0 && fraction <= 1.0)) {
+            throw new IllegalArgumentException("Percentile fraction must be in 0.0..1.0 range, but it is "
+                + fraction);
+        }
+        if (bucketsSum == 0) {
+            return 0.0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(fraction * bucketsSum));
+        long sum = 0;
+        for (int k = 0; k < buckets.length; k++) {
+            sum += buckets[k];
+            if (sum >= rank) {
+                final long from = LatencyRecorder.bucketLowerBound(k);
+                final long to = k + 1 < buckets.length ? LatencyRecorder.bucketLowerBound(k + 1) : Long.MAX_VALUE;
+                return (from + (to - from) / 2) * 1e-6;
+            }
+        }
+        throw new AssertionError("Internal bug: percentile rank " + rank + " is not found");
+    }
+
+    public double p50InMilliseconds() {
+        return percentileInMilliseconds(0.5);
+    }
+
+    public double p99InMilliseconds() {
+        return percentileInMilliseconds(0.99);
+    }
+
+    public double p999InMilliseconds() {
+        return percentileInMilliseconds(0.999);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+            "%s%s: %d calls, %.1f MB / %.3f sec = %.3f MB/sec, p50 %.3f ms, p99 %.3f ms, p99.9 %.3f ms",
+            operation, resolutionLevel >= 0 ? " (level " + resolutionLevel + ")" : "",
+            count, bytes / 1048576.0, time * 1e-9, throughputInMBPerSecond(),
+            p50InMilliseconds(), p99InMilliseconds(), p999InMilliseconds());
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package net.algart.simagis.pyramid;
+
+import net.algart.arrays.*;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of temporary result buffers. It allows to avoid allocation of a new large Java array for every
+ * request in the paths, which need a temporary matrix for a short time: for example, the matrix, read
+ * from the parent source before scaling or rotation, or the scaled matrix before conversion
+ * to <tt>BufferedImage</tt>.
+ *
+ * <p>Buffers are divided into size classes: a class is specified by the element type and by the capacity
+ * 2<sup>k</sup> elements (the band count and the sizes of the matrix affect only the required capacity).
+ * A matrix is {@link #borrow borrowed} from the pool as {@link PooledMatrix}, which must be
+ * {@link PooledMatrix#close() closed} after usage; then the buffer is returned to the pool
+ * and reused by the next request of the same size class. The content of a borrowed matrix is undefined.
+ * The total memory of the buffers, kept in the pool, is limited by <tt>maxPooledMemory</tt>;
+ * extra returned buffers are left for the garbage collector.
+ *
+ * <p>This class is thread-safe.
+ */
+public final class MatrixBufferPool {
+    private static final int DEBUG_LEVEL = PlanePyramidSource.DEBUG_LEVEL;
+    private static final int MIN_LOG_CAPACITY = 12;
+    private static final int MAX_LOG_CAPACITY = 30;
+    private static final long GLOBAL_POOL_MEMORY = Math.max(0, Arrays.SystemSettings.getLongProperty(
+        "net.algart.simagis.pyramid.bufferPoolMemory", 64L * 1048576L));
+
+    private static final MatrixBufferPool GLOBAL = new MatrixBufferPool(GLOBAL_POOL_MEMORY);
+
+    private final long maxPooledMemory;
+    private final Map<Class<?>, ArrayDeque<UpdatablePArray>[]> freeBuffers =
+        new HashMap<Class<?>, ArrayDeque<UpdatablePArray>[]>();
+    private long pooledMemory = 0;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder savedBytes = new LongAdder();
+    private final LongAdder droppedBuffers = new LongAdder();
+
+    public MatrixBufferPool(long maxPooledMemory) {
+        if (maxPooledMemory < 0) {
+            throw new IllegalArgumentException("Negative maxPooledMemory");
+        }
+        this.maxPooledMemory = maxPooledMemory;
+    }
+
+    /**
+     * Returns the pool, shared by all sources of this package. Its memory limit is retrieved from the system
+     * property "<tt>net.algart.simagis.pyramid.bufferPoolMemory</tt>" (64 MB by default).
+     *
+     * @return the global buffer pool.
+     */
+    public static MatrixBufferPool global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Borrows a matrix <tt>bandCount</tt>&nbsp;x&nbsp;<tt>dimX</tt>&nbsp;x&nbsp;<tt>dimY</tt> from the pool.
+     * If there is no free buffer of the corresponding size class, or if the matrix is too large for this pool,
+     * a new buffer is allocated by {@link SimpleMemoryModel}. The content of the result is undefined.
+     *
+     * @param elementType the element type of the matrix.
+     * @param bandCount   the number of bands.
+     * @param dimX        the width.
+     * @param dimY        the height.
+     * @return the borrowed matrix; it must be closed after usage.
+     * @throws NullPointerException     if <tt>elementType</tt> is <tt>null</tt>.
+     * @throws IllegalArgumentException if one of the dimensions is negative
+     *                                  or if <tt>elementType</tt> is not a primitive type.
+     * @throws TooLargeArrayException   if the matrix is too large for Java memory.
+     */
+    public PooledMatrix<UpdatablePArray> borrow(Class<?> elementType, long bandCount, long dimX, long dimY) {
+        if (elementType == null) {
+            throw new NullPointerException("Null elementType");
+        }
+        if (bandCount < 0 || dimX < 0 || dimY < 0) {
+            throw new IllegalArgumentException("Negative matrix dimensions: "
+                + bandCount + "x" + dimX + "x" + dimY);
+        }
+        final long length = Arrays.longMul(bandCount, dimX, dimY);
+        final int log = logCapacity(length);
+        if (log < 0 || Arrays.sizeOf(elementType, 1L << log) > maxPooledMemory) {
+            misses.increment();
+            return new PooledMatrix<UpdatablePArray>(
+                Arrays.SMM.newMatrix(UpdatablePArray.class, elementType, bandCount, dimX, dimY), null, null);
+        }
+        UpdatablePArray buffer = null;
+        synchronized (this) {
+            final ArrayDeque<UpdatablePArray>[] buffers = freeBuffers.get(elementType);
+            if (buffers != null && buffers[log] != null) {
+                buffer = buffers[log].pollFirst();
+                if (buffer != null) {
+                    pooledMemory -= Arrays.sizeOf(buffer);
+                }
+            }
+        }
+        if (buffer != null) {
+            hits.increment();
+            savedBytes.add(Arrays.sizeOf(buffer));
+        } else {
+            misses.increment();
+            buffer = (UpdatablePArray) Arrays.SMM.newUnresizableArray(elementType, 1L << log);
+            if (DEBUG_LEVEL >= 3) {
+                System.out.printf(Locale.US, "%s is allocating %s buffer %.2f MB%n",
+                    MatrixBufferPool.class.getSimpleName(), elementType, Arrays.sizeOf(buffer) / 1048576.0);
+            }
+        }
+        return new PooledMatrix<UpdatablePArray>(
+            Matrices.matrix((UpdatablePArray) buffer.subArr(0, length), bandCount, dimX, dimY), this, buffer);
+    }
+
+    /**
+     * Removes all free buffers from the pool. Borrowed buffers are not affected.
+     */
+    public synchronized void clear() {
+        freeBuffers.clear();
+        pooledMemory = 0;
+    }
+
+    public synchronized long pooledMemory() {
+        return pooledMemory;
+    }
+
+    public long maxPooledMemory() {
+        return maxPooledMemory;
+    }
+
+    public BufferPoolStats stats() {
+        final long pooledMemory = pooledMemory();
+        return new BufferPoolStats(hits.sum(), misses.sum(), savedBytes.sum(), droppedBuffers.sum(),
+            pooledMemory, maxPooledMemory);
+    }
+
+    @Override
+    public String toString() {
+        return "matrix buffer pool (" + stats() + ")";
+    }
+
+    @SuppressWarnings("unchecked")
+    void release(UpdatablePArray buffer) {
+        final long size = Arrays.sizeOf(buffer);
+        final int log = Long.numberOfTrailingZeros(buffer.length());
+        synchronized (this) {
+            if (pooledMemory + size <= maxPooledMemory) {
+                ArrayDeque<UpdatablePArray>[] buffers = freeBuffers.get(buffer.elementType());
+                if (buffers == null) {
+                    buffers = new ArrayDeque[MAX_LOG_CAPACITY + 1];
+                    freeBuffers.put(buffer.elementType(), buffers);
+                }
+                if (buffers[log] == null) {
+                    buffers[log] = new ArrayDeque<UpdatablePArray>();
+                }
+                buffers[log].addFirst(buffer);
+                // - LIFO: the last used buffer is probably in CPU cache
+                pooledMemory += size;
+                return;
+            }
+        }
+        droppedBuffers.increment();
+    }
+
+    // Returns -1 if the length is too large for pooling
+    private static int logCapacity(long length) {
+        if (length > 1L << MAX_LOG_CAPACITY) {
+            return -1;
+        }
+        final long capacity = Math.max(length, 1L << MIN_LOG_CAPACITY);
+        return 64 - Long.numberOfLeadingZeros(capacity - 1);
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.algart.simagis.pyramid;
+
+import net.algart.arrays.*;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Locale;
+
+/**
+ * Allocator of direct (off-heap) memory blocks for {@link TileCache}.
+ *
+ * <p>Blocks have sizes 2<sup>k</sup>; released blocks are not returned to the system immediately,
+ * but are kept in free lists (one list per size) and reused for new tiles of the same size class.
+ * So, a cache, working with tiles of the same size, allocates direct memory only while growing
+ * and does not allocate it at all in the stable state. The total memory in free lists is limited
+ * by <tt>maxPooledMemory</tt>; extra released blocks are freed immediately via the cleaner
+ * of the direct buffer (if this JVM does not allow this, they are freed by the garbage collector).
+ * The caller must guarantee that a released block is not accessed anymore.
+ *
+ * <p>The data in blocks are accessed via AlgART arrays, created by {@link BufferMemoryModel}:
+ * they are usual {@link PArray} views without copying.
+ *
+ * <p>This class is thread-safe.
+ */
+final class OffHeapTileMemory {
+    private static final int DEBUG_LEVEL = PlanePyramidSource.DEBUG_LEVEL;
+    private static final int MIN_LOG_BLOCK_SIZE = 12;
+    private static final int MAX_LOG_BLOCK_SIZE = 30;
+    // - 4 KB..1 GB; larger tiles are stored in Java heap
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+    // - Java 9+
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            final Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+        } catch (Exception e) {
+            invokeCleaner = null;
+            // - Java 8: we will use DirectBuffer.cleaner()
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final long maxPooledMemory;
+    private final ArrayDeque<ByteBuffer>[] freeBlocks;
+    private long pooledMemory = 0;
+    private long allocatedMemory = 0;
+
+    @SuppressWarnings("unchecked")
+    OffHeapTileMemory(long maxPooledMemory) {
+        this.maxPooledMemory = maxPooledMemory;
+        this.freeBlocks = new ArrayDeque[MAX_LOG_BLOCK_SIZE + 1];
+        for (int k = MIN_LOG_BLOCK_SIZE; k <= MAX_LOG_BLOCK_SIZE; k++) {
+            freeBlocks[k] = new ArrayDeque<ByteBuffer>();
+        }
+    }
+
+    /**
+     * Returns <tt>true</tt> if the matrix can be stored in off-heap memory by {@link #copyToBlock}.
+     * Bit matrices and constant matrices (n-copies or other lazy matrices, created by
+     * {@link PlanePyramidTools#asUniform}) are stored in Java heap: the first are not supported
+     * by {@link BufferMemoryModel}, the second occupy almost no memory.
+     *
+     * @param matrix some tile.
+     * @return whether this tile can be stored off-heap.
+     */
+    static boolean isSuitable(Matrix<? extends PArray> matrix) {
+        final PArray array = matrix.array();
+        return !(array instanceof BitArray)
+            && SimpleMemoryModel.isSimpleArray(array)
+            && Arrays.sizeOf(array) <= 1L << MAX_LOG_BLOCK_SIZE;
+    }
+
+    static long blockSize(Matrix<? extends PArray> matrix) {
+        final long size = Math.max(Arrays.sizeOf(matrix.array()), 1L << MIN_LOG_BLOCK_SIZE);
+        return Long.highestOneBit(size - 1) << 1;
+    }
+
+    ByteBuffer allocate(long size) {
+        assert size == Long.highestOneBit(size) && size <= 1L << MAX_LOG_BLOCK_SIZE : "invalid block size " + size;
+        final int log = Long.numberOfTrailingZeros(size);
+        synchronized (this) {
+            final ByteBuffer block = freeBlocks[log].pollFirst();
+            if (block != null) {
+                pooledMemory -= size;
+                return block;
+            }
+            allocatedMemory += size;
+        }
+        if (DEBUG_LEVEL >= 2) {
+            System.out.printf(Locale.US, AbstractPlanePyramidSource.class.getSimpleName()
+                + " is allocating off-heap block %.2f MB%n", size / 1048576.0);
+        }
+        return ByteBuffer.allocateDirect((int) size).order(ByteOrder.nativeOrder());
+    }
+
+    void release(ByteBuffer block) {
+        final int size = block.capacity();
+        final int log = Integer.numberOfTrailingZeros(size);
+        synchronized (this) {
+            if (pooledMemory + size <= maxPooledMemory) {
+                freeBlocks[log].addFirst(block);
+                pooledMemory += size;
+                return;
+            }
+            allocatedMemory -= size;
+        }
+        free(block);
+    }
+
+    /**
+     * Drops all free blocks. Blocks, which are still used by tiles, are not affected.
+     */
+    void clear() {
+        final ArrayDeque<ByteBuffer> dropped = new ArrayDeque<ByteBuffer>();
+        synchronized (this) {
+            for (int k = MIN_LOG_BLOCK_SIZE; k <= MAX_LOG_BLOCK_SIZE; k++) {
+                dropped.addAll(freeBlocks[k]);
+                freeBlocks[k].clear();
+            }
+            allocatedMemory -= pooledMemory;
+            pooledMemory = 0;
+        }
+        for (ByteBuffer block : dropped) {
+            free(block);
+        }
+    }
+
+    synchronized long allocatedMemory() {
+        return allocatedMemory;
+    }
+
+    synchronized long pooledMemory() {
+        return pooledMemory;
+    }
+
+    private static void free(ByteBuffer block) {
+        try {
+            if (INVOKE_CLEANER != null) {
+                INVOKE_CLEANER.invoke(UNSAFE, block);
+            } else {
+                final Method cleanerMethod = block.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                final Object cleaner = cleanerMethod.invoke(block);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        } catch (Exception e) {
+            if (DEBUG_LEVEL >= 2) {
+                System.out.println(AbstractPlanePyramidSource.class.getSimpleName()
+                    + " cannot free off-heap block explicitly, it will be freed by GC: " + e);
+            }
+        }
+    }
+
+    /**
+     * Copies the matrix into the given block and returns a matrix, viewing the block.
+     * The block must be allocated for this matrix: its capacity must be not less than the matrix size in bytes.
+     *
+     * @param block  the direct buffer, returned by {@link #allocate(long)}.
+     * @param matrix the copied matrix.
+     * @return new matrix with the same dimensions and content, based on the block.
+     */
+    static Matrix<? extends PArray> copyToBlock(ByteBuffer block, Matrix<? extends PArray> matrix) {
+        final PArray source = matrix.array();
+        final ByteBuffer buffer = block.duplicate().order(block.order());
+        buffer.clear();
+        final UpdatablePArray result = asUpdatableArray(buffer, source.elementType(), source.length());
+        result.copy(source);
+        return matrix.matrix(result);
+    }
+
+    /**
+     * Returns an AlgART array, viewing the content of the byte buffer (from its position),
+     * with the byte order of the buffer.
+     *
+     * @param buffer      the buffer.
+     * @param elementType the element type of the result; <tt>boolean.class</tt> is not supported.
+     * @param length      the length of the result.
+     * @return the view of the buffer.
+     */
+    static UpdatablePArray asUpdatableArray(ByteBuffer buffer, Class<?> elementType, long length) {
+        final UpdatablePArray view;
+        if (elementType == byte.class) {
+            view = BufferMemoryModel.asUpdatableByteArray(buffer);
+        } else if (elementType == char.class) {
+            view = BufferMemoryModel.asUpdatableCharArray(buffer);
+        } else if (elementType == short.class) {
+            view = BufferMemoryModel.asUpdatableShortArray(buffer);
+        } else if (elementType == int.class) {
+            view = BufferMemoryModel.asUpdatableIntArray(buffer);
+        } else if (elementType == long.class) {
+            view = BufferMemoryModel.asUpdatableLongArray(buffer);
+        } else if (elementType == float.class) {
+            view = BufferMemoryModel.asUpdatableFloatArray(buffer);
+        } else if (elementType == double.class) {
+            view = BufferMemoryModel.asUpdatableDoubleArray(buffer);
+        } else {
+            throw new AssertionError("Unsupported element type for byte buffers: " + elementType);
+        }
+        return (UpdatablePArray) view.subArr(0, length);
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.algart.simagis.pyramid;
+
+import java.io.IOError;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
+
+/**
+ * Parallel processing of independent parts of one request, used by {@link AbstractPlanePyramidSource}
+ * for reading tiles and by <tt>ScalablePlanePyramidSource</tt> for scaling strips.
+ *
+ * <p>The current thread processes parts too, so there is no deadlock even if all threads of the executor
+ * are busy. The {@link ReadingCancellation#current() current cancellation token},
+ * the {@link ReadingPriority#current() current priority} and the {@link ReadingScheduler} permit,
+ * held by the current thread, are used in all threads; the token is checked before every part.
+ * After the first exception, no new parts are started. The method returns or throws only after
+ * all helper threads, which have started, have finished: so, they never access the results after it.
+ */
+public final class ParallelProcessing {
+    private ParallelProcessing() {
+    }
+
+    /**
+     * Calls <tt>processor.accept(k)</tt> for all <tt>k=0..count-1</tt> in up to <tt>parallelism</tt> threads.
+     * If some call throws an exception, it is thrown by this method. If the current thread is interrupted
+     * while waiting for helper threads, this method throws <tt>IOError</tt> with
+     * <tt>InterruptedException</tt> as the cause (after all started helpers finish) and keeps
+     * the interrupted status of the thread. If the executor rejects a helper, the parts are processed
+     * by the current thread and the helpers, which are already started; if it throws another exception,
+     * this exception is thrown after all started helpers finish.
+     *
+     * @param count       the number of parts.
+     * @param processor   the processor of one part.
+     * @param parallelism the maximal number of threads, including the current one.
+     * @param executor    the executor for helper threads; if <tt>null</tt>, a pool of daemon threads,
+     *                    shared by all sources, is used.
+     */
+    public static void processAll(int count, IntConsumer processor, int parallelism, Executor executor) {
+        if (processor == null) {
+            throw new NullPointerException("Null processor");
+        }
+        if (count < 0) {
+            throw new IllegalArgumentException("Negative count");
+        }
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Zero or negative parallelism");
+        }
+        final ReadingCancellation cancellation = ReadingCancellation.current();
+        final ReadingPriority priority = ReadingPriority.current();
+        final ReadingScheduler.Permit permit = ReadingScheduler.held();
+        final AtomicInteger nextPart = new AtomicInteger(0);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final Runnable worker = () -> {
+            try (ReadingCancellation.Scope scope = cancellation != null ? cancellation.enter() : null;
+                 ReadingPriority.Scope priorityScope = priority.enter();
+                 ReadingScheduler.Sharing sharing = permit != null ? permit.share() : null)
+            {
+                for (int k; failure.get() == null && (k = nextPart.getAndIncrement()) < count; ) {
+                    if (cancellation != null) {
+                        cancellation.check();
+                    }
+                    processor.accept(k);
+                }
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        };
+        final List<Helper> helpers = new ArrayList<Helper>();
+        if (executor == null) {
+            executor = Pool.EXECUTOR;
+        }
+        for (int k = 1, n = Math.min(parallelism, count); k < n; k++) {
+            final Helper helper = new Helper(worker);
+            helpers.add(helper);
+            // - before executing: if it fails, the helper is claimed or awaited below anyway
+            try {
+                executor.execute(helper);
+            } catch (RejectedExecutionException e) {
+                break;
+                // - for example, a bounded executor is full: the current thread processes the remaining parts
+            } catch (RuntimeException | Error e) {
+                failure.compareAndSet(null, e);
+                break;
+            }
+        }
+        worker.run();
+        boolean interrupted = false;
+        for (Helper helper : helpers) {
+            if (!helper.claim()) {
+                // - this helper has already started: we must wait until it stops accessing the results
+                for (; ; ) {
+                    try {
+                        helper.finished.await();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                        failure.compareAndSet(null, e);
+                        // - stops other helpers as soon as possible
+                    }
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        final Throwable e = failure.get();
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        if (e != null) {
+            throw new IOError(e);
+        }
+    }
+
+    private static final class Helper implements Runnable {
+        private final Runnable worker;
+        private final AtomicBoolean started = new AtomicBoolean(false);
+        private final CountDownLatch finished = new CountDownLatch(1);
+
+        private Helper(Runnable worker) {
+            this.worker = worker;
+        }
+
+        @Override
+        public void run() {
+            if (!started.compareAndSet(false, true)) {
+                return;
+                // - claimed by the caller: all parts are already processed
+            }
+            try {
+                worker.run();
+            } finally {
+                finished.countDown();
+            }
+        }
+
+        // Returns true if this helper has not started yet: after this, it will never do anything
+        boolean claim() {
+            return started.compareAndSet(false, true);
+        }
+    }
+
+    private static class Pool {
+        static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable,
+                ParallelProcessing.class.getSimpleName() + " helper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // - initialized while the first using; unused threads are stopped in 60 seconds
+    }
+}
@@ -33,8 +33,11 @@ import net.algart.math.IRectangularArea;
 import net.algart.math.functions.Func;
 
 import java.nio.channels.NotYetConnectedException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public interface PlanePyramidSource {
     int DIM_BAND = 0;
@@ -360,6 +363,112 @@ public interface PlanePyramidSource {
         throws NoSuchElementException, NotYetConnectedException;
     // throws if !isResolutionLevelAvailable(resolutionLevel), if !isDataReady()
 
+    /**
+     * Version of {@link #readSubMatrix(int, long, long, long, long)} for callers, which need the result
+     * only for a short time: for example, for scaling or for conversion into <tt>BufferedImage</tt>.
+     * The result should be {@link PooledMatrix#close() closed} after usage, usually in a try-with-resources
+     * statement; then its memory may be reused by the next requests (see {@link MatrixBufferPool}).
+     *
+     * <p>The default implementation just returns {@link PooledMatrix#unpooled(Matrix)
+     * PooledMatrix.unpooled(readSubMatrix(...))}. {@link AbstractPlanePyramidSource} borrows the result matrix,
+     * consisting of several tiles, from the {@link MatrixBufferPool#global() global buffer pool}.
+     * If a subclass overrides <tt>readSubMatrix</tt>, it should override this method too.
+     *
+     * @param resolutionLevel the level.
+     * @param fromX           starting x-coordinate of the area (inclusive).
+     * @param fromY           starting y-coordinate of the area (inclusive).
+     * @param toX             ending x-coordinate of the area (exclusive).
+     * @param toY             ending y-coordinate of the area (exclusive).
+     * @return the same data as <tt>readSubMatrix</tt>, maybe in a buffer, borrowed from a pool.
+     */
+    default PooledMatrix<? extends PArray> readPooledSubMatrix(
+        int resolutionLevel, long fromX, long fromY, long toX, long toY)
+        throws NoSuchElementException, NotYetConnectedException
+    {
+        return PooledMatrix.unpooled(readSubMatrix(resolutionLevel, fromX, fromY, toX, toY));
+    }
+
+    /**
+     * Asynchronous version of {@link #readSubMatrix(int, long, long, long, long)}: returns a future,
+     * which will be completed by the same result (or exceptionally by the same exception).
+     * It allows servers to process many simultaneous requests by a little pool of threads.
+     *
+     * <p>The default implementation just executes <tt>readSubMatrix</tt> by the given executor
+     * in the scope of the {@link ReadingCancellation#current() current} cancellation token of the calling thread.
+     * {@link AbstractPlanePyramidSource} with enabled tile caching composes the result from
+     * asynchronous loading of tiles: the tiles, found in the cache, are copied immediately,
+     * and the request does not occupy any thread while waiting for tiles, being loaded by other requests.
+     *
+     * @param resolutionLevel the level.
+     * @param fromX           starting x-coordinate of the area (inclusive).
+     * @param fromY           starting y-coordinate of the area (inclusive).
+     * @param toX             ending x-coordinate of the area (exclusive).
+     * @param toY             ending y-coordinate of the area (exclusive).
+     * @param executor        the executor for reading the data.
+     * @return the future result of reading.
+     * @throws NullPointerException if <tt>executor</tt> is <tt>null</tt>.
+     */
+    default CompletableFuture<Matrix<? extends PArray>> readSubMatrixAsync(
+        int resolutionLevel, long fromX, long fromY, long toX, long toY, Executor executor)
+    {
+        if (executor == null) {
+            throw new NullPointerException("Null executor");
+        }
+        return CompletableFuture.supplyAsync(
+            () -> readSubMatrix(resolutionLevel, fromX, fromY, toX, toY), ReadingCancellation.propagating(executor));
+    }
+
+    /**
+     * Reads several areas of the same level. The result contains the matrices for all areas
+     * in the same order as in the list; every matrix is the same as the result of
+     * {@link #readSubMatrix(int, long, long, long, long) readSubMatrix(resolutionLevel, area.min(0),
+     * area.min(1), area.max(0) + 1, area.max(1) + 1)}. It is useful for clients, which need many little
+     * (maybe overlapping) areas at once, like renderers of annotations.
+     *
+     * <p>The default implementation just calls <tt>readSubMatrix</tt> for every area.
+     * {@link AbstractPlanePyramidSource} finds all tiles, necessary for these areas, loads every tile
+     * only once (in parallel, if {@link AbstractPlanePyramidSource#setTileReadingParallelism(int)
+     * tile reading parallelism} is greater than 1) and copies the results from the loaded tiles.
+     *
+     * @param resolutionLevel the level.
+     * @param areas           the areas to read; every area must be 2-dimensional.
+     * @return the matrices, read from the given areas.
+     * @throws NullPointerException     if <tt>areas</tt> or one of its elements is <tt>null</tt>.
+     * @throws IllegalArgumentException if one of the areas is not 2-dimensional.
+     */
+    default List<Matrix<? extends PArray>> readSubMatrices(int resolutionLevel, List<IRectangularArea> areas)
+        throws NoSuchElementException, NotYetConnectedException
+    {
+        PlanePyramidTools.checkAreas(areas);
+        final List<Matrix<? extends PArray>> result = new ArrayList<Matrix<? extends PArray>>();
+        for (IRectangularArea area : areas) {
+            result.add(readSubMatrix(resolutionLevel, area.min(0), area.min(1), area.max(0) + 1, area.max(1) + 1));
+        }
+        return result;
+    }
+
+    /**
+     * Informs this source that the given area will probably be requested by
+     * {@link #readSubMatrix(int, long, long, long, long)} soon; for example, when the viewer
+     * shows some area at the neighbouring level, the user may zoom in or out.
+     * The source may start loading its data in background threads with low priority.
+     * This method returns immediately; the arguments, which are out of ranges of the level,
+     * are ignored or cut. Implementations must not throw exceptions because of I/O errors
+     * while loading the data.
+     *
+     * <p>The default implementation does nothing.
+     * {@link AbstractPlanePyramidSource} loads the tiles of this area into the tile cache,
+     * if {@link AbstractPlanePyramidSource#isTilePrefetchingEnabled() tile prefetching} is enabled.
+     *
+     * @param resolutionLevel the level of the area.
+     * @param fromX           starting x-coordinate of the area (inclusive).
+     * @param fromY           starting y-coordinate of the area (inclusive).
+     * @param toX             ending x-coordinate of the area (exclusive).
+     * @param toY             ending y-coordinate of the area (exclusive).
+     */
+    default void prefetchSubMatrix(int resolutionLevel, long fromX, long fromY, long toX, long toY) {
+    }
+
     boolean isFullMatrixSupported();
 
     // Works faster than equivalent readSubMatrix call if possible;
@@ -25,6 +25,7 @@
 package net.algart.simagis.pyramid;
 
 import net.algart.arrays.*;
+import net.algart.math.IRectangularArea;
 import net.algart.math.Range;
 import net.algart.math.functions.AbstractFunc;
 import net.algart.math.functions.ConstantFunc;
@@ -39,6 +40,8 @@ import java.util.List;
 public class PlanePyramidTools {
     public static final int MIN_PYRAMID_LEVEL_SIDE = 256;
 
+    private static final int UNIFORM_SCAN_CHUNK_PIXELS = 512;
+
     private PlanePyramidTools() {
     }
 
@@ -116,6 +119,28 @@ public class PlanePyramidTools {
         return exception;
     }
 
+    /**
+     * Checks the areas, passed to {@link PlanePyramidSource#readSubMatrices(int, List)}.
+     *
+     * @param areas list of areas.
+     * @throws NullPointerException     if <tt>areas</tt> or one of its elements is <tt>null</tt>.
+     * @throws IllegalArgumentException if one of the areas is not 2-dimensional.
+     */
+    public static void checkAreas(List<IRectangularArea> areas) {
+        if (areas == null) {
+            throw new NullPointerException("Null areas");
+        }
+        for (int k = 0, n = areas.size(); k < n; k++) {
+            final IRectangularArea area = areas.get(k);
+            if (area == null) {
+                throw new NullPointerException("Null area #" + k);
+            }
+            if (area.coordCount() != 2) {
+                throw new IllegalArgumentException("Area #" + k + " is not 2-dimensional: " + area);
+            }
+        }
+    }
+
     public static int defaultCompression(PlanePyramidSource source) {
         if (source.numberOfResolutions() <= 1
             || !source.isResolutionLevelAvailable(0)
@@ -254,30 +279,134 @@ public class PlanePyramidTools {
             }
         }
         assert bandCount == color.length;
-        final PArray pattern = asBackground(m.elementType(), m.dim(1), m.dim(2), color).array();
-        assert pattern.length() % color.length == 0;
-        if (Arrays.isNCopies(pattern)) {
-            array.copy(pattern);
-        } else {
-            final long n = pattern.length();
-            final int blockLen = 1024 * color.length;
-            final int initialLen = (int) Math.min(n, blockLen);
-            if (initialLen == n) {
-                array.copy(pattern);
-            } else {
-                // Current version of asBackground makes not too efficient matrix,
-                // so an attempt to copy the whole pattern could work relatively slow.
-                final Object buffer = pattern.newJavaArray(initialLen);
-                pattern.getData(0, buffer, 0, initialLen);
-                // Note: we should not try to use, as a work buffer, the beginning of the resulting array itself.
-                // Some forms of arrays are "write-only", for example, underlying arrays of large submatrices,
-                // which do not fully lie inside the containing matrix: we may write to the elements outside
-                // the original matrix, but this will not have an effect.
-                for (long p = 0; p < n; p += blockLen) {
-                    array.setData(p, buffer, 0, (int) Math.min(blockLen, n - p));
+        fillByPattern(array, asBackground(m.elementType(), m.dim(1), m.dim(2), color).array(), color.length);
+    }
+
+    /**
+     * Fills the matrix by the given pixel: every element with 0th coordinate (band index) <i>k</i>
+     * is set to <tt>pixel[k]</tt>. Unlike {@link #fillMatrix(Matrix, double[])}, the values are not
+     * normalized: they are stored "as is", like in {@link UpdatablePArray#setDouble(long, double)}.
+     *
+     * @param m     the filled matrix.
+     * @param pixel the values of all bands; its length must be equal to <tt>m.dim(0)</tt>.
+     */
+    public static void fillMatrixByPixel(Matrix<? extends UpdatablePArray> m, double[] pixel) {
+        if (m.dim(0) != pixel.length) {
+            throw new IllegalArgumentException("Number of bands " + m.dim(0)
+                + " does not match the pixel length " + pixel.length);
+        }
+        fillByPattern(m.array(), asUniform(m.elementType(), pixel, m.dim(1), m.dim(2)).array(), pixel.length);
+    }
+
+    /**
+     * Returns a constant matrix <tt>pixel.length</tt>&nbsp;x&nbsp;<tt>dimX</tt>&nbsp;x&nbsp;<tt>dimY</tt>,
+     * where every element with 0th coordinate (band index) <i>k</i> is equal to <tt>pixel[k]</tt>.
+     * If all bands are equal, it is a usual {@link Arrays#isNCopies(Array) n-copies} matrix,
+     * which is processed specially by all sources of this package and does not occupy memory.
+     * In other case, it is a lazy matrix, based on a function, which also does not occupy memory.
+     *
+     * <p>Unlike {@link #asBackground(Class, long, long, double[])}, the values are not normalized.
+     *
+     * @param elementType the element type of the result.
+     * @param pixel       the values of all bands.
+     * @param dimX        the width of the result.
+     * @param dimY        the height of the result.
+     * @return the constant matrix.
+     */
+    public static Matrix<? extends PArray> asUniform(Class<?> elementType, double[] pixel, long dimX, long dimY) {
+        if (pixel.length == 0) {
+            throw new IllegalArgumentException("Number of bands must be positive");
+        }
+        final double[] values = pixel.clone();
+        final Class<PArray> arrayType = Arrays.type(PArray.class, elementType);
+        boolean identical = true;
+        for (double v : values) {
+            identical &= v == values[0];
+        }
+        if (identical) {
+            return Matrices.constantMatrix(values[0], arrayType, values.length, dimX, dimY);
+        }
+        return Matrices.asCoordFuncMatrix(
+            new AbstractFunc() {
+                @Override
+                public double get(double... x) {
+                    return values[(int) x[0]];
                 }
+
+                @Override
+                public double get(double x0, double x1, double x2) {
+                    return values[(int) x0];
+                }
+            },
+            arrayType, values.length, dimX, dimY);
+    }
+
+    /**
+     * Checks whether all pixels of the matrix are identical, and if it is so, returns the values of all
+     * bands of the pixel; in other case, returns <tt>null</tt>. The 0th dimension of the matrix
+     * is the band index.
+     *
+     * <p>For {@link Arrays#isNCopies(Array) n-copies} matrices, this method works immediately.
+     * In other case, it compares the data with the first pixel by chunks, and stops at the first chunk,
+     * containing another pixel: so, for usual (non-uniform) images this method works very quickly.
+     * The loops, comparing chunks, have no branches and can be vectorized by JVM.
+     *
+     * <p>For matrices of <tt>long</tt> elements, this method returns <tt>null</tt>, if some band of the pixel
+     * cannot be restored from its <tt>double</tt> value exactly (it is possible for values greater than
+     * 2<sup>53</sup> by absolute value): such matrices are never considered as uniform, because the tile
+     * pipeline stores the uniform pixel as <tt>double</tt> values.
+     *
+     * @param m the checked matrix.
+     * @return the pixel, filling the whole matrix, or <tt>null</tt> if the matrix is not uniform.
+     */
+    public static double[] findUniformPixel(Matrix<? extends PArray> m) {
+        final long bandCount = m.dim(0);
+        final PArray array = m.array();
+        final long n = array.length();
+        if (n == 0 || bandCount == 0 || bandCount > 32) {
+            return null;
+        }
+        final double[] result = new double[(int) bandCount];
+        for (int k = 0; k < result.length; k++) {
+            result[k] = array.getDouble(k);
+            if (array instanceof LongArray && (long) result[k] != ((LongArray) array).getLong(k)) {
+                return null;
+                // - the pixel cannot be restored from double values
             }
         }
+        if (Arrays.isNCopies(array)) {
+            return result;
+        }
+        final int chunk = (int) Math.min(n, bandCount * UNIFORM_SCAN_CHUNK_PIXELS);
+        final Object pattern = array.newJavaArray(chunk);
+        array.getData(0, pattern, 0, result.length);
+        for (int filled = result.length; filled < chunk; filled *= 2) {
+            System.arraycopy(pattern, 0, pattern, filled, Math.min(filled, chunk - filled));
+        }
+        final Object buffer = array.newJavaArray(chunk);
+        for (long p = 0; p < n; p += chunk) {
+            final int len = (int) Math.min(chunk, n - p);
+            array.getData(p, buffer, 0, len);
+            if (!equalChunks(buffer, pattern, len)) {
+                return null;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns {@link #asUniform(Class, double[], long, long) constant matrix}, equal to the given one,
+     * if it is {@link #findUniformPixel(Matrix) uniform}, or the argument itself in other case.
+     *
+     * @param m some matrix.
+     * @return the constant version of this matrix, if it is possible.
+     */
+    public static Matrix<? extends PArray> compactIfUniform(Matrix<? extends PArray> m) {
+        if (Arrays.isNCopies(m.array())) {
+            return m;
+        }
+        final double[] pixel = findUniformPixel(m);
+        return pixel == null ? m : asUniform(m.elementType(), pixel, m.dim(1), m.dim(2));
     }
 
     public static List<Matrix<? extends PArray>> buildPyramid(Matrix<? extends PArray> matrix) {
@@ -301,7 +430,7 @@ public class PlanePyramidTools {
                 // in other words, we prefer to lose 1 last pixels, but provide strict
                 // integer compression: AlgART libraries are optimized for this situation
             }
-            Matrices.resize(null, Matrices.ResizingMethod.AVERAGING, compressed, matrix);
+            BoxAveraging.resize(null, Matrices.ResizingMethod.AVERAGING, compressed, matrix);
             matrix = compressed;
             result.add(matrix);
             dimX /= compression;
@@ -315,6 +444,100 @@ public class PlanePyramidTools {
         return result;
     }
 
+    private static void fillByPattern(UpdatablePArray array, PArray pattern, int bandCount) {
+        assert pattern.length() % bandCount == 0;
+        if (Arrays.isNCopies(pattern)) {
+            array.copy(pattern);
+        } else {
+            final long n = pattern.length();
+            final int blockLen = 1024 * bandCount;
+            final int initialLen = (int) Math.min(n, blockLen);
+            if (initialLen == n) {
+                array.copy(pattern);
+            } else {
+                // Current version of asBackground makes not too efficient matrix,
+                // so an attempt to copy the whole pattern could work relatively slow.
+                final Object buffer = pattern.newJavaArray(initialLen);
+                pattern.getData(0, buffer, 0, initialLen);
+                // Note: we should not try to use, as a work buffer, the beginning of the resulting array itself.
+                // Some forms of arrays are "write-only", for example, underlying arrays of large submatrices,
+                // which do not fully lie inside the containing matrix: we may write to the elements outside
+                // the original matrix, but this will not have an effect.
+                for (long p = 0; p < n; p += blockLen) {
+                    array.setData(p, buffer, 0, (int) Math.min(blockLen, n - p));
+                }
+            }
+        }
+    }
+
+    private static boolean equalChunks(Object buffer, Object pattern, int len) {
+        if (buffer instanceof byte[]) {
+            final byte[] a = (byte[]) buffer;
+            final byte[] b = (byte[]) pattern;
+            int difference = 0;
+            for (int i = 0; i < len; i++) {
+                difference |= a[i] ^ b[i];
+            }
+            return difference == 0;
+        } else if (buffer instanceof short[]) {
+            final short[] a = (short[]) buffer;
+            final short[] b = (short[]) pattern;
+            int difference = 0;
+            for (int i = 0; i < len; i++) {
+                difference |= a[i] ^ b[i];
+            }
+            return difference == 0;
+        } else if (buffer instanceof char[]) {
+            final char[] a = (char[]) buffer;
+            final char[] b = (char[]) pattern;
+            int difference = 0;
+            for (int i = 0; i < len; i++) {
+                difference |= a[i] ^ b[i];
+            }
+            return difference == 0;
+        } else if (buffer instanceof int[]) {
+            final int[] a = (int[]) buffer;
+            final int[] b = (int[]) pattern;
+            int difference = 0;
+            for (int i = 0; i < len; i++) {
+                difference |= a[i] ^ b[i];
+            }
+            return difference == 0;
+        } else if (buffer instanceof long[]) {
+            final long[] a = (long[]) buffer;
+            final long[] b = (long[]) pattern;
+            long difference = 0;
+            for (int i = 0; i < len; i++) {
+                difference |= a[i] ^ b[i];
+            }
+            return difference == 0;
+        } else if (buffer instanceof float[]) {
+            final float[] a = (float[]) buffer;
+            final float[] b = (float[]) pattern;
+            int difference = 0;
+            for (int i = 0; i < len; i++) {
+                difference |= Float.floatToRawIntBits(a[i]) ^ Float.floatToRawIntBits(b[i]);
+            }
+            return difference == 0;
+        } else if (buffer instanceof double[]) {
+            final double[] a = (double[]) buffer;
+            final double[] b = (double[]) pattern;
+            long difference = 0;
+            for (int i = 0; i < len; i++) {
+                difference |= Double.doubleToRawLongBits(a[i]) ^ Double.doubleToRawLongBits(b[i]);
+            }
+            return difference == 0;
+        } else {
+            final boolean[] a = (boolean[]) buffer;
+            final boolean[] b = (boolean[]) pattern;
+            boolean difference = false;
+            for (int i = 0; i < len; i++) {
+                difference |= a[i] ^ b[i];
+            }
+            return !difference;
+        }
+    }
+
     // This method can be used under debugger while debugging memory usage
     public static double usedMemory() {
         Runtime runtime = Runtime.getRuntime();
@@ -0,0 +1,120 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package net.algart.simagis.pyramid;
+
+import net.algart.arrays.Matrix;
+import net.algart.arrays.PArray;
+import net.algart.arrays.UpdatablePArray;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Matrix, which may be borrowed from {@link MatrixBufferPool} and must be returned there by
+ * {@link #close()} method. It is designed for using in try-with-resources statement:
+ *
+ * <pre>
+ * try (PooledMatrix&lt;? extends PArray&gt; m = source.readPooledSubMatrix(level, fromX, fromY, toX, toY)) {
+ *     // processing m.matrix()
+ * }
+ * </pre>
+ *
+ * <p>After closing, the matrix must not be used anymore: its memory may be reused for another request.
+ * Closing a matrix, which does not belong to any pool (see {@link #unpooled(Matrix)}), does nothing.
+ *
+ * <p>This class is thread-safe: it may be closed in another thread than it was borrowed.
+ *
+ * @param <T> the type of the built-in array of the matrix.
+ */
+public final class PooledMatrix<T extends PArray> implements AutoCloseable {
+    private final Matrix<T> matrix;
+    private final MatrixBufferPool pool;
+    private final AtomicReference<UpdatablePArray> buffer;
+
+    PooledMatrix(Matrix<T> matrix, MatrixBufferPool pool, UpdatablePArray buffer) {
+        assert matrix != null;
+        assert (pool == null) == (buffer == null);
+        this.matrix = matrix;
+        this.pool = pool;
+        this.buffer = new AtomicReference<UpdatablePArray>(buffer);
+    }
+
+    /**
+     * Returns an instance, which does not belong to any pool: its {@link #close()} method does nothing.
+     *
+     * @param matrix some matrix.
+     * @param <T>    the type of the built-in array of the matrix.
+     * @return the matrix, wrapped into this class.
+     * @throws NullPointerException if the argument is <tt>null</tt>.
+     */
+    public static <T extends PArray> PooledMatrix<T> unpooled(Matrix<T> matrix) {
+        if (matrix == null) {
+            throw new NullPointerException("Null matrix");
+        }
+        return new PooledMatrix<T>(matrix, null, null);
+    }
+
+    public Matrix<T> matrix() {
+        return matrix;
+    }
+
+    public boolean isPooled() {
+        return buffer.get() != null;
+    }
+
+    /**
+     * Returns new instance for another matrix, which is a view of this one (for example, its sub-matrix),
+     * and passes the ownership of the buffer to it: closing this instance after this call does nothing,
+     * and the buffer will be returned to the pool when the new instance is closed.
+     *
+     * @param view some view of this matrix.
+     * @param <U>  the type of the built-in array of the view.
+     * @return new instance for the view, owning the buffer.
+     * @throws NullPointerException if the argument is <tt>null</tt>.
+     */
+    public <U extends PArray> PooledMatrix<U> withMatrix(Matrix<U> view) {
+        if (view == null) {
+            throw new NullPointerException("Null view");
+        }
+        final UpdatablePArray buffer = this.buffer.getAndSet(null);
+        return new PooledMatrix<U>(view, buffer == null ? null : pool, buffer);
+    }
+
+    /**
+     * Returns the buffer to the pool. Repeated calls do nothing.
+     */
+    @Override
+    public void close() {
+        final UpdatablePArray buffer = this.buffer.getAndSet(null);
+        if (buffer != null) {
+            pool.release(buffer);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return (isPooled() ? "pooled " : "") + matrix;
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.algart.simagis.pyramid;
+
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request-scoped cancellation token with optional deadline for reading data from plane pyramid sources.
+ * Typical usage:
+ *
+ * <pre>
+ * ReadingCancellation cancellation = ReadingCancellation.withTimeout(500, TimeUnit.MILLISECONDS);
+ * try (ReadingCancellation.Scope scope = cancellation.enter()) {
+ *     m = source.readSubMatrix(level, fromX, fromY, toX, toY);
+ * } catch (CancellationException e) {
+ *     // the viewport is not actual anymore
+ * }
+ * </pre>
+ *
+ * <p>While the scope is open, the token is {@link #current() current} for this thread, and
+ * {@link AbstractPlanePyramidSource}, <tt>ScalablePlanePyramidSource</tt> and other sources of this package
+ * {@link #checkCurrent() check} it between tiles and between stages of processing:
+ * if the token is {@link #cancel() cancelled} or its deadline has passed, they throw
+ * <tt>CancellationException</tt>. Parallel helper threads of {@link AbstractPlanePyramidSource}
+ * check the same token. For asynchronous methods, the token, current at the moment of the call,
+ * is checked before starting every task.
+ *
+ * <p>Tiles, which are being loaded at the moment of cancellation, are not interrupted: they are loaded
+ * completely and stored in the tile cache, so the next request will not have to load them again.
+ * In particular, the token is not current while loading a tile into the cache.
+ *
+ * <p>This class is thread-safe.
+ */
+public final class ReadingCancellation {
+    private static final ThreadLocal<ReadingCancellation> CURRENT = new ThreadLocal<ReadingCancellation>();
+
+    private final long deadline;
+    private final boolean hasDeadline;
+    private volatile boolean cancelled = false;
+
+    private ReadingCancellation(boolean hasDeadline, long deadline) {
+        this.hasDeadline = hasDeadline;
+        this.deadline = deadline;
+    }
+
+    /**
+     * Creates new token without deadline: it can be cancelled only by {@link #cancel()} method.
+     *
+     * @return new token.
+     */
+    public static ReadingCancellation newInstance() {
+        return new ReadingCancellation(false, 0);
+    }
+
+    /**
+     * Creates new token, which will be automatically cancelled after the given time since this call.
+     *
+     * @param timeout the maximal duration of reading.
+     * @param unit    the time unit of the <tt>timeout</tt> argument.
+     * @return new token.
+     * @throws NullPointerException     if <tt>unit</tt> is <tt>null</tt>.
+     * @throws IllegalArgumentException if <tt>timeout</tt> is negative.
+     */
+    public static ReadingCancellation withTimeout(long timeout, TimeUnit unit) {
+        if (unit == null) {
+            throw new NullPointerException("Null time unit");
+        }
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Negative timeout " + timeout);
+        }
+        return new ReadingCancellation(true, System.nanoTime() + unit.toNanos(timeout));
+    }
+
+    /**
+     * Returns the token of the innermost {@link #enter() scope}, opened in the current thread,
+     * or <tt>null</tt> if there is no such scope.
+     *
+     * @return the current token or <tt>null</tt>.
+     */
+    public static ReadingCancellation current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Checks the {@link #current() current} token, if it exists.
+     *
+     * @throws CancellationException if the current token is cancelled or its deadline has passed.
+     */
+    public static void checkCurrent() throws CancellationException {
+        final ReadingCancellation cancellation = CURRENT.get();
+        if (cancellation != null) {
+            cancellation.check();
+        }
+    }
+
+    /**
+     * Returns an executor, which executes tasks by the given executor inside the scope of the token,
+     * which is {@link #current() current} at the moment of this call. If there is no current token,
+     * returns the argument.
+     *
+     * @param executor some executor.
+     * @return the executor, passing the current token to its tasks.
+     * @throws NullPointerException if the argument is <tt>null</tt>.
+     */
+    public static Executor propagating(Executor executor) {
+        if (executor == null) {
+            throw new NullPointerException("Null executor");
+        }
+        final ReadingCancellation cancellation = CURRENT.get();
+        if (cancellation == null) {
+            return executor;
+        }
+        return command -> executor.execute(() -> {
+            try (Scope scope = cancellation.enter()) {
+                command.run();
+            }
+        });
+    }
+
+    /**
+     * Makes this token {@link #current() current} in this thread until closing the returned scope.
+     *
+     * @return the scope, which should be closed after reading.
+     */
+    public Scope enter() {
+        return new Scope(this);
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this token is {@link #cancel() cancelled} or its deadline has passed.
+     *
+     * @return whether reading should be abandoned.
+     */
+    public boolean isCancelled() {
+        return cancelled || (hasDeadline && System.nanoTime() - deadline >= 0);
+    }
+
+    /**
+     * Throws <tt>CancellationException</tt> if this token is {@link #isCancelled() cancelled}.
+     *
+     * @throws CancellationException if this token is cancelled or its deadline has passed.
+     */
+    public void check() throws CancellationException {
+        if (cancelled) {
+            throw new CancellationException("Reading is cancelled");
+        }
+        if (hasDeadline && System.nanoTime() - deadline >= 0) {
+            throw new CancellationException("Reading deadline has passed");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "reading cancellation token" + (isCancelled() ? " (cancelled)" : "")
+            + (hasDeadline ?
+            String.format(Locale.US, ", deadline in %.3f ms", (deadline - System.nanoTime()) * 1e-6) :
+            "");
+    }
+
+    // Removes the current token until closing the scope: used while loading tiles into the cache
+    static Scope suspend() {
+        return new Scope(null);
+    }
+
+    /**
+     * The scope of the token: while it is open, the token is {@link #current() current}.
+     * Closing restores the previous current token.
+     */
+    public static final class Scope implements AutoCloseable {
+        private final ReadingCancellation previous;
+        private boolean closed = false;
+
+        private Scope(ReadingCancellation cancellation) {
+            this.previous = CURRENT.get();
+            CURRENT.set(cancellation);
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                if (previous == null) {
+                    CURRENT.remove();
+                } else {
+                    CURRENT.set(previous);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.algart.simagis.pyramid;
+
+/**
+ * Priority class of reading data from plane pyramid sources, used by {@link ReadingScheduler}.
+ * The priority is request-scoped: it is set for the current thread by {@link #enter()}
+ * and is {@link #INTERACTIVE} by default. For example:
+ *
+ * <pre>
+ * try (ReadingPriority.Scope scope = ReadingPriority.BATCH.enter()) {
+ *     m = source.readSubMatrix(level, fromX, fromY, toX, toY);
+ * }
+ * </pre>
+ *
+ * <p>Tiles, prefetched by {@link AbstractPlanePyramidSource}, are read with {@link #PREFETCH} priority.
+ */
+public enum ReadingPriority {
+    /**
+     * Reading for a user, who waits for the result: for example, a viewer.
+     */
+    INTERACTIVE,
+
+    /**
+     * Reading tiles in advance, which will be probably requested soon.
+     */
+    PREFETCH,
+
+    /**
+     * Background processing: building pyramids, recognition etc.
+     */
+    BATCH;
+
+    private static final ThreadLocal<ReadingPriority> CURRENT = new ThreadLocal<ReadingPriority>();
+
+    /**
+     * Returns the priority of the innermost {@link #enter() scope}, opened in the current thread,
+     * or {@link #INTERACTIVE} if there is no such scope.
+     *
+     * @return the current priority.
+     */
+    public static ReadingPriority current() {
+        final ReadingPriority result = CURRENT.get();
+        return result != null ? result : INTERACTIVE;
+    }
+
+    /**
+     * Makes this priority {@link #current() current} in this thread until closing the returned scope.
+     *
+     * @return the scope, which should be closed after reading.
+     */
+    public Scope enter() {
+        return new Scope(this);
+    }
+
+    /**
+     * The scope of the priority. Closing restores the previous current priority.
+     */
+    public static final class Scope implements AutoCloseable {
+        private final ReadingPriority previous;
+        private boolean closed = false;
+
+        private Scope(ReadingPriority priority) {
+            this.previous = CURRENT.get();
+            CURRENT.set(priority);
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                if (previous == null) {
+                    CURRENT.remove();
+                } else {
+                    CURRENT.set(previous);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.algart.simagis.pyramid;
+
+import net.algart.arrays.Arrays;
+
+import java.io.IOError;
+import java.util.Locale;
+
+/**
+ * Scheduler of tile loads with {@link ReadingPriority priorities} and concurrency limits
+ * for every priority class. {@link AbstractPlanePyramidSource} with a {@link
+ * AbstractPlanePyramidSource#getReadingScheduler() reading scheduler} acquires a permit
+ * of the {@link ReadingPriority#current() current} priority class before every call
+ * of <tt>readLittleSubMatrix</tt> and releases it after the call.
+ *
+ * <p>A load of {@link ReadingPriority#INTERACTIVE INTERACTIVE} class starts when the number of running
+ * interactive loads is less than their limit; background loads do not delay it. A load of a background class
+ * ({@link ReadingPriority#PREFETCH PREFETCH} or {@link ReadingPriority#BATCH BATCH}) starts only if
+ * the number of loads of this class is less than its limit, the total number of running loads is less
+ * than the {@link #getTotalLimit() total limit} and there are no waiting loads of higher priority.
+ * So, background work uses only spare capacity; because permits are acquired for every tile,
+ * long background jobs are preempted between tiles, when interactive requests appear.
+ *
+ * <p>Permits are not nested: if the thread, holding a permit, reads tiles again
+ * (for example, <tt>readLittleSubMatrix</tt> reads the data from another source), it does not
+ * acquire new permits. The same is true for helper threads, which {@link ParallelProcessing}
+ * starts for such nested reading: they share the permit of the calling thread.
+ * While a thread, holding a permit, waits for a tile, which is being loaded by another thread,
+ * the permit is given back to the scheduler: so, the loading thread can always get a permit.
+ *
+ * <p>This class is thread-safe.
+ */
+public final class ReadingScheduler {
+    private static final int DEBUG_LEVEL = PlanePyramidSource.DEBUG_LEVEL;
+    private static final int TOTAL_LIMIT = Math.max(1, Arrays.SystemSettings.getIntProperty(
+        "net.algart.simagis.pyramid.readingSchedulerLimit", Arrays.SystemSettings.cpuCount()));
+    private static final ThreadLocal<Permit> HELD = new ThreadLocal<Permit>();
+
+    private static final ReadingScheduler GLOBAL = new ReadingScheduler(
+        TOTAL_LIMIT, TOTAL_LIMIT, Math.max(1, TOTAL_LIMIT / 4), Math.max(1, TOTAL_LIMIT / 2));
+
+    private final int totalLimit;
+    private final int[] limits;
+    private final int[] running;
+    private final int[] waiting;
+    private int totalRunning = 0;
+
+    /**
+     * Creates new scheduler.
+     *
+     * @param totalLimit       the maximal number of simultaneous loads, when background loads can start.
+     * @param interactiveLimit the maximal number of simultaneous {@link ReadingPriority#INTERACTIVE} loads.
+     * @param prefetchLimit    the maximal number of simultaneous {@link ReadingPriority#PREFETCH} loads.
+     * @param batchLimit       the maximal number of simultaneous {@link ReadingPriority#BATCH} loads.
+     * @throws IllegalArgumentException if one of the arguments is zero or negative.
+     */
+    public ReadingScheduler(int totalLimit, int interactiveLimit, int prefetchLimit, int batchLimit) {
+        if (totalLimit <= 0 || interactiveLimit <= 0 || prefetchLimit <= 0 || batchLimit <= 0) {
+            throw new IllegalArgumentException("Zero or negative reading scheduler limit");
+        }
+        this.totalLimit = totalLimit;
+        this.limits = new int[ReadingPriority.values().length];
+        this.limits[ReadingPriority.INTERACTIVE.ordinal()] = interactiveLimit;
+        this.limits[ReadingPriority.PREFETCH.ordinal()] = prefetchLimit;
+        this.limits[ReadingPriority.BATCH.ordinal()] = batchLimit;
+        this.running = new int[limits.length];
+        this.waiting = new int[limits.length];
+    }
+
+    /**
+     * Returns the scheduler, shared by all sources, which enable reading scheduling by the system property.
+     * Its total limit is specified by the system property
+     * "<tt>net.algart.simagis.pyramid.readingSchedulerLimit</tt>" (the number of CPU by default);
+     * the limit for interactive loads is the same, for prefetching is 1/4 of it and for batch processing
+     * is 1/2 of it.
+     *
+     * @return the global scheduler.
+     */
+    public static ReadingScheduler global() {
+        return GLOBAL;
+    }
+
+    public int getTotalLimit() {
+        return totalLimit;
+    }
+
+    public int getLimit(ReadingPriority priority) {
+        return limits[priority.ordinal()];
+    }
+
+    /**
+     * Waits until a load of the given priority class can be started and returns the permit for it.
+     * If the current thread already holds a permit, returns a permit, which does nothing.
+     *
+     * @param priority the priority class.
+     * @return the permit, which must be closed after finishing the load.
+     * @throws NullPointerException if the argument is <tt>null</tt>.
+     * @throws IOError              if the current thread is interrupted while waiting.
+     */
+    public Permit acquire(ReadingPriority priority) {
+        final int p = priority.ordinal();
+        if (HELD.get() != null) {
+            return new Permit(null, p);
+        }
+        synchronized (this) {
+            waiting[p]++;
+            boolean started = false;
+            try {
+                while (!canStart(p)) {
+                    wait();
+                }
+                started = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOError(e);
+            } finally {
+                waiting[p]--;
+                if (!started) {
+                    notifyAll();
+                    // - loads of lower priority could wait for us
+                }
+            }
+            running[p]++;
+            totalRunning++;
+        }
+        final Permit permit = new Permit(this, p);
+        HELD.set(permit);
+        return permit;
+    }
+
+    // Returns the permit, held by the current thread (maybe shared with it by another thread), or null
+    static Permit held() {
+        return HELD.get();
+    }
+
+    // Gives back the permit, held by the current thread, until closing the result; returns null if there is
+    // no such permit. Should be used while waiting for other threads, which may need a permit.
+    static Suspension suspend() {
+        final Permit permit = HELD.get();
+        if (permit == null) {
+            return null;
+        }
+        permit.scheduler.suspend(permit);
+        return new Suspension(permit);
+    }
+
+    public synchronized int running(ReadingPriority priority) {
+        return running[priority.ordinal()];
+    }
+
+    public synchronized int waiting(ReadingPriority priority) {
+        return waiting[priority.ordinal()];
+    }
+
+    @Override
+    public synchronized String toString() {
+        final StringBuilder sb = new StringBuilder(String.format(Locale.US,
+            "reading scheduler: %d/%d running", totalRunning, totalLimit));
+        for (ReadingPriority priority : ReadingPriority.values()) {
+            final int p = priority.ordinal();
+            sb.append(String.format(Locale.US, "; %s %d/%d running, %d waiting",
+                priority, running[p], limits[p], waiting[p]));
+        }
+        return sb.toString();
+    }
+
+    // Must be called under synchronization
+    private boolean canStart(int p) {
+        if (running[p] >= limits[p]) {
+            return false;
+        }
+        if (p == ReadingPriority.INTERACTIVE.ordinal()) {
+            return true;
+        }
+        if (totalRunning >= totalLimit) {
+            return false;
+        }
+        for (int q = 0; q < p; q++) {
+            if (waiting[q] > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private synchronized void suspend(Permit permit) {
+        if (permit.suspensions++ == 0) {
+            release(permit.priorityIndex);
+        }
+    }
+
+    private synchronized void resume(Permit permit) {
+        if (--permit.suspensions > 0) {
+            return;
+            // - another thread, sharing this permit, still waits
+        }
+        final int p = permit.priorityIndex;
+        waiting[p]++;
+        boolean interrupted = false;
+        try {
+            while (!canStart(p)) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    // - we must get the permit back: it will be released by its owner
+                }
+            }
+        } finally {
+            waiting[p]--;
+        }
+        running[p]++;
+        totalRunning++;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized void release(int p) {
+        running[p]--;
+        totalRunning--;
+        notifyAll();
+        if (DEBUG_LEVEL >= 3) {
+            System.out.println(AbstractPlanePyramidSource.class.getSimpleName() + " released permit: " + this);
+        }
+    }
+
+    /**
+     * Permit for one load, returned by {@link #acquire(ReadingPriority)}.
+     */
+    public static final class Permit implements AutoCloseable {
+        private final ReadingScheduler scheduler;
+        // - null for nested permits
+        private final int priorityIndex;
+        private boolean closed = false;
+        private int suspensions = 0;
+        // - guarded by the scheduler
+
+        private Permit(ReadingScheduler scheduler, int priorityIndex) {
+            this.scheduler = scheduler;
+            this.priorityIndex = priorityIndex;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                if (scheduler != null) {
+                    HELD.remove();
+                    scheduler.release(priorityIndex);
+                }
+            }
+        }
+
+        // Makes this permit held by the current thread until closing the result; used by helper threads
+        // of the thread, which has acquired this permit
+        Sharing share() {
+            return new Sharing(this);
+        }
+    }
+
+    static final class Sharing implements AutoCloseable {
+        private final Permit previous;
+        private boolean closed = false;
+
+        private Sharing(Permit permit) {
+            this.previous = HELD.get();
+            HELD.set(permit);
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                if (previous == null) {
+                    HELD.remove();
+                } else {
+                    HELD.set(previous);
+                }
+            }
+        }
+    }
+
+    static final class Suspension implements AutoCloseable {
+        private final Permit permit;
+        private boolean closed = false;
+
+        private Suspension(Permit permit) {
+            this.permit = permit;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                permit.scheduler.resume(permit);
+            }
+        }
+    }
+}
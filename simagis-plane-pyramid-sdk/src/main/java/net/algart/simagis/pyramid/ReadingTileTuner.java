@@ -0,0 +1,235 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package net.algart.simagis.pyramid;
+
+import net.algart.arrays.Arrays;
+
+import java.util.Locale;
+import java.util.TreeSet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Chooser of the reading tile dimension for {@link AbstractPlanePyramidSource} in the adaptive mode.
+ *
+ * <p>The candidates are the basic dimension (returned by <tt>readingTileDim()</tt>), its half and its double.
+ * During the warm-up, the requests are still split by the basic dimension, so that the tile caches,
+ * the prefetcher and the hot-tile manifests see only one grid of tiles. Besides, a request starts a
+ * <i>probe</i>, if the previous probe of this source is finished: a tile of the next candidate in turn
+ * is read directly by <tt>readLittleSubMatrix</tt>, bypassing all caches, and its time is reported.
+ * Probes are performed by a background thread with {@link ReadingPriority#BATCH BATCH} priority,
+ * so the requests do not wait for them. When every candidate has enough
+ * samples, the tuner settles on the candidate with the best throughput (bytes per second) among
+ * the candidates, which mean latency of reading one tile does not exceed <tt>MAX_LATENCY</tt>;
+ * if all candidates are slower, it chooses the candidate with the least latency.
+ * After this, the chosen dimension is used always; if it differs from the basic one, the source
+ * switches its cache grid once.
+ *
+ * <p>This class is thread-safe.
+ */
+final class ReadingTileTuner {
+    private static final int DEBUG_LEVEL = PlanePyramidSource.DEBUG_LEVEL;
+    private static final int MIN_TILE_DIM = 64;
+    private static final int MAX_TILE_DIM = 16384;
+    private static final int SAMPLES_PER_CANDIDATE = Math.max(1, Arrays.SystemSettings.getIntProperty(
+        "net.algart.simagis.pyramid.readingTileTuningSamples", 16));
+    private static final long MAX_LATENCY = Math.max(1, Arrays.SystemSettings.getLongProperty(
+        "net.algart.simagis.pyramid.readingTileMaxLatency", 100)) * 1000000L;
+    // - 100 ms by default
+
+    private final int[] candidates;
+    private final int[] samples;
+    private final long[] bytes;
+    private final long[] nanos;
+    private int nextCandidate = 0;
+    private volatile int chosenDim = 0;
+    private final AtomicBoolean probing = new AtomicBoolean(false);
+
+    ReadingTileTuner(int basicTileDim) {
+        final TreeSet<Integer> dims = new TreeSet<Integer>();
+        dims.add(basicTileDim);
+        dims.add(Math.min(basicTileDim, Math.max(MIN_TILE_DIM, basicTileDim / 2)));
+        dims.add(Math.max(basicTileDim, (int) Math.min(MAX_TILE_DIM, 2L * basicTileDim)));
+        this.candidates = new int[dims.size()];
+        int k = 0;
+        for (int dim : dims) {
+            candidates[k++] = dim;
+        }
+        this.samples = new int[candidates.length];
+        this.bytes = new long[candidates.length];
+        this.nanos = new long[candidates.length];
+        if (candidates.length == 1) {
+            chosenDim = basicTileDim;
+        }
+    }
+
+    /**
+     * Returns the tile dimension for the next probe: the next candidate during warm-up,
+     * or the chosen dimension after it.
+     */
+    int nextProbeDim() {
+        final int chosen = chosenDim;
+        if (chosen != 0) {
+            return chosen;
+        }
+        synchronized (this) {
+            if (chosenDim != 0) {
+                return chosenDim;
+            }
+            for (int attempt = 0; attempt < candidates.length; attempt++) {
+                final int k = nextCandidate;
+                nextCandidate = (nextCandidate + 1) % candidates.length;
+                if (samples[k] < SAMPLES_PER_CANDIDATE) {
+                    return candidates[k];
+                }
+            }
+            return candidates[0];
+            // - impossible: the choice is made when all candidates have enough samples
+        }
+    }
+
+    /**
+     * Performs the probe in the background thread with {@link ReadingPriority#BATCH BATCH} priority.
+     * Does nothing after the warm-up or if the previous probe is not finished yet.
+     * The probe should call {@link #nextProbeDim()} and {@link #record record}.
+     */
+    void startProbe(Runnable probe) {
+        if (chosenDim != 0 || !probing.compareAndSet(false, true)) {
+            return;
+        }
+        Pool.EXECUTOR.execute(() -> {
+            try (ReadingPriority.Scope scope = ReadingPriority.BATCH.enter()) {
+                probe.run();
+            } catch (RuntimeException e) {
+                if (DEBUG_LEVEL >= 1) {
+                    System.out.println(AbstractPlanePyramidSource.class.getSimpleName()
+                        + " cannot probe the reading tile: " + e);
+                }
+                // - for example, the source is already closed: the next request will start a new probe
+            } catch (Error e) {
+                System.err.println(AbstractPlanePyramidSource.class.getSimpleName()
+                    + " cannot probe the reading tile: " + e);
+                throw e;
+            } finally {
+                probing.set(false);
+            }
+        });
+    }
+
+    /**
+     * Returns the chosen tile dimension or 0 while the warm-up.
+     */
+    int chosenDim() {
+        return chosenDim;
+    }
+
+    /**
+     * Registers the probe of the candidate <tt>tileDim</tt> (the probe tile may be less than
+     * <tt>tileDim</tt>&nbsp;x&nbsp;<tt>tileDim</tt> for little levels).
+     * Returns <tt>true</tt> if this call has finished the warm-up, i.e. the dimension has been chosen just now.
+     */
+    boolean record(int tileDim, long tileBytes, long tileNanos) {
+        if (chosenDim != 0) {
+            return false;
+        }
+        synchronized (this) {
+            if (chosenDim != 0) {
+                return false;
+            }
+            final int index = java.util.Arrays.binarySearch(candidates, tileDim);
+            if (index < 0) {
+                return false;
+            }
+            samples[index]++;
+            bytes[index] += tileBytes;
+            nanos[index] += tileNanos;
+            for (int sampleCount : samples) {
+                if (sampleCount < SAMPLES_PER_CANDIDATE) {
+                    return false;
+                }
+            }
+            chosenDim = candidates[choose()];
+            if (DEBUG_LEVEL >= 1) {
+                System.out.println(AbstractPlanePyramidSource.class.getSimpleName()
+                    + " has chosen reading tile dimension: " + tuning());
+            }
+            return true;
+        }
+    }
+
+    synchronized ReadingTileTuning tuning() {
+        final double[] latencies = new double[candidates.length];
+        final double[] throughputs = new double[candidates.length];
+        for (int k = 0; k < candidates.length; k++) {
+            latencies[k] = samples[k] == 0 ? Double.NaN : nanos[k] * 1e-6 / samples[k];
+            throughputs[k] = nanos[k] == 0 ? Double.NaN : bytes[k] / 1048576.0 / (nanos[k] * 1e-9);
+        }
+        return new ReadingTileTuning(candidates.clone(), samples.clone(), latencies, throughputs, chosenDim);
+    }
+
+    private int choose() {
+        int best = -1;
+        for (int k = 0; k < candidates.length; k++) {
+            if (nanos[k] <= MAX_LATENCY * samples[k]
+                && (best == -1 || (double) bytes[k] / nanos[k] > (double) bytes[best] / nanos[best]))
+            {
+                best = k;
+            }
+        }
+        if (best != -1) {
+            return best;
+        }
+        for (int k = 0; k < candidates.length; k++) {
+            if (best == -1 || (double) nanos[k] / samples[k] < (double) nanos[best] / samples[best]) {
+                best = k;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "reading tile tuner (%s)", tuning());
+    }
+
+    private static class Pool {
+        static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(
+            1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            runnable -> {
+                final Thread thread = new Thread(runnable,
+                    AbstractPlanePyramidSource.class.getSimpleName() + " reading tile tuner");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+
+        static {
+            EXECUTOR.allowCoreThreadTimeOut(true);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package net.algart.simagis.pyramid;
+
+import java.util.Locale;
+
+/**
+ * Snapshot of the state of adaptive choosing the reading tile dimension: the candidate dimensions
+ * and the measured speed of reading tiles of every candidate.
+ * See {@link AbstractPlanePyramidSource#setAdaptiveReadingTileDimEnabled(boolean)}.
+ */
+public final class ReadingTileTuning {
+    private final int[] candidateDims;
+    private final int[] samples;
+    private final double[] meanLatencies;
+    private final double[] throughputs;
+    private final int chosenDim;
+
+    ReadingTileTuning(int[] candidateDims, int[] samples, double[] meanLatencies, double[] throughputs,
+        int chosenDim)
+    {
+        this.candidateDims = candidateDims;
+        this.samples = samples;
+        this.meanLatencies = meanLatencies;
+        this.throughputs = throughputs;
+        this.chosenDim = chosenDim;
+    }
+
+    static ReadingTileTuning notTuned(int tileDim) {
+        return new ReadingTileTuning(
+            new int[] {tileDim}, new int[] {0}, new double[] {Double.NaN}, new double[] {Double.NaN}, tileDim);
+    }
+
+    public int numberOfCandidates() {
+        return candidateDims.length;
+    }
+
+    public int candidateDim(int index) {
+        return candidateDims[index];
+    }
+
+    /**
+     * Returns the number of measured tile readings for the given candidate.
+     *
+     * @param index the index of the candidate.
+     * @return the number of samples.
+     */
+    public int samples(int index) {
+        return samples[index];
+    }
+
+    /**
+     * Returns the mean time of reading one tile of the given candidate, in milliseconds,
+     * or <tt>NaN</tt> if there are no samples.
+     *
+     * @param index the index of the candidate.
+     * @return the mean latency in ms.
+     */
+    public double meanLatency(int index) {
+        return meanLatencies[index];
+    }
+
+    /**
+     * Returns the speed of reading tiles of the given candidate, in MB/sec,
+     * or <tt>NaN</tt> if there are no samples.
+     *
+     * @param index the index of the candidate.
+     * @return the throughput in MB/sec.
+     */
+    public double throughput(int index) {
+        return throughputs[index];
+    }
+
+    public boolean isSettled() {
+        return chosenDim != 0;
+    }
+
+    /**
+     * Returns the chosen reading tile dimension, or 0 if the warm-up is not finished yet.
+     *
+     * @return the chosen dimension.
+     */
+    public int chosenDim() {
+        return chosenDim;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder(isSettled() ? "chosen " + chosenDim : "warming up");
+        for (int k = 0; k < candidateDims.length; k++) {
+            sb.append(String.format(Locale.US, "%s %d: %d samples, %.3f ms, %.3f MB/sec",
+                k == 0 ? "; " : ", ", candidateDims[k], samples[k], meanLatencies[k], throughputs[k]));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,916 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.algart.simagis.pyramid;
+
+import net.algart.arrays.Matrices;
+import net.algart.arrays.Matrix;
+import net.algart.arrays.PArray;
+import net.algart.arrays.SimpleMemoryModel;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Thread-safe cache of tiles, used by {@link AbstractPlanePyramidSource} when tile caching is enabled.
+ *
+ * <p>Lookups do not acquire any shared lock. Loading a missing tile is performed outside any lock too;
+ * if several threads request the same missing tile simultaneously, it is loaded only once
+ * ("single-flight"), and other threads wait for the result of that loading.
+ *
+ * <p>Every tile is weighted by its size in bytes; the total weight is maintained as a running sum.
+ * Eviction is performed by {@link TileCachePolicy}, which takes into account not only recency,
+ * but also frequency of accesses.
+ *
+ * <p>Besides private caches of sources, there is one {@link #global() global} cache, shared by all sources
+ * with {@link AbstractPlanePyramidSource#isGlobalTileCachingEnabled() global tile caching} in this JVM.
+ * Its keys contain the {@link TileCacheIndex#owner owner}, identifying the source.
+ *
+ * <p>In <i>off-heap</i> mode, tile data are stored in direct byte buffers, allocated by {@link OffHeapTileMemory},
+ * and the cache returns views of these buffers without copying. Such a block is returned to the allocator
+ * when the tile is evicted, but not earlier than all clients, currently using the tile, finish their work:
+ * so, tiles are accessible only inside {@link #useTile} method, which "pins" the tile while
+ * its action is executed.
+ *
+ * <p>Optionally, a part of the memory is used for the second, <i>compressed</i> tier
+ * ({@link CompressedTileTier}): tiles, evicted from the main tier, are compressed and stored there,
+ * and if such a tile is requested again, it is decompressed and returned into the main tier
+ * instead of loading by <tt>readLittleSubMatrix</tt>. Compression is performed in background by a little
+ * bounded pool of threads, so that it does not increase the latency of reading; if this pool is saturated,
+ * evicted tiles are simply dropped.
+ *
+ * <p>Tiles can also be loaded in advance by {@link #prefetch}. Such tiles are marked until the first
+ * request by {@link #useTile}, and their total weight is limited, so that prefetching cannot
+ * evict the working set.
+ *
+ * <p>The cache counts hits, misses, evictions and loading time for every resolution level
+ * (see {@link #stats()}); these events are also passed to the global {@link TileCacheMetricsListener},
+ * if it is set. Optionally, the cache is registered in the platform MBean server as {@link TileCacheMXBean}.
+ */
+final class TileCache {
+    private static final int DEBUG_LEVEL = PlanePyramidSource.DEBUG_LEVEL;
+    private static final long ENTRY_OVERHEAD = 256;
+    // - approximate memory, occupied by Java objects of one entry; provides positive weight for constant tiles
+
+    private static volatile TileCache globalInstance = null;
+    private static volatile TileCacheMetricsListener metricsListener = null;
+
+    final int tileDim;
+    // - 0 for the global cache, which contains tiles of different sizes
+    final long tileCachingMemory;
+    final OffHeapTileMemory offHeapMemory;
+    // - null if tiles are stored in Java heap
+    final CompressedTileTier compressedTier;
+    // - null if there is no compressed tier
+
+    private final ConcurrentHashMap<TileCacheIndex, CachedTile> tiles =
+        new ConcurrentHashMap<TileCacheIndex, CachedTile>();
+    private final ConcurrentHashMap<TileCacheIndex, CompletableFuture<CachedTile>> loadings =
+        new ConcurrentHashMap<TileCacheIndex, CompletableFuture<CachedTile>>();
+    private final TileCachePolicy policy;
+    private final ReentrantLock policyLock = new ReentrantLock();
+    // - protects only the eviction policy; never held while reading tiles
+    private final AtomicLong prefetchedWeight = new AtomicLong();
+    // - total weight of prefetched tiles, which were not requested yet
+    private final ConcurrentHashMap<Integer, LevelCounters> levelCounters =
+        new ConcurrentHashMap<Integer, LevelCounters>();
+    private volatile ObjectName mBeanName = null;
+
+    TileCache(int tileDim, long tileCachingMemory) {
+        this(tileDim, tileCachingMemory, false);
+    }
+
+    TileCache(int tileDim, long tileCachingMemory, boolean offHeap) {
+        this(tileDim, tileCachingMemory, offHeap, 0.0);
+    }
+
+    TileCache(int tileDim, long tileCachingMemory, boolean offHeap, double compressedFraction) {
+        assert compressedFraction >= 0.0 && compressedFraction < 1.0;
+        final long compressedMemory = (long) (tileCachingMemory * compressedFraction);
+        final long hotMemory = tileCachingMemory - compressedMemory;
+        this.tileDim = tileDim;
+        this.tileCachingMemory = tileCachingMemory;
+        this.offHeapMemory = offHeap ? new OffHeapTileMemory(hotMemory / 8) : null;
+        // - 1/8 of the cache is enough to reuse blocks, evicted while adding tiles of different sizes
+        this.compressedTier = compressedMemory > 0 ? new CompressedTileTier(compressedMemory) : null;
+        this.policy = new TileCachePolicy(hotMemory);
+        if (DEBUG_LEVEL >= 1) {
+            System.out.printf(Locale.US, AbstractPlanePyramidSource.class.getSimpleName()
+                    + " is creating %s%s, memory limit %.2f MB%s%n",
+                offHeap ? "off-heap " : "",
+                tileDim == 0 ? "global tile cache" : "tile cache for tiles " + tileDim + "x" + tileDim,
+                tileCachingMemory / 1048576.0,
+                compressedMemory > 0 ? String.format(Locale.US, " (%.2f MB for compressed tiles)",
+                    compressedMemory / 1048576.0) : ""
+            );
+        }
+    }
+
+    static TileCache global() {
+        TileCache result = globalInstance;
+        if (result == null) {
+            synchronized (TileCache.class) {
+                result = globalInstance;
+                if (result == null) {
+                    globalInstance = result = new TileCache(0, AbstractPlanePyramidSource.GLOBAL_TILE_CACHING_MEMORY,
+                        AbstractPlanePyramidSource.OFF_HEAP_TILE_CACHING,
+                        AbstractPlanePyramidSource.COMPRESSED_TILE_CACHING_FRACTION);
+                    if (AbstractPlanePyramidSource.TILE_CACHE_JMX) {
+                        result.registerMBean("global");
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    static TileCache globalIfExists() {
+        return globalInstance;
+    }
+
+    static void removeFromGlobal(Object owner) {
+        final TileCache global = globalInstance;
+        if (global != null) {
+            global.removeAll(owner);
+        }
+    }
+
+    static TileCacheMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    static void setMetricsListener(TileCacheMetricsListener listener) {
+        metricsListener = listener;
+    }
+
+    /**
+     * Registers this cache in the platform MBean server as {@link TileCacheMXBean} with the given name.
+     * Registration errors (for example, a security manager, prohibiting this) are ignored.
+     *
+     * @param name the value of the "name" key of the MBean object name.
+     */
+    void registerMBean(String name) {
+        try {
+            final ObjectName objectName = new ObjectName("net.algart.simagis.pyramid:type=TileCache,name=" + name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MXBean(), objectName);
+            mBeanName = objectName;
+        } catch (JMException | SecurityException e) {
+            if (DEBUG_LEVEL >= 1) {
+                System.out.println(AbstractPlanePyramidSource.class.getSimpleName()
+                    + " cannot register tile cache MBean: " + e);
+            }
+        }
+    }
+
+    void unregisterMBean() {
+        final ObjectName objectName = mBeanName;
+        if (objectName != null) {
+            mBeanName = null;
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException | SecurityException e) {
+                // - nothing to do: maybe, somebody has already unregistered it
+            }
+        }
+    }
+
+    /**
+     * Finds the tile in the cache or, if there is no such tile, loads it by the given loader
+     * and stores in the cache, and then performs the given action with the tile data.
+     * The loader is called outside any lock; concurrent calls for the same index
+     * are merged into one call of the loader.
+     *
+     * <p>The tile cannot be released while the action is executed, even if it is evicted from the cache
+     * by another thread. In off-heap mode, the action must not save the passed matrix (or its views)
+     * anywhere: its memory may be reused for another tile after finishing the action.
+     *
+     * @param index  the index of the tile.
+     * @param loader the function, loading the tile data; must not return <tt>null</tt>.
+     * @param action the action, which should be performed with the tile data.
+     * @param <T>    the type of the action result.
+     * @return the result of the action.
+     */
+    <T> T useTile(TileCacheIndex index, Supplier<LoadedTile> loader, TileAction<T> action) {
+        for (; ; ) {
+            final CachedTile cached = getOrLoadAndPin(index, loader, null);
+            if (cached == null) {
+                continue;
+                // - very improbable: the tile was evicted and released before we pinned it
+            }
+            return useAndUnpin(cached, action);
+        }
+    }
+
+    /**
+     * Asynchronous version of {@link #useTile}. If the tile is in the cache, the action is performed
+     * immediately in the current thread. If it is being loaded by another thread, the action will be
+     * performed after loading in that thread, and no threads wait for it. In other case, the tile is loaded
+     * and the action is performed by the given executor; the {@link ReadingCancellation#current() current}
+     * cancellation token of the executor thread is checked before it.
+     *
+     * @param index    the index of the tile.
+     * @param loader   the function, loading the tile data; must not return <tt>null</tt>.
+     * @param action   the action, which should be performed with the tile data.
+     * @param executor the executor for loading the tile.
+     * @param <T>      the type of the action result.
+     * @return the future result of the action.
+     */
+    <T> CompletableFuture<T> useTileAsync(
+        TileCacheIndex index, Supplier<LoadedTile> loader, TileAction<T> action, Executor executor)
+    {
+        final CachedTile cached = getTile(index);
+        if (cached != null && cached.pin()) {
+            recordHit(index);
+            final CompletableFuture<T> result = new CompletableFuture<T>();
+            try {
+                result.complete(useAndUnpin(cached, action));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+            return result;
+        }
+        final CompletableFuture<CachedTile> loading = loadings.get(index);
+        if (loading != null) {
+            return loading.thenCompose(loaded -> useTileAsync(index, loader, action, executor));
+            // - usually the tile will be found in the cache at the next attempt
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            ReadingCancellation.checkCurrent();
+            return useTile(index, loader, action);
+        }, executor);
+    }
+
+    /**
+     * Loads the tile by the given loader and stores it in the cache, if it is absent there.
+     * The tile is not loaded, if prefetched tiles, which were not requested by {@link #useTile} yet,
+     * already occupy the given fraction of the cache memory. The frequency of accesses to the tile
+     * is not increased by this method.
+     *
+     * @param index          the index of the tile.
+     * @param loader         the function, loading the tile data.
+     * @param budgetFraction the part of the cache memory, which can be occupied by prefetched tiles.
+     * @param prefetcher     the prefetcher, which receives the statistics about this tile.
+     */
+    void prefetch(
+        TileCacheIndex index, Supplier<LoadedTile> loader,
+        double budgetFraction, TilePrefetcher prefetcher)
+    {
+        if (tiles.containsKey(index) || loadings.containsKey(index)) {
+            prefetcher.recordAlreadyCached();
+            return;
+        }
+        if (prefetchedWeight.get() >= (long) (policy.maximumWeight() * budgetFraction)) {
+            prefetcher.recordOverBudget();
+            return;
+        }
+        final CachedTile cached = getOrLoadAndPin(index, loader, prefetcher);
+        if (cached != null) {
+            cached.unpin();
+        }
+    }
+
+    boolean isOffHeap() {
+        return offHeapMemory != null;
+    }
+
+    private CachedTile getOrLoadAndPin(
+        TileCacheIndex index, Supplier<LoadedTile> loader, TilePrefetcher prefetcher)
+    {
+        CachedTile cached = getTile(index);
+        if (cached != null && cached.pin()) {
+            if (prefetcher == null) {
+                recordHit(index);
+            }
+            return cached;
+        }
+        final CompletableFuture<CachedTile> newLoading = new CompletableFuture<CachedTile>();
+        final CompletableFuture<CachedTile> loading = loadings.putIfAbsent(index, newLoading);
+        if (loading != null) {
+            if (DEBUG_LEVEL >= 2) {
+                System.out.printf("  " + AbstractPlanePyramidSource.class.getSimpleName()
+                    + " is waiting for the tile, being loaded by another thread (%s)%n", index);
+            }
+            try (ReadingScheduler.Suspension suspension = ReadingScheduler.suspend()) {
+                cached = join(loading);
+            }
+            // - the loading thread may wait for a permit, held by this thread
+            if (!cached.pin()) {
+                return null;
+            }
+            if (prefetcher == null) {
+                recordHit(index);
+            }
+            return cached;
+        }
+        List<CachedTile> evicted = Collections.emptyList();
+        try {
+            cached = tiles.get(index);
+            // - the tile could be stored by another thread between getTile and putIfAbsent
+            if (cached == null || !cached.pin()) {
+                if (prefetcher == null) {
+                    recordMiss(index);
+                }
+                LoadedTile data = compressedTier == null ? null : compressedTier.remove(index);
+                if (data == null) {
+                    final long t1 = System.nanoTime();
+                    try (ReadingCancellation.Scope scope = ReadingCancellation.suspend()) {
+                        data = loader.get();
+                    }
+                    // - cancellation of the current request must not break loading, which other threads may wait for
+                    recordLoad(index, System.nanoTime() - t1);
+                }
+                if (data == null) {
+                    throw new AssertionError("Internal bug: null tile loaded for " + index);
+                }
+                cached = newPinnedTile(index, data);
+                if (prefetcher != null) {
+                    cached.prefetcher = prefetcher;
+                    prefetchedWeight.addAndGet(cached.weight);
+                    prefetcher.recordLoaded();
+                }
+                evicted = putTile(cached);
+            } else if (prefetcher == null) {
+                recordHit(index);
+            }
+            newLoading.complete(cached);
+            return cached;
+        } catch (RuntimeException | Error e) {
+            newLoading.completeExceptionally(e);
+            throw e;
+        } finally {
+            loadings.remove(index, newLoading);
+            retire(evicted);
+        }
+    }
+
+    private <T> T useAndUnpin(CachedTile cached, TileAction<T> action) {
+        final TilePrefetcher prefetcher = cached.takePrefetcher();
+        if (prefetcher != null) {
+            prefetchedWeight.addAndGet(-cached.weight);
+            prefetcher.recordHit();
+        }
+        try {
+            return action.apply(cached.data, cached.block != null, cached.uniformPixel);
+        } finally {
+            cached.unpin();
+        }
+    }
+
+    private CachedTile getTile(TileCacheIndex index) {
+        final CachedTile cached = tiles.get(index);
+        if (cached != null && policyLock.tryLock()) {
+            // - if the policy is busy, we prefer to lose information about this access than to wait
+            try {
+                policy.recordAccess(cached);
+            } finally {
+                policyLock.unlock();
+            }
+        }
+        if (DEBUG_LEVEL >= 2) {
+            System.out.printf("  " + AbstractPlanePyramidSource.class.getSimpleName()
+                    + " has " + (cached != null ? "loaded data from the cache" : "NOT FOUND data in the cache")
+                    + " (level %d): %s%n",
+                index.resolutionLevel, index.tile
+            );
+        }
+        return cached;
+    }
+
+    private CachedTile newPinnedTile(TileCacheIndex index, LoadedTile loaded) {
+        final Matrix<? extends PArray> data = loaded.data;
+        final double[] uniformPixel = loaded.uniformPixel;
+        // - detected once while loading, so that readers of the tile need not scan it
+        if (offHeapMemory == null || !OffHeapTileMemory.isSuitable(data)) {
+            return new CachedTile(index, data, null, weight(data), uniformPixel);
+        }
+        final long blockSize = OffHeapTileMemory.blockSize(data);
+        final ByteBuffer block = offHeapMemory.allocate(blockSize);
+        final CachedTile result;
+        try {
+            result = new CachedTile(index, OffHeapTileMemory.copyToBlock(block, data), block,
+                blockSize + ENTRY_OVERHEAD, uniformPixel);
+        } catch (RuntimeException | Error e) {
+            offHeapMemory.release(block);
+            throw e;
+        }
+        result.pin();
+        return result;
+    }
+
+    // Returns the tiles, removed from the cache, which should be passed to retire method
+    private List<CachedTile> putTile(CachedTile cached) {
+        final TileCacheIndex index = (TileCacheIndex) cached.key;
+        final List<CachedTile> evicted = new ArrayList<CachedTile>();
+        policyLock.lock();
+        try {
+            final CachedTile prev = tiles.put(index, cached);
+            if (prev != null) {
+                policy.remove(prev);
+                release(prev);
+            } else if (DEBUG_LEVEL >= 3) {
+                System.out.printf(AbstractPlanePyramidSource.class.getSimpleName()
+                        + " has stored data in the cache (level %d): %s%n",
+                    index.resolutionLevel, index.tile
+                );
+            }
+            for (TileCachePolicy.Node node : policy.add(cached)) {
+                tiles.remove(node.key, node);
+                evicted.add((CachedTile) node);
+            }
+        } finally {
+            policyLock.unlock();
+        }
+        for (CachedTile tile : evicted) {
+            recordEviction((TileCacheIndex) tile.key, tile.weight);
+        }
+        if (!evicted.isEmpty() && DEBUG_LEVEL >= 2) {
+            System.out.printf(Locale.US, AbstractPlanePyramidSource.class.getSimpleName()
+                    + " has removed %d entries from the cache, %.2f MB used%n",
+                evicted.size(), usedMemory() / 1048576.0);
+        }
+        return evicted;
+    }
+
+    // Passes evicted tiles to the background compression into the compressed tier (if it exists)
+    // and releases them; off-heap blocks stay pinned until the end of compression
+    private void retire(List<CachedTile> evicted) {
+        for (CachedTile cached : evicted) {
+            try {
+                if (compressedTier != null && CompressedTileTier.isCompressible(cached.data) && cached.pin()) {
+                    try {
+                        CompressionPool.EXECUTOR.execute(() -> {
+                            try {
+                                if (!tiles.containsKey((TileCacheIndex) cached.key)) {
+                                    // - the tile could be loaded again while waiting in the queue
+                                    compressedTier.put((TileCacheIndex) cached.key, cached.data, cached.uniformPixel);
+                                }
+                            } finally {
+                                cached.unpin();
+                            }
+                        });
+                    } catch (RejectedExecutionException e) {
+                        cached.unpin();
+                        if (DEBUG_LEVEL >= 2) {
+                            System.out.println(AbstractPlanePyramidSource.class.getSimpleName()
+                                + " has dropped evicted tile " + cached.key + ": compression pool is busy");
+                        }
+                    }
+                }
+            } finally {
+                release(cached);
+            }
+        }
+    }
+
+    /**
+     * Removes all tiles of the given owner. Other tiles are not affected.
+     *
+     * @param owner the owner of removed tiles.
+     */
+    void removeAll(Object owner) {
+        int count = 0;
+        policyLock.lock();
+        try {
+            for (CachedTile cached : tiles.values()) {
+                if (cached.owner == owner) {
+                    policy.remove(cached);
+                    tiles.remove(cached.key, cached);
+                    release(cached);
+                    count++;
+                }
+            }
+        } finally {
+            policyLock.unlock();
+        }
+        if (count > 0 && DEBUG_LEVEL >= 1) {
+            System.out.printf(Locale.US, AbstractPlanePyramidSource.class.getSimpleName()
+                    + " has removed %d tiles of one source from the %s%n",
+                count, this == globalInstance ? "global cache" : "cache");
+        }
+        if (compressedTier != null) {
+            compressedTier.removeAll(owner);
+        }
+    }
+
+    /**
+     * Removes all tiles and releases their memory. In off-heap mode, blocks of tiles, which are
+     * used at this moment by {@link #useTile}, are released after finishing their usage.
+     */
+    void clear() {
+        policyLock.lock();
+        try {
+            for (CachedTile cached : tiles.values()) {
+                policy.remove(cached);
+                tiles.remove(cached.key, cached);
+                release(cached);
+            }
+        } finally {
+            policyLock.unlock();
+        }
+        if (compressedTier != null) {
+            compressedTier.clear();
+        }
+        if (offHeapMemory != null) {
+            offHeapMemory.clear();
+            if (DEBUG_LEVEL >= 1) {
+                System.out.printf(Locale.US, AbstractPlanePyramidSource.class.getSimpleName()
+                        + " has cleared off-heap cache, %.2f MB still used by active readers%n",
+                    offHeapMemory.allocatedMemory() / 1048576.0);
+            }
+        }
+    }
+
+    /**
+     * Returns the indexes of the tiles of the given owner, stored now in the cache, in decreasing order
+     * of the frequency of accesses, estimated by the eviction policy.
+     *
+     * @param owner    the owner of tiles (<tt>null</tt> for the private cache of a source).
+     * @param maxCount the maximal number of returned tiles.
+     * @return the most frequently used tiles.
+     */
+    List<TileCacheIndex> hottestTiles(Object owner, int maxCount) {
+        final List<CachedTile> candidates = new ArrayList<CachedTile>();
+        for (CachedTile cached : tiles.values()) {
+            if (cached.owner == owner) {
+                candidates.add(cached);
+            }
+        }
+        final Map<CachedTile, Integer> frequencies = new IdentityHashMap<CachedTile, Integer>();
+        policyLock.lock();
+        try {
+            for (CachedTile cached : candidates) {
+                frequencies.put(cached, policy.frequency(cached.key));
+            }
+        } finally {
+            policyLock.unlock();
+        }
+        candidates.sort((a, b) -> Integer.compare(frequencies.get(b), frequencies.get(a)));
+        final List<TileCacheIndex> result = new ArrayList<TileCacheIndex>();
+        for (CachedTile cached : candidates.subList(0, Math.min(maxCount, candidates.size()))) {
+            result.add((TileCacheIndex) cached.key);
+        }
+        return result;
+    }
+
+    // Returns the memory, which can be occupied by new tiles without evicting other tiles
+    long freeMemory() {
+        policyLock.lock();
+        try {
+            return policy.maximumWeight() - policy.totalWeight();
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    // Returns 0 if the cache is empty
+    long averageTileWeight() {
+        final int count = tiles.size();
+        return count == 0 ? 0 : usedMemory() / count;
+    }
+
+    long usedMemory() {
+        policyLock.lock();
+        try {
+            return policy.totalWeight();
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    TileCacheStats stats() {
+        final Map<Integer, long[]> levelUsage = new TreeMap<Integer, long[]>();
+        // - number of tiles and used memory for every level
+        for (CachedTile cached : tiles.values()) {
+            final long[] usage = levelUsage.computeIfAbsent(((TileCacheIndex) cached.key).resolutionLevel,
+                level -> new long[2]);
+            usage[0]++;
+            usage[1] += cached.weight;
+        }
+        final TreeMap<Integer, LevelCounters> counters = new TreeMap<Integer, LevelCounters>(levelCounters);
+        final List<TileCacheStats.LevelStats> levels = new ArrayList<TileCacheStats.LevelStats>();
+        long hits = 0, misses = 0, evictions = 0, loads = 0, loadTime = 0;
+        for (Map.Entry<Integer, LevelCounters> entry : counters.entrySet()) {
+            final LevelCounters c = entry.getValue();
+            final long[] usage = levelUsage.getOrDefault(entry.getKey(), new long[2]);
+            final TileCacheStats.LevelStats level = new TileCacheStats.LevelStats(entry.getKey(),
+                (int) usage[0], usage[1], c.hits.sum(), c.misses.sum(), c.evictions.sum(),
+                c.loads.sum(), c.loadTime.sum());
+            levels.add(level);
+            hits += level.hits();
+            misses += level.misses();
+            evictions += level.evictions();
+            loads += level.loads();
+            loadTime += c.loadTime.sum();
+        }
+        return new TileCacheStats(tiles.size(), usedMemory(), tileCachingMemory, loadings.size(),
+            hits, misses, evictions, loads, loadTime, levels);
+    }
+
+    TileCompressionStats compressionStats() {
+        return compressedTier == null ? TileCompressionStats.empty() : compressedTier.stats();
+    }
+
+    static long weight(Matrix<? extends PArray> matrix) {
+        return SimpleMemoryModel.isSimpleArray(matrix.array()) ?
+            Matrices.sizeOf(matrix) + ENTRY_OVERHEAD :
+            ENTRY_OVERHEAD;
+        // - other tiles are constant (see PlanePyramidTools.asUniform): they do not occupy memory
+    }
+
+    private LevelCounters levelCounters(TileCacheIndex index) {
+        final LevelCounters result = levelCounters.get(index.resolutionLevel);
+        return result != null ?
+            result :
+            levelCounters.computeIfAbsent(index.resolutionLevel, level -> new LevelCounters());
+    }
+
+    private void recordHit(TileCacheIndex index) {
+        levelCounters(index).hits.increment();
+        final TileCacheMetricsListener listener = metricsListener;
+        if (listener != null) {
+            listener.tileHit(index.resolutionLevel);
+        }
+    }
+
+    private void recordMiss(TileCacheIndex index) {
+        levelCounters(index).misses.increment();
+        final TileCacheMetricsListener listener = metricsListener;
+        if (listener != null) {
+            listener.tileMiss(index.resolutionLevel);
+        }
+    }
+
+    private void recordLoad(TileCacheIndex index, long loadTime) {
+        final LevelCounters counters = levelCounters(index);
+        counters.loads.increment();
+        counters.loadTime.add(loadTime);
+        final TileCacheMetricsListener listener = metricsListener;
+        if (listener != null) {
+            listener.tileLoaded(index.resolutionLevel, loadTime);
+        }
+    }
+
+    private void recordEviction(TileCacheIndex index, long weight) {
+        levelCounters(index).evictions.increment();
+        final TileCacheMetricsListener listener = metricsListener;
+        if (listener != null) {
+            listener.tileEvicted(index.resolutionLevel, weight);
+        }
+    }
+
+    private void release(CachedTile cached) {
+        final TilePrefetcher prefetcher = cached.takePrefetcher();
+        if (prefetcher != null) {
+            prefetchedWeight.addAndGet(-cached.weight);
+            prefetcher.recordWaste();
+            // - this tile was prefetched, but nobody requested it
+        }
+        if (cached.block != null) {
+            cached.evicted = true;
+            cached.tryFree(offHeapMemory);
+        }
+    }
+
+    private static CachedTile join(CompletableFuture<CachedTile> loading) {
+        try {
+            return loading.join();
+        } catch (CompletionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Tile data, returned by a loader, together with its {@link PlanePyramidTools#findUniformPixel(Matrix)
+     * uniform pixel}. The pixel is detected once by the loader: for uniform tiles with different bands,
+     * the data are a lazy {@link PlanePyramidTools#asUniform constant matrix}, and scanning it again
+     * would be slow.
+     */
+    static final class LoadedTile {
+        final Matrix<? extends PArray> data;
+        final double[] uniformPixel;
+        // - null if the tile is not uniform
+
+        LoadedTile(Matrix<? extends PArray> data, double[] uniformPixel) {
+            assert data != null;
+            this.data = data;
+            this.uniformPixel = uniformPixel;
+        }
+    }
+
+    interface TileAction<T> {
+        /**
+         * Performs some action with the tile.
+         *
+         * @param tileData     the tile data.
+         * @param offHeap      whether the data are stored in off-heap memory and may be reused
+         *                     after finishing this action.
+         * @param uniformPixel the values of all bands of the pixel, filling the whole tile,
+         *                     if the tile is {@link PlanePyramidTools#findUniformPixel(Matrix) uniform},
+         *                     or <tt>null</tt> if it is not; must not be modified.
+         * @return the result of the action.
+         */
+        T apply(Matrix<? extends PArray> tileData, boolean offHeap, double[] uniformPixel);
+    }
+
+    private static final class LevelCounters {
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder evictions = new LongAdder();
+        final LongAdder loads = new LongAdder();
+        final LongAdder loadTime = new LongAdder();
+        // - nanoseconds
+    }
+
+    private final class MXBean implements TileCacheMXBean {
+        @Override
+        public int getNumberOfTiles() {
+            return tiles.size();
+        }
+
+        @Override
+        public long getUsedMemory() {
+            return usedMemory();
+        }
+
+        @Override
+        public long getMaxMemory() {
+            return tileCachingMemory;
+        }
+
+        @Override
+        public int getLoadsInFlight() {
+            return loadings.size();
+        }
+
+        @Override
+        public long getHits() {
+            return sum(c -> c.hits);
+        }
+
+        @Override
+        public long getMisses() {
+            return sum(c -> c.misses);
+        }
+
+        @Override
+        public double getHitRatio() {
+            final long hits = sum(c -> c.hits);
+            final long misses = sum(c -> c.misses);
+            return hits + misses == 0 ? 0.0 : (double) hits / (double) (hits + misses);
+        }
+
+        @Override
+        public long getEvictions() {
+            return sum(c -> c.evictions);
+        }
+
+        @Override
+        public long getLoads() {
+            return sum(c -> c.loads);
+        }
+
+        @Override
+        public double getAverageLoadTimeInMilliseconds() {
+            final long loads = sum(c -> c.loads);
+            return loads == 0 ? 0.0 : sum(c -> c.loadTime) * 1e-6 / loads;
+        }
+
+        private long sum(Function<LevelCounters, LongAdder> counter) {
+            long result = 0;
+            for (LevelCounters c : levelCounters.values()) {
+                result += counter.apply(c).sum();
+            }
+            return result;
+        }
+    }
+
+    private static class CompressionPool {
+        static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(
+            1, Math.min(2, Runtime.getRuntime().availableProcessors()), 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(64),
+            runnable -> {
+                final Thread thread = new Thread(runnable,
+                    AbstractPlanePyramidSource.class.getSimpleName() + " tile compressor");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+        // - initialized while the first using; the default policy throws RejectedExecutionException
+
+        static {
+            EXECUTOR.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    private final class CachedTile extends TileCachePolicy.Node {
+        final Matrix<? extends PArray> data;
+        final ByteBuffer block;
+        // - null for tiles in Java heap
+        final double[] uniformPixel;
+        // - null if the tile is not uniform
+        final AtomicInteger pins = new AtomicInteger();
+        // - -1 after returning the block to the allocator
+        volatile boolean evicted = false;
+        volatile TilePrefetcher prefetcher = null;
+        // - non-null for prefetched tiles until the first request
+
+        private CachedTile(
+            TileCacheIndex index, Matrix<? extends PArray> data, ByteBuffer block, long weight,
+            double[] uniformPixel)
+        {
+            super(index, index.owner, weight);
+            this.data = data;
+            this.block = block;
+            this.uniformPixel = uniformPixel;
+        }
+
+        boolean pin() {
+            if (block == null) {
+                return true;
+            }
+            for (; ; ) {
+                final int count = pins.get();
+                if (count < 0) {
+                    return false;
+                }
+                if (pins.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        TilePrefetcher takePrefetcher() {
+            if (prefetcher == null) {
+                return null;
+            }
+            synchronized (this) {
+                final TilePrefetcher result = prefetcher;
+                prefetcher = null;
+                return result;
+            }
+        }
+
+        void unpin() {
+            if (block != null && pins.decrementAndGet() == 0 && evicted) {
+                tryFree(offHeapMemory);
+            }
+        }
+
+        void tryFree(OffHeapTileMemory memory) {
+            if (pins.compareAndSet(0, -1)) {
+                memory.release(block);
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.algart.simagis.pyramid;
+
+import net.algart.math.IRectangularArea;
+
+final class TileCacheIndex {
+    final Object owner;
+    // - identifies the source in the global cache (compared by identity); null in a private cache of a source
+    final int resolutionLevel;
+    final IRectangularArea tile;
+
+    TileCacheIndex(int resolutionLevel, IRectangularArea tile) {
+        this(null, resolutionLevel, tile);
+    }
+
+    TileCacheIndex(Object owner, int resolutionLevel, IRectangularArea tile) {
+        assert tile != null;
+        this.owner = owner;
+        this.resolutionLevel = resolutionLevel;
+        this.tile = tile;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TileCacheIndex)) {
+            return false;
+        }
+        TileCacheIndex that = (TileCacheIndex) o;
+        return owner == that.owner && resolutionLevel == that.resolutionLevel && tile.equals(that.tile);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = System.identityHashCode(owner);
+        result = 31 * result + resolutionLevel;
+        result = 31 * result + tile.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "level " + resolutionLevel + ": " + tile;
+    }
+}
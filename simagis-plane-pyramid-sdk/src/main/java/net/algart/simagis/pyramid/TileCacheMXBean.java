@@ -0,0 +1,56 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.algart.simagis.pyramid;
+
+/**
+ * Management interface of the tile cache, registered in the platform MBean server, if the system property
+ * "<tt>net.algart.simagis.pyramid.tileCacheJmx</tt>" is <tt>true</tt>.
+ * The global tile cache is registered with the name
+ * "<tt>net.algart.simagis.pyramid:type=TileCache,name=global</tt>", the own cache of a source
+ * with the name, containing the class of the source and its identity hash code.
+ *
+ * <p>All attributes correspond to the methods of {@link TileCacheStats} with the same names.
+ */
+public interface TileCacheMXBean {
+    int getNumberOfTiles();
+
+    long getUsedMemory();
+
+    long getMaxMemory();
+
+    int getLoadsInFlight();
+
+    long getHits();
+
+    long getMisses();
+
+    double getHitRatio();
+
+    long getEvictions();
+
+    long getLoads();
+
+    double getAverageLoadTimeInMilliseconds();
+}
@@ -0,0 +1,68 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.algart.simagis.pyramid;
+
+/**
+ * Receiver of events of tile caches, which can be used for exporting them into some metrics system.
+ * See {@link AbstractPlanePyramidSource#setTileCacheMetricsListener(TileCacheMetricsListener)}.
+ *
+ * <p>The methods are called synchronously by the threads, reading tiles, so they must be quick
+ * and thread-safe, and they should not throw exceptions. The default implementations do nothing.
+ */
+public interface TileCacheMetricsListener {
+    /**
+     * Called when a requested tile is found in the cache (or is being loaded by another thread).
+     *
+     * @param resolutionLevel the resolution level of the tile.
+     */
+    default void tileHit(int resolutionLevel) {
+    }
+
+    /**
+     * Called when a requested tile is absent in the cache and is loaded by the requesting thread.
+     *
+     * @param resolutionLevel the resolution level of the tile.
+     */
+    default void tileMiss(int resolutionLevel) {
+    }
+
+    /**
+     * Called after loading a tile into the cache by <tt>readLittleSubMatrix</tt>.
+     *
+     * @param resolutionLevel the resolution level of the tile.
+     * @param loadTime        the loading time in nanoseconds.
+     */
+    default void tileLoaded(int resolutionLevel, long loadTime) {
+    }
+
+    /**
+     * Called when a tile is evicted from the cache because of the memory limit.
+     *
+     * @param resolutionLevel the resolution level of the tile.
+     * @param weight          the memory, which was occupied by the tile (in bytes).
+     */
+    default void tileEvicted(int resolutionLevel, long weight) {
+    }
+}
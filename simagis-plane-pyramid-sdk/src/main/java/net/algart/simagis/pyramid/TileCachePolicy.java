@@ -0,0 +1,425 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.algart.simagis.pyramid;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Byte-weighted eviction policy of {@link TileCache}, similar to W-TinyLFU.
+ *
+ * <p>New entries come into a little LRU <i>window</i>. Entries, leaving the window, become candidates
+ * for the <i>main</i> space, consisting of <i>probation</i> and <i>protected</i> LRU segments.
+ * When the total weight exceeds the limit, the candidate competes with the least recently used
+ * entry of the probation segment: the entry with lower estimated access frequency is evicted.
+ * So, a long scan through new tiles (like a large pan across a slide) cannot flush frequently
+ * revisited tiles, for example, the overview levels.
+ *
+ * <p>The total weight is maintained as a running sum and never recalculated.
+ *
+ * <p>If nodes have different owners (sources in the global cache), the weight of every owner is also
+ * maintained. When the victim belongs to an owner, using not more than its fair share of the memory
+ * (the maximum weight divided by the number of owners), while some other owner uses more,
+ * the least recently used node of such other owner becomes the victim instead. For this purpose, nodes
+ * of every owner are also linked into a separate LRU list of this owner, so the victim is found
+ * without scanning the segments.
+ *
+ * <p>This class is not thread-safe: all methods must be called under the lock of the owning cache.
+ */
+final class TileCachePolicy {
+    static final int WINDOW = 0;
+    static final int PROBATION = 1;
+    static final int PROTECTED = 2;
+
+    private static final double WINDOW_FRACTION = 0.2;
+    private static final double PROTECTED_FRACTION = 0.8;
+    private static final long ESTIMATED_ENTRY_WEIGHT = 65536;
+    // - typical tile 128x128 RGBA; used only for sizing the frequency sketch
+
+    static class Node {
+        final Object key;
+        final Object owner;
+        final long weight;
+        int queue = -1;
+        Node prev = null;
+        Node next = null;
+        Node ownerPrev = null;
+        Node ownerNext = null;
+
+        Node(Object key, long weight) {
+            this(key, null, weight);
+        }
+
+        Node(Object key, Object owner, long weight) {
+            assert key != null;
+            assert weight > 0;
+            this.key = key;
+            this.owner = owner;
+            this.weight = weight;
+        }
+
+        final boolean isLinked() {
+            return queue >= 0;
+        }
+    }
+
+    private final long maximumWeight;
+    private final long maximumWindowWeight;
+    private final long maximumProtectedWeight;
+    private final Deque window = new Deque();
+    private final Deque probation = new Deque();
+    private final Deque protectedSegment = new Deque();
+    private final FrequencySketch sketch;
+    private final Map<Object, Owner> owners = new IdentityHashMap<Object, Owner>();
+
+    private long windowWeight = 0;
+    private long protectedWeight = 0;
+    private long totalWeight = 0;
+    private long count = 0;
+
+    TileCachePolicy(long maximumWeight) {
+        if (maximumWeight < 0) {
+            throw new IllegalArgumentException("Negative maximum weight");
+        }
+        this.maximumWeight = maximumWeight;
+        this.maximumWindowWeight = (long) (maximumWeight * WINDOW_FRACTION);
+        this.maximumProtectedWeight = (long) ((maximumWeight - maximumWindowWeight) * PROTECTED_FRACTION);
+        this.sketch = new FrequencySketch(maximumWeight / ESTIMATED_ENTRY_WEIGHT);
+        // - sized once: resizing would lose the frequency history
+    }
+
+    long maximumWeight() {
+        return maximumWeight;
+    }
+
+    long totalWeight() {
+        return totalWeight;
+    }
+
+    long count() {
+        return count;
+    }
+
+    long ownerWeight(Object owner) {
+        final Owner result = owners.get(owner);
+        return result == null ? 0 : result.weight;
+    }
+
+    int frequency(Object key) {
+        return sketch.frequency(key.hashCode());
+    }
+
+    void recordAccess(Node node) {
+        sketch.increment(node.key.hashCode());
+        if (!node.isLinked()) {
+            return;
+            // - already evicted
+        }
+        if (node.owner != null) {
+            owners.get(node.owner).moveToTail(node);
+        }
+        switch (node.queue) {
+            case WINDOW:
+                window.moveToTail(node);
+                break;
+            case PROBATION:
+                probation.remove(node);
+                protectedSegment.addToTail(node, PROTECTED);
+                protectedWeight += node.weight;
+                while (protectedWeight > maximumProtectedWeight && protectedSegment.head != node) {
+                    final Node demoted = protectedSegment.removeHead();
+                    protectedWeight -= demoted.weight;
+                    probation.addToTail(demoted, PROBATION);
+                }
+                break;
+            case PROTECTED:
+                protectedSegment.moveToTail(node);
+                break;
+        }
+    }
+
+    /**
+     * Adds new node and returns the list of nodes, which should be evicted to satisfy the weight limit.
+     * The newly added node is never evicted by this call.
+     *
+     * @param node new node.
+     * @return evicted nodes (already removed from this policy).
+     */
+    List<Node> add(Node node) {
+        assert !node.isLinked();
+        sketch.increment(node.key.hashCode());
+        window.addToTail(node, WINDOW);
+        windowWeight += node.weight;
+        totalWeight += node.weight;
+        count++;
+        if (node.owner != null) {
+            Owner owner = owners.get(node.owner);
+            if (owner == null) {
+                owners.put(node.owner, owner = new Owner());
+            }
+            owner.addToTail(node);
+        }
+        Node firstCandidate = null;
+        while (windowWeight > maximumWindowWeight && window.head != node) {
+            final Node candidate = window.removeHead();
+            windowWeight -= candidate.weight;
+            probation.addToTail(candidate, PROBATION);
+            if (firstCandidate == null) {
+                firstCandidate = candidate;
+            }
+        }
+        return evictFromMain(firstCandidate, node);
+    }
+
+    void remove(Node node) {
+        if (!node.isLinked()) {
+            return;
+        }
+        switch (node.queue) {
+            case WINDOW:
+                window.remove(node);
+                windowWeight -= node.weight;
+                break;
+            case PROBATION:
+                probation.remove(node);
+                break;
+            case PROTECTED:
+                protectedSegment.remove(node);
+                protectedWeight -= node.weight;
+                break;
+        }
+        totalWeight -= node.weight;
+        count--;
+        if (node.owner != null) {
+            final Owner owner = owners.get(node.owner);
+            assert owner != null;
+            owner.remove(node);
+            if (owner.head == null) {
+                owners.remove(node.owner);
+            }
+        }
+    }
+
+    private List<Node> evictFromMain(Node candidate, Node protectedNode) {
+        final List<Node> evicted = new ArrayList<Node>();
+        while (totalWeight > maximumWeight) {
+            Node victim = probation.head;
+            if (victim == null) {
+                victim = protectedSegment.head;
+            }
+            if (victim == null) {
+                victim = window.head;
+                // - main space is empty: we have only the window
+            }
+            if (victim == null || victim == protectedNode) {
+                break;
+            }
+            victim = correctVictimForFairness(victim, protectedNode);
+            Node evict = victim;
+            if (candidate != null && candidate.isLinked() && candidate.queue == PROBATION) {
+                final Node nextCandidate = candidate.next;
+                // TinyLFU admission: the candidate is preserved only if it is used more frequently
+                if (candidate != victim
+                    && sketch.frequency(candidate.key.hashCode()) <= sketch.frequency(victim.key.hashCode()))
+                {
+                    evict = candidate;
+                }
+                candidate = nextCandidate;
+            }
+            remove(evict);
+            evicted.add(evict);
+        }
+        return evicted;
+    }
+
+    private Node correctVictimForFairness(Node victim, Node protectedNode) {
+        if (owners.size() <= 1 || victim.owner == null) {
+            return victim;
+        }
+        final long fairShare = maximumWeight / owners.size();
+        if (ownerWeight(victim.owner) > fairShare) {
+            return victim;
+        }
+        Owner largest = null;
+        for (Owner owner : owners.values()) {
+            if (largest == null || owner.weight > largest.weight) {
+                largest = owner;
+            }
+        }
+        // - the number of owners (sources) is small
+        if (largest.weight <= fairShare) {
+            return victim;
+        }
+        final Node result = largest.head != protectedNode ? largest.head : protectedNode.ownerNext;
+        return result != null ? result : victim;
+    }
+
+    // The LRU list of nodes of one owner and their total weight
+    private static final class Owner {
+        Node head = null;
+        Node tail = null;
+        long weight = 0;
+
+        void addToTail(Node node) {
+            node.ownerPrev = tail;
+            node.ownerNext = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.ownerNext = node;
+            }
+            tail = node;
+            weight += node.weight;
+        }
+
+        void moveToTail(Node node) {
+            if (node != tail) {
+                remove(node);
+                addToTail(node);
+            }
+        }
+
+        void remove(Node node) {
+            if (node.ownerPrev == null) {
+                head = node.ownerNext;
+            } else {
+                node.ownerPrev.ownerNext = node.ownerNext;
+            }
+            if (node.ownerNext == null) {
+                tail = node.ownerPrev;
+            } else {
+                node.ownerNext.ownerPrev = node.ownerPrev;
+            }
+            node.ownerPrev = null;
+            node.ownerNext = null;
+            weight -= node.weight;
+        }
+    }
+
+    private static final class Deque {
+        Node head = null;
+        Node tail = null;
+
+        void addToTail(Node node, int queue) {
+            node.queue = queue;
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+        }
+
+        void moveToTail(Node node) {
+            if (node != tail) {
+                final int queue = node.queue;
+                remove(node);
+                addToTail(node, queue);
+            }
+        }
+
+        Node removeHead() {
+            final Node result = head;
+            if (result != null) {
+                remove(result);
+            }
+            return result;
+        }
+
+        void remove(Node node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            node.queue = -1;
+        }
+    }
+
+    /**
+     * Count-min sketch with 4 rows of saturating 4-bit counters (stored in bytes for simplicity).
+     * All counters are halved after the number of increments reaches 10 times the table width,
+     * so the estimated frequencies reflect recent history.
+     */
+    private static final class FrequencySketch {
+        private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+        private static final int MAX_COUNTER = 15;
+        private static final int MAX_WIDTH = 1 << 20;
+
+        private final byte[][] table;
+        private final int width;
+        private long additions = 0;
+
+        FrequencySketch(long expectedSize) {
+            this.width = (int) Math.min(MAX_WIDTH, Long.highestOneBit(Math.max(16, expectedSize)) << 1);
+            this.table = new byte[SEEDS.length][width];
+        }
+
+        int frequency(int hash) {
+            int result = MAX_COUNTER;
+            for (int row = 0; row < SEEDS.length; row++) {
+                result = Math.min(result, table[row][indexOf(hash, row)]);
+            }
+            return result;
+        }
+
+        void increment(int hash) {
+            boolean changed = false;
+            for (int row = 0; row < SEEDS.length; row++) {
+                final int index = indexOf(hash, row);
+                if (table[row][index] < MAX_COUNTER) {
+                    table[row][index]++;
+                    changed = true;
+                }
+            }
+            if (changed && ++additions >= 10L * width) {
+                for (byte[] counters : table) {
+                    for (int k = 0; k < counters.length; k++) {
+                        counters[k] >>= 1;
+                    }
+                }
+                additions /= 2;
+            }
+        }
+
+        private int indexOf(int hash, int row) {
+            long h = (hash + SEEDS[row]) * SEEDS[row];
+            h += h >>> 32;
+            return (int) h & (width - 1);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.algart.simagis.pyramid;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Snapshot of statistics of the tile cache, used by {@link AbstractPlanePyramidSource}.
+ * See {@link AbstractPlanePyramidSource#getTileCacheStats()}.
+ *
+ * <p>A request of a tile is a <i>hit</i>, if the tile is found in the cache or is being loaded
+ * by another thread at this moment, and a <i>miss</i>, if the tile is loaded by the requesting thread
+ * (by <tt>readLittleSubMatrix</tt> or from the compressed tier). Prefetching is not counted as requests,
+ * but tiles, loaded by prefetching, are counted in {@link #loads()}.
+ * Counters are accumulated since creating the cache; the memory and the number of tiles describe
+ * the current state.
+ */
+public final class TileCacheStats {
+    private final int numberOfTiles;
+    private final long usedMemory;
+    private final long maxMemory;
+    private final int loadsInFlight;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long loads;
+    private final long loadTime;
+    private final List<LevelStats> levels;
+
+    TileCacheStats(
+        int numberOfTiles, long usedMemory, long maxMemory, int loadsInFlight,
+        long hits, long misses, long evictions, long loads, long loadTime,
+        List<LevelStats> levels)
+    {
+        this.numberOfTiles = numberOfTiles;
+        this.usedMemory = usedMemory;
+        this.maxMemory = maxMemory;
+        this.loadsInFlight = loadsInFlight;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.loads = loads;
+        this.loadTime = loadTime;
+        this.levels = Collections.unmodifiableList(levels);
+    }
+
+    static TileCacheStats empty() {
+        return new TileCacheStats(0, 0, 0, 0, 0, 0, 0, 0, 0, Collections.<LevelStats>emptyList());
+    }
+
+    /**
+     * Returns the number of tiles, stored now in the cache (not including the compressed tier).
+     *
+     * @return the number of tiles in the cache.
+     */
+    public int numberOfTiles() {
+        return numberOfTiles;
+    }
+
+    /**
+     * Returns the memory, occupied now by tiles (in bytes), not including the compressed tier.
+     *
+     * @return the used memory of the cache.
+     */
+    public long usedMemory() {
+        return usedMemory;
+    }
+
+    public long maxMemory() {
+        return maxMemory;
+    }
+
+    /**
+     * Returns the number of tiles, which are being loaded at this moment.
+     *
+     * @return the number of loadings in progress.
+     */
+    public int loadsInFlight() {
+        return loadsInFlight;
+    }
+
+    public long hits() {
+        return hits;
+    }
+
+    public long misses() {
+        return misses;
+    }
+
+    /**
+     * Returns the ratio of hits to all requests (0.0 if there were no requests).
+     *
+     * @return the hit ratio.
+     */
+    public double hitRatio() {
+        return ratio(hits, misses);
+    }
+
+    /**
+     * Returns the number of tiles, evicted from the cache because of the memory limit.
+     * Tiles, removed by freeing resources, are not counted.
+     *
+     * @return the number of evictions.
+     */
+    public long evictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns the number of calls of <tt>readLittleSubMatrix</tt>, performed for loading tiles into the cache.
+     *
+     * @return the number of loaded tiles.
+     */
+    public long loads() {
+        return loads;
+    }
+
+    public double averageLoadTimeInMilliseconds() {
+        return loads == 0 ? 0.0 : loadTime * 1e-6 / loads;
+    }
+
+    /**
+     * Returns statistics for every resolution level, which was requested from the cache,
+     * in increasing order of levels. If the cache is global, the statistics of levels
+     * with the same index of different sources are joined.
+     *
+     * @return statistics of resolution levels (unmodifiable list).
+     */
+    public List<LevelStats> levels() {
+        return levels;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+            "tile cache: %d tiles, %.2f/%.2f MB; %d hits, %d misses (hit ratio %.3f), %d evictions, "
+                + "%d loads, %.3f ms/tile, %d loads in flight",
+            numberOfTiles, usedMemory / 1048576.0, maxMemory / 1048576.0,
+            hits, misses, hitRatio(), evictions, loads, averageLoadTimeInMilliseconds(), loadsInFlight);
+    }
+
+    private static double ratio(long hits, long misses) {
+        return hits + misses == 0 ? 0.0 : (double) hits / (double) (hits + misses);
+    }
+
+    /**
+     * Statistics of tiles of one resolution level.
+     */
+    public static final class LevelStats {
+        private final int resolutionLevel;
+        private final int numberOfTiles;
+        private final long usedMemory;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long loads;
+        private final long loadTime;
+
+        LevelStats(
+            int resolutionLevel, int numberOfTiles, long usedMemory,
+            long hits, long misses, long evictions, long loads, long loadTime)
+        {
+            this.resolutionLevel = resolutionLevel;
+            this.numberOfTiles = numberOfTiles;
+            this.usedMemory = usedMemory;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.loads = loads;
+            this.loadTime = loadTime;
+        }
+
+        public int resolutionLevel() {
+            return resolutionLevel;
+        }
+
+        public int numberOfTiles() {
+            return numberOfTiles;
+        }
+
+        public long usedMemory() {
+            return usedMemory;
+        }
+
+        public long hits() {
+            return hits;
+        }
+
+        public long misses() {
+            return misses;
+        }
+
+        public double hitRatio() {
+            return ratio(hits, misses);
+        }
+
+        public long evictions() {
+            return evictions;
+        }
+
+        public long loads() {
+            return loads;
+        }
+
+        public double averageLoadTimeInMilliseconds() {
+            return loads == 0 ? 0.0 : loadTime * 1e-6 / loads;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                "level %d: %d tiles, %.2f MB; %d hits, %d misses (hit ratio %.3f), %d evictions, "
+                    + "%d loads, %.3f ms/tile",
+                resolutionLevel, numberOfTiles, usedMemory / 1048576.0,
+                hits, misses, hitRatio(), evictions, loads, averageLoadTimeInMilliseconds());
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.algart.simagis.pyramid;
+
+import net.algart.math.IPoint;
+import net.algart.math.IRectangularArea;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Warm-start of the tile cache of {@link AbstractPlanePyramidSource} by a manifest of hot tiles.
+ *
+ * <p>The manifest is a compact text: the header line {@link #HEADER} and then one line
+ * "<tt>level minX minY maxX maxY</tt>" for every tile, in decreasing order of the frequency of accesses.
+ * It is created by {@link #format} from the tiles, which are the most frequently used in the cache
+ * ({@link TileCache#hottestTiles}), and can be stored anywhere, for example, near the slide.
+ *
+ * <p>{@link #start} loads the tiles in one background thread with minimal priority, shared by all sources,
+ * not faster than the given number of tiles per second. Every tile is loaded by a separate scheduled task,
+ * which schedules the task for the next tile: so, warm-up of several sources is interleaved, and a large
+ * manifest does not delay warm-up of sources, opened after it. Loading stops when the tile warmer
+ * reports that there is no free memory for the next tile, or after {@link #cancel()}.
+ *
+ * <p>This class is thread-safe.
+ */
+final class TileCacheWarmer {
+    static final String HEADER = "simagis-plane-pyramid-hot-tiles 1";
+
+    private static final int DEBUG_LEVEL = PlanePyramidSource.DEBUG_LEVEL;
+
+    interface TileWarmer {
+        /**
+         * Loads the tile into the tile cache, if there is free memory for it.
+         *
+         * @param resolutionLevel the level.
+         * @param tile            the tile.
+         * @return <tt>false</tt> if warm-up should be stopped.
+         */
+        boolean warmUp(int resolutionLevel, IRectangularArea tile);
+    }
+
+    private volatile boolean cancelled = false;
+
+    static String format(List<TileCacheIndex> tiles) {
+        final StringBuilder sb = new StringBuilder(HEADER).append('\n');
+        for (TileCacheIndex index : tiles) {
+            final IRectangularArea tile = index.tile;
+            sb.append(index.resolutionLevel).append(' ')
+                .append(tile.min(0)).append(' ').append(tile.min(1)).append(' ')
+                .append(tile.max(0)).append(' ').append(tile.max(1)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    static List<TileCacheIndex> parse(String manifest) {
+        final String[] lines = manifest.split("\\r?\\n");
+        if (lines.length == 0 || !lines[0].trim().equals(HEADER)) {
+            throw new IllegalArgumentException("Invalid hot tiles manifest: it must start with \"" + HEADER + "\"");
+        }
+        final List<TileCacheIndex> result = new ArrayList<TileCacheIndex>();
+        for (int k = 1; k < lines.length; k++) {
+            final String line = lines[k].trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            final String[] values = line.split("\\s+");
+            try {
+                if (values.length != 5) {
+                    throw new NumberFormatException("5 numbers required");
+                }
+                final int level = Integer.parseInt(values[0]);
+                final long minX = Long.parseLong(values[1]);
+                final long minY = Long.parseLong(values[2]);
+                final long maxX = Long.parseLong(values[3]);
+                final long maxY = Long.parseLong(values[4]);
+                if (level < 0 || minX < 0 || minY < 0 || minX > maxX || minY > maxY) {
+                    throw new NumberFormatException("negative level or invalid tile bounds");
+                }
+                result.add(new TileCacheIndex(level,
+                    IRectangularArea.valueOf(IPoint.valueOf(minX, minY), IPoint.valueOf(maxX, maxY))));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid line #" + (k + 1) + " in hot tiles manifest: \""
+                    + line + "\" (" + e.getMessage() + ")");
+            }
+        }
+        return result;
+    }
+
+    void start(List<TileCacheIndex> tiles, TileWarmer warmer, int tilesPerSecond) {
+        assert tilesPerSecond > 0;
+        Pool.EXECUTOR.execute(new Task(tiles, warmer, 1000000000L / tilesPerSecond));
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    // Loads the next tile and schedules itself for the following one
+    private final class Task implements Runnable {
+        private final List<TileCacheIndex> tiles;
+        private final TileWarmer warmer;
+        private final long delay;
+        private int count = 0;
+
+        private Task(List<TileCacheIndex> tiles, TileWarmer warmer, long delay) {
+            this.tiles = tiles;
+            this.warmer = warmer;
+            this.delay = delay;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (!cancelled && count < tiles.size()
+                    && warmer.warmUp(tiles.get(count).resolutionLevel, tiles.get(count).tile))
+                {
+                    count++;
+                    if (count < tiles.size()) {
+                        Pool.EXECUTOR.schedule(this, delay, TimeUnit.NANOSECONDS);
+                        return;
+                    }
+                }
+            } catch (RuntimeException e) {
+                if (DEBUG_LEVEL >= 1) {
+                    System.out.println(AbstractPlanePyramidSource.class.getSimpleName()
+                        + " has stopped warm-up of the tile cache: " + e);
+                }
+            } catch (Error e) {
+                System.err.println(AbstractPlanePyramidSource.class.getSimpleName()
+                    + " has stopped warm-up of the tile cache: " + e);
+                throw e;
+            }
+            if (DEBUG_LEVEL >= 1) {
+                System.out.println(AbstractPlanePyramidSource.class.getSimpleName()
+                    + " has warmed up the tile cache by " + count + " of " + tiles.size() + " hot tiles");
+            }
+        }
+    }
+
+    private static class Pool {
+        static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable,
+                AbstractPlanePyramidSource.class.getSimpleName() + " tile cache warmer");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+}
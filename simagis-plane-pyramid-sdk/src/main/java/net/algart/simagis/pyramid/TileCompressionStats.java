@@ -0,0 +1,138 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.algart.simagis.pyramid;
+
+import java.util.Locale;
+
+/**
+ * Snapshot of statistics of the compressed ("warm") tier of the tile cache.
+ * See {@link AbstractPlanePyramidSource#setCompressedTileCachingFraction(double)}.
+ */
+public final class TileCompressionStats {
+    private final int numberOfTiles;
+    private final long usedMemory;
+    private final long maxMemory;
+    private final long compressedTiles;
+    private final long uncompressedBytes;
+    private final long compressedBytes;
+    private final long compressionTime;
+    private final long hits;
+    private final long misses;
+    private final long decompressionTime;
+
+    TileCompressionStats(
+        int numberOfTiles, long usedMemory, long maxMemory,
+        long compressedTiles, long uncompressedBytes, long compressedBytes, long compressionTime,
+        long hits, long misses, long decompressionTime)
+    {
+        this.numberOfTiles = numberOfTiles;
+        this.usedMemory = usedMemory;
+        this.maxMemory = maxMemory;
+        this.compressedTiles = compressedTiles;
+        this.uncompressedBytes = uncompressedBytes;
+        this.compressedBytes = compressedBytes;
+        this.compressionTime = compressionTime;
+        this.hits = hits;
+        this.misses = misses;
+        this.decompressionTime = decompressionTime;
+    }
+
+    static TileCompressionStats empty() {
+        return new TileCompressionStats(0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Returns the number of tiles, stored now in the compressed tier.
+     *
+     * @return the number of compressed tiles in the cache.
+     */
+    public int numberOfTiles() {
+        return numberOfTiles;
+    }
+
+    /**
+     * Returns the memory, occupied now by compressed tiles (in bytes).
+     *
+     * @return the used memory of the compressed tier.
+     */
+    public long usedMemory() {
+        return usedMemory;
+    }
+
+    public long maxMemory() {
+        return maxMemory;
+    }
+
+    /**
+     * Returns the total number of compressions since creating the cache.
+     *
+     * @return the number of compressed tiles.
+     */
+    public long compressedTiles() {
+        return compressedTiles;
+    }
+
+    /**
+     * Returns the ratio of the total size of all compressed tiles to the total size of the results
+     * of their compression (1.0 if there were no compressions).
+     *
+     * @return the average compression ratio.
+     */
+    public double compressionRatio() {
+        return compressedBytes == 0 ? 1.0 : (double) uncompressedBytes / (double) compressedBytes;
+    }
+
+    public double averageCompressionTimeInMilliseconds() {
+        return compressedTiles == 0 ? 0.0 : compressionTime * 1e-6 / compressedTiles;
+    }
+
+    /**
+     * Returns the number of requests of tiles, which were absent in the hot tier
+     * and found in the compressed tier.
+     *
+     * @return the number of hits in the compressed tier.
+     */
+    public long hits() {
+        return hits;
+    }
+
+    public long misses() {
+        return misses;
+    }
+
+    public double averageDecompressionTimeInMilliseconds() {
+        return hits == 0 ? 0.0 : decompressionTime * 1e-6 / hits;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+            "compressed tiles: %d tiles, %.2f/%.2f MB; %d compressions, ratio %.2f, %.3f ms/tile; "
+                + "%d hits, %d misses, decompression %.3f ms/tile",
+            numberOfTiles, usedMemory / 1048576.0, maxMemory / 1048576.0,
+            compressedTiles, compressionRatio(), averageCompressionTimeInMilliseconds(),
+            hits, misses, averageDecompressionTimeInMilliseconds());
+    }
+}
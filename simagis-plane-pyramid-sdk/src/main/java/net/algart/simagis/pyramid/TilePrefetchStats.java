@@ -0,0 +1,142 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package net.algart.simagis.pyramid;
+
+import java.util.Locale;
+
+/**
+ * Snapshot of statistics of predictive tile prefetching.
+ * See {@link AbstractPlanePyramidSource#setTilePrefetchingEnabled(boolean)}.
+ */
+public final class TilePrefetchStats {
+    private final long scheduledTiles;
+    private final long loadedTiles;
+    private final long alreadyCachedTiles;
+    private final long overBudgetTiles;
+    private final long staleTiles;
+    private final long failedTiles;
+    private final long hits;
+    private final long wastedTiles;
+
+    TilePrefetchStats(
+        long scheduledTiles, long loadedTiles, long alreadyCachedTiles, long overBudgetTiles,
+        long staleTiles, long failedTiles, long hits, long wastedTiles)
+    {
+        this.scheduledTiles = scheduledTiles;
+        this.loadedTiles = loadedTiles;
+        this.alreadyCachedTiles = alreadyCachedTiles;
+        this.overBudgetTiles = overBudgetTiles;
+        this.staleTiles = staleTiles;
+        this.failedTiles = failedTiles;
+        this.hits = hits;
+        this.wastedTiles = wastedTiles;
+    }
+
+    static TilePrefetchStats empty() {
+        return new TilePrefetchStats(0, 0, 0, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Returns the number of tiles, which were predicted and scheduled for loading in background.
+     *
+     * @return the number of scheduled tiles.
+     */
+    public long scheduledTiles() {
+        return scheduledTiles;
+    }
+
+    /**
+     * Returns the number of tiles, which were really loaded into the tile cache by the prefetcher.
+     *
+     * @return the number of prefetched tiles.
+     */
+    public long loadedTiles() {
+        return loadedTiles;
+    }
+
+    public long alreadyCachedTiles() {
+        return alreadyCachedTiles;
+    }
+
+    /**
+     * Returns the number of scheduled tiles, which were not loaded, because prefetched tiles,
+     * not requested yet, already occupied all memory, allowed for them.
+     *
+     * @return the number of tiles, skipped because of the memory budget.
+     */
+    public long overBudgetTiles() {
+        return overBudgetTiles;
+    }
+
+    /**
+     * Returns the number of scheduled tiles, which were not loaded, because the viewer
+     * had already moved further before the background thread started loading them.
+     *
+     * @return the number of tiles, skipped because the prediction became out of date.
+     */
+    public long staleTiles() {
+        return staleTiles;
+    }
+
+    public long failedTiles() {
+        return failedTiles;
+    }
+
+    /**
+     * Returns the number of prefetched tiles, which were later requested by <tt>readSubMatrix</tt>.
+     *
+     * @return the number of useful prefetched tiles.
+     */
+    public long hits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of prefetched tiles, which were evicted from the cache before any request.
+     *
+     * @return the number of wasted prefetched tiles.
+     */
+    public long wastedTiles() {
+        return wastedTiles;
+    }
+
+    public double hitRatio() {
+        return loadedTiles == 0 ? 0.0 : (double) hits / (double) loadedTiles;
+    }
+
+    public double wasteRatio() {
+        return loadedTiles == 0 ? 0.0 : (double) wastedTiles / (double) loadedTiles;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+            "prefetching: %d scheduled, %d loaded (%d already cached, %d over budget, %d stale, %d failed); "
+                + "%d hits (%.1f%%), %d wasted (%.1f%%)",
+            scheduledTiles, loadedTiles, alreadyCachedTiles, overBudgetTiles, staleTiles, failedTiles,
+            hits, 100.0 * hitRatio(), wastedTiles, 100.0 * wasteRatio());
+    }
+}
@@ -0,0 +1,373 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package net.algart.simagis.pyramid;
+
+import net.algart.arrays.Arrays;
+import net.algart.math.IPoint;
+import net.algart.math.IRectangularArea;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Predictive prefetcher of tiles for {@link AbstractPlanePyramidSource}.
+ *
+ * <p>It watches the sequence of areas, requested by <tt>readSubMatrix</tt> at every resolution level,
+ * and estimates the velocity of panning (in pixels per request, exponentially smoothed).
+ * While the viewer moves, the tiles of the next ring in the direction of motion (the tiles of the predicted
+ * next area, which do not intersect the current area) are loaded into the tile cache by background threads,
+ * shared by all sources. A jump to another place or changing the area size (zooming) resets the velocity.
+ *
+ * <p>Besides, the prefetcher loads areas, which will be probably requested soon, by explicit hints
+ * ({@link #onPrefetchRequest}); for example, {@link net.algart.simagis.pyramid.sources.ScalablePlanePyramidSource}
+ * requests the same area at the neighbouring levels, needed for zooming in and out.
+ * Such tasks have lower priority than the tasks, predicted by motion: they are executed only when
+ * the prefetching threads have nothing else to do. The numbers of pending tasks of both kinds
+ * are limited separately, so many hints cannot prevent scheduling the tasks, predicted by motion.
+ *
+ * <p>Prefetched tiles, which were not requested yet, may occupy only a part of the tile cache
+ * (see {@link TileCache#prefetch}); so, the prefetcher cannot evict the working set of the viewer.
+ * Tasks, which became out of date before starting (the viewer has already moved further
+ * or a new hint for the same level does not contain the tile), are skipped.
+ *
+ * <p>This class is thread-safe.
+ */
+final class TilePrefetcher {
+    private static final int DEBUG_LEVEL = PlanePyramidSource.DEBUG_LEVEL;
+    private static final int NUMBER_OF_THREADS = Math.max(1, Arrays.SystemSettings.getIntProperty(
+        "net.algart.simagis.pyramid.tilePrefetchingThreads", 2));
+    private static final double SMOOTHING = 0.5;
+    private static final double MIN_RELATIVE_SPEED = 0.02;
+    // - slower motion (relative to the area size) is not considered as panning
+    private static final double MAX_RELATIVE_JUMP = 2.0;
+    // - larger displacement (relative to the area size) is considered as a jump to another place
+    private static final int MAX_TILES_PER_REQUEST = 64;
+    private static final int MAX_PENDING_TILES = 4 * MAX_TILES_PER_REQUEST;
+    // - for every priority
+    private static final long MAX_STALENESS = 2;
+    // - tasks, scheduled more than 2 requests ago (at the same level), are skipped
+    private static final int MOTION_PRIORITY = 0;
+    private static final int HINT_PRIORITY = 1;
+    private static final AtomicLong TASK_COUNTER = new AtomicLong();
+
+    interface TileLoader {
+        /**
+         * Loads the tile into the tile cache, if it is absent there, via {@link TileCache#prefetch}.
+         *
+         * @param resolutionLevel the level.
+         * @param tile            the tile.
+         */
+        void prefetch(int resolutionLevel, IRectangularArea tile);
+    }
+
+    private final TileLoader loader;
+    private final Map<Integer, Motion> motions = new HashMap<Integer, Motion>();
+    private final Map<Integer, IRectangularArea> hintedAreas = new ConcurrentHashMap<Integer, IRectangularArea>();
+    private final Set<TileCacheIndex> pendingTiles = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger[] pendingCounts = {new AtomicInteger(), new AtomicInteger()};
+    // - indexed by priority
+    private volatile boolean cancelled = false;
+
+    private final LongAdder scheduledTiles = new LongAdder();
+    private final LongAdder loadedTiles = new LongAdder();
+    private final LongAdder alreadyCachedTiles = new LongAdder();
+    private final LongAdder overBudgetTiles = new LongAdder();
+    private final LongAdder staleTiles = new LongAdder();
+    private final LongAdder failedTiles = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder wastedTiles = new LongAdder();
+
+    TilePrefetcher(TileLoader loader) {
+        assert loader != null;
+        this.loader = loader;
+    }
+
+    /**
+     * Informs the prefetcher about the next request of the viewer and, if it moves,
+     * schedules loading the tiles in the direction of motion.
+     */
+    void onRequest(
+        int resolutionLevel, long fromX, long fromY, long toX, long toY,
+        long dimX, long dimY, int tileDim, AbstractPlanePyramidSource.TileDirection direction)
+    {
+        if (fromX >= toX || fromY >= toY) {
+            return;
+        }
+        final Motion motion;
+        final IRectangularArea predicted;
+        synchronized (motions) {
+            cancelled = false;
+            Motion m = motions.get(resolutionLevel);
+            if (m == null) {
+                motions.put(resolutionLevel, new Motion(fromX, fromY, toX, toY));
+                return;
+            }
+            m.update(fromX, fromY, toX, toY);
+            predicted = m.predictNextArea(tileDim, dimX, dimY);
+            motion = m;
+        }
+        if (predicted == null) {
+            return;
+        }
+        final long generation = motion.generation;
+        int count = 0;
+        IRectangularArea leftTile;
+        for (long y = predicted.min(1); y <= predicted.max(1); y = leftTile.max(1) + 1) {
+            leftTile = direction.findTile(tileDim, dimX, dimY, predicted.min(0), y);
+            IRectangularArea tile;
+            for (long x = predicted.min(0); x <= predicted.max(0); x = tile.max(0) + 1) {
+                tile = direction.findTile(tileDim, dimX, dimY, x, y);
+                final boolean visible = tile.min(0) < toX && tile.max(0) >= fromX
+                    && tile.min(1) < toY && tile.max(1) >= fromY;
+                // - such tiles are being read now by readSubMatrix
+                if (!visible && count < MAX_TILES_PER_REQUEST) {
+                    schedule(resolutionLevel, tile, MOTION_PRIORITY,
+                        () -> motion.generation - generation > MAX_STALENESS);
+                    count++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Schedules loading all tiles of the given area with low priority. Tasks of the previous hint
+     * for the same level, which are not started yet, are skipped if their tiles are outside this area.
+     */
+    void onPrefetchRequest(
+        int resolutionLevel, long fromX, long fromY, long toX, long toY,
+        long dimX, long dimY, int tileDim, AbstractPlanePyramidSource.TileDirection direction)
+    {
+        if (fromX >= toX || fromY >= toY) {
+            return;
+        }
+        final IRectangularArea area = IRectangularArea.valueOf(
+            IPoint.valueOf(fromX, fromY), IPoint.valueOf(toX - 1, toY - 1));
+        synchronized (motions) {
+            cancelled = false;
+            hintedAreas.put(resolutionLevel, area);
+        }
+        int count = 0;
+        IRectangularArea leftTile;
+        for (long y = fromY; y < toY && count < MAX_TILES_PER_REQUEST; y = leftTile.max(1) + 1) {
+            leftTile = direction.findTile(tileDim, dimX, dimY, fromX, y);
+            IRectangularArea tile;
+            for (long x = fromX; x < toX && count < MAX_TILES_PER_REQUEST; x = tile.max(0) + 1) {
+                tile = direction.findTile(tileDim, dimX, dimY, x, y);
+                final IRectangularArea scheduledTile = tile;
+                schedule(resolutionLevel, tile, HINT_PRIORITY, () -> {
+                    final IRectangularArea current = hintedAreas.get(resolutionLevel);
+                    return current == null || !current.intersects(scheduledTile);
+                });
+                count++;
+            }
+        }
+    }
+
+    /**
+     * Skips all scheduled tasks, which are not started yet. Called when the source frees its resources.
+     */
+    void cancel() {
+        synchronized (motions) {
+            cancelled = true;
+            motions.clear();
+            hintedAreas.clear();
+        }
+    }
+
+    TilePrefetchStats stats() {
+        return new TilePrefetchStats(
+            scheduledTiles.sum(), loadedTiles.sum(), alreadyCachedTiles.sum(), overBudgetTiles.sum(),
+            staleTiles.sum(), failedTiles.sum(), hits.sum(), wastedTiles.sum());
+    }
+
+    void recordLoaded() {
+        loadedTiles.increment();
+    }
+
+    void recordAlreadyCached() {
+        alreadyCachedTiles.increment();
+    }
+
+    void recordOverBudget() {
+        overBudgetTiles.increment();
+    }
+
+    void recordHit() {
+        hits.increment();
+    }
+
+    void recordWaste() {
+        wastedTiles.increment();
+    }
+
+    private void schedule(int resolutionLevel, IRectangularArea tile, int priority, StalenessCheck stale) {
+        final TileCacheIndex key = new TileCacheIndex(resolutionLevel, tile);
+        final AtomicInteger pendingCount = pendingCounts[priority];
+        if (pendingCount.get() >= MAX_PENDING_TILES || !pendingTiles.add(key)) {
+            return;
+        }
+        pendingCount.incrementAndGet();
+        scheduledTiles.increment();
+        Pool.EXECUTOR.execute(new Task(priority, () -> {
+            try {
+                if (cancelled || stale.isStale()) {
+                    staleTiles.increment();
+                    return;
+                }
+                try (ReadingPriority.Scope scope = ReadingPriority.PREFETCH.enter()) {
+                    loader.prefetch(resolutionLevel, tile);
+                }
+            } catch (RuntimeException | Error e) {
+                failedTiles.increment();
+                if (DEBUG_LEVEL >= 1) {
+                    System.out.println(AbstractPlanePyramidSource.class.getSimpleName()
+                        + " cannot prefetch tile (" + key + "): " + e);
+                }
+            } finally {
+                pendingTiles.remove(key);
+                pendingCount.decrementAndGet();
+            }
+        }));
+    }
+
+    private interface StalenessCheck {
+        boolean isStale();
+    }
+
+    // Tasks with lower priority value are executed first; tasks with equal priority are executed in FIFO order
+    private static final class Task implements Runnable, Comparable<Task> {
+        private final int priority;
+        private final long sequenceNumber = TASK_COUNTER.getAndIncrement();
+        private final Runnable action;
+
+        private Task(int priority, Runnable action) {
+            this.priority = priority;
+            this.action = action;
+        }
+
+        @Override
+        public void run() {
+            action.run();
+        }
+
+        @Override
+        public int compareTo(Task o) {
+            return priority != o.priority ?
+                Integer.compare(priority, o.priority) :
+                Long.compare(sequenceNumber, o.sequenceNumber);
+        }
+    }
+
+    private static final class Motion {
+        long fromX;
+        long fromY;
+        long toX;
+        long toY;
+        double velocityX = 0.0;
+        double velocityY = 0.0;
+        volatile long generation = 0;
+        // - number of requests at this level
+
+        Motion(long fromX, long fromY, long toX, long toY) {
+            setArea(fromX, fromY, toX, toY);
+        }
+
+        void update(long fromX, long fromY, long toX, long toY) {
+            final long sizeX = toX - fromX;
+            final long sizeY = toY - fromY;
+            final double dx = 0.5 * ((fromX + toX) - (this.fromX + this.toX));
+            final double dy = 0.5 * ((fromY + toY) - (this.fromY + this.toY));
+            if (sizeX != this.toX - this.fromX || sizeY != this.toY - this.fromY
+                || Math.abs(dx) > MAX_RELATIVE_JUMP * sizeX || Math.abs(dy) > MAX_RELATIVE_JUMP * sizeY)
+            {
+                velocityX = 0.0;
+                velocityY = 0.0;
+            } else {
+                velocityX = SMOOTHING * dx + (1.0 - SMOOTHING) * velocityX;
+                velocityY = SMOOTHING * dy + (1.0 - SMOOTHING) * velocityY;
+            }
+            setArea(fromX, fromY, toX, toY);
+            generation++;
+        }
+
+        // Returns null if there is no significant motion
+        IRectangularArea predictNextArea(int tileDim, long dimX, long dimY) {
+            final long shiftX = shift(velocityX, toX - fromX, tileDim);
+            final long shiftY = shift(velocityY, toY - fromY, tileDim);
+            if (shiftX == 0 && shiftY == 0) {
+                return null;
+            }
+            final long minX = Math.max(0, fromX + shiftX);
+            final long minY = Math.max(0, fromY + shiftY);
+            final long maxX = Math.min(dimX, toX + shiftX) - 1;
+            final long maxY = Math.min(dimY, toY + shiftY) - 1;
+            if (minX > maxX || minY > maxY) {
+                return null;
+            }
+            return IRectangularArea.valueOf(IPoint.valueOf(minX, minY), IPoint.valueOf(maxX, maxY));
+        }
+
+        private void setArea(long fromX, long fromY, long toX, long toY) {
+            this.fromX = fromX;
+            this.fromY = fromY;
+            this.toX = toX;
+            this.toY = toY;
+        }
+
+        // The predicted shift is at least 1 tile: we need at least the nearest ring of tiles
+        private static long shift(double velocity, long size, int tileDim) {
+            if (Math.abs(velocity) < MIN_RELATIVE_SPEED * size) {
+                return 0;
+            }
+            final long result = Math.max(tileDim, Math.round(Math.abs(velocity)));
+            return velocity > 0 ? result : -result;
+        }
+    }
+
+    private static class Pool {
+        static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(
+            NUMBER_OF_THREADS, NUMBER_OF_THREADS, 60, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(),
+            runnable -> {
+                final Thread thread = new Thread(runnable,
+                    AbstractPlanePyramidSource.class.getSimpleName() + " tile prefetcher");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+
+        static {
+            EXECUTOR.allowCoreThreadTimeOut(true);
+        }
+    }
+}
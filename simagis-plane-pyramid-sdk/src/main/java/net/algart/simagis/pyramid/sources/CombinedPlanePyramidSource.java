@@ -29,9 +29,12 @@ import net.algart.math.IPoint;
 import net.algart.math.IRectangularArea;
 import net.algart.simagis.pyramid.PlanePyramidSource;
 import net.algart.simagis.pyramid.PlanePyramidTools;
+import net.algart.simagis.pyramid.PooledMatrix;
 
 import java.nio.channels.NotYetConnectedException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public final class CombinedPlanePyramidSource
     extends AbstractArrayProcessorWithContextSwitching
@@ -160,6 +163,40 @@ public final class CombinedPlanePyramidSource
             mainParent.readSubMatrix(resolutionLevel, fromX, fromY, toX, toY);
     }
 
+    @Override
+    public PooledMatrix<? extends PArray> readPooledSubMatrix(
+        int resolutionLevel, long fromX, long fromY, long toX, long toY)
+    {
+        return existInOverriding(resolutionLevel) ?
+            overridingParent.readPooledSubMatrix(resolutionLevel, fromX, fromY, toX, toY) :
+            mainParent.readPooledSubMatrix(resolutionLevel, fromX, fromY, toX, toY);
+    }
+
+    @Override
+    public CompletableFuture<Matrix<? extends PArray>> readSubMatrixAsync(
+        int resolutionLevel, long fromX, long fromY, long toX, long toY, Executor executor)
+    {
+        return existInOverriding(resolutionLevel) ?
+            overridingParent.readSubMatrixAsync(resolutionLevel, fromX, fromY, toX, toY, executor) :
+            mainParent.readSubMatrixAsync(resolutionLevel, fromX, fromY, toX, toY, executor);
+    }
+
+    @Override
+    public List<Matrix<? extends PArray>> readSubMatrices(int resolutionLevel, List<IRectangularArea> areas) {
+        return existInOverriding(resolutionLevel) ?
+            overridingParent.readSubMatrices(resolutionLevel, areas) :
+            mainParent.readSubMatrices(resolutionLevel, areas);
+    }
+
+    @Override
+    public void prefetchSubMatrix(int resolutionLevel, long fromX, long fromY, long toX, long toY) {
+        if (existInOverriding(resolutionLevel)) {
+            overridingParent.prefetchSubMatrix(resolutionLevel, fromX, fromY, toX, toY);
+        } else {
+            mainParent.prefetchSubMatrix(resolutionLevel, fromX, fromY, toX, toY);
+        }
+    }
+
     public boolean isFullMatrixSupported() {
         return mainParent.isFullMatrixSupported()
             && overridingParent.isFullMatrixSupported();
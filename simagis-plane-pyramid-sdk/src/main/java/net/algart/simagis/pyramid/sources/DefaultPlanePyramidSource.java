@@ -27,14 +27,19 @@ package net.algart.simagis.pyramid.sources;
 import net.algart.simagis.pyramid.AbstractPlanePyramidSource;
 import net.algart.simagis.pyramid.PlanePyramidSource;
 import net.algart.simagis.pyramid.PlanePyramidTools;
+import net.algart.simagis.pyramid.PooledMatrix;
+import net.algart.simagis.pyramid.ReadingCancellation;
 import net.algart.arrays.Array;
 import net.algart.arrays.ArrayContext;
 import net.algart.arrays.Matrix;
 import net.algart.arrays.PArray;
+import net.algart.math.IRectangularArea;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public final class DefaultPlanePyramidSource extends AbstractPlanePyramidSource implements PlanePyramidSource {
     private final List<Matrix<? extends PArray>> packedImagePyramid;
@@ -138,6 +143,39 @@ public final class DefaultPlanePyramidSource extends AbstractPlanePyramidSource
             continuationEnabled ? Matrix.ContinuationMode.NAN_CONSTANT : Matrix.ContinuationMode.NONE);
     }
 
+    @Override
+    public PooledMatrix<? extends PArray> readPooledSubMatrix(
+        int resolutionLevel, long fromX, long fromY, long toX, long toY)
+        throws NoSuchElementException
+    {
+        return PooledMatrix.unpooled(readSubMatrix(resolutionLevel, fromX, fromY, toX, toY));
+    }
+
+    @Override
+    public List<Matrix<? extends PArray>> readSubMatrices(int resolutionLevel, List<IRectangularArea> areas)
+        throws NoSuchElementException
+    {
+        PlanePyramidTools.checkAreas(areas);
+        final List<Matrix<? extends PArray>> result = new ArrayList<Matrix<? extends PArray>>();
+        for (IRectangularArea area : areas) {
+            result.add(readSubMatrix(resolutionLevel, area.min(0), area.min(1), area.max(0) + 1, area.max(1) + 1));
+        }
+        return result;
+        // - sub-matrices of this source are views, which do not require reading tiles
+    }
+
+    @Override
+    public CompletableFuture<Matrix<? extends PArray>> readSubMatrixAsync(
+        int resolutionLevel, long fromX, long fromY, long toX, long toY, Executor executor)
+    {
+        if (executor == null) {
+            throw new NullPointerException("Null executor");
+        }
+        return CompletableFuture.supplyAsync(
+            () -> readSubMatrix(resolutionLevel, fromX, fromY, toX, toY), ReadingCancellation.propagating(executor));
+        // - the tile cache of the superclass is not used by this class
+    }
+
     public Matrix<? extends PArray> readFullMatrix(int resolutionLevel)
         throws NoSuchElementException
     {
@@ -28,11 +28,14 @@ import net.algart.arrays.*;
 import net.algart.math.IPoint;
 import net.algart.math.IRectangularArea;
 import net.algart.simagis.pyramid.PlanePyramidSource;
+import net.algart.simagis.pyramid.PooledMatrix;
 
 import java.nio.channels.NotYetConnectedException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public final class DelayedPlanePyramidSource
     extends AbstractArrayProcessorWithContextSwitching
@@ -239,6 +242,50 @@ public final class DelayedPlanePyramidSource
         return parent.readSubMatrix(resolutionLevel, fromX, fromY, toX, toY);
     }
 
+    @Override
+    public PooledMatrix<? extends PArray> readPooledSubMatrix(
+        int resolutionLevel, long fromX, long fromY, long toX, long toY)
+        throws NoSuchElementException, NotYetConnectedException
+    {
+        PlanePyramidSource parent = getParent();
+        if (parent == null) {
+            throw new NotYetConnectedException();
+        }
+        return parent.readPooledSubMatrix(resolutionLevel, fromX, fromY, toX, toY);
+    }
+
+    @Override
+    public CompletableFuture<Matrix<? extends PArray>> readSubMatrixAsync(
+        int resolutionLevel, long fromX, long fromY, long toX, long toY, Executor executor)
+    {
+        PlanePyramidSource parent = getParent();
+        if (parent == null) {
+            final CompletableFuture<Matrix<? extends PArray>> result = new CompletableFuture<>();
+            result.completeExceptionally(new NotYetConnectedException());
+            return result;
+        }
+        return parent.readSubMatrixAsync(resolutionLevel, fromX, fromY, toX, toY, executor);
+    }
+
+    @Override
+    public List<Matrix<? extends PArray>> readSubMatrices(int resolutionLevel, List<IRectangularArea> areas)
+        throws NoSuchElementException, NotYetConnectedException
+    {
+        PlanePyramidSource parent = getParent();
+        if (parent == null) {
+            throw new NotYetConnectedException();
+        }
+        return parent.readSubMatrices(resolutionLevel, areas);
+    }
+
+    @Override
+    public void prefetchSubMatrix(int resolutionLevel, long fromX, long fromY, long toX, long toY) {
+        PlanePyramidSource parent = getParent();
+        if (parent != null) {
+            parent.prefetchSubMatrix(resolutionLevel, fromX, fromY, toX, toY);
+        }
+    }
+
     public boolean isFullMatrixSupported() {
         PlanePyramidSource parent = getParent();
         return parent != null && parent.isFullMatrixSupported();
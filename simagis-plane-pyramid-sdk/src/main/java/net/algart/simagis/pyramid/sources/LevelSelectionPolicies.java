@@ -0,0 +1,147 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package net.algart.simagis.pyramid.sources;
+
+import java.util.Locale;
+
+final class LevelSelectionPolicies {
+    private LevelSelectionPolicies() {
+    }
+
+    static final class QualityFirst implements LevelSelectionPolicy {
+        static final QualityFirst INSTANCE = new QualityFirst();
+
+        private QualityFirst() {
+        }
+
+        @Override
+        public int selectLevel(ScalablePlanePyramidSource source, double compression) {
+            return Math.min(source.maxLevel(compression), source.numberOfResolutions() - 1);
+        }
+
+        @Override
+        public String toString() {
+            return "quality-first";
+        }
+    }
+
+    static final class SpeedFirst implements LevelSelectionPolicy {
+        private final double maxUpsampling;
+
+        SpeedFirst(double maxUpsampling) {
+            if (!(maxUpsampling >= 1.0)) {
+                throw new IllegalArgumentException("Max upsampling must not be less than 1.0: " + maxUpsampling);
+            }
+            this.maxUpsampling = maxUpsampling;
+        }
+
+        @Override
+        public int selectLevel(ScalablePlanePyramidSource source, double compression) {
+            int level = QualityFirst.INSTANCE.selectLevel(source, compression);
+            while (level + 1 < source.numberOfResolutions()
+                && source.compression(level + 1) <= compression * maxUpsampling)
+            {
+                level++;
+            }
+            return level;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SpeedFirst)) {
+                return false;
+            }
+            final SpeedFirst that = (SpeedFirst) o;
+            return Double.compare(maxUpsampling, that.maxUpsampling) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Double.hashCode(maxUpsampling);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "speed-first (max upsampling %.3f)", maxUpsampling);
+        }
+    }
+
+    static final class CostModel implements LevelSelectionPolicy {
+        private final double upsamplingPenalty;
+
+        CostModel(double upsamplingPenalty) {
+            if (!(upsamplingPenalty >= 0.0)) {
+                throw new IllegalArgumentException("Negative or NaN upsampling penalty: " + upsamplingPenalty);
+            }
+            this.upsamplingPenalty = upsamplingPenalty;
+        }
+
+        @Override
+        public int selectLevel(ScalablePlanePyramidSource source, double compression) {
+            int best = QualityFirst.INSTANCE.selectLevel(source, compression);
+            // - finer levels cannot be better: they read more pixels without any gain in quality
+            double bestCost = cost(source.compression(best), compression);
+            for (int level = best + 1; level < source.numberOfResolutions(); level++) {
+                final double cost = cost(source.compression(level), compression);
+                if (cost < bestCost) {
+                    best = level;
+                    bestCost = cost;
+                }
+            }
+            return best;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CostModel)) {
+                return false;
+            }
+            final CostModel that = (CostModel) o;
+            return Double.compare(upsamplingPenalty, that.upsamplingPenalty) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Double.hashCode(upsamplingPenalty);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "cost model (upsampling penalty %.3f)", upsamplingPenalty);
+        }
+
+        private double cost(double levelCompression, double compression) {
+            final double ratio = compression / levelCompression;
+            return ratio * ratio + upsamplingPenalty * Math.max(0.0, levelCompression / compression - 1.0);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package net.algart.simagis.pyramid.sources;
+
+/**
+ * Policy of choosing the pyramid level, from which {@link ScalablePlanePyramidSource} reads the data
+ * for an image with the given compression. The data of the chosen level are resized by the remaining factor
+ * <tt>compression / source.compression(level)</tt>: if it is greater than 1, the data are compressed,
+ * if it is less than 1, they are upsampled.
+ *
+ * <p>Implementations must be thread-safe. Policies with equal parameters should be equal objects:
+ * {@link ScalablePlanePyramidSource#getLevelSelectionStats()} accumulates the statistics per policy,
+ * so equal policies, created by separate calls of the factory methods, share the same statistics.
+ *
+ * @see ScalablePlanePyramidSource#setLevelSelectionPolicy(LevelSelectionPolicy)
+ */
+public interface LevelSelectionPolicy {
+    /**
+     * Returns the level of the source, which should be used for reading an image with the given compression.
+     *
+     * @param source      the scalable source.
+     * @param compression the required compression (not less than 1.0).
+     * @return the index of the level: <tt>0..source.numberOfResolutions()-1</tt>.
+     */
+    int selectLevel(ScalablePlanePyramidSource source, double compression);
+
+    /**
+     * Returns the policy, which always chooses the coarsest level with compression not greater than
+     * the requested one: the image is never upsampled. It is the default policy.
+     *
+     * @return the quality-first policy.
+     */
+    static LevelSelectionPolicy qualityFirst() {
+        return LevelSelectionPolicies.QualityFirst.INSTANCE;
+    }
+
+    /**
+     * Returns the policy, which chooses the coarsest level with compression not greater than
+     * <tt>compression&nbsp;*&nbsp;maxUpsampling</tt>. For example, if the pyramid compression is 4 and
+     * <tt>maxUpsampling=1.1</tt>, the image with compression 3.9 is read from level #1 and upsampled
+     * in 4/3.9&nbsp;&asymp;&nbsp;1.026 times instead of reading 16 times more pixels from level #0.
+     *
+     * @param maxUpsampling maximal allowed upsampling factor; 1.0 means the {@link #qualityFirst()} behaviour.
+     * @return the speed-first policy.
+     * @throws IllegalArgumentException if <tt>maxUpsampling&lt;1.0</tt>.
+     */
+    static LevelSelectionPolicy speedFirst(double maxUpsampling) {
+        return new LevelSelectionPolicies.SpeedFirst(maxUpsampling);
+    }
+
+    /**
+     * Returns the policy, which chooses the level with the minimal cost
+     * <pre>
+     * (compression / levelCompression)<sup>2</sup> + upsamplingPenalty * max(0, levelCompression / compression - 1)
+     * </pre>
+     * where the first summand is the number of read pixels per pixel of the result and the second one
+     * estimates the quality loss due to upsampling. For example, if the pyramid compression is 4
+     * and the penalty is 100, compression 3.9 is read from level #1 (cost 0.95+2.6 instead of 15.2),
+     * but compression 3.0 is read from level #0 (cost 9.0 instead of 0.56+33.3).
+     *
+     * @param upsamplingPenalty the cost of 100% upsampling, in read pixels per pixel of the result.
+     * @return the cost-based policy.
+     * @throws IllegalArgumentException if the penalty is negative or NaN.
+     */
+    static LevelSelectionPolicy costModel(double upsamplingPenalty) {
+        return new LevelSelectionPolicies.CostModel(upsamplingPenalty);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package net.algart.simagis.pyramid.sources;
+
+import java.util.Locale;
+
+/**
+ * Snapshot of statistics of images, read by {@link ScalablePlanePyramidSource} while using some
+ * {@link LevelSelectionPolicy level selection policy}. It allows to compare the amount of data,
+ * read from the parent source per request, under different policies.
+ *
+ * @see ScalablePlanePyramidSource#getLevelSelectionStats()
+ */
+public final class LevelSelectionStats {
+    private final String policy;
+    private final long requests;
+    private final long upsampledRequests;
+    private final long bytesRead;
+    private final long resultBytes;
+
+    LevelSelectionStats(String policy, long requests, long upsampledRequests, long bytesRead, long resultBytes) {
+        this.policy = policy;
+        this.requests = requests;
+        this.upsampledRequests = upsampledRequests;
+        this.bytesRead = bytesRead;
+        this.resultBytes = resultBytes;
+    }
+
+    /**
+     * Returns the string description of the policy (result of its <tt>toString()</tt> method).
+     *
+     * @return the description of the policy.
+     */
+    public String policy() {
+        return policy;
+    }
+
+    public long requests() {
+        return requests;
+    }
+
+    /**
+     * Returns the number of requests, for which the policy chose a level with compression greater
+     * than the requested one, so that the data were upsampled.
+     *
+     * @return the number of upsampled requests.
+     */
+    public long upsampledRequests() {
+        return upsampledRequests;
+    }
+
+    /**
+     * Returns the total size in bytes of data, read from the parent source for all requests
+     * (not including the images, found in the scaled image cache).
+     *
+     * @return the total number of read bytes.
+     */
+    public long bytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Returns the total size in bytes of all returned scaled images.
+     *
+     * @return the total size of results.
+     */
+    public long resultBytes() {
+        return resultBytes;
+    }
+
+    public double bytesReadPerRequest() {
+        return requests == 0 ? 0.0 : (double) bytesRead / (double) requests;
+    }
+
+    /**
+     * Returns the number of read bytes per byte of the result: 1.0 means that every level pixel was
+     * used for exactly one result pixel.
+     *
+     * @return bytes read / result bytes, or 0.0 if there were no requests.
+     */
+    public double readAmplification() {
+        return resultBytes == 0 ? 0.0 : (double) bytesRead / (double) resultBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+            "%s: %d requests (%d upsampled), %.3f MB read per request, read amplification %.2f",
+            policy, requests, upsampledRequests, bytesReadPerRequest() / 1048576.0, readAmplification());
+    }
+}
@@ -29,11 +29,18 @@ import net.algart.math.IPoint;
 import net.algart.math.IRectangularArea;
 import net.algart.math.functions.Func;
 import net.algart.math.functions.LinearOperator;
+import net.algart.simagis.pyramid.LatencyRecorder;
+import net.algart.simagis.pyramid.MatrixBufferPool;
 import net.algart.simagis.pyramid.PlanePyramidSource;
+import net.algart.simagis.pyramid.PlanePyramidTools;
+import net.algart.simagis.pyramid.PooledMatrix;
+import net.algart.simagis.pyramid.ReadingCancellation;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public final class RotatingPlanePyramidSource
     extends AbstractArrayProcessorWithContextSwitching
@@ -206,6 +213,14 @@ public final class RotatingPlanePyramidSource
                 // - it is convenient that it is so, because allows simply to use the same array
                 return Matrices.matrix(m.array(), newDimensions);
             }
+            final double[] pixel = PlanePyramidTools.findUniformPixel(m);
+            if (pixel != null) {
+                return PlanePyramidTools.asUniform(m.elementType(), pixel, newDimensions[1], newDimensions[2]);
+            }
+            return asRotatedNonUniform(m, newDimensions);
+        }
+
+        private Matrix<? extends PArray> asRotatedNonUniform(Matrix<? extends PArray> m, long[] newDimensions) {
             final LinearOperator operator = operator(m.dim(1), m.dim(2));
             final Func source = Matrices.asInterpolationFunc(m, Matrices.InterpolationMethod.STEP_FUNCTION, DEBUG_MODE);
             final Func rotated = operator.apply(source);
@@ -231,6 +246,7 @@ public final class RotatingPlanePyramidSource
 
     private PlanePyramidSource parent;
     private final RotationMode rotationMode;
+    private final LatencyRecorder latencyRecorder = new LatencyRecorder();
 
     private RotatingPlanePyramidSource(PlanePyramidSource parent, RotationMode rotationMode) {
         super(parent instanceof ArrayProcessor && ((ArrayProcessor) parent).context() != null ?
@@ -256,6 +272,16 @@ public final class RotatingPlanePyramidSource
         return new RotatingPlanePyramidSource(parent, rotationMode);
     }
 
+    /**
+     * Returns the recorder of durations of rotations ({@link LatencyRecorder.Operation#ROTATE ROTATE}
+     * operations), performed by <tt>readSubMatrix</tt> and <tt>readPooledSubMatrix</tt> methods.
+     *
+     * @return the latency recorder of this source.
+     */
+    public LatencyRecorder getLatencyRecorder() {
+        return latencyRecorder;
+    }
+
     @Override
     public ArrayProcessorWithContextSwitching context(ArrayContext newContext) {
         RotatingPlanePyramidSource result = (RotatingPlanePyramidSource) super.context(newContext);
@@ -357,15 +383,37 @@ public final class RotatingPlanePyramidSource
     }
 
     public Matrix<? extends PArray> readSubMatrix(int resolutionLevel, long fromX, long fromY, long toX, long toY) {
+        return readSubMatrix(resolutionLevel, fromX, fromY, toX, toY, null).matrix();
+    }
+
+    @Override
+    public PooledMatrix<? extends PArray> readPooledSubMatrix(
+        int resolutionLevel, long fromX, long fromY, long toX, long toY)
+    {
+        return readSubMatrix(resolutionLevel, fromX, fromY, toX, toY, MatrixBufferPool.global());
+    }
+
+    private PooledMatrix<? extends PArray> readSubMatrix(
+        int resolutionLevel, long fromX, long fromY, long toX, long toY,
+        MatrixBufferPool pool)
+    {
         long t1 = System.nanoTime();
         long[] parentDim = parent.dimensions(resolutionLevel);
         long[] fromAndTo = rotationMode.correctFromAndTo(
             parentDim[DIM_WIDTH], parentDim[DIM_HEIGHT], fromX, fromY, toX, toY);
-        Matrix<? extends PArray> parentSubMatrix = parentWithSubtaskContext().readSubMatrix(
-            resolutionLevel, fromAndTo[0], fromAndTo[1], fromAndTo[2], fromAndTo[3]);
-        long t2 = System.nanoTime();
-        Matrix<? extends PArray> rotated = rotated(parentSubMatrix);
+        long t2;
+        PooledMatrix<? extends PArray> rotated;
+        try (PooledMatrix<? extends PArray> parentSubMatrix = parentWithSubtaskContext().readPooledSubMatrix(
+            resolutionLevel, fromAndTo[0], fromAndTo[1], fromAndTo[2], fromAndTo[3]))
+        {
+            t2 = System.nanoTime();
+            ReadingCancellation.checkCurrent();
+            rotated = rotated(parentSubMatrix.matrix(), pool);
+            // - the parent matrix is not used after rotation: it is copied or replaced with a constant
+        }
         long t3 = System.nanoTime();
+        latencyRecorder.record(LatencyRecorder.Operation.ROTATE, resolutionLevel,
+            Matrices.sizeOf(rotated.matrix()), t3 - t2);
         if (DEBUG_LEVEL >= 2) {
             System.out.printf(Locale.US,
                 "%s completed reading %d..%d x %d..%d, level %d in %.3f ms (%.3f parent reading + %.3f rotation)%n",
@@ -375,6 +423,40 @@ public final class RotatingPlanePyramidSource
         return rotated;
     }
 
+    @Override
+    public CompletableFuture<Matrix<? extends PArray>> readSubMatrixAsync(
+        int resolutionLevel, long fromX, long fromY, long toX, long toY, Executor executor)
+    {
+        if (executor == null) {
+            throw new NullPointerException("Null executor");
+        }
+        long[] parentDim = parent.dimensions(resolutionLevel);
+        long[] fromAndTo = rotationMode.correctFromAndTo(
+            parentDim[DIM_WIDTH], parentDim[DIM_HEIGHT], fromX, fromY, toX, toY);
+        return parentWithSubtaskContext().readSubMatrixAsync(
+            resolutionLevel, fromAndTo[0], fromAndTo[1], fromAndTo[2], fromAndTo[3], executor)
+            .thenApplyAsync(m -> {
+                ReadingCancellation.checkCurrent();
+                return rotated(m);
+            }, ReadingCancellation.propagating(executor));
+    }
+
+    @Override
+    public void prefetchSubMatrix(int resolutionLevel, long fromX, long fromY, long toX, long toY) {
+        final long[] dimensions = dimensions(resolutionLevel);
+        fromX = Math.max(fromX, 0);
+        fromY = Math.max(fromY, 0);
+        toX = Math.min(toX, dimensions[DIM_WIDTH]);
+        toY = Math.min(toY, dimensions[DIM_HEIGHT]);
+        if (fromX >= toX || fromY >= toY) {
+            return;
+        }
+        long[] parentDim = parent.dimensions(resolutionLevel);
+        long[] fromAndTo = rotationMode.correctFromAndTo(
+            parentDim[DIM_WIDTH], parentDim[DIM_HEIGHT], fromX, fromY, toX, toY);
+        parent.prefetchSubMatrix(resolutionLevel, fromAndTo[0], fromAndTo[1], fromAndTo[2], fromAndTo[3]);
+    }
+
     public boolean isFullMatrixSupported() {
         return parent.isFullMatrixSupported();
     }
@@ -425,19 +507,37 @@ public final class RotatingPlanePyramidSource
     }
 
     private Matrix<? extends PArray> rotated(Matrix<? extends PArray> m) {
+        return rotated(m, null).matrix();
+    }
+
+    private PooledMatrix<? extends PArray> rotated(Matrix<? extends PArray> m, MatrixBufferPool pool) {
         final long[] newDimensions = rotationMode.correctDimensions(m.dimensions());
         if (Arrays.isNCopies(m.array())) {
             assert Arrays.longMul(newDimensions) == m.size();
             // - it is convenient, because allows simply to use the same array
-            return Matrices.matrix(m.array(), newDimensions);
-        }
-        final Matrix<? extends PArray> lazy = rotationMode.asRotated(m);
-        final Matrix<? extends UpdatablePArray> actual = memoryModel().newMatrix(
-            Arrays.SystemSettings.maxTempJavaMemory(),
-            UpdatablePArray.class,
-            lazy.elementType(),
-            lazy.dimensions());
-        Matrices.copy(context() == null ? null : context().part(0.5, 1.0), actual, lazy, 0, false);
+            return PooledMatrix.unpooled(Matrices.matrix(m.array(), newDimensions));
+        }
+        final double[] pixel = PlanePyramidTools.findUniformPixel(m);
+        if (pixel != null) {
+            return PooledMatrix.unpooled(
+                PlanePyramidTools.asUniform(m.elementType(), pixel, newDimensions[1], newDimensions[2]));
+            // - constant matrix does not occupy memory: no sense to copy it
+        }
+        final Matrix<? extends PArray> lazy = rotationMode.asRotatedNonUniform(m, newDimensions);
+        final PooledMatrix<? extends UpdatablePArray> actual =
+            pool != null && Matrices.sizeOf(lazy) <= Arrays.SystemSettings.maxTempJavaMemory() ?
+                pool.borrow(lazy.elementType(), lazy.dim(0), lazy.dim(1), lazy.dim(2)) :
+                PooledMatrix.unpooled(memoryModel().newMatrix(
+                    Arrays.SystemSettings.maxTempJavaMemory(),
+                    UpdatablePArray.class,
+                    lazy.elementType(),
+                    lazy.dimensions()));
+        try {
+            Matrices.copy(context() == null ? null : context().part(0.5, 1.0), actual.matrix(), lazy, 0, false);
+        } catch (RuntimeException | Error e) {
+            actual.close();
+            throw e;
+        }
         return actual;
     }
 }
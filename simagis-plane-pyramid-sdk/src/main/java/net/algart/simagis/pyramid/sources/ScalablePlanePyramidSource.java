@@ -31,18 +31,52 @@ import net.algart.math.IPoint;
 import net.algart.math.IRectangularArea;
 import net.algart.math.Range;
 import net.algart.math.functions.LinearFunc;
+import net.algart.simagis.pyramid.BoxAveraging;
+import net.algart.simagis.pyramid.LatencyRecorder;
+import net.algart.simagis.pyramid.MatrixBufferPool;
+import net.algart.simagis.pyramid.ParallelProcessing;
 import net.algart.simagis.pyramid.PlanePyramidSource;
+import net.algart.simagis.pyramid.PlanePyramidTools;
+import net.algart.simagis.pyramid.PooledMatrix;
+import net.algart.simagis.pyramid.ReadingCancellation;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferDouble;
+import java.awt.image.DataBufferFloat;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferShort;
+import java.awt.image.DataBufferUShort;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
 import java.util.logging.Logger;
 
 public class ScalablePlanePyramidSource implements PlanePyramidSource {
     static final int TIME_ENFORCING_GC =
         Arrays.SystemSettings.getIntProperty("net.algart.simagis.pyramid.timeEnforcingGc", 0);
     // - in milliseconds; not used if 0
+    static final long SCALED_IMAGE_CACHE_MEMORY = Math.max(0, Arrays.SystemSettings.getLongProperty(
+        "net.algart.simagis.pyramid.scaledImageCacheMemory", 0));
+    // - in bytes; the cache is disabled if 0
+    static final long STRIP_SCALING_THRESHOLD = Math.max(0, Arrays.SystemSettings.getLongProperty(
+        "net.algart.simagis.pyramid.stripScalingThreshold", 67108864));
+    // - 64 MB of unscaled data; strip scaling is not used if 0
+    static final int STRIP_SCALING_PARALLELISM = Math.max(1, Arrays.SystemSettings.getIntProperty(
+        "net.algart.simagis.pyramid.stripScalingParallelism", Arrays.SystemSettings.cpuCount()));
+    private static final long STRIP_SOURCE_MEMORY = 4 * 1048576;
+    // - approximate size of unscaled data, read for one strip
+    static final boolean FUSED_RENDERING = Arrays.SystemSettings.getBooleanProperty(
+        "net.algart.simagis.pyramid.fusedRendering", true);
+    private static final long RENDERING_BLOCK_MEMORY = 256 * 1024;
+    // - approximate size of a block of rows, converted into a data buffer at once: it should fit in CPU cache
 
     private static final Logger LOGGER = Logger.getLogger(ScalablePlanePyramidSource.class.getName());
 
@@ -63,9 +97,17 @@ public class ScalablePlanePyramidSource implements PlanePyramidSource {
     private volatile Color backgroundColor = new Color(255, 255, 255, 0);
     // transparent if possible, white in other case
 
-    private final SpeedInfo pyramidSourceSpeedInfo = new SpeedInfo();
-    private final SpeedInfo readImageSpeedInfo = new SpeedInfo();
-    private final SpeedInfo readBufferedImageSpeedInfo = new SpeedInfo();
+    private final LatencyRecorder latencyRecorder = new LatencyRecorder();
+    private final AtomicLong lastGcTime = new AtomicLong(System.currentTimeMillis());
+    private volatile long stripScalingThreshold = STRIP_SCALING_THRESHOLD;
+    private volatile int stripScalingParallelism = STRIP_SCALING_PARALLELISM;
+    private volatile boolean fusedRendering = FUSED_RENDERING;
+    private volatile LevelSelectionPolicy levelSelectionPolicy = LevelSelectionPolicy.qualityFirst();
+    private final Map<LevelSelectionPolicy, LevelSelectionCounters> levelSelectionCounters =
+        new ConcurrentHashMap<>();
+    private volatile ScaledImageCache scaledImageCache = SCALED_IMAGE_CACHE_MEMORY > 0 ?
+        new ScaledImageCache(SCALED_IMAGE_CACHE_MEMORY) :
+        null;
 
     private ScalablePlanePyramidSource(final PlanePyramidSource parent) {
         Objects.requireNonNull(parent, "Null parent source");
@@ -167,6 +209,32 @@ public class ScalablePlanePyramidSource implements PlanePyramidSource {
         return new SubMatrixExtracting(resolutionLevel, fromX, fromY, toX, toY).extractSubMatrix().fullData;
     }
 
+    @Override
+    public PooledMatrix<? extends PArray> readPooledSubMatrix(
+        final int resolutionLevel,
+        final long fromX, final long fromY,
+        final long toX, final long toY)
+    {
+        return new SubMatrixExtracting(resolutionLevel, fromX, fromY, toX, toY).extractPooledSubMatrix();
+    }
+
+    @Override
+    public CompletableFuture<Matrix<? extends PArray>> readSubMatrixAsync(
+        final int resolutionLevel,
+        final long fromX, final long fromY,
+        final long toX, final long toY,
+        final Executor executor)
+    {
+        Objects.requireNonNull(executor, "Null executor");
+        return new SubMatrixExtracting(resolutionLevel, fromX, fromY, toX, toY).extractSubMatrixAsync(executor)
+            .thenApply(extracting -> extracting.fullData);
+    }
+
+    @Override
+    public void prefetchSubMatrix(int resolutionLevel, long fromX, long fromY, long toX, long toY) {
+        parent.prefetchSubMatrix(resolutionLevel, fromX, fromY, toX, toY);
+    }
+
     @Override
     public boolean isFullMatrixSupported() {
         return parent.isFullMatrixSupported();
@@ -204,6 +272,18 @@ public class ScalablePlanePyramidSource implements PlanePyramidSource {
         return parent;
     }
 
+    /**
+     * Returns the recorder of durations of operations of this source: reading data from the parent
+     * ({@link LatencyRecorder.Operation#READ READ}), reading scaled images
+     * ({@link LatencyRecorder.Operation#SCALE SCALE}) and converting them into <tt>BufferedImage</tt>
+     * ({@link LatencyRecorder.Operation#CONVERT CONVERT}).
+     *
+     * @return the latency recorder of this source.
+     */
+    public LatencyRecorder getLatencyRecorder() {
+        return latencyRecorder;
+    }
+
     public long dimX() {
         return dimX;
     }
@@ -236,6 +316,171 @@ public class ScalablePlanePyramidSource implements PlanePyramidSource {
         return this;
     }
 
+    /**
+     * Returns the minimal size in bytes of the unscaled data, starting from which {@link #readImage readImage}
+     * and {@link #readBufferedImage readBufferedImage} scale the image by horizontal strips, or 0 if this mode
+     * is disabled. It is used only when the data of the pyramid level must be additionally compressed.
+     *
+     * <p>In this mode, the area of the pyramid level is not read into one large matrix. Instead, the result
+     * is split into horizontal strips (corresponding to about 4&nbsp;MB of unscaled data), and every strip reads
+     * its part of the level and resizes it directly into the result. Up to
+     * {@link #getStripScalingParallelism() strip scaling parallelism} strips are processed simultaneously:
+     * the current thread and additional threads from a pool, shared by all sources. So, reading and scaling
+     * are performed in parallel, and the peak memory is limited by the result plus unscaled data for
+     * the simultaneously processed strips instead of the whole unscaled area.
+     *
+     * <p>The initial value is retrieved from the system property
+     * "<tt>net.algart.simagis.pyramid.stripScalingThreshold</tt>" (<tt>67108864</tt>, 64&nbsp;MB by default).
+     *
+     * @return the minimal size of unscaled data for strip scaling; 0 if it is disabled.
+     */
+    public long getStripScalingThreshold() {
+        return stripScalingThreshold;
+    }
+
+    public ScalablePlanePyramidSource setStripScalingThreshold(long stripScalingThreshold) {
+        if (stripScalingThreshold < 0) {
+            throw new IllegalArgumentException("Negative stripScalingThreshold");
+        }
+        this.stripScalingThreshold = stripScalingThreshold;
+        return this;
+    }
+
+    /**
+     * Returns the maximal number of strips, which are read and scaled simultaneously
+     * in the {@link #getStripScalingThreshold() strip scaling} mode. If it is greater than 1,
+     * the parent source is called from several threads simultaneously.
+     *
+     * <p>The initial value is retrieved from the system property
+     * "<tt>net.algart.simagis.pyramid.stripScalingParallelism</tt>" (the number of CPU by default).
+     *
+     * @return the maximal number of threads, scaling strips of one image.
+     */
+    public int getStripScalingParallelism() {
+        return stripScalingParallelism;
+    }
+
+    public ScalablePlanePyramidSource setStripScalingParallelism(int stripScalingParallelism) {
+        if (stripScalingParallelism <= 0) {
+            throw new IllegalArgumentException("Zero or negative stripScalingParallelism");
+        }
+        this.stripScalingParallelism = stripScalingParallelism;
+        return this;
+    }
+
+    /**
+     * Returns <tt>true</tt> if {@link #readBufferedImage readBufferedImage} uses fused rendering.
+     *
+     * <p>In this mode, the scaled image is not converted into a data buffer by one call of
+     * {@link MatrixToBufferedImageConverter#toDataBuffer toDataBuffer} with subsequent filling the background
+     * in every bank of the whole buffer. Instead, the image is processed by little blocks of rows: every block
+     * is converted (including conversion to bytes, if necessary), its background is filled while it is
+     * in CPU cache, and the block is copied into its place of the resulting data buffer. So, the pixels
+     * pass through the main memory only once, and the blocks are processed in parallel, like strips in
+     * {@link #getStripScalingThreshold() strip scaling} mode (with the same parallelism).
+     * The results are identical, if the converter processes every pixel independently, as all standard
+     * converters do. If the converter produces a data buffer with another structure than 1 element per pixel
+     * in every bank, the usual conversion is used.
+     *
+     * <p>The initial value is retrieved from the system property
+     * "<tt>net.algart.simagis.pyramid.fusedRendering</tt>" (<tt>true</tt> by default).
+     *
+     * @return whether fused rendering of buffered images is enabled.
+     */
+    public boolean isFusedRendering() {
+        return fusedRendering;
+    }
+
+    public ScalablePlanePyramidSource setFusedRendering(boolean fusedRendering) {
+        this.fusedRendering = fusedRendering;
+        return this;
+    }
+
+    /**
+     * Returns the maximal amount of memory in bytes, which can be used by the cache of scaled images,
+     * or 0 if this cache is disabled.
+     *
+     * <p>The cache stores the results of {@link #readImage readImage} and the scaled data, used by
+     * {@link #readBufferedImage readBufferedImage} (before conversion), in LRU order. A request,
+     * which is identical to some previous one, returns the cached image; a request, which partially overlaps
+     * some cached image with the same compression (typical for panning in viewers), copies the overlapping part
+     * from the cache and reads and scales only the rest of the area. The second is possible only if the scaled
+     * image is produced from the pyramid level with integer (or without) additional compression,
+     * for example, for compressions, equal to powers of the pyramid compression or to integer multiples of them.
+     * Note that the matrices, returned by {@link #readImage readImage}, are immutable while the cache is enabled.
+     *
+     * <p>The initial value is retrieved from the system property
+     * "<tt>net.algart.simagis.pyramid.scaledImageCacheMemory</tt>" (0 by default).
+     *
+     * @return the memory limit of the scaled image cache; 0 if it is disabled.
+     */
+    public long getScaledImageCacheMemory() {
+        final ScaledImageCache cache = scaledImageCache;
+        return cache == null ? 0 : cache.maxMemory();
+    }
+
+    /**
+     * Sets the maximal amount of memory for the cache of scaled images; 0 disables the cache.
+     * All currently cached images are dropped.
+     *
+     * @param scaledImageCacheMemory new memory limit in bytes; 0 to disable caching.
+     * @return a reference to this object.
+     * @throws IllegalArgumentException if the argument is negative.
+     * @see #getScaledImageCacheMemory()
+     */
+    public ScalablePlanePyramidSource setScaledImageCacheMemory(long scaledImageCacheMemory) {
+        if (scaledImageCacheMemory < 0) {
+            throw new IllegalArgumentException("Negative scaledImageCacheMemory");
+        }
+        this.scaledImageCache = scaledImageCacheMemory > 0 ? new ScaledImageCache(scaledImageCacheMemory) : null;
+        return this;
+    }
+
+    /**
+     * Returns the statistics of the cache of scaled images: hits, partial hits, misses and used memory.
+     * If the cache is disabled, returns empty statistics.
+     *
+     * @return the current statistics of the scaled image cache.
+     * @see #setScaledImageCacheMemory(long)
+     */
+    public ScaledImageCacheStats getScaledImageCacheStats() {
+        final ScaledImageCache cache = scaledImageCache;
+        return cache == null ? ScaledImageCacheStats.empty() : cache.stats();
+    }
+
+    /**
+     * Returns the policy, which chooses the pyramid level for reading images with the given compression
+     * by {@link #readImage readImage}, {@link #readImageAsync readImageAsync} and
+     * {@link #readBufferedImage readBufferedImage}. By default, it is {@link LevelSelectionPolicy#qualityFirst()}:
+     * the coarsest level, which does not require upsampling.
+     *
+     * @return the level selection policy.
+     */
+    public LevelSelectionPolicy getLevelSelectionPolicy() {
+        return levelSelectionPolicy;
+    }
+
+    public ScalablePlanePyramidSource setLevelSelectionPolicy(LevelSelectionPolicy levelSelectionPolicy) {
+        if (levelSelectionPolicy == null) {
+            throw new NullPointerException("Null level selection policy");
+        }
+        this.levelSelectionPolicy = levelSelectionPolicy;
+        return this;
+    }
+
+    /**
+     * Returns the statistics of reading images under every {@link #setLevelSelectionPolicy level selection policy},
+     * which was used by this source: the number of requests and the amount of data, read from the parent source.
+     * So, it is possible to compare the policies at the same sequence of requests.
+     *
+     * @return the statistics for all used policies.
+     */
+    public List<LevelSelectionStats> getLevelSelectionStats() {
+        final List<LevelSelectionStats> result = new ArrayList<>();
+        levelSelectionCounters.forEach((policy, counters) -> result.add(counters.stats(policy)));
+        return result;
+    }
+
     // Recommended for viewers
     public void forceAveragingBits() {
         if (averagingMode == AveragingMode.DEFAULT) {
@@ -277,6 +522,10 @@ public class ScalablePlanePyramidSource implements PlanePyramidSource {
 
     @Override
     public void freeResources(FlushMethod flushMethod) {
+        final ScaledImageCache cache = scaledImageCache;
+        if (cache != null) {
+            cache.clear();
+        }
         parent.freeResources(flushMethod);
     }
 
@@ -289,21 +538,26 @@ public class ScalablePlanePyramidSource implements PlanePyramidSource {
     {
         checkFromAndTo(zeroLevelFromX, zeroLevelFromY, zeroLevelToX, zeroLevelToY);
         long t1 = System.nanoTime();
-        final int level = Math.min(maxLevel(compression), numberOfResolutions - 1);
+        final LevelSelectionPolicy policy = levelSelectionPolicy;
+        final int level = selectLevel(policy, compression);
         // - this call also checks that compression >= 1
         final ImageScaling scaling = new ImageScaling(
             level, compression, zeroLevelFromX, zeroLevelFromY, zeroLevelToX, zeroLevelToY);
         long t2 = System.nanoTime();
-        final Matrix<? extends PArray> result = scaling.scaleImage();
+        final ScaledImageCache cache = scaledImageCache;
+        final Matrix<? extends PArray> result = cache == null ? scaling.scaleImage() : scaling.scaleImageCached(cache);
+        prefetchNeighbourLevels(level, zeroLevelFromX, zeroLevelFromY, zeroLevelToX, zeroLevelToY);
         long t3 = System.nanoTime();
-        final String averageSpeed = readImageSpeedInfo.update(Matrices.sizeOf(result), t3 - t1, true);
+        latencyRecorder.record(LatencyRecorder.Operation.SCALE, level, Matrices.sizeOf(result), t3 - t1);
+        recordLevelSelection(policy, scaling, result);
+        enforceGcIfNecessary();
         if (DEBUG_LEVEL >= 2) {
             Runtime runtime = Runtime.getRuntime();
             LOGGER.config(scaling.scaleImageTiming());
             LOGGER.config(String.format(Locale.US,
                 "%s has read image (%d-bit, %d CPU for AlgART, used memory %.3f/%.3f MB, compression %.2f): "
                     + "%d..%d x %d..%d (%d x %d%s) in %.3f ms (%.3f init + %.3f scaled reading), "
-                    + "%.3f MB/sec, average %s (source: %s)%n",
+                    + "%.3f MB/sec, total %s (source: %s)%n",
                 ScalablePlanePyramidSource.class.getSimpleName(),
                 Arrays.SystemSettings.isJava32() ? 32 : 64,
                 Arrays.SystemSettings.cpuCount(),
@@ -312,13 +566,67 @@ public class ScalablePlanePyramidSource implements PlanePyramidSource {
                 zeroLevelToX - zeroLevelFromX, zeroLevelToY - zeroLevelFromY,
                 Arrays.isNCopies(result.array()) ? ", CONSTANT" : "",
                 (t3 - t1) * 1e-6, (t2 - t1) * 1e-6, (t3 - t2) * 1e-6,
-                Matrices.sizeOf(result) / 1048576.0 / ((t3 - t1) * 1e-9), averageSpeed,
+                Matrices.sizeOf(result) / 1048576.0 / ((t3 - t1) * 1e-9),
+                latencyRecorder.stats(LatencyRecorder.Operation.SCALE),
                 parent.getClass().getSimpleName()
             ));
         }
         return result;
     }
 
+    /**
+     * Asynchronous version of {@link #readImage readImage}: the data are read from the parent source
+     * by its {@link PlanePyramidSource#readSubMatrixAsync readSubMatrixAsync} method, and the additional
+     * compression (if necessary) is performed by the given executor.
+     *
+     * @param compression    the required compression.
+     * @param zeroLevelFromX starting x-coordinate of the area at the zero level (inclusive).
+     * @param zeroLevelFromY starting y-coordinate of the area at the zero level (inclusive).
+     * @param zeroLevelToX   ending x-coordinate of the area at the zero level (exclusive).
+     * @param zeroLevelToY   ending y-coordinate of the area at the zero level (exclusive).
+     * @param executor       the executor for reading and scaling.
+     * @return the future scaled image.
+     * @throws NullPointerException if <tt>executor</tt> is <tt>null</tt>.
+     */
+    public CompletableFuture<Matrix<? extends PArray>> readImageAsync(
+        final double compression,
+        final long zeroLevelFromX,
+        final long zeroLevelFromY,
+        final long zeroLevelToX,
+        final long zeroLevelToY,
+        final Executor executor)
+    {
+        Objects.requireNonNull(executor, "Null executor");
+        checkFromAndTo(zeroLevelFromX, zeroLevelFromY, zeroLevelToX, zeroLevelToY);
+        final long t1 = System.nanoTime();
+        final LevelSelectionPolicy policy = levelSelectionPolicy;
+        final int level = selectLevel(policy, compression);
+        // - this call also checks that compression >= 1
+        final ImageScaling scaling = new ImageScaling(
+            level, compression, zeroLevelFromX, zeroLevelFromY, zeroLevelToX, zeroLevelToY);
+        return scaling.scaleImageAsync(executor).thenApply(result -> {
+            prefetchNeighbourLevels(level, zeroLevelFromX, zeroLevelFromY, zeroLevelToX, zeroLevelToY);
+            final long t2 = System.nanoTime();
+            latencyRecorder.record(LatencyRecorder.Operation.SCALE, level, Matrices.sizeOf(result), t2 - t1);
+            recordLevelSelection(policy, scaling, result);
+            enforceGcIfNecessary();
+            if (DEBUG_LEVEL >= 2) {
+                LOGGER.config(String.format(Locale.US,
+                    "%s has read image asynchronously (compression %.2f): "
+                        + "%d..%d x %d..%d (%d x %d%s) in %.3f ms, %.3f MB/sec, total %s (source: %s)%n",
+                    ScalablePlanePyramidSource.class.getSimpleName(),
+                    compression, zeroLevelFromX, zeroLevelToX, zeroLevelFromY, zeroLevelToY,
+                    zeroLevelToX - zeroLevelFromX, zeroLevelToY - zeroLevelFromY,
+                    Arrays.isNCopies(result.array()) ? ", CONSTANT" : "",
+                    (t2 - t1) * 1e-6, Matrices.sizeOf(result) / 1048576.0 / ((t2 - t1) * 1e-9),
+                    latencyRecorder.stats(LatencyRecorder.Operation.SCALE),
+                    parent.getClass().getSimpleName()
+                ));
+            }
+            return result;
+        });
+    }
+
     public BufferedImage readBufferedImage(
         final double compression,
         final long zeroLevelFromX,
@@ -330,45 +638,77 @@ public class ScalablePlanePyramidSource implements PlanePyramidSource {
         Objects.requireNonNull(converter, "Null converter");
         checkFromAndTo(zeroLevelFromX, zeroLevelFromY, zeroLevelToX, zeroLevelToY);
         long t1 = System.nanoTime();
-        final int level = Math.min(maxLevel(compression), numberOfResolutions - 1);
+        final LevelSelectionPolicy policy = levelSelectionPolicy;
+        final int level = selectLevel(policy, compression);
         // - this call also checks that compression >= 1
         final ImageScaling scaling = new ImageScaling(
             level, compression, zeroLevelFromX, zeroLevelFromY, zeroLevelToX, zeroLevelToY);
         long t2 = System.nanoTime();
-        Matrix<? extends PArray> m = scaling.scaleImage();
-        long t3 = System.nanoTime();
-        if (converter.byteArrayRequired() && m.elementType() != byte.class) {
-            double max = m.array().maxPossibleValue(1.0);
-            m = Matrices.asFuncMatrix(LinearFunc.getInstance(0.0, 255.0 / max), ByteArray.class, m);
-        }
-        if (m.size() == 0) {
-            m = m.subMatr(0, 0, 0, m.dim(0), Math.max(1, m.dim(1)), Math.max(1, m.dim(2)),
-                Matrix.ContinuationMode.ZERO_CONSTANT);
-            // BufferedImage cannot be empty
-        }
-        final int width = converter.getWidth(m); // must be after conversion to byte, to avoid IllegalArgumentException
-        final int height = converter.getHeight(m);
-        final Collection<IRectangularArea> backgroundAreas =
-            getBackgroundAreasInRectangle(zeroLevelFromX, zeroLevelFromY, zeroLevelToX, zeroLevelToY);
-        java.awt.image.DataBuffer dataBuffer = converter.toDataBuffer(m);
-        if (!backgroundAreas.isEmpty()) {
+        final ScaledImageCache cache = scaledImageCache;
+        final long t3;
+        final long resultSize;
+        final BufferedImage bufferedImage;
+        try (PooledMatrix<? extends PArray> scaled = cache == null ?
+            scaling.scaleImage(MatrixBufferPool.global()) :
+            PooledMatrix.unpooled(scaling.scaleImageCached(cache)))
+        {
+            // - the scaled matrix is necessary only until conversion into BufferedImage
+            Matrix<? extends PArray> m = scaled.matrix();
+            prefetchNeighbourLevels(level, zeroLevelFromX, zeroLevelFromY, zeroLevelToX, zeroLevelToY);
+            t3 = System.nanoTime();
+            latencyRecorder.record(LatencyRecorder.Operation.SCALE, level, Matrices.sizeOf(m), t3 - t1);
+            recordLevelSelection(policy, scaling, m);
+            ReadingCancellation.checkCurrent();
+            if (converter.byteArrayRequired() && m.elementType() != byte.class) {
+                double max = m.array().maxPossibleValue(1.0);
+                m = Matrices.asFuncMatrix(LinearFunc.getInstance(0.0, 255.0 / max), ByteArray.class, m);
+            }
+            if (m.size() == 0) {
+                m = m.subMatr(0, 0, 0, m.dim(0), Math.max(1, m.dim(1)), Math.max(1, m.dim(2)),
+                    Matrix.ContinuationMode.ZERO_CONSTANT);
+                // BufferedImage cannot be empty
+            }
+            final int width = converter.getWidth(m);
+            // - must be after conversion to byte, to avoid IllegalArgumentException
+            final int height = converter.getHeight(m);
+            final Collection<IRectangularArea> backgroundAreas =
+                getBackgroundAreasInRectangle(zeroLevelFromX, zeroLevelFromY, zeroLevelToX, zeroLevelToY);
             final IPoint shift = IPoint.valueOf(-zeroLevelFromX, -zeroLevelFromY);
-            for (int bankIndex = 0; bankIndex < dataBuffer.getNumBanks(); bankIndex++) {
-                Matrix<? extends UpdatablePArray> bankMatrix = Matrices.matrix(
-                    (UpdatablePArray) SimpleMemoryModel.asUpdatableArray(
-                        MatrixToBufferedImageConverter.getDataArray(dataBuffer, bankIndex)),
-                    width, height);
-                long filler = converter.colorValue(m, backgroundColor, bankIndex);
+            DataBuffer dataBuffer = null;
+            if (fusedRendering) {
+                final List<long[]> backgroundRectangles = new ArrayList<>();
                 for (IRectangularArea a : backgroundAreas) {
-                    fillBackgroundInMatrix2DWithCompression(
-                        bankMatrix, a, shift, compression, level == 0, scaling.needAdditionalCompression, filler);
+                    backgroundRectangles.add(backgroundRectangleWithCompression(
+                        a, shift, compression, level == 0, scaling.needAdditionalCompression));
+                }
+                dataBuffer = renderDataBuffer(m, converter, width, height, backgroundRectangles);
+                // - null if this converter does not allow fused rendering
+            }
+            final boolean backgroundFilled = dataBuffer != null;
+            if (dataBuffer == null) {
+                dataBuffer = converter.toDataBuffer(m);
+            }
+            if (!backgroundFilled && !backgroundAreas.isEmpty()) {
+                for (int bankIndex = 0; bankIndex < dataBuffer.getNumBanks(); bankIndex++) {
+                    Matrix<? extends UpdatablePArray> bankMatrix = Matrices.matrix(
+                        (UpdatablePArray) SimpleMemoryModel.asUpdatableArray(
+                            MatrixToBufferedImageConverter.getDataArray(dataBuffer, bankIndex)),
+                        width, height);
+                    long filler = converter.colorValue(m, backgroundColor, bankIndex);
+                    for (IRectangularArea a : backgroundAreas) {
+                        fillBackgroundInMatrix2DWithCompression(
+                            bankMatrix, a, shift, compression, level == 0, scaling.needAdditionalCompression, filler);
+                    }
                 }
             }
+            resultSize = Matrices.sizeOf(m);
+            bufferedImage = converter.toBufferedImage(m, dataBuffer);
+            // - the data buffer is always a new copy of the matrix: we filled its background above
         }
-        final BufferedImage bufferedImage = converter.toBufferedImage(m, dataBuffer);
 
         long t4 = System.nanoTime();
-        final String averageSpeed = readBufferedImageSpeedInfo.update(Matrices.sizeOf(m), t4 - t1, true);
+        latencyRecorder.record(LatencyRecorder.Operation.CONVERT, level, resultSize, t4 - t3);
+        enforceGcIfNecessary();
         if (DEBUG_LEVEL >= 2) {
             Runtime runtime = Runtime.getRuntime();
             LOGGER.config(scaling.scaleImageTiming());
@@ -376,7 +716,7 @@ public class ScalablePlanePyramidSource implements PlanePyramidSource {
                 "%s has read buffered image (%d-bit, %d CPU for AlgART, used memory %.3f/%.3f MB, compression %.2f): "
                     + "%d..%d x %d..%d (%d x %d) in %.3f ms "
                     + "(%.3f init + %.3f scaled reading + %.3f conversion), "
-                    + "%.3f MB/sec, average %s (source: %s)",
+                    + "%.3f MB/sec, total %s (source: %s)",
                 ScalablePlanePyramidSource.class.getSimpleName(),
                 Arrays.SystemSettings.isJava32() ? 32 : 64,
                 Arrays.SystemSettings.cpuCount(),
@@ -384,7 +724,8 @@ public class ScalablePlanePyramidSource implements PlanePyramidSource {
                 compression, zeroLevelFromX, zeroLevelToX, zeroLevelFromY, zeroLevelToY,
                 zeroLevelToX - zeroLevelFromX, zeroLevelToY - zeroLevelFromY,
                 (t4 - t1) * 1e-6, (t2 - t1) * 1e-6, (t3 - t2) * 1e-6, (t4 - t3) * 1e-6,
-                Matrices.sizeOf(m) / 1048576.0 / ((t4 - t1) * 1e-9), averageSpeed,
+                resultSize / 1048576.0 / ((t4 - t1) * 1e-9),
+                latencyRecorder.stats(LatencyRecorder.Operation.CONVERT),
                 parent.getClass().getSimpleName()
             ));
         }
@@ -397,37 +738,101 @@ public class ScalablePlanePyramidSource implements PlanePyramidSource {
             + ", based on " + parent;
     }
 
-    private Matrix<? extends PArray> callAndCheckParentReadSubMatrix(
+    private int selectLevel(LevelSelectionPolicy policy, double compression) {
+        if (compression < 1.0) {
+            throw new IllegalArgumentException("Compression must not be be less than 1.0");
+        }
+        final int level = policy.selectLevel(this, compression);
+        if (level < 0 || level >= numberOfResolutions) {
+            throw new AssertionError("Invalid implementation of " + policy.getClass()
+                + ".selectLevel (compression = " + compression + "): incorrect level " + level);
+        }
+        return level;
+    }
+
+    private void recordLevelSelection(LevelSelectionPolicy policy, ImageScaling scaling, Matrix<? extends PArray> m) {
+        levelSelectionCounters.computeIfAbsent(policy, key -> new LevelSelectionCounters())
+            .record(scaling.upsampling, scaling.bytesRead.get(), Matrices.sizeOf(m));
+    }
+
+    // Hints the parent about the levels, which will be used if the user zooms in (level-1) or out (level+1)
+    private void prefetchNeighbourLevels(
+        int level,
+        long zeroLevelFromX,
+        long zeroLevelFromY,
+        long zeroLevelToX,
+        long zeroLevelToY)
+    {
+        for (int neighbour = level - 1; neighbour <= level + 1; neighbour += 2) {
+            if (neighbour < 0 || neighbour >= numberOfResolutions) {
+                continue;
+            }
+            final double c = compression(neighbour);
+            final long[] dim = dimensions.get(neighbour);
+            final long fromX = Math.max(0, (long) Math.floor(zeroLevelFromX / c));
+            final long fromY = Math.max(0, (long) Math.floor(zeroLevelFromY / c));
+            final long toX = Math.min(dim[DIM_WIDTH], (long) Math.ceil(zeroLevelToX / c));
+            final long toY = Math.min(dim[DIM_HEIGHT], (long) Math.ceil(zeroLevelToY / c));
+            if (fromX < toX && fromY < toY) {
+                parent.prefetchSubMatrix(neighbour, fromX, fromY, toX, toY);
+            }
+        }
+    }
+
+    private PooledMatrix<? extends PArray> callAndCheckParentReadSubMatrix(
         int resolutionLevel,
         long fromX,
         long fromY,
         long toX,
-        long toY)
+        long toY,
+        boolean pooled)
     {
         long t1 = System.nanoTime();
-        Matrix<? extends PArray> m = parent.readSubMatrix(resolutionLevel, fromX, fromY, toX, toY);
+        final PooledMatrix<? extends PArray> result = pooled ?
+            parent.readPooledSubMatrix(resolutionLevel, fromX, fromY, toX, toY) :
+            PooledMatrix.unpooled(parent.readSubMatrix(resolutionLevel, fromX, fromY, toX, toY));
         long t2 = System.nanoTime();
-        if (m == null || m.dimCount() != 3 || m.dim(0) != bandCount
-            || m.dim(1) != toX - fromX || m.dim(2) != toY - fromY)
-        {
-            throw new AssertionError("Invalid implementation of " + parent.getClass()
-                + ".readSubMatrix (fromX = "
-                + fromX + ", fromY = " + fromY + ", toX = " + toX + ", toY = " + toY
-                + "): incorrect dimensions of the returned matrix " + m);
-        }
-        final String averageSpeed = pyramidSourceSpeedInfo.update(Matrices.sizeOf(m), t2 - t1);
+        final Matrix<? extends PArray> m = result.matrix();
+        checkParentSubMatrix(m, fromX, fromY, toX, toY);
+        latencyRecorder.record(LatencyRecorder.Operation.READ, resolutionLevel, Matrices.sizeOf(m), t2 - t1);
         if (DEBUG_LEVEL >= 2) {
             LOGGER.config(String.format(Locale.US,
                 "%s.callAndCheckParentReadSubMatrix timing (level %d, %d..%d x %d..%d (%d x %d%s): "
-                    + "%.3f ms, %.3f MB/sec, average %s (source: %s)",
+                    + "%.3f ms, %.3f MB/sec, total %s (source: %s)",
                 ScalablePlanePyramidSource.class.getSimpleName(),
                 resolutionLevel, fromX, toX, fromY, toY, toX - fromX, toY - fromY,
                 Arrays.isNCopies(m.array()) ? ", CONSTANT" : "",
-                (t2 - t1) * 1e-6, Matrices.sizeOf(m) / 1048576.0 / ((t2 - t1) * 1e-9), averageSpeed,
+                (t2 - t1) * 1e-6, Matrices.sizeOf(m) / 1048576.0 / ((t2 - t1) * 1e-9),
+                latencyRecorder.stats(LatencyRecorder.Operation.READ, resolutionLevel),
                 parent.getClass().getSimpleName()
             ));
         }
-        return m;
+        return result;
+    }
+
+    private void checkParentSubMatrix(Matrix<? extends PArray> m, long fromX, long fromY, long toX, long toY) {
+        if (m == null || m.dimCount() != 3 || m.dim(0) != bandCount
+            || m.dim(1) != toX - fromX || m.dim(2) != toY - fromY)
+        {
+            throw new AssertionError("Invalid implementation of " + parent.getClass()
+                + ".readSubMatrix (fromX = "
+                + fromX + ", fromY = " + fromY + ", toX = " + toX + ", toY = " + toY
+                + "): incorrect dimensions of the returned matrix " + m);
+        }
+    }
+
+    private PooledMatrix<? extends UpdatablePArray> newResultMatrix(
+        MatrixBufferPool pool,
+        Class<?> elementType,
+        long dimX,
+        long dimY)
+    {
+        if (pool != null && Arrays.sizeOf(elementType, Arrays.longMul(bandCount(), dimX, dimY))
+            <= Arrays.SystemSettings.maxTempJavaMemory())
+        {
+            return pool.borrow(elementType, bandCount(), dimX, dimY);
+        }
+        return PooledMatrix.unpooled(newResultMatrix(elementType, dimX, dimY));
     }
 
     private Matrix<UpdatablePArray> newResultMatrix(Class<?> elementType, long dimX, long dimY) {
@@ -442,6 +847,79 @@ public class ScalablePlanePyramidSource implements PlanePyramidSource {
         return result;
     }
 
+    // Fused version of converter.toDataBuffer + filling background rectangles (in the coordinates of m)
+    // by processing blocks of rows; returns null if the converter does not allow this
+    private DataBuffer renderDataBuffer(
+        Matrix<? extends PArray> m,
+        MatrixToBufferedImageConverter converter,
+        int width,
+        int height,
+        List<long[]> backgroundRectangles)
+    {
+        if (m.dim(DIM_WIDTH) != width || m.dim(DIM_HEIGHT) != height) {
+            return null;
+        }
+        final long rowSize = Math.max(1, Matrices.sizeOf(m) / height);
+        final int blockDimY = (int) Math.max(1, Math.min(height, RENDERING_BLOCK_MEMORY / rowSize));
+        final int blockCount = (height + blockDimY - 1) / blockDimY;
+        final DataBuffer firstBlock = converter.toDataBuffer(m.subMatr(0, 0, 0, m.dim(0), width, blockDimY));
+        final int bankCount = firstBlock.getNumBanks();
+        for (int bankIndex = 0; bankIndex < bankCount; bankIndex++) {
+            if (firstBlock.getOffsets()[bankIndex] != 0 || java.lang.reflect.Array.getLength(
+                MatrixToBufferedImageConverter.getDataArray(firstBlock, bankIndex)) != width * blockDimY)
+            {
+                return null;
+            }
+        }
+        final DataBuffer result = newDataBuffer(firstBlock.getDataType(), width * height, bankCount);
+        if (result == null) {
+            return null;
+        }
+        final long[] fillers = new long[bankCount];
+        for (int bankIndex = 0; bankIndex < bankCount; bankIndex++) {
+            fillers[bankIndex] = converter.colorValue(m, backgroundColor, bankIndex);
+        }
+        processStripsInParallel(blockCount, k -> {
+            final int fromY = k * blockDimY;
+            final int toY = Math.min(height, fromY + blockDimY);
+            final DataBuffer block = k == 0 ? firstBlock :
+                converter.toDataBuffer(m.subMatr(0, 0, fromY, m.dim(0), width, toY - fromY));
+            for (int bankIndex = 0; bankIndex < bankCount; bankIndex++) {
+                final Object blockData = MatrixToBufferedImageConverter.getDataArray(block, bankIndex);
+                if (!backgroundRectangles.isEmpty()) {
+                    final Matrix<? extends UpdatablePArray> bankMatrix = Matrices.matrix(
+                        (UpdatablePArray) SimpleMemoryModel.asUpdatableArray(blockData), width, toY - fromY);
+                    for (long[] r : backgroundRectangles) {
+                        bankMatrix.subMatrix(r[0], r[1] - fromY, r[2], r[3] - fromY,
+                            Matrix.ContinuationMode.NULL_CONSTANT).array().fill(fillers[bankIndex]);
+                    }
+                }
+                System.arraycopy(blockData, 0, MatrixToBufferedImageConverter.getDataArray(result, bankIndex),
+                    fromY * width, (toY - fromY) * width);
+            }
+        });
+        return result;
+    }
+
+    private static DataBuffer newDataBuffer(int dataType, int size, int bankCount) {
+        switch (dataType) {
+            case DataBuffer.TYPE_BYTE:
+                return new DataBufferByte(size, bankCount);
+            case DataBuffer.TYPE_USHORT:
+                return new DataBufferUShort(size, bankCount);
+            case DataBuffer.TYPE_SHORT:
+                return new DataBufferShort(size, bankCount);
+            case DataBuffer.TYPE_INT:
+                return new DataBufferInt(size, bankCount);
+            case DataBuffer.TYPE_FLOAT:
+                return new DataBufferFloat(size, bankCount);
+            case DataBuffer.TYPE_DOUBLE:
+                return new DataBufferDouble(size, bankCount);
+            default:
+                return null;
+        }
+    }
+
     private Collection<IRectangularArea> getBackgroundAreasInRectangle(
         long zeroLevelFromX, long zeroLevelFromY, long zeroLevelToX, long zeroLevelToY)
     {
@@ -471,15 +949,28 @@ public class ScalablePlanePyramidSource implements PlanePyramidSource {
         if (filledMatrix == null) {
             throw new NullPointerException("Null filled matrix");
         }
+        if (filledMatrix.dimCount() != 2) {
+            throw new IllegalArgumentException("The filled matrix must be 2-dimensional");
+        }
+        final long[] r = backgroundRectangleWithCompression(
+            filledArea, shift, compression, compressionFromZeroLevel, dataWasScaled);
+        filledMatrix.subMatrix(r[0], r[1], r[2], r[3], Matrix.ContinuationMode.NULL_CONSTANT).array().fill(filler);
+    }
+
+    // Returns {fromX, fromY, toX, toY}: the rectangle in the scaled image, affected by the given background area
+    private long[] backgroundRectangleWithCompression(
+        IRectangularArea filledArea,
+        IPoint shift,
+        double compression,
+        boolean compressionFromZeroLevel,
+        boolean dataWasScaled)
+    {
         if (filledArea == null) {
             throw new NullPointerException("Null filled area");
         }
         if (shift == null) {
             throw new NullPointerException("Null shift");
         }
-        if (filledMatrix.dimCount() != 2) {
-            throw new IllegalArgumentException("The filled matrix must be 2-dimensional");
-        }
         if (filledArea.coordCount() != 2) {
             throw new IllegalArgumentException("The filled area must be 2-dimensional");
         }
@@ -532,7 +1023,7 @@ public class ScalablePlanePyramidSource implements PlanePyramidSource {
 //        System.out.printf(Locale.US, "Drawing %d..%d x %d..%d, %.3f, %s%n",
 //            fromX, toX - 1, fromY, toY - 1, compression, filledArea);
         //[[Repeat.IncludeEnd]]
-        filledMatrix.subMatrix(fromX, fromY, toX, toY, Matrix.ContinuationMode.NULL_CONSTANT).array().fill(filler);
+        return new long[] {fromX, fromY, toX, toY};
     }
 
     private static MemoryModel findMemoryModel(PlanePyramidSource parent) {
@@ -568,6 +1059,9 @@ public class ScalablePlanePyramidSource implements PlanePyramidSource {
         final double additionalCompression;
         final boolean needAdditionalCompression;
         final boolean additionalCompressionIsInteger;
+        final boolean upsampling;
+        final AtomicLong bytesRead = new AtomicLong(0);
+        // - the data, read from the parent source (maybe in several threads)
 
         private long scaleImageExtractingTime = 0;
         private long scaleImageCompressionTime = 0;
@@ -590,27 +1084,38 @@ public class ScalablePlanePyramidSource implements PlanePyramidSource {
             assert compression > 0;
             this.level = level;
             final double levelCompression = compression(level);
-            assert levelCompression > 0 && levelCompression <= compression;
+            assert levelCompression > 0;
             this.totalCompression = compression;
             this.roundedTotalCompression = StrictMath.round(compression);
-            this.levelFromX = safeFloor(zeroLevelFromX / levelCompression);
-            this.levelFromY = safeFloor(zeroLevelFromY / levelCompression);
-            this.levelToX = safeFloor(zeroLevelToX / levelCompression);
-            this.levelToY = safeFloor(zeroLevelToY / levelCompression);
             this.additionalCompression = compression / levelCompression;
             this.levelCompression = Math.round(levelCompression);
             // - Math.round returns the same number, excepting a case of 63-bit overflow (levelCompression > 2^63)
             this.needAdditionalCompression = Math.abs(additionalCompression - 1.0) > 1e-4;
+            this.upsampling = needAdditionalCompression && additionalCompression < 1.0;
+            // - possible if the level selection policy has chosen a level, coarser than the requested compression
+            this.levelFromX = safeFloor(zeroLevelFromX / levelCompression);
+            this.levelFromY = safeFloor(zeroLevelFromY / levelCompression);
+            this.levelToX = upsampling ?
+                (long) Math.ceil(zeroLevelToX / levelCompression) :
+                safeFloor(zeroLevelToX / levelCompression);
+            this.levelToY = upsampling ?
+                (long) Math.ceil(zeroLevelToY / levelCompression) :
+                safeFloor(zeroLevelToY / levelCompression);
+            // - while upsampling, we need all partially covered pixels of the level
             this.newDimX = levelToX - levelFromX;
             this.newDimY = levelToY - levelFromY;
-            if (needAdditionalCompression) {
+            if (upsampling) {
+                newDimX = safeFloor((zeroLevelToX - zeroLevelFromX) / compression);
+                newDimY = safeFloor((zeroLevelToY - zeroLevelFromY) / compression);
+                // - not greater than (levelToX - levelFromX) / additionalCompression: the level data cover the result
+            } else if (needAdditionalCompression) {
                 // we provide a guarantee that the sizes of the scaled matrix are always newDimX * newDimY;
                 // so, we must retain previous newDimX and newDimY if we are not going to additionally scale
                 newDimX = Math.min(newDimX, safeFloor(newDimX / additionalCompression));
                 newDimY = Math.min(newDimY, safeFloor(newDimY / additionalCompression));
                 // - "min" here is to be on the safe side
             }
-            if (needAdditionalCompression) {
+            if (needAdditionalCompression && !upsampling) {
                 assert additionalCompression > 1.0;
                 final long intAdditionalCompression = Math.round(additionalCompression);
                 this.additionalCompressionIsInteger =
@@ -638,24 +1143,236 @@ public class ScalablePlanePyramidSource implements PlanePyramidSource {
         }
 
         Matrix<? extends PArray> scaleImage() {
+            return scaleImage(null).matrix();
+        }
+
+        // If pool != null, the result may be borrowed from it
+        PooledMatrix<? extends PArray> scaleImage(MatrixBufferPool pool) {
+            if (isStripScalingNecessary()) {
+                return scaleImageByStrips(pool);
+            }
+            long t1 = System.nanoTime();
+            final boolean temporarySource = needAdditionalCompression || pool != null;
+            // - in other case, the source data will be returned to the caller, which will not close it
+            try (PooledMatrix<? extends PArray> sourceData = temporarySource ?
+                readPooledSubMatrix(level, levelFromX, levelFromY, levelToX, levelToY) :
+                PooledMatrix.unpooled(readSubMatrix(level, levelFromX, levelFromY, levelToX, levelToY)))
+            {
+                long t2 = System.nanoTime();
+                scaleImageExtractingTime = t2 - t1;
+                countReadBytes(sourceData.matrix());
+                ReadingCancellation.checkCurrent();
+                final PooledMatrix<? extends PArray> result = scale(sourceData.matrix(), pool);
+                return result.matrix() == sourceData.matrix() ? sourceData.withMatrix(result.matrix()) : result;
+                // - withMatrix passes the buffer to the result: it will not be released while exiting this block
+            }
+        }
+
+        Matrix<? extends PArray> scaleImageCached(ScaledImageCache cache) {
+            final ScaledImageCache.Entry request = new ScaledImageCache.Entry(
+                totalCompression, averagingMode, backgroundColor,
+                zeroLevelFromX, zeroLevelFromY, zeroLevelToX, zeroLevelToY,
+                level, gridStep(), levelFromX, levelFromY, newDimX, newDimY, null);
+            final ScaledImageCache.Entry cached = cache.find(request);
+            final long pixels = newDimX * newDimY;
+            if (cached != null && cached.isExactFor(request)) {
+                cache.recordHit(pixels);
+                return cached.matrix;
+            }
+            final Matrix<? extends PArray> result;
+            if (cached == null) {
+                result = scaleImage();
+                cache.recordMiss(pixels);
+            } else {
+                final long reused = request.overlapArea(cached);
+                result = scaleImageReusing(cached.matrix, request.offsetX(cached), request.offsetY(cached));
+                cache.recordPartialHit(reused, pixels - reused);
+            }
+            final ScaledImageCache.Entry entry = request.withMatrix(result);
+            cache.put(entry);
+            return entry.matrix;
+        }
+
+        boolean isStripScalingNecessary() {
+            final long threshold = stripScalingThreshold;
+            if (!needAdditionalCompression || threshold == 0 || newDimY < 2) {
+                return false;
+            }
+            final double bits = (double) Arrays.bitsPerElement(ScalablePlanePyramidSource.this.elementType())
+                * bandCount * (double) (levelToX - levelFromX) * (double) (levelToY - levelFromY);
+            return bits >= 8.0 * threshold;
+        }
+
+        PooledMatrix<? extends PArray> scaleImageByStrips(MatrixBufferPool pool) {
+            long t1 = System.nanoTime();
+            final Class<?> sourceType = ScalablePlanePyramidSource.this.elementType();
+            final Class<?> resultType = convertBitToByte() ? byte.class : sourceType;
+            final double rowBytes = Arrays.bitsPerElement(sourceType) / 8.0 * bandCount * (levelToX - levelFromX);
+            final long stripDimY = Math.max(1, Math.min(newDimY,
+                (long) (STRIP_SOURCE_MEMORY / Math.max(rowBytes, 1.0) / additionalCompression)));
+            final int stripCount = (int) Math.min(Integer.MAX_VALUE, (newDimY + stripDimY - 1) / stripDimY);
+            final PooledMatrix<? extends UpdatablePArray> result = newResultMatrix(
+                pool, resultType, newDimX, newDimY);
+            try {
+                scaleAllStrips(result.matrix(), stripDimY, stripCount);
+            } catch (RuntimeException | Error e) {
+                result.close();
+                throw e;
+            }
+            scaleImageCompressionTime = System.nanoTime() - t1;
+            // - reading and scaling are performed simultaneously
+            if (DEBUG_LEVEL >= 3) {
+                LOGGER.config(String.format(Locale.US, "%s scaled %d..%d x %d..%d (level %d) by %d strips %dx%d",
+                    ScalablePlanePyramidSource.class.getSimpleName(),
+                    levelFromX, levelToX - 1, levelFromY, levelToY - 1, level, stripCount, newDimX, stripDimY));
+            }
+            return result;
+        }
+
+        private void scaleAllStrips(Matrix<? extends UpdatablePArray> result, long stripDimY, int stripCount) {
+            processStripsInParallel(stripCount, k -> {
+                final long fromY = k * stripDimY;
+                scaleStrip(result, fromY, Math.min(newDimY, fromY + stripDimY));
+            });
+        }
+
+        // Reads the band of the level, necessary for the rows fromY..toY-1 of the result, and scales it
+        private void scaleStrip(Matrix<? extends UpdatablePArray> result, long fromY, long toY) {
+            final long sourceDimY = levelToY - levelFromY;
+            final long sourceFromY;
+            final long sourceToY;
+            if (additionalCompressionIsInteger) {
+                final long step = gridStep();
+                sourceFromY = fromY * step;
+                sourceToY = toY * step;
+            } else {
+                final long margin = (long) Math.ceil(additionalCompression) + 2;
+                // - more than enough for averaging and interpolation at the strip boundaries
+                sourceFromY = Math.max(0, (long) Math.floor(fromY * additionalCompression) - margin);
+                sourceToY = Math.min(sourceDimY, (long) Math.ceil(toY * additionalCompression) + margin);
+            }
+            try (PooledMatrix<? extends PArray> band = readPooledSubMatrix(level,
+                levelFromX, levelFromY + sourceFromY, levelToX, levelFromY + sourceToY))
+            {
+                countReadBytes(band.matrix());
+                ReadingCancellation.checkCurrent();
+                Matrix<? extends PArray> source = convertBitToByte() ? bitToByte(band.matrix()) : band.matrix();
+                final Matrix<? extends UpdatablePArray> strip = result.subMatr(
+                    0, 0, fromY, bandCount, newDimX, toY - fromY);
+                if (additionalCompressionIsInteger) {
+                    doResize(strip, source);
+                } else {
+                    source = source.subMatr(0, 0, -sourceFromY, bandCount, source.dim(DIM_WIDTH), sourceDimY,
+                        Matrix.ContinuationMode.ZERO_CONSTANT);
+                    // - virtual matrix with the sizes of the full area: the rows outside the band,
+                    // which are never used for this strip, are zero
+                    final double scale = 1.0 / additionalCompression;
+                    Matrices.copy(null, strip, Matrices.asResized(averagingMode.averagingMethod(source),
+                        source, new long[] {bandCount, newDimX, newDimY}, new double[] {1.0, scale, scale})
+                        .subMatr(0, 0, fromY, bandCount, newDimX, toY - fromY), 0, false);
+                }
+            }
+        }
+
+        CompletableFuture<Matrix<? extends PArray>> scaleImageAsync(Executor executor) {
+            final long t1 = System.nanoTime();
+            final CompletableFuture<Matrix<? extends PArray>> sourceData = readSubMatrixAsync(
+                level, levelFromX, levelFromY, levelToX, levelToY, executor).thenApply(m -> {
+                    countReadBytes(m);
+                    return m;
+                });
+            if (!needAdditionalCompression) {
+                return sourceData.thenApply(this::scale);
+                // - no calculations, only checks
+            }
+            return sourceData.thenApplyAsync(m -> {
+                scaleImageExtractingTime = System.nanoTime() - t1;
+                ReadingCancellation.checkCurrent();
+                return scale(m);
+            }, ReadingCancellation.propagating(executor));
+        }
+
+        // The cached image must have the same grid: its pixel (x,y) corresponds to our pixel (x+offsetX,y+offsetY)
+        private Matrix<? extends PArray> scaleImageReusing(
+            Matrix<? extends PArray> cached,
+            long offsetX,
+            long offsetY)
+        {
+            long t1 = System.nanoTime();
+            final long fromX = Math.max(0, offsetX);
+            final long fromY = Math.max(0, offsetY);
+            final long toX = Math.min(newDimX, offsetX + cached.dim(DIM_WIDTH));
+            final long toY = Math.min(newDimY, offsetY + cached.dim(DIM_HEIGHT));
+            assert fromX < toX && fromY < toY : "no overlap";
+            final Matrix<UpdatablePArray> result = newResultMatrix(cached.elementType(), newDimX, newDimY);
+            Matrices.copy(null,
+                result.subMatr(0, fromX, fromY, bandCount, toX - fromX, toY - fromY),
+                cached.subMatr(0, fromX - offsetX, fromY - offsetY, bandCount, toX - fromX, toY - fromY));
+            scaleArea(result, 0, 0, newDimX, fromY);
+            scaleArea(result, 0, toY, newDimX, newDimY);
+            scaleArea(result, 0, fromY, fromX, toY);
+            scaleArea(result, toX, fromY, newDimX, toY);
+            scaleImageCompressionTime = System.nanoTime() - t1 - scaleImageExtractingTime;
+            return result;
+        }
+
+        // Reads and scales the part fromX..toX-1 x fromY..toY-1 of the scaled image; requires gridStep() != 0
+        private void scaleArea(Matrix<? extends UpdatablePArray> result, long fromX, long fromY, long toX, long toY) {
+            if (fromX >= toX || fromY >= toY) {
+                return;
+            }
+            final long step = gridStep();
+            assert step > 0;
             long t1 = System.nanoTime();
-            Matrix<? extends PArray> sourceData = readSubMatrix(
-                level, levelFromX, levelFromY, levelToX, levelToY);
+            try (PooledMatrix<? extends PArray> sourceData = readPooledSubMatrix(level,
+                levelFromX + fromX * step, levelFromY + fromY * step,
+                levelFromX + toX * step, levelFromY + toY * step))
+            {
+                scaleImageExtractingTime += System.nanoTime() - t1;
+                countReadBytes(sourceData.matrix());
+                ReadingCancellation.checkCurrent();
+                final Matrix<? extends UpdatablePArray> area = result.subMatr(
+                    0, fromX, fromY, bandCount, toX - fromX, toY - fromY);
+                if (needAdditionalCompression) {
+                    doResize(area, convertBitToByte() ? bitToByte(sourceData.matrix()) : sourceData.matrix());
+                } else {
+                    Matrices.copy(null, area, sourceData.matrix());
+                }
+            }
+        }
+
+        private void countReadBytes(Matrix<? extends PArray> sourceData) {
+            bytesRead.addAndGet(Matrices.sizeOf(sourceData));
+        }
+
+        // Integer compression of level data, used for creating the scaled image, or 0 if it is not integer
+        private long gridStep() {
+            return !needAdditionalCompression ? 1 :
+                additionalCompressionIsInteger ? Math.round(additionalCompression) :
+                    0;
+        }
+
+        private Matrix<? extends PArray> scale(Matrix<? extends PArray> sourceData) {
+            return scale(sourceData, null).matrix();
+        }
+
+        private PooledMatrix<? extends PArray> scale(Matrix<? extends PArray> sourceData, MatrixBufferPool pool) {
             long t2 = System.nanoTime();
-            scaleImageExtractingTime = t2 - t1;
             if (needAdditionalCompression) {
-                final boolean convertBitToByte = needAdditionalCompression
-                    && averagingMode == AveragingMode.AVERAGING
-                    && elementType == boolean.class;
+                final boolean convertBitToByte = convertBitToByte();
+                final double[] pixel = convertBitToByte ? null : PlanePyramidTools.findUniformPixel(sourceData);
+                if (pixel != null) {
+                    // - for example, empty area of the slide: averaging is not necessary
+                    scaleImageCompressionTime = System.nanoTime() - t2;
+                    return PooledMatrix.unpooled(
+                        PlanePyramidTools.asUniform(sourceData.elementType(), pixel, newDimX, newDimY));
+                }
                 if (convertBitToByte) {
-                    Range srcRange = Range.valueOf(0.0, sourceData.array().maxPossibleValue(1.0));
-                    Range destRange = Range.valueOf(0.0, Arrays.maxPossibleIntegerValue(ByteArray.class));
-                    sourceData = Matrices.asFuncMatrix(LinearFunc.getInstance(destRange, srcRange),
-                        ByteArray.class, sourceData);
+                    sourceData = bitToByte(sourceData);
                 }
-                Matrix<? extends UpdatablePArray> resized = newResultMatrix(
-                    sourceData.elementType(), newDimX, newDimY);
-                doResize(resized, sourceData);
+                PooledMatrix<? extends UpdatablePArray> resized = newResultMatrix(
+                    pool, sourceData.elementType(), newDimX, newDimY);
+                doResize(resized.matrix(), sourceData);
                 long t3 = System.nanoTime();
                 scaleImageCompressionTime = t3 - t2;
 //                System.out.printf("Additional compression in %.2f times: %.3f ms%n",
@@ -664,10 +1381,22 @@ public class ScalablePlanePyramidSource implements PlanePyramidSource {
             } else {
                 assert sourceData.dim(DIM_WIDTH) == newDimX;
                 assert sourceData.dim(DIM_HEIGHT) == newDimY;
-                return sourceData;
+                return PooledMatrix.unpooled(sourceData);
             }
         }
 
+        private boolean convertBitToByte() {
+            return needAdditionalCompression
+                && averagingMode == AveragingMode.AVERAGING
+                && elementType == boolean.class;
+        }
+
+        private Matrix<? extends PArray> bitToByte(Matrix<? extends PArray> sourceData) {
+            Range srcRange = Range.valueOf(0.0, sourceData.array().maxPossibleValue(1.0));
+            Range destRange = Range.valueOf(0.0, Arrays.maxPossibleIntegerValue(ByteArray.class));
+            return Matrices.asFuncMatrix(LinearFunc.getInstance(destRange, srcRange), ByteArray.class, sourceData);
+        }
+
         String scaleImageTiming() {
             return String.format(Locale.US,
                 "%s.scaleImage timing: "
@@ -690,7 +1419,7 @@ public class ScalablePlanePyramidSource implements PlanePyramidSource {
 //            System.out.println("Resizing to " + resized + " from " + source);
             final Matrices.ResizingMethod resizingMethod = averagingMode.averagingMethod(source);
             if (additionalCompressionIsInteger) {
-                Matrices.resize(null, resizingMethod, resized, source);
+                BoxAveraging.resize(null, resizingMethod, resized, source);
             } else {
                 final double scale = 1.0 / additionalCompression;
                 Matrices.copy(null, resized, Matrices.asResized(resizingMethod,
@@ -769,11 +1498,30 @@ public class ScalablePlanePyramidSource implements PlanePyramidSource {
         }
 
         SubMatrixExtracting extractSubMatrix() {
-            this.actualData = callAndCheckParentReadSubMatrix(level, actualFromX, actualFromY, actualToX, actualToY);
+            this.actualData = callAndCheckParentReadSubMatrix(
+                level, actualFromX, actualFromY, actualToX, actualToY, false).matrix();
             extendActual();
             return this;
         }
 
+        PooledMatrix<? extends PArray> extractPooledSubMatrix() {
+            final PooledMatrix<? extends PArray> actual = callAndCheckParentReadSubMatrix(
+                level, actualFromX, actualFromY, actualToX, actualToY, true);
+            this.actualData = actual.matrix();
+            extendActual();
+            return actual.withMatrix(fullData);
+        }
+
+        CompletableFuture<SubMatrixExtracting> extractSubMatrixAsync(Executor executor) {
+            return parent.readSubMatrixAsync(level, actualFromX, actualFromY, actualToX, actualToY, executor)
+                .thenApply(m -> {
+                    checkParentSubMatrix(m, actualFromX, actualFromY, actualToX, actualToY);
+                    this.actualData = m;
+                    extendActual();
+                    return this;
+                });
+        }
+
         private void extendActual() {
             assert actualData != null;
             if (allDataActual) {
@@ -791,40 +1539,45 @@ public class ScalablePlanePyramidSource implements PlanePyramidSource {
         }
     }
 
-    static class SpeedInfo {
-        double totalMemory = 0.0;
-        double elapsedTime = 0.0;
-        long lastGcTime = System.currentTimeMillis();
+    // Performs the processor for all strips 0..stripCount-1, maybe in parallel (up to stripScalingParallelism
+    // threads), like AbstractPlanePyramidSource reads tiles; the strips must be independent.
+    private void processStripsInParallel(int stripCount, IntConsumer stripProcessor) {
+        ParallelProcessing.processAll(stripCount, stripProcessor, stripScalingParallelism, null);
+    }
 
-        public String update(long memory, long time) {
-            return update(memory, time, false);
-        }
+    private static class LevelSelectionCounters {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder upsampledRequests = new LongAdder();
+        private final LongAdder bytesRead = new LongAdder();
+        private final LongAdder resultBytes = new LongAdder();
 
-        public String update(long memory, long time, boolean enforceGc) {
-            final String result;
-            boolean doGc = false;
-            synchronized (this) {
-                totalMemory += memory;
-                elapsedTime += time;
-                final long t = System.currentTimeMillis();
-                if (enforceGc) {
-                    doGc = TIME_ENFORCING_GC > 0
-                        && (t - lastGcTime) > TIME_ENFORCING_GC;
-                    if (doGc) {
-                        lastGcTime = t;
-                    }
-                }
-                result = String.format(Locale.US,
-                    "%.1f MB / %.3f sec = %.3f MB/sec%s",
-                    totalMemory / 1048576.0,
-                    elapsedTime * 1e-9,
-                    totalMemory / 1048576.0 / (elapsedTime * 1e-9),
-                    doGc ? " [GC enforced by " + this + "]" : "");
+        void record(boolean upsampling, long bytesRead, long resultBytes) {
+            this.requests.increment();
+            if (upsampling) {
+                this.upsampledRequests.increment();
             }
-            if (doGc) {
-                System.gc();
+            this.bytesRead.add(bytesRead);
+            this.resultBytes.add(resultBytes);
+        }
+
+        LevelSelectionStats stats(LevelSelectionPolicy policy) {
+            return new LevelSelectionStats(policy.toString(),
+                requests.sum(), upsampledRequests.sum(), bytesRead.sum(), resultBytes.sum());
+        }
+    }
+
+    private void enforceGcIfNecessary() {
+        if (TIME_ENFORCING_GC <= 0) {
+            return;
+        }
+        final long t = System.currentTimeMillis();
+        final long last = lastGcTime.get();
+        if (t - last > TIME_ENFORCING_GC && lastGcTime.compareAndSet(last, t)) {
+            // - only one thread performs GC
+            if (DEBUG_LEVEL >= 2) {
+                LOGGER.config("GC enforced by " + this);
             }
-            return result;
+            System.gc();
         }
     }
 }
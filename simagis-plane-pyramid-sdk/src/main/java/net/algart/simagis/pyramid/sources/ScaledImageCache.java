@@ -0,0 +1,384 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package net.algart.simagis.pyramid.sources;
+
+import net.algart.arrays.Arrays;
+import net.algart.arrays.Matrices;
+import net.algart.arrays.Matrix;
+import net.algart.arrays.PArray;
+import net.algart.simagis.pyramid.PlanePyramidSource;
+
+import java.awt.*;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Bounded LRU cache of the results of {@link ScalablePlanePyramidSource#readImage readImage},
+ * used by {@link ScalablePlanePyramidSource} when {@link ScalablePlanePyramidSource#setScaledImageCacheMemory
+ * the scaled image cache} is enabled.
+ *
+ * <p>Every cached image is described by an {@link Entry}: the compression, the used pyramid level
+ * (it depends on the {@link LevelSelectionPolicy}), the averaging mode,
+ * the background color, the requested zero-level rectangle and the <i>grid</i> of the scaled image,
+ * i.e. the position of its pixels in the pyramid level. The request with the same compression, level, mode,
+ * color and rectangle is an exact hit. Besides, if the image is produced by integer compression of the level data
+ * (or without compression), every its pixel depends only on the corresponding block of the level;
+ * so, a cached image with the same grid (the same level, the same integer compression and
+ * the same phase of the blocks) can be used for the overlapping part of a new request,
+ * and only the rest of the new image must be calculated.
+ *
+ * <p>Entries are also indexed by their grid (see {@link GridKey}), so that looking for a partial hit
+ * checks only the images with the same grid. Every entry weighs at least {@link #ENTRY_OVERHEAD} bytes,
+ * even if its matrix is constant, and the number of entries is limited by {@link #MAX_ENTRIES}.
+ *
+ * <p>The cached matrices are immutable. This class is thread-safe.
+ */
+final class ScaledImageCache {
+    static final long ENTRY_OVERHEAD = 256;
+    // - approximate memory, occupied by Java objects of one entry; provides positive weight for constant images
+    static final int MAX_ENTRIES = 4096;
+
+    private final long maxMemory;
+    private final LinkedHashMap<Entry, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // - access order: the first entry is the eldest
+    private final Map<GridKey, Set<Entry>> grids = new HashMap<>();
+    private long memory = 0;
+    private long hits = 0;
+    private long partialHits = 0;
+    private long misses = 0;
+    private long reusedPixels = 0;
+    private long calculatedPixels = 0;
+
+    ScaledImageCache(long maxMemory) {
+        if (maxMemory <= 0) {
+            throw new IllegalArgumentException("Zero or negative maxMemory");
+        }
+        this.maxMemory = maxMemory;
+    }
+
+    long maxMemory() {
+        return maxMemory;
+    }
+
+    /**
+     * Returns the cached image for exactly the same request, or, if there is no such image,
+     * the cached image with the same grid, which has the maximal overlap with the requested image,
+     * or <tt>null</tt> if there are no such images.
+     *
+     * @param request the description of the request (its matrix is not used).
+     * @return the best cached entry or <tt>null</tt>.
+     */
+    synchronized Entry find(Entry request) {
+        final Entry exact = entries.get(request);
+        if (exact != null) {
+            return exact;
+        }
+        final Set<Entry> sameGrid = request.gridKey == null ? null : grids.get(request.gridKey);
+        if (sameGrid == null) {
+            return null;
+        }
+        Entry best = null;
+        long bestArea = 0;
+        for (Entry entry : sameGrid) {
+            final long area = request.overlapArea(entry);
+            if (area > bestArea) {
+                best = entry;
+                bestArea = area;
+            }
+        }
+        if (best != null) {
+            entries.get(best);
+            // - updating access order
+        }
+        return best;
+    }
+
+    synchronized void put(Entry entry) {
+        Objects.requireNonNull(entry.matrix, "Entry without matrix");
+        if (entry.weight > maxMemory / 2) {
+            return;
+            // - too large image: it would displace all other images
+        }
+        final Entry previous = entries.put(entry, entry);
+        if (previous != null) {
+            memory -= previous.weight;
+            removeFromGrid(previous);
+        }
+        memory += entry.weight;
+        if (entry.gridKey != null) {
+            grids.computeIfAbsent(entry.gridKey, key -> new LinkedHashSet<>()).add(entry);
+        }
+        for (Iterator<Entry> iterator = entries.values().iterator();
+             (memory > maxMemory || entries.size() > MAX_ENTRIES) && iterator.hasNext(); )
+        {
+            final Entry eldest = iterator.next();
+            iterator.remove();
+            memory -= eldest.weight;
+            removeFromGrid(eldest);
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        grids.clear();
+        memory = 0;
+    }
+
+    synchronized void recordHit(long pixels) {
+        hits++;
+        reusedPixels += pixels;
+    }
+
+    synchronized void recordPartialHit(long reused, long calculated) {
+        partialHits++;
+        reusedPixels += reused;
+        calculatedPixels += calculated;
+    }
+
+    synchronized void recordMiss(long pixels) {
+        misses++;
+        calculatedPixels += pixels;
+    }
+
+    synchronized ScaledImageCacheStats stats() {
+        return new ScaledImageCacheStats(
+            hits, partialHits, misses, reusedPixels, calculatedPixels, entries.size(), memory, maxMemory);
+    }
+
+    private void removeFromGrid(Entry entry) {
+        if (entry.gridKey == null) {
+            return;
+        }
+        final Set<Entry> sameGrid = grids.get(entry.gridKey);
+        if (sameGrid != null) {
+            sameGrid.remove(entry);
+            if (sameGrid.isEmpty()) {
+                grids.remove(entry.gridKey);
+            }
+        }
+    }
+
+    static final class Entry {
+        final double compression;
+        final PlanePyramidSource.AveragingMode averagingMode;
+        final Color backgroundColor;
+        final long zeroLevelFromX;
+        final long zeroLevelFromY;
+        final long zeroLevelToX;
+        final long zeroLevelToY;
+        final int level;
+        final long gridStep;
+        // - integer compression of the level data; 0 if the compression is not integer (the grid is undefined)
+        final long gridFromX;
+        final long gridFromY;
+        // - the position of the image at the level
+        final long dimX;
+        final long dimY;
+        final Matrix<? extends PArray> matrix;
+        final long weight;
+        final GridKey gridKey;
+        // - null if the grid is undefined
+
+        Entry(
+            double compression,
+            PlanePyramidSource.AveragingMode averagingMode,
+            Color backgroundColor,
+            long zeroLevelFromX,
+            long zeroLevelFromY,
+            long zeroLevelToX,
+            long zeroLevelToY,
+            int level,
+            long gridStep,
+            long gridFromX,
+            long gridFromY,
+            long dimX,
+            long dimY,
+            Matrix<? extends PArray> matrix)
+        {
+            this.compression = compression;
+            this.averagingMode = averagingMode;
+            this.backgroundColor = backgroundColor;
+            this.zeroLevelFromX = zeroLevelFromX;
+            this.zeroLevelFromY = zeroLevelFromY;
+            this.zeroLevelToX = zeroLevelToX;
+            this.zeroLevelToY = zeroLevelToY;
+            this.level = level;
+            this.gridStep = gridStep;
+            this.gridFromX = gridFromX;
+            this.gridFromY = gridFromY;
+            this.dimX = dimX;
+            this.dimY = dimY;
+            this.matrix = matrix == null ? null : matrix.matrix(matrix.array().asImmutable());
+            this.weight = matrix == null || Arrays.isNCopies(matrix.array()) ?
+                ENTRY_OVERHEAD :
+                Matrices.sizeOf(matrix) + ENTRY_OVERHEAD;
+            this.gridKey = gridStep == 0 ? null : new GridKey(this);
+        }
+
+        Entry withMatrix(Matrix<? extends PArray> matrix) {
+            Objects.requireNonNull(matrix, "Null matrix");
+            if (matrix.dim(1) != dimX || matrix.dim(2) != dimY) {
+                throw new AssertionError("Invalid dimensions of the scaled image " + matrix
+                    + ": must be " + dimX + "x" + dimY);
+            }
+            return new Entry(compression, averagingMode, backgroundColor,
+                zeroLevelFromX, zeroLevelFromY, zeroLevelToX, zeroLevelToY,
+                level, gridStep, gridFromX, gridFromY, dimX, dimY, matrix);
+        }
+
+        boolean isExactFor(Entry request) {
+            return equals(request)
+                || (sameGrid(request) && gridFromX == request.gridFromX && gridFromY == request.gridFromY
+                && dimX == request.dimX && dimY == request.dimY);
+        }
+
+        /**
+         * Returns the x-offset of the given cached image in the pixels of this image.
+         * Can be used only if {@link #overlapArea(Entry)} is positive.
+         *
+         * @param cached some cached image with the same grid.
+         * @return the x-offset of the cached image relative to this one.
+         */
+        long offsetX(Entry cached) {
+            return (cached.gridFromX - gridFromX) / gridStep;
+        }
+
+        long offsetY(Entry cached) {
+            return (cached.gridFromY - gridFromY) / gridStep;
+        }
+
+        long overlapArea(Entry cached) {
+            if (!sameGrid(cached)
+                || (cached.gridFromX - gridFromX) % gridStep != 0
+                || (cached.gridFromY - gridFromY) % gridStep != 0)
+            {
+                return 0;
+            }
+            final long offsetX = offsetX(cached);
+            final long offsetY = offsetY(cached);
+            final long overlapX = Math.min(dimX, offsetX + cached.dimX) - Math.max(0, offsetX);
+            final long overlapY = Math.min(dimY, offsetY + cached.dimY) - Math.max(0, offsetY);
+            return overlapX <= 0 || overlapY <= 0 ? 0 : overlapX * overlapY;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            final Entry that = (Entry) o;
+            return Double.compare(compression, that.compression) == 0
+                && level == that.level
+                && averagingMode == that.averagingMode
+                && backgroundColor.equals(that.backgroundColor)
+                && zeroLevelFromX == that.zeroLevelFromX && zeroLevelFromY == that.zeroLevelFromY
+                && zeroLevelToX == that.zeroLevelToX && zeroLevelToY == that.zeroLevelToY;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Double.hashCode(compression);
+            result = 31 * result + level;
+            result = 31 * result + averagingMode.hashCode();
+            result = 31 * result + backgroundColor.hashCode();
+            result = 31 * result + Long.hashCode(zeroLevelFromX);
+            result = 31 * result + Long.hashCode(zeroLevelFromY);
+            result = 31 * result + Long.hashCode(zeroLevelToX);
+            result = 31 * result + Long.hashCode(zeroLevelToY);
+            return result;
+        }
+
+        private boolean sameGrid(Entry other) {
+            return gridStep != 0 && gridStep == other.gridStep
+                && level == other.level
+                && Double.compare(compression, other.compression) == 0
+                && averagingMode == other.averagingMode
+                && backgroundColor.equals(other.backgroundColor);
+        }
+    }
+
+    /**
+     * The grid of an image: all its parameters, which must be the same for partial reuse,
+     * including the phase of the blocks (the position at the level modulo the grid step).
+     * Images with different grid keys never overlap in the sense of {@link Entry#overlapArea(Entry)}.
+     */
+    static final class GridKey {
+        private final double compression;
+        private final int level;
+        private final PlanePyramidSource.AveragingMode averagingMode;
+        private final Color backgroundColor;
+        private final long gridStep;
+        private final long phaseX;
+        private final long phaseY;
+
+        private GridKey(Entry entry) {
+            assert entry.gridStep > 0;
+            this.compression = entry.compression;
+            this.level = entry.level;
+            this.averagingMode = entry.averagingMode;
+            this.backgroundColor = entry.backgroundColor;
+            this.gridStep = entry.gridStep;
+            this.phaseX = Math.floorMod(entry.gridFromX, entry.gridStep);
+            this.phaseY = Math.floorMod(entry.gridFromY, entry.gridStep);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof GridKey)) {
+                return false;
+            }
+            final GridKey that = (GridKey) o;
+            return Double.compare(compression, that.compression) == 0
+                && level == that.level
+                && averagingMode == that.averagingMode
+                && backgroundColor.equals(that.backgroundColor)
+                && gridStep == that.gridStep && phaseX == that.phaseX && phaseY == that.phaseY;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Double.hashCode(compression);
+            result = 31 * result + level;
+            result = 31 * result + averagingMode.hashCode();
+            result = 31 * result + backgroundColor.hashCode();
+            result = 31 * result + Long.hashCode(gridStep);
+            result = 31 * result + Long.hashCode(phaseX);
+            result = 31 * result + Long.hashCode(phaseY);
+            return result;
+        }
+    }
+}
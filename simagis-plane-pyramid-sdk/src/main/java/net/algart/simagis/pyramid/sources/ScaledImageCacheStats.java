@@ -0,0 +1,155 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package net.algart.simagis.pyramid.sources;
+
+import java.util.Locale;
+
+/**
+ * Snapshot of statistics of the scaled image cache of {@link ScalablePlanePyramidSource}.
+ *
+ * @see ScalablePlanePyramidSource#getScaledImageCacheStats()
+ */
+public final class ScaledImageCacheStats {
+    private final long hits;
+    private final long partialHits;
+    private final long misses;
+    private final long reusedPixels;
+    private final long calculatedPixels;
+    private final int cachedImages;
+    private final long memory;
+    private final long maxMemory;
+
+    ScaledImageCacheStats(
+        long hits,
+        long partialHits,
+        long misses,
+        long reusedPixels,
+        long calculatedPixels,
+        int cachedImages,
+        long memory,
+        long maxMemory)
+    {
+        this.hits = hits;
+        this.partialHits = partialHits;
+        this.misses = misses;
+        this.reusedPixels = reusedPixels;
+        this.calculatedPixels = calculatedPixels;
+        this.cachedImages = cachedImages;
+        this.memory = memory;
+        this.maxMemory = maxMemory;
+    }
+
+    static ScaledImageCacheStats empty() {
+        return new ScaledImageCacheStats(0, 0, 0, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Returns the number of requests, which were completely served by a cached image.
+     *
+     * @return the number of full hits.
+     */
+    public long hits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of requests, which reused a part of a cached image, overlapping the requested area;
+     * only the rest of the image was read and scaled.
+     *
+     * @return the number of partial hits.
+     */
+    public long partialHits() {
+        return partialHits;
+    }
+
+    /**
+     * Returns the number of requests, which were calculated without the help of the cache.
+     *
+     * @return the number of misses.
+     */
+    public long misses() {
+        return misses;
+    }
+
+    /**
+     * Returns the total number of pixels of the scaled images, copied from the cache.
+     *
+     * @return the number of reused pixels.
+     */
+    public long reusedPixels() {
+        return reusedPixels;
+    }
+
+    /**
+     * Returns the total number of pixels of the scaled images, which were read and scaled.
+     *
+     * @return the number of calculated pixels.
+     */
+    public long calculatedPixels() {
+        return calculatedPixels;
+    }
+
+    public int cachedImages() {
+        return cachedImages;
+    }
+
+    public long memory() {
+        return memory;
+    }
+
+    public long maxMemory() {
+        return maxMemory;
+    }
+
+    /**
+     * Returns the fraction of requests, which used the cache (fully or partially).
+     *
+     * @return (hits + partial hits) / (all requests), or 0.0 if there were no requests.
+     */
+    public double hitRatio() {
+        final long total = hits + partialHits + misses;
+        return total == 0 ? 0.0 : (double) (hits + partialHits) / (double) total;
+    }
+
+    /**
+     * Returns the fraction of pixels of all returned images, which were copied from the cache.
+     *
+     * @return reused pixels / (reused + calculated pixels), or 0.0 if there were no requests.
+     */
+    public double pixelReuseRatio() {
+        final long total = reusedPixels + calculatedPixels;
+        return total == 0 ? 0.0 : (double) reusedPixels / (double) total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+            "%d hits + %d partial hits (%.1f%%, %.1f%% pixels reused), %d misses; "
+                + "%d images, %.2f/%.2f MB cached",
+            hits, partialHits, 100.0 * hitRatio(), 100.0 * pixelReuseRatio(), misses,
+            cachedImages, memory / 1048576.0, maxMemory / 1048576.0);
+    }
+}
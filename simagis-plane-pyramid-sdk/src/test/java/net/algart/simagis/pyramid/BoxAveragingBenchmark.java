@@ -0,0 +1,88 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package net.algart.simagis.pyramid;
+
+import net.algart.arrays.Arrays;
+import net.algart.arrays.Matrices;
+import net.algart.arrays.Matrix;
+import net.algart.arrays.UpdatablePArray;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares the speed of {@link BoxAveraging} kernels with {@link Matrices#resize Matrices.resize}
+ * for byte, short and float packed RGB and RGBA matrices and compression factors 2, 3, 4.
+ * The results are checked to be bit-exact; see {@link BoxAveragingTest} for more thorough check.
+ */
+public class BoxAveragingBenchmark {
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: " + BoxAveragingBenchmark.class.getName() + " resultDim [numberOfTests]");
+            return;
+        }
+        final int resultDim = Integer.parseInt(args[0]);
+        final int numberOfTests = args.length >= 2 ? Integer.parseInt(args[1]) : 5;
+        for (Class<?> elementType : new Class<?>[] {byte.class, short.class, float.class}) {
+            for (int bandCount = 3; bandCount <= 4; bandCount++) {
+                for (int factor = 2; factor <= 4; factor++) {
+                    benchmark(elementType, bandCount, factor, resultDim, numberOfTests);
+                }
+            }
+        }
+    }
+
+    private static void benchmark(Class<?> elementType, int bandCount, int factor, int resultDim, int numberOfTests) {
+        final Matrix<UpdatablePArray> source = Arrays.SMM.newMatrix(
+            UpdatablePArray.class, elementType, bandCount, resultDim * factor, resultDim * factor);
+        final UpdatablePArray array = source.array();
+        final Random random = new Random(157);
+        for (long k = 0, n = array.length(); k < n; k++) {
+            array.setDouble(k, random.nextInt(256) * (elementType == byte.class ? 1 : 251));
+        }
+        final Matrix<UpdatablePArray> expected = Arrays.SMM.newMatrix(
+            UpdatablePArray.class, elementType, bandCount, resultDim, resultDim);
+        final Matrix<UpdatablePArray> result = Arrays.SMM.newMatrix(
+            UpdatablePArray.class, elementType, bandCount, resultDim, resultDim);
+        System.out.printf(Locale.US, "%n%s, %d bands, compression %d:%n", elementType, bandCount, factor);
+        for (int test = 1; test <= numberOfTests; test++) {
+            long t1 = System.nanoTime();
+            Matrices.resize(null, Matrices.ResizingMethod.AVERAGING, expected, source);
+            long t2 = System.nanoTime();
+            final boolean specialized = BoxAveraging.compress(null, Matrices.ResizingMethod.AVERAGING, result, source);
+            long t3 = System.nanoTime();
+            if (!specialized) {
+                System.out.println("Specialized kernel is not used");
+                return;
+            }
+            if (!expected.array().equals(result.array())) {
+                throw new AssertionError("Different results of Matrices.resize and BoxAveraging");
+            }
+            System.out.printf(Locale.US, "Test #%d: Matrices.resize %.3f ms, BoxAveraging %.3f ms, speedup %.2f%n",
+                test, (t2 - t1) * 1e-6, (t3 - t2) * 1e-6, (double) (t2 - t1) / (double) (t3 - t2));
+        }
+    }
+}
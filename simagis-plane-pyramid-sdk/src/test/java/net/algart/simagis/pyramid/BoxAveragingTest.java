@@ -0,0 +1,182 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package net.algart.simagis.pyramid;
+
+import net.algart.arrays.*;
+
+import java.util.Random;
+
+/**
+ * Checks that {@link BoxAveraging} kernels produce the same results as {@link Matrices#resize Matrices.resize}
+ * for all element types, band counts, compression factors and averaging methods, for little matrices,
+ * matrices with partial last blocks of rows, large matrices (processed in parallel) and matrices
+ * based on the Java arrays with non-zero offsets. Also checks that the passed context receives the full progress
+ * and can interrupt the compression.
+ */
+public class BoxAveragingTest {
+    private static final int[][] SIZES = {
+        {1, 1}, {1, 5}, {5, 1}, {7, 5}, {16, 16}, {17, 33}, {33, 17}, {301, 299}};
+    private static final Matrices.ResizingMethod[] METHODS = {
+        Matrices.ResizingMethod.AVERAGING, Matrices.ResizingMethod.POLYLINEAR_AVERAGING};
+
+    private static class CountingContext extends AbstractArrayContext {
+        private final int interruptionCount;
+        private int checkCount = 0;
+        private long lastReadyCount = 0;
+        private long lastLength = 0;
+
+        CountingContext(int interruptionCount) {
+            this.interruptionCount = interruptionCount;
+        }
+
+        @Override
+        public MemoryModel getMemoryModel() {
+            return Arrays.SMM;
+        }
+
+        @Override
+        public ThreadPoolFactory getThreadPoolFactory() {
+            return DefaultThreadPoolFactory.getDefaultThreadPoolFactory();
+        }
+
+        @Override
+        public synchronized void checkInterruption() throws RuntimeException {
+            if (++checkCount == interruptionCount) {
+                throw new TestInterruptionException();
+            }
+        }
+
+        @Override
+        public synchronized void updateProgress(Event event) {
+            lastReadyCount = event.readyCount();
+            lastLength = event.length();
+        }
+    }
+
+    private static class TestInterruptionException extends RuntimeException {
+    }
+
+    public static void main(String[] args) {
+        final Random random = new Random(args.length >= 1 ? Long.parseLong(args[0]) : 157);
+        int testCount = 0;
+        for (Class<?> elementType : new Class<?>[] {byte.class, short.class, float.class}) {
+            for (int bandCount = 1; bandCount <= 4; bandCount++) {
+                for (int factor = 2; factor <= 4; factor++) {
+                    for (Matrices.ResizingMethod method : METHODS) {
+                        for (int[] size : SIZES) {
+                            for (int offset : new int[] {0, 1 + random.nextInt(100)}) {
+                                check(random, elementType, bandCount, factor, method, size[0], size[1], offset);
+                                testCount++;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        checkInterruption(random);
+        System.out.println(testCount + " tests passed");
+    }
+
+    private static void check(
+        Random random,
+        Class<?> elementType,
+        int bandCount,
+        int factor,
+        Matrices.ResizingMethod method,
+        int dimX,
+        int dimY,
+        int offset)
+    {
+        final Matrix<UpdatablePArray> source = newMatrix(elementType, offset,
+            bandCount, (long) dimX * factor, (long) dimY * factor);
+        fillRandomly(random, source.array());
+        final Matrix<UpdatablePArray> expected = newMatrix(elementType, 0, bandCount, dimX, dimY);
+        final Matrix<UpdatablePArray> result = newMatrix(elementType, offset, bandCount, dimX, dimY);
+        Matrices.resize(null, method, expected, source);
+        final CountingContext context = new CountingContext(-1);
+        if (!BoxAveraging.compress(context, method, result, source)) {
+            throw new AssertionError("Specialized kernel is not used for " + description(
+                elementType, bandCount, factor, method, dimX, dimY, offset));
+        }
+        if (!expected.array().equals(result.array())) {
+            throw new AssertionError("Different results of Matrices.resize and BoxAveraging for " + description(
+                elementType, bandCount, factor, method, dimX, dimY, offset));
+        }
+        if (context.lastReadyCount != result.size() || context.lastLength != result.size()) {
+            throw new AssertionError("Incomplete progress " + context.lastReadyCount + "/" + context.lastLength
+                + " for " + description(elementType, bandCount, factor, method, dimX, dimY, offset));
+        }
+    }
+
+    private static void checkInterruption(Random random) {
+        final Matrix<UpdatablePArray> source = newMatrix(byte.class, 0, 3, 1200, 1200);
+        fillRandomly(random, source.array());
+        final Matrix<UpdatablePArray> result = newMatrix(byte.class, 0, 3, 600, 600);
+        try {
+            BoxAveraging.compress(new CountingContext(3), Matrices.ResizingMethod.AVERAGING, result, source);
+        } catch (RuntimeException e) {
+            for (Throwable t = e; t != null; t = t.getCause()) {
+                if (t instanceof TestInterruptionException) {
+                    return;
+                }
+            }
+            throw e;
+        }
+        throw new AssertionError("Compression was not interrupted by the context");
+    }
+
+    private static Matrix<UpdatablePArray> newMatrix(Class<?> elementType, int offset, long... dim) {
+        final UpdatablePArray array = (UpdatablePArray) Arrays.SMM.newUnresizableArray(
+            elementType, offset + Arrays.longMul(dim));
+        return Matrices.matrixAtSubArray(array, offset, dim);
+    }
+
+    private static void fillRandomly(Random random, UpdatablePArray array) {
+        final boolean floatingPoint = array instanceof PFloatingArray;
+        final int maxValue = floatingPoint ? 0 : (int) array.maxPossibleValue(1.0);
+        for (long k = 0, n = array.length(); k < n; k++) {
+            if (floatingPoint) {
+                array.setDouble(k, random.nextFloat() * 1000.0f);
+            } else {
+                // extreme values are important for checking overflows and rounding
+                array.setInt(k, random.nextInt(4) == 0 ? maxValue : random.nextInt(maxValue + 1));
+            }
+        }
+    }
+
+    private static String description(
+        Class<?> elementType,
+        int bandCount,
+        int factor,
+        Matrices.ResizingMethod method,
+        int dimX,
+        int dimY,
+        int offset)
+    {
+        return elementType + ", " + bandCount + " bands, compression " + factor + ", " + method
+            + ", result " + dimX + "x" + dimY + ", offset " + offset;
+    }
+}
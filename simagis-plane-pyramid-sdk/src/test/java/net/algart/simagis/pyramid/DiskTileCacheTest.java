@@ -0,0 +1,106 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.algart.simagis.pyramid;
+
+import net.algart.arrays.*;
+import net.algart.math.IPoint;
+import net.algart.math.IRectangularArea;
+
+import java.io.File;
+import java.util.Locale;
+
+/**
+ * Writes tiles into {@link DiskTileCache}, reopens it and checks that all tiles are restored correctly.
+ * Then reopens it with another fingerprint and checks that the cache is cleared.
+ */
+public class DiskTileCacheTest {
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.out.println("Usage: " + DiskTileCacheTest.class.getName()
+                + " directory maxDiskMemoryInMB numberOfTiles [tileDim]");
+            return;
+        }
+        final File directory = new File(args[0]);
+        final long maxDiskMemory = Long.parseLong(args[1]) * 1048576;
+        final int numberOfTiles = Integer.parseInt(args[2]);
+        final int tileDim = args.length >= 4 ? Integer.parseInt(args[3]) : 256;
+
+        DiskTileCache cache = DiskTileCache.open(directory, maxDiskMemory, "test");
+        long t1 = System.nanoTime();
+        for (int k = 0; k < numberOfTiles; k++) {
+            cache.put(k % 3, tile(k, tileDim), tileData(k, tileDim));
+        }
+        long t2 = System.nanoTime();
+        System.out.printf(Locale.US, "%d tiles written in %.3f ms, %d tiles, %.2f MB stored%n",
+            numberOfTiles, (t2 - t1) * 1e-6, cache.numberOfTiles(), cache.totalSegmentsSize() / 1048576.0);
+        cache.close();
+
+        t1 = System.nanoTime();
+        cache = DiskTileCache.open(directory, maxDiskMemory, "test");
+        t2 = System.nanoTime();
+        System.out.printf(Locale.US, "Cache reopened in %.3f ms, %d tiles%n", (t2 - t1) * 1e-6, cache.numberOfTiles());
+        int found = 0;
+        t1 = System.nanoTime();
+        for (int k = 0; k < numberOfTiles; k++) {
+            final Matrix<? extends PArray> m = cache.get(k % 3, tile(k, tileDim));
+            if (m != null) {
+                found++;
+                if (!m.equals(tileData(k, tileDim))) {
+                    throw new AssertionError("Tile #" + k + " is restored incorrectly");
+                }
+            }
+        }
+        t2 = System.nanoTime();
+        System.out.printf(Locale.US, "%d tiles found and checked in %.3f ms%n", found, (t2 - t1) * 1e-6);
+        if (found != cache.numberOfTiles()) {
+            throw new AssertionError("Number of found tiles " + found + " != " + cache.numberOfTiles());
+        }
+        final DiskTileCache locked = DiskTileCache.open(directory, maxDiskMemory, "test");
+        if (locked.numberOfTiles() != 0) {
+            throw new AssertionError("Locked directory is used twice");
+        }
+        cache.close();
+
+        cache = DiskTileCache.open(directory, maxDiskMemory, "another source");
+        if (cache.numberOfTiles() != 0) {
+            throw new AssertionError("The cache is not cleared for another fingerprint");
+        }
+        cache.close();
+        System.out.println("O'k");
+    }
+
+    private static IRectangularArea tile(int k, int tileDim) {
+        final long x = (long) (k / 3) * tileDim;
+        return IRectangularArea.valueOf(IPoint.valueOf(x, 0), IPoint.valueOf(x + tileDim - 1, tileDim - 1));
+    }
+
+    private static Matrix<? extends PArray> tileData(int k, int tileDim) {
+        final byte[] data = new byte[3 * tileDim * tileDim];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (k * 31 + i);
+        }
+        return Matrices.matrix(SimpleMemoryModel.asUpdatableByteArray(data), 3, tileDim, tileDim);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package net.algart.simagis.pyramid;
+
+import net.algart.external.MatrixToBufferedImageConverter;
+import net.algart.simagis.pyramid.sources.ScalablePlanePyramidSource;
+
+import java.awt.image.BufferedImage;
+import java.util.Locale;
+
+/**
+ * Compares the speed of {@link ScalablePlanePyramidSource#readBufferedImage readBufferedImage}
+ * with and without {@link ScalablePlanePyramidSource#setFusedRendering(boolean) fused rendering}
+ * for 8-bit and 16-bit RGB sources. The requested area is partially outside the image,
+ * so the background is filled too. The results of both modes are checked to be identical.
+ */
+public class FusedRenderingBenchmark {
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: " + FusedRenderingBenchmark.class.getName()
+                + " areaDim compression [numberOfTests]");
+            return;
+        }
+        final int areaDim = Integer.parseInt(args[0]);
+        final double compression = Double.parseDouble(args[1]);
+        final int numberOfTests = args.length >= 3 ? Integer.parseInt(args[2]) : 5;
+        for (Class<?> elementType : new Class<?>[] {byte.class, short.class}) {
+            final ScalablePlanePyramidSource source = ScalablePlanePyramidSource.newInstance(
+                new SyntheticPlanePyramidSource(elementType, 2 * areaDim, 2 * areaDim, 0, 0));
+            final MatrixToBufferedImageConverter converter =
+                new MatrixToBufferedImageConverter.Packed3DToPackedRGB(true);
+            final long from = 2 * areaDim - areaDim / 2;
+            // - a quarter of the area is inside the image, the rest is background
+            System.out.printf(Locale.US, "%nReading %dx%d %s area with compression %.3f%n",
+                areaDim, areaDim, elementType, compression);
+            for (int test = 1; test <= numberOfTests; test++) {
+                source.setFusedRendering(false);
+                long t1 = System.nanoTime();
+                final BufferedImage usual = source.readBufferedImage(
+                    compression, from, from, from + areaDim, from + areaDim, converter);
+                long t2 = System.nanoTime();
+                source.setFusedRendering(true);
+                final BufferedImage fused = source.readBufferedImage(
+                    compression, from, from, from + areaDim, from + areaDim, converter);
+                long t3 = System.nanoTime();
+                checkIdentical(usual, fused);
+                System.out.printf(Locale.US, "Test #%d: %dx%d image, usual %.3f ms, fused %.3f ms, speedup %.2f%n",
+                    test, fused.getWidth(), fused.getHeight(),
+                    (t2 - t1) * 1e-6, (t3 - t2) * 1e-6, (double) (t2 - t1) / (double) (t3 - t2));
+            }
+        }
+    }
+
+    private static void checkIdentical(BufferedImage usual, BufferedImage fused) {
+        if (usual.getWidth() != fused.getWidth() || usual.getHeight() != fused.getHeight()) {
+            throw new AssertionError("Different sizes of usual and fused images");
+        }
+        final int width = usual.getWidth();
+        for (int y = 0; y < usual.getHeight(); y++) {
+            final int[] usualRow = usual.getRGB(0, y, width, 1, null, 0, width);
+            final int[] fusedRow = fused.getRGB(0, y, width, 1, null, 0, width);
+            if (!java.util.Arrays.equals(usualRow, fusedRow)) {
+                throw new AssertionError("Different usual and fused images at row " + y);
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package net.algart.simagis.pyramid;
+
+import net.algart.arrays.Matrix;
+import net.algart.arrays.PArray;
+
+import java.nio.channels.NotYetConnectedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Reads a source, which reads its tiles from another source with parallel tile reading, from several threads
+ * under a saturated {@link ReadingScheduler} (one permit for every priority), and checks that there is
+ * no deadlock: nested reading and its helper threads must not wait for new permits, and threads,
+ * waiting for a tile loaded by another thread, must give their permits back.
+ */
+public class NestedReadingSchedulerTest {
+    private static final long TIMEOUT = 60000;
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 2) {
+            System.out.println("Usage: " + NestedReadingSchedulerTest.class.getName()
+                + " numberOfThreads numberOfTests");
+            return;
+        }
+        final int numberOfThreads = Integer.parseInt(args[0]);
+        final int numberOfTests = Integer.parseInt(args[1]);
+        final ReadingScheduler scheduler = new ReadingScheduler(1, 1, 1, 1);
+        final SyntheticPlanePyramidSource inner = new SyntheticPlanePyramidSource(byte.class, 1024, 1024, 64, 10);
+        inner.enableTileCaching(AbstractPlanePyramidSource.TileDirection.RIGHT_DOWN);
+        inner.setTileReadingParallelism(4);
+        inner.setReadingScheduler(scheduler);
+        final NestedSource outer = new NestedSource(inner);
+        outer.setReadingScheduler(scheduler);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < numberOfThreads; t++) {
+            final Random rnd = new Random(157 + t);
+            final ReadingPriority priority = ReadingPriority.values()[t % ReadingPriority.values().length];
+            final Thread thread = new Thread(() -> {
+                try (ReadingPriority.Scope scope = priority.enter()) {
+                    for (int test = 0; test < numberOfTests; test++) {
+                        final long fromX = rnd.nextInt(512);
+                        final long fromY = rnd.nextInt(512);
+                        final long toX = fromX + 1 + rnd.nextInt(512);
+                        final long toY = fromY + 1 + rnd.nextInt(512);
+                        final Matrix<? extends PArray> m = outer.readSubMatrix(0, fromX, fromY, toX, toY);
+                        if (!m.equals(inner.readSubMatrix(0, fromX, fromY, toX, toY))) {
+                            throw new AssertionError("Invalid data in " + fromX + ".." + toX
+                                + " x " + fromY + ".." + toY);
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }, NestedReadingSchedulerTest.class.getSimpleName() + " #" + t);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        for (Thread thread : threads) {
+            thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+            if (thread.isAlive()) {
+                for (StackTraceElement element : thread.getStackTrace()) {
+                    System.out.println("    at " + element);
+                }
+                throw new AssertionError(thread.getName() + " is not finished in " + TIMEOUT
+                    + " ms: probably deadlock (" + scheduler + ")");
+            }
+        }
+        if (failure.get() != null) {
+            throw new AssertionError("Reading failed", failure.get());
+        }
+        System.out.println(scheduler);
+        if (scheduler.running(ReadingPriority.INTERACTIVE) != 0) {
+            throw new AssertionError("Permits are not released: " + scheduler);
+        }
+        inner.freeResources(PlanePyramidSource.FlushMethod.QUICK_WITH_POSSIBLE_LOSS_OF_DATA);
+        System.out.println("O'k");
+    }
+
+    private static class NestedSource extends AbstractPlanePyramidSource {
+        private final PlanePyramidSource parent;
+
+        NestedSource(PlanePyramidSource parent) {
+            super(null);
+            this.parent = parent;
+        }
+
+        @Override
+        public int numberOfResolutions() {
+            return parent.numberOfResolutions();
+        }
+
+        @Override
+        public int bandCount() {
+            return parent.bandCount();
+        }
+
+        @Override
+        public long[] dimensions(int resolutionLevel) throws NoSuchElementException {
+            return parent.dimensions(resolutionLevel);
+        }
+
+        @Override
+        protected Matrix<? extends PArray> readLittleSubMatrix(
+            int resolutionLevel, long fromX, long fromY, long toX, long toY)
+            throws NoSuchElementException, NotYetConnectedException
+        {
+            return parent.readSubMatrix(resolutionLevel, fromX, fromY, toX, toY);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.algart.simagis.pyramid;
+
+import net.algart.arrays.Arrays;
+import net.algart.arrays.Matrices;
+import net.algart.arrays.Matrix;
+import net.algart.arrays.PArray;
+import net.algart.arrays.UpdatablePArray;
+
+import java.nio.channels.NotYetConnectedException;
+import java.util.NoSuchElementException;
+
+/**
+ * Synthetic RGB source with one resolution level for benchmarks. Every pixel is calculated from its coordinates
+ * by a pseudo-random generator, which is iterated <tt>decodingCost</tt> times: it allows to simulate
+ * CPU time, spent by a typical decoder (like JPEG) for every pixel.
+ */
+class SyntheticPlanePyramidSource extends AbstractPlanePyramidSource {
+    static final int BAND_COUNT = 3;
+
+    private final Class<?> elementType;
+    private final long dimX;
+    private final long dimY;
+    private final int tileDim;
+    private final int decodingCost;
+
+    /**
+     * Creates the source.
+     *
+     * @param elementType  the element type of the data.
+     * @param dimX         the width of the image.
+     * @param dimY         the height of the image.
+     * @param tileDim      the result of {@link #readingTileDim()}; 0 means the default value.
+     * @param decodingCost the number of iterations of the generator for every pixel.
+     */
+    SyntheticPlanePyramidSource(Class<?> elementType, long dimX, long dimY, int tileDim, int decodingCost) {
+        super(null);
+        this.elementType = elementType;
+        this.dimX = dimX;
+        this.dimY = dimY;
+        this.tileDim = tileDim;
+        this.decodingCost = decodingCost;
+    }
+
+    @Override
+    public int numberOfResolutions() {
+        return 1;
+    }
+
+    @Override
+    public int bandCount() {
+        return BAND_COUNT;
+    }
+
+    @Override
+    public long[] dimensions(int resolutionLevel) throws NoSuchElementException {
+        return new long[] {BAND_COUNT, dimX, dimY};
+    }
+
+    @Override
+    public boolean isElementTypeSupported() {
+        return true;
+    }
+
+    @Override
+    public Class<?> elementType() {
+        return elementType;
+    }
+
+    @Override
+    protected int readingTileDim() {
+        return tileDim > 0 ? tileDim : super.readingTileDim();
+    }
+
+    @Override
+    protected Matrix<? extends PArray> readLittleSubMatrix(
+        int resolutionLevel, long fromX, long fromY, long toX, long toY)
+        throws NoSuchElementException, NotYetConnectedException
+    {
+        final UpdatablePArray data = (UpdatablePArray) Arrays.SMM.newUnresizableArray(
+            elementType, BAND_COUNT * (toX - fromX) * (toY - fromY));
+        long disp = 0;
+        for (long y = fromY; y < toY; y++) {
+            for (long x = fromX; x < toX; x++) {
+                long v = x * 0x9E3779B97F4A7C15L + y;
+                for (int k = 0; k < decodingCost; k++) {
+                    v = v * 6364136223846793005L + 1442695040888963407L;
+                }
+                // - simulation of decoding
+                for (int band = 0; band < BAND_COUNT; band++) {
+                    data.setInt(disp++, (int) (v >>> (8 * band + 24)));
+                }
+            }
+        }
+        return Matrices.matrix(data, BAND_COUNT, toX - fromX, toY - fromY);
+    }
+}
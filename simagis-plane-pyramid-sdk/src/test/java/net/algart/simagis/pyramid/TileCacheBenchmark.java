@@ -0,0 +1,215 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.algart.simagis.pyramid;
+
+import net.algart.arrays.Arrays;
+import net.algart.arrays.Matrices;
+import net.algart.arrays.Matrix;
+import net.algart.arrays.PArray;
+import net.algart.math.IPoint;
+import net.algart.math.IRectangularArea;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Compares hit ratio and cost of get/put operations of {@link TileCache} with the previous implementation,
+ * based on access-ordered <tt>LinkedHashMap</tt>, on a replayed viewer trace.
+ *
+ * <p>The trace is either generated (a viewer, which pans across a slide, jumps to new places and
+ * regularly returns to the overview levels), or read from a text file, where every line contains
+ * 5 integers: <tt>level minX minY maxX maxY</tt> of the requested tile.
+ *
+ * <p>{@link TileCache} is tested in usual and in off-heap mode; in the last case, every miss
+ * includes copying the tile into a direct buffer.
+ */
+public class TileCacheBenchmark {
+    private static final int BAND_COUNT = 4;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: " + TileCacheBenchmark.class.getName()
+                + " cacheMemoryInMB tileDim [trace-file | numberOfViewerSteps]");
+            return;
+        }
+        final long cacheMemory = Long.parseLong(args[0]) * 1048576L;
+        final int tileDim = Integer.parseInt(args[1]);
+        final List<TileCacheIndex> trace = args.length >= 3 && new File(args[2]).isFile() ?
+            readTrace(new File(args[2])) :
+            generateTrace(tileDim, args.length >= 3 ? Integer.parseInt(args[2]) : 20000);
+        System.out.printf(Locale.US, "%d tile requests, cache %.1f MB, tiles %dx%dx%d%n",
+            trace.size(), cacheMemory / 1048576.0, BAND_COUNT, tileDim, tileDim);
+        for (int test = 1; test <= 5; test++) {
+            System.out.printf("%nTest #%d%n", test);
+            testTileCache(trace, tileDim, cacheMemory, false);
+            testTileCache(trace, tileDim, cacheMemory, true);
+            testLinkedHashMap(trace, tileDim, cacheMemory);
+        }
+    }
+
+    private static void testTileCache(List<TileCacheIndex> trace, int tileDim, long cacheMemory, boolean offHeap) {
+        final TileCache cache = new TileCache(tileDim, cacheMemory, offHeap);
+        final Map<Long, Matrix<? extends PArray>> pool = new HashMap<Long, Matrix<? extends PArray>>();
+        final long[] misses = new long[1];
+        long t1 = System.nanoTime();
+        for (TileCacheIndex index : trace) {
+            cache.useTile(index, () -> {
+                misses[0]++;
+                final Matrix<? extends PArray> data = tileData(pool, index.tile);
+                return new TileCache.LoadedTile(data, PlanePyramidTools.findUniformPixel(data));
+            }, (m, tileOffHeap, uniformPixel) -> m.array().getDouble(0));
+        }
+        long t2 = System.nanoTime();
+        printResult(TileCache.class.getSimpleName() + (offHeap ? " (off-heap)" : ""),
+            trace.size(), misses[0], t2 - t1);
+        cache.clear();
+    }
+
+    private static void testLinkedHashMap(List<TileCacheIndex> trace, int tileDim, long cacheMemory) {
+        final Map<Long, Matrix<? extends PArray>> pool = new HashMap<Long, Matrix<? extends PArray>>();
+        final LinkedHashMap<TileCacheIndex, Matrix<? extends PArray>> cache =
+            new LinkedHashMap<TileCacheIndex, Matrix<? extends PArray>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<TileCacheIndex, Matrix<? extends PArray>> eldest) {
+                    double sum = 0.0;
+                    for (Matrix<? extends PArray> m : values()) {
+                        sum += Matrices.sizeOf(m);
+                    }
+                    return sum > cacheMemory;
+                }
+            };
+        long misses = 0;
+        long t1 = System.nanoTime();
+        for (TileCacheIndex index : trace) {
+            synchronized (cache) {
+                if (cache.get(index) == null) {
+                    misses++;
+                    cache.put(index, tileData(pool, index.tile));
+                }
+            }
+        }
+        long t2 = System.nanoTime();
+        printResult("LinkedHashMap", trace.size(), misses, t2 - t1);
+    }
+
+    private static void printResult(String name, long requests, long misses, long time) {
+        System.out.printf(Locale.US, "%-25s hit ratio %.2f%% (%d misses), %.3f mcs per request%n",
+            name, 100.0 * (requests - misses) / requests, misses, time * 1e-3 / requests);
+    }
+
+    // Matrices are shared between equal-sized tiles: the caches never modify data,
+    // and we measure only the cost of the caches themselves
+    private static Matrix<? extends PArray> tileData(Map<Long, Matrix<? extends PArray>> pool, IRectangularArea tile) {
+        final long key = tile.size(0) * 1000003L + tile.size(1);
+        Matrix<? extends PArray> result = pool.get(key);
+        if (result == null) {
+            result = Arrays.SMM.newByteMatrix(BAND_COUNT, tile.size(0), tile.size(1));
+            pool.put(key, result);
+        }
+        return result;
+    }
+
+    private static List<TileCacheIndex> generateTrace(int tileDim, int numberOfSteps) {
+        final long dimX = 120000;
+        final long dimY = 80000;
+        final int compression = 2;
+        final int numberOfLevels = 8;
+        final long viewportX = 1920;
+        final long viewportY = 1080;
+        final Random rnd = new Random(157);
+        final List<TileCacheIndex> result = new ArrayList<TileCacheIndex>();
+        int level = 0;
+        double x = dimX / 2, y = dimY / 2, vx = 0, vy = 0;
+        for (int step = 0; step < numberOfSteps; step++) {
+            if (step % 25 == 0) {
+                // returning to the overview
+                addViewport(result, tileDim, numberOfLevels - 2, compression, dimX, dimY,
+                    0, 0, dimX, dimY);
+            }
+            if (rnd.nextDouble() < 0.01) {
+                // jump to another place and level
+                level = rnd.nextInt(3);
+                x = rnd.nextDouble() * dimX;
+                y = rnd.nextDouble() * dimY;
+            }
+            if (rnd.nextDouble() < 0.1) {
+                final double speed = 50 + 200 * rnd.nextDouble();
+                final double angle = rnd.nextDouble() * 2 * Math.PI;
+                vx = speed * Math.cos(angle);
+                vy = speed * Math.sin(angle);
+            }
+            final long c = 1L << level;
+            x = Math.max(0, Math.min(dimX - 1, x + vx * c));
+            y = Math.max(0, Math.min(dimY - 1, y + vy * c));
+            addViewport(result, tileDim, level, compression, dimX, dimY,
+                (long) x, (long) y, (long) x + viewportX * c, (long) y + viewportY * c);
+        }
+        return result;
+    }
+
+    private static void addViewport(
+        List<TileCacheIndex> result, int tileDim, int level, int compression, long dimX, long dimY,
+        long zeroLevelFromX, long zeroLevelFromY, long zeroLevelToX, long zeroLevelToY)
+    {
+        long c = 1;
+        for (int k = 0; k < level; k++) {
+            c *= compression;
+        }
+        final long levelDimX = dimX / c;
+        final long levelDimY = dimY / c;
+        final long fromX = Math.min(levelDimX - 1, zeroLevelFromX / c);
+        final long fromY = Math.min(levelDimY - 1, zeroLevelFromY / c);
+        final long toX = Math.min(levelDimX, zeroLevelToX / c + 1);
+        final long toY = Math.min(levelDimY, zeroLevelToY / c + 1);
+        for (long y = fromY - fromY % tileDim; y < toY; y += tileDim) {
+            for (long x = fromX - fromX % tileDim; x < toX; x += tileDim) {
+                result.add(new TileCacheIndex(level, IRectangularArea.valueOf(
+                    IPoint.valueOf(x, y),
+                    IPoint.valueOf(Math.min(x + tileDim, levelDimX) - 1, Math.min(y + tileDim, levelDimY) - 1))));
+            }
+        }
+    }
+
+    private static List<TileCacheIndex> readTrace(File file) throws IOException {
+        final List<TileCacheIndex> result = new ArrayList<TileCacheIndex>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                final String[] values = line.split("\\s+");
+                result.add(new TileCacheIndex(Integer.parseInt(values[0]), IRectangularArea.valueOf(
+                    IPoint.valueOf(Long.parseLong(values[1]), Long.parseLong(values[2])),
+                    IPoint.valueOf(Long.parseLong(values[3]), Long.parseLong(values[4])))));
+            }
+        }
+        return result;
+    }
+}
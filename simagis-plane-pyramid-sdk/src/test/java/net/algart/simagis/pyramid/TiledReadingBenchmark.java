@@ -0,0 +1,93 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.algart.simagis.pyramid;
+
+import net.algart.arrays.Arrays;
+import net.algart.arrays.Matrix;
+import net.algart.arrays.PArray;
+
+import java.util.Locale;
+
+/**
+ * Measures the speed of {@link AbstractPlanePyramidSource#readSubMatrix readSubMatrix} for large areas
+ * with different {@link AbstractPlanePyramidSource#setTileReadingParallelism(int) tile reading parallelism}.
+ *
+ * <p>The tiles are produced by {@link SyntheticPlanePyramidSource}, which spends some CPU time for every pixel,
+ * like a typical JPEG decoder. The results for all parallelism levels are checked to be identical.
+ */
+public class TiledReadingBenchmark {
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.out.println("Usage: " + TiledReadingBenchmark.class.getName()
+                + " areaDim tileDim decodingCostPerPixel [maxParallelism]");
+            return;
+        }
+        final int areaDim = Integer.parseInt(args[0]);
+        final int tileDim = Integer.parseInt(args[1]);
+        final int decodingCost = Integer.parseInt(args[2]);
+        final int maxParallelism = args.length >= 4 ?
+            Integer.parseInt(args[3]) :
+            Runtime.getRuntime().availableProcessors();
+        final SyntheticPlanePyramidSource source = new SyntheticPlanePyramidSource(
+            byte.class, 4 * areaDim, 4 * areaDim, tileDim, decodingCost);
+        System.out.printf(Locale.US, "Reading %dx%dx%d bytes by %dx%d tiles (%d tiles)%n",
+            SyntheticPlanePyramidSource.BAND_COUNT, areaDim, areaDim, tileDim, tileDim,
+            ((areaDim + tileDim - 1) / tileDim) * ((areaDim + tileDim - 1) / tileDim));
+        for (int test = 1; test <= 5; test++) {
+            System.out.printf("%nTest #%d%n", test);
+            double baseTime = 0.0;
+            long baseChecksum = 0;
+            for (int parallelism = 1; parallelism <= maxParallelism; parallelism *= 2) {
+                source.setTileReadingParallelism(parallelism);
+                final long offset = test * 3L * tileDim + 17;
+                // - different areas in different tests
+                long t1 = System.nanoTime();
+                final Matrix<? extends PArray> m = source.readSubMatrix(0,
+                    offset, offset, offset + areaDim, offset + areaDim);
+                long t2 = System.nanoTime();
+                final long checksum = checksum(m);
+                if (parallelism == 1) {
+                    baseTime = t2 - t1;
+                    baseChecksum = checksum;
+                } else if (checksum != baseChecksum) {
+                    throw new AssertionError("Different results for parallelism 1 and " + parallelism);
+                }
+                System.out.printf(Locale.US, "Parallelism %2d: %.3f ms, %.2f MB/sec, speedup %.2f%n",
+                    parallelism, (t2 - t1) * 1e-6, Arrays.sizeOf(m.array()) / 1048576.0 / ((t2 - t1) * 1e-9),
+                    baseTime / (t2 - t1));
+            }
+        }
+        source.freeResources(PlanePyramidSource.FlushMethod.QUICK_WITH_POSSIBLE_LOSS_OF_DATA);
+    }
+
+    private static long checksum(Matrix<? extends PArray> m) {
+        final PArray array = m.array();
+        long result = 0;
+        for (long k = 0, n = array.length(); k < n; k++) {
+            result = result * 31 + array.getLong(k);
+        }
+        return result;
+    }
+}
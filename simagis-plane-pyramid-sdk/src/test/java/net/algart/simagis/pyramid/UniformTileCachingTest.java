@@ -0,0 +1,123 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2016 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package net.algart.simagis.pyramid;
+
+import net.algart.arrays.Matrices;
+import net.algart.arrays.Matrix;
+import net.algart.arrays.PArray;
+import net.algart.arrays.SimpleMemoryModel;
+
+import java.nio.channels.NotYetConnectedException;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads an off-white RGB source, all tiles of which are uniform, but have different bands,
+ * with enabled tile caching, and checks that the cached tiles do not occupy memory for their pixels
+ * and are returned correctly.
+ */
+public class UniformTileCachingTest {
+    private static final byte[] BACKGROUND = {(byte) 250, (byte) 245, (byte) 240};
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: " + UniformTileCachingTest.class.getName() + " areaDim tileDim");
+            return;
+        }
+        final int areaDim = Integer.parseInt(args[0]);
+        final int tileDim = Integer.parseInt(args[1]);
+        final UniformSource source = new UniformSource(areaDim, areaDim, tileDim);
+        source.enableTileCaching(AbstractPlanePyramidSource.TileDirection.RIGHT_DOWN);
+        for (int test = 1; test <= 2; test++) {
+            final Matrix<? extends PArray> m = source.readSubMatrix(0, 0, 0, areaDim, areaDim);
+            final PArray array = m.array();
+            for (long k = 0, n = array.length(); k < n; k++) {
+                if (array.getInt(k) != (BACKGROUND[(int) (k % BACKGROUND.length)] & 0xFF)) {
+                    throw new AssertionError("Invalid element #" + k + " at test #" + test + ": "
+                        + array.getInt(k));
+                }
+            }
+            final TileCacheStats stats = source.getTileCacheStats();
+            final long tileSize = (long) BACKGROUND.length * tileDim * tileDim;
+            System.out.printf(Locale.US, "Test #%d: %d tiles cached, %d bytes used (tile size %d bytes)%n",
+                test, stats.numberOfTiles(), stats.usedMemory(), tileSize);
+            if (stats.numberOfTiles() == 0) {
+                throw new AssertionError("No tiles cached");
+            }
+            if (stats.usedMemory() / stats.numberOfTiles() >= tileSize) {
+                throw new AssertionError("Uniform tiles with different bands are cached with full weight: "
+                    + stats.usedMemory() + " bytes for " + stats.numberOfTiles() + " tiles");
+            }
+        }
+        source.freeResources(PlanePyramidSource.FlushMethod.QUICK_WITH_POSSIBLE_LOSS_OF_DATA);
+        System.out.println("O'k");
+    }
+
+    private static class UniformSource extends AbstractPlanePyramidSource {
+        private final long dimX;
+        private final long dimY;
+        private final int tileDim;
+
+        UniformSource(long dimX, long dimY, int tileDim) {
+            super(null);
+            this.dimX = dimX;
+            this.dimY = dimY;
+            this.tileDim = tileDim;
+        }
+
+        @Override
+        public int numberOfResolutions() {
+            return 1;
+        }
+
+        @Override
+        public int bandCount() {
+            return BACKGROUND.length;
+        }
+
+        @Override
+        public long[] dimensions(int resolutionLevel) throws NoSuchElementException {
+            return new long[] {BACKGROUND.length, dimX, dimY};
+        }
+
+        @Override
+        protected int readingTileDim() {
+            return tileDim;
+        }
+
+        @Override
+        protected Matrix<? extends PArray> readLittleSubMatrix(
+            int resolutionLevel, long fromX, long fromY, long toX, long toY)
+            throws NoSuchElementException, NotYetConnectedException
+        {
+            final byte[] data = new byte[(int) (BACKGROUND.length * (toX - fromX) * (toY - fromY))];
+            for (int k = 0; k < data.length; k++) {
+                data[k] = BACKGROUND[k % BACKGROUND.length];
+            }
+            return Matrices.matrix(SimpleMemoryModel.asUpdatableByteArray(data),
+                BACKGROUND.length, toX - fromX, toY - fromY);
+        }
+    }
+}
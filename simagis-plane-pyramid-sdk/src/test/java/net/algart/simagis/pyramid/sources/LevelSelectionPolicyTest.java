@@ -0,0 +1,148 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2017 Daniel Alievsky, AlgART Laboratory (http://algart.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package net.algart.simagis.pyramid.sources;
+
+import net.algart.arrays.Matrices;
+import net.algart.arrays.Matrix;
+import net.algart.arrays.PArray;
+import net.algart.arrays.SimpleMemoryModel;
+import net.algart.simagis.pyramid.AbstractPlanePyramidSource;
+
+import java.nio.channels.NotYetConnectedException;
+import java.util.NoSuchElementException;
+
+/**
+ * Checks, which level of a pyramid with compression 4 is chosen by the built-in level selection policies.
+ */
+public class LevelSelectionPolicyTest {
+    private static final int COMPRESSION = 4;
+    private static final int NUMBER_OF_RESOLUTIONS = 4;
+
+    public static void main(String[] args) {
+        final ScalablePlanePyramidSource pyramid = ScalablePlanePyramidSource.newInstance(
+            new EmptySource(4096, 4096));
+        final LevelSelectionPolicy qualityFirst = LevelSelectionPolicy.qualityFirst();
+        checkLevel(pyramid, qualityFirst, 1.0, 0);
+        checkLevel(pyramid, qualityFirst, 3.0, 0);
+        checkLevel(pyramid, qualityFirst, 3.9, 0);
+        checkLevel(pyramid, qualityFirst, 4.0, 1);
+        checkLevel(pyramid, qualityFirst, 15.9, 1);
+        checkLevel(pyramid, qualityFirst, 16.0, 2);
+        checkLevel(pyramid, qualityFirst, 1000.0, NUMBER_OF_RESOLUTIONS - 1);
+
+        final LevelSelectionPolicy speedFirst = LevelSelectionPolicy.speedFirst(1.1);
+        checkLevel(pyramid, speedFirst, 1.0, 0);
+        checkLevel(pyramid, speedFirst, 3.0, 0);
+        checkLevel(pyramid, speedFirst, 3.9, 1);
+        checkLevel(pyramid, speedFirst, 4.0, 1);
+        checkLevel(pyramid, speedFirst, 15.0, 2);
+        checkLevel(pyramid, speedFirst, 1000.0, NUMBER_OF_RESOLUTIONS - 1);
+        checkLevel(pyramid, LevelSelectionPolicy.speedFirst(1.0), 3.9, 0);
+
+        final LevelSelectionPolicy costModel = LevelSelectionPolicy.costModel(100.0);
+        checkLevel(pyramid, costModel, 1.0, 0);
+        checkLevel(pyramid, costModel, 3.0, 0);
+        checkLevel(pyramid, costModel, 3.9, 1);
+        checkLevel(pyramid, costModel, 4.0, 1);
+        checkLevel(pyramid, costModel, 1000.0, NUMBER_OF_RESOLUTIONS - 1);
+
+        checkEquality(LevelSelectionPolicy.speedFirst(1.1), speedFirst, true);
+        checkEquality(LevelSelectionPolicy.speedFirst(1.2), speedFirst, false);
+        checkEquality(LevelSelectionPolicy.costModel(100.0), costModel, true);
+        checkEquality(LevelSelectionPolicy.costModel(50.0), costModel, false);
+        checkEquality(LevelSelectionPolicy.qualityFirst(), qualityFirst, true);
+        checkEquality(LevelSelectionPolicy.speedFirst(1.0), qualityFirst, false);
+        System.out.println("O'k");
+    }
+
+    private static void checkLevel(
+        ScalablePlanePyramidSource pyramid,
+        LevelSelectionPolicy policy,
+        double compression,
+        int expectedLevel)
+    {
+        final int level = policy.selectLevel(pyramid, compression);
+        System.out.printf("Compression %.3f: level #%d by %s%n", compression, level, policy);
+        if (level != expectedLevel) {
+            throw new AssertionError("Level #" + level + " is chosen by " + policy + " for compression "
+                + compression + " instead of level #" + expectedLevel);
+        }
+    }
+
+    private static void checkEquality(LevelSelectionPolicy a, LevelSelectionPolicy b, boolean expected) {
+        if (a.equals(b) != expected || b.equals(a) != expected || (expected && a.hashCode() != b.hashCode())) {
+            throw new AssertionError("Policies " + a + " and " + b + " must " + (expected ? "" : "not ")
+                + "be equal");
+        }
+    }
+
+    private static class EmptySource extends AbstractPlanePyramidSource {
+        private final long dimX;
+        private final long dimY;
+
+        EmptySource(long dimX, long dimY) {
+            super(null);
+            this.dimX = dimX;
+            this.dimY = dimY;
+        }
+
+        @Override
+        public int numberOfResolutions() {
+            return NUMBER_OF_RESOLUTIONS;
+        }
+
+        @Override
+        public int compression() {
+            return COMPRESSION;
+        }
+
+        @Override
+        public int bandCount() {
+            return 1;
+        }
+
+        @Override
+        public long[] dimensions(int resolutionLevel) throws NoSuchElementException {
+            if (resolutionLevel < 0 || resolutionLevel >= NUMBER_OF_RESOLUTIONS) {
+                throw new NoSuchElementException("No level #" + resolutionLevel);
+            }
+            long divider = 1;
+            for (int k = 0; k < resolutionLevel; k++) {
+                divider *= COMPRESSION;
+            }
+            return new long[] {1, dimX / divider, dimY / divider};
+        }
+
+        @Override
+        protected Matrix<? extends PArray> readLittleSubMatrix(
+            int resolutionLevel, long fromX, long fromY, long toX, long toY)
+            throws NoSuchElementException, NotYetConnectedException
+        {
+            return Matrices.matrix(SimpleMemoryModel.getInstance().newByteArray((toX - fromX) * (toY - fromY)),
+                1, toX - fromX, toY - fromY);
+        }
+    }
+}